@@ -2,6 +2,7 @@ package com.github.kaiwinter.activerecord.ar;
 
 import com.github.kaiwinter.activerecord.BaseAR;
 import com.github.kaiwinter.activerecord.annotation.Column;
+import com.github.kaiwinter.activerecord.annotation.Indexed;
 import com.github.kaiwinter.activerecord.annotation.Table;
 import com.github.kaiwinter.activerecord.db.SequenceGenerator;
 
@@ -9,6 +10,7 @@ import com.github.kaiwinter.activerecord.db.SequenceGenerator;
 public final class PersonAR extends BaseAR {
 
     @Column
+    @Indexed
     private String name;
     @Column
     private String surname;
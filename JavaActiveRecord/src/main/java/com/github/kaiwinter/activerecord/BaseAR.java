@@ -2,24 +2,58 @@ package com.github.kaiwinter.activerecord;
 
 import static com.github.kaiwinter.activerecord.db.Db.INSTANCE;
 
-import java.lang.reflect.Field;
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.lang.reflect.InvocationTargetException;
+import java.sql.BatchUpdateException;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.SQLDataException;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.LongBinaryOperator;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.github.kaiwinter.activerecord.annotation.Column;
+import com.github.kaiwinter.activerecord.annotation.FetchType;
 import com.github.kaiwinter.activerecord.annotation.Table;
+import com.github.kaiwinter.activerecord.annotation.Version;
+import com.github.kaiwinter.activerecord.cache.ChangeBus;
+import com.github.kaiwinter.activerecord.cache.RecordCache;
 import com.github.kaiwinter.activerecord.db.InternalSequenceGenerator;
+import com.github.kaiwinter.activerecord.db.Lease;
 import com.github.kaiwinter.activerecord.db.SequenceGenerator;
+import com.github.kaiwinter.activerecord.db.SqlOperation;
+import com.github.kaiwinter.activerecord.db.WriteBehindBuffer;
+import com.github.kaiwinter.activerecord.dialect.Dialect;
+import com.github.kaiwinter.activerecord.metadata.ColumnType;
 import com.github.kaiwinter.activerecord.metadata.MetadataCache;
+import com.github.kaiwinter.activerecord.metadata.NamedQueryDefinition;
 import com.github.kaiwinter.activerecord.metadata.TableMetadata;
 import com.github.kaiwinter.activerecord.metadata.TableMetadata.ColumnWithAlias;
+import com.github.kaiwinter.activerecord.metadata.TableMetadata.WriteQueries;
 
 /**
  * Base class for all Active Records. This class defines an id {@link Column} which is mandatory for all database
@@ -51,11 +85,19 @@ public class BaseAR {
     /** The name of the ID column in all database tables. */
     protected static final String ID_COLUMN_NAME = "id";
 
+    /** The value of the id while the Active Record was not saved yet. */
+    public static final long UNSAVED_ID = Long.MIN_VALUE;
+
     @Column
-    private Long id;
+    private long id = UNSAVED_ID;
+
+    /** The field names of the lazy columns which were loaded or written, created on first use. */
+    private transient Set<String> loadedLazyColumns;
 
     /**
-     * Loads all records from the table which is associated with the passed Active Record class.
+     * Loads all records from the table which is associated with the passed Active Record class. The records of a
+     * sharded table are loaded in parallel from all shards. The result of a
+     * {@link com.github.kaiwinter.activerecord.annotation.Cacheable} Active Record is served from its cache.
      * 
      * @param clazz
      *            the Active Record class
@@ -64,26 +106,141 @@ public class BaseAR {
      *             when an SQL error or an internal error occurs, see the wrapped cause for details.
      */
     public static <T extends BaseAR> Collection<T> findAll(Class<T> clazz) throws ActiveRecordException {
-        String query = MetadataCache.getTableMetadata(clazz).selectAllQuery;
+        TableMetadata metadata = MetadataCache.getTableMetadata(clazz);
+        String query = metadata.selectAllQuery;
         LOGGER.debug(query);
-        Collection<T> records = new ArrayList<>();
-        try (PreparedStatement statement = INSTANCE.getConnection().prepareStatement(query);
-                ResultSet resultSet = statement.executeQuery()) {
+        return findAllCached(clazz, metadata, query, new Object[0], () -> {
+            try {
+                List<Collection<T>> recordsPerShard = INSTANCE.readFromAllShards(metadata, lease -> {
+                    try (PreparedStatement statement = lease.getConnection().prepareStatement(query);
+                            ResultSet resultSet = statement.executeQuery()) {
+                        return resultSet2ActiveRecords(clazz, resultSet);
+                    }
+                });
+                return merge(recordsPerShard);
+            } catch (SQLException e) {
+                throw new ActiveRecordException("Could not query record", e);
+            }
+        });
+    }
+
+    /**
+     * Loads one page of records, ordered by id, from the table which is associated with the passed Active Record
+     * class. The page is selected by the database (e.g. by LIMIT and OFFSET), only its records are transferred. For a
+     * sharded table the first <code>offset + limit</code> records of each shard are loaded and merged.
+     * 
+     * @param clazz
+     *            the Active Record class
+     * @param offset
+     *            the number of records to skip
+     * @param limit
+     *            the maximum number of records to load
+     * @return {@link Collection} of the records of the page
+     * @throws ActiveRecordException
+     *             when an SQL error or an internal error occurs, see the wrapped cause for details.
+     */
+    public static <T extends BaseAR> Collection<T> findAll(Class<T> clazz, long offset, int limit)
+            throws ActiveRecordException {
+        TableMetadata metadata = MetadataCache.getTableMetadata(clazz);
+        LOGGER.debug(metadata.selectPageQuery);
+        boolean sharded = INSTANCE.isSharded(metadata);
+        try {
+            List<Collection<T>> recordsPerShard = INSTANCE.readFromAllShards(metadata, lease -> {
+                try (PreparedStatement statement = lease.getConnection().prepareStatement(metadata.selectPageQuery)) {
+                    statement.setInt(1, sharded ? (int) Math.min(Integer.MAX_VALUE, offset + limit) : limit);
+                    statement.setLong(2, sharded ? 0 : offset);
+                    try (ResultSet resultSet = statement.executeQuery()) {
+                        return resultSet2ActiveRecords(clazz, resultSet);
+                    }
+                }
+            });
+            if (!sharded) {
+                return recordsPerShard.get(0);
+            }
+            return merge(recordsPerShard).stream() //
+                    .sorted(Comparator.comparingLong(BaseAR::getIdValue)) //
+                    .skip(offset) //
+                    .limit(limit) //
+                    .collect(Collectors.toList());
+        } catch (SQLException e) {
+            throw new ActiveRecordException("Could not query page of records", e);
+        }
+    }
+
+    /**
+     * Streams all records of the table which is associated with the passed Active Record class by a parallel scan. The
+     * id range of the table (of each shard for a sharded table) is split into <code>partitions</code> ranges, each is
+     * read by its own cursor on its own leased connection. The returned parallel {@link Stream} reads the partitions
+     * concurrently, use a <code>poolSize</code> greater than 1 to read them on different connections. Inside a
+     * transaction the partitions of a table which is not sharded are read one after the other by a sequential
+     * {@link Stream} on the connection of the transaction, which is leased exclusively. Close the {@link Stream} to
+     * release the cursors if it is not consumed completely:
+     * 
+     * <pre>
+     * try (Stream&lt;PersonAR&gt; persons = PersonAR.streamAll(PersonAR.class, 8)) {
+     *     persons.forEach(...);
+     * }
+     * </pre>
+     * 
+     * Errors while reading a partition are thrown as {@link UncheckedActiveRecordException}.
+     * 
+     * @param clazz
+     *            the Active Record class
+     * @param partitions
+     *            the number of partitions
+     * @return parallel {@link Stream} of all table records, sequential inside a transaction
+     * @throws ActiveRecordException
+     *             when the id range cannot be determined, see the wrapped cause for details.
+     */
+    public static <T extends BaseAR> Stream<T> streamAll(Class<T> clazz, int partitions)
+            throws ActiveRecordException {
+        TableMetadata metadata = MetadataCache.getTableMetadata(clazz);
+        LOGGER.debug(metadata.selectIdRangeQuery);
+        try {
+            List<long[]> idRangePerShard = INSTANCE.readFromAllShards(metadata, lease -> {
+                try (PreparedStatement statement = lease.getConnection().prepareStatement(metadata.selectIdRangeQuery);
+                        ResultSet resultSet = statement.executeQuery()) {
+                    resultSet.next();
+                    long minId = resultSet.getLong(1);
+                    if (resultSet.wasNull()) {
+                        return null;
+                    }
+                    return new long[] { minId, resultSet.getLong(2) };
+                }
+            });
 
-            while (resultSet.next()) {
-                T activeRecord = resultSet2ActiveRecord(clazz, resultSet);
-                activeRecord.setId(resultSet.getLong(ID_COLUMN_NAME));
-                records.add(activeRecord);
+            boolean sharded = INSTANCE.isSharded(metadata);
+            int partitionsPerShard = Math.max(1, (partitions + idRangePerShard.size() - 1) / idRangePerShard.size());
+            List<PartitionSpliterator.Partition> idRanges = new ArrayList<>();
+            for (int shard = 0; shard < idRangePerShard.size(); shard++) {
+                long[] idRange = idRangePerShard.get(shard);
+                if (idRange == null) {
+                    continue;
+                }
+                int shardIndex = shard;
+                SqlOperation<Lease> leaseSupplier = sharded ? () -> INSTANCE.leaseForShard(shardIndex)
+                        : INSTANCE::leaseForRead;
+                long width = idRange[1] - idRange[0] + 1;
+                long partitionWidth = Math.max(1, (width + partitionsPerShard - 1) / partitionsPerShard);
+                for (long fromId = idRange[0]; fromId <= idRange[1]; fromId += partitionWidth) {
+                    long toId = Math.min(idRange[1], fromId + partitionWidth - 1);
+                    idRanges.add(new PartitionSpliterator.Partition(leaseSupplier, fromId, toId));
+                }
             }
 
+            PartitionSpliterator<T> spliterator = new PartitionSpliterator<>(clazz, idRanges);
+            // the threads of a parallel stream are not part of the transaction of this thread
+            boolean parallel = sharded || !INSTANCE.isInTransaction();
+            return StreamSupport.stream(spliterator, parallel).onClose(spliterator::close);
         } catch (SQLException e) {
-            throw new ActiveRecordException("Could not query record", e);
+            throw new ActiveRecordException("Could not query id range", e);
         }
-        return records;
     }
 
     /**
-     * Loads the record from the table which is associated with the passed Active Record with the passed id.
+     * Loads the record from the table which is associated with the passed Active Record with the passed id. A
+     * {@link com.github.kaiwinter.activerecord.annotation.Cacheable} Active Record is served from its cache. A record
+     * which is not written yet by its {@link WriteBehindBuffer} is returned from the buffer.
      * 
      * @param clazz
      *            the Active Record class
@@ -95,25 +252,48 @@ public class BaseAR {
      */
     public static <T extends BaseAR> T findById(Class<T> clazz, long id) throws ActiveRecordException {
         TableMetadata metadata = MetadataCache.getTableMetadata(clazz);
+        if (metadata.writeBehind != null) {
+            BaseAR bufferedRecord = metadata.writeBehind.get(id);
+            if (bufferedRecord != null) {
+                return clazz.cast(bufferedRecord);
+            }
+        }
+        RecordCache cache = metadata.cache;
+        if (cache != null) {
+            BaseAR cachedRecord = cache.getRecord(id);
+            if (cachedRecord != null) {
+                return clazz.cast(cachedRecord);
+            }
+        }
+        long generation = cache == null ? 0 : cache.getGeneration();
         LOGGER.debug(metadata.selectQuery);
-        try (PreparedStatement statement = INSTANCE.getConnection().prepareStatement(metadata.selectQuery)) {
-            statement.setLong(1, id);
-            try (ResultSet resultSet = statement.executeQuery()) {
-                if (resultSet.next()) {
-                    T activeRecord = resultSet2ActiveRecord(clazz, resultSet);
-                    activeRecord.setId(id);
-                    return activeRecord;
+        try {
+            return INSTANCE.call(true, () -> {
+                try (Lease lease = INSTANCE.leaseForRead(metadata, id);
+                        PreparedStatement statement = lease.getConnection().prepareStatement(metadata.selectQuery)) {
+                    statement.setLong(1, id);
+                    try (ResultSet resultSet = statement.executeQuery()) {
+                        if (resultSet.next()) {
+                            T activeRecord = resultSet2ActiveRecord(clazz, resultSet);
+                            activeRecord.setId(id);
+                            return cache == null ? activeRecord : cache.putRecord(generation, activeRecord);
+                        }
+                    }
                 }
-            }
-
+                return null;
+            });
         } catch (SQLException e) {
             throw new ActiveRecordException("Could not query all records", e);
         }
-        return null;
     }
 
     /**
-     * Loads all records from the table with the given <code>value</code> in the given column.
+     * Loads all records from the table with the given <code>value</code> in the given column. The records of a sharded
+     * table are loaded in parallel from all shards. The result of a
+     * {@link com.github.kaiwinter.activerecord.annotation.Cacheable} Active Record is cached by the column and the
+     * <code>value</code>. A warning is logged once per column if the column is not the first
+     * column of an index declared by {@link com.github.kaiwinter.activerecord.annotation.Indexed} or
+     * {@link com.github.kaiwinter.activerecord.annotation.Index}.
      * 
      * @param clazz
      *            the Active Record class
@@ -130,198 +310,1670 @@ public class BaseAR {
         TableMetadata metadata = MetadataCache.getTableMetadata(clazz);
         String query = metadata.selectAllQuery + " WHERE " + columnName + "=?";
         LOGGER.debug(query);
-        Collection<T> records = new ArrayList<>();
-        try (PreparedStatement statement = INSTANCE.getConnection().prepareStatement(query)) {
-            statement.setObject(1, value);
-            try (ResultSet resultSet = statement.executeQuery()) {
-                while (resultSet.next()) {
-                    T activeRecord = resultSet2ActiveRecord(clazz, resultSet);
-                    activeRecord.setId(resultSet.getLong(ID_COLUMN_NAME));
-                    records.add(activeRecord);
-                }
+        if (!metadata.isIndexed(columnName) && metadata.reportedUnindexedColumns.add(columnName)) {
+            LOGGER.warn("Query on column '{}' of table '{}' which has no index, declare one by @Indexed or @Index",
+                    columnName, metadata.tableName);
+        }
+        return findAllCached(clazz, metadata, query, new Object[] { value }, () -> {
+            try {
+                List<Collection<T>> recordsPerShard = INSTANCE.readFromAllShards(metadata, lease -> {
+                    try (PreparedStatement statement = lease.getConnection().prepareStatement(query)) {
+                        statement.setObject(1, value);
+                        try (ResultSet resultSet = statement.executeQuery()) {
+                            return resultSet2ActiveRecords(clazz, resultSet);
+                        }
+                    }
+                });
+                return merge(recordsPerShard);
+            } catch (SQLException e) {
+                throw new ActiveRecordException("Could not query all records by field", e);
             }
+        });
+    }
 
+    /**
+     * Loads Active Records by a custom SQL query. The columns of the result are mapped to the {@link Column}s of the
+     * Active Record by their names (or labels, e.g. <code>SELECT full_name AS name</code>), columns without a match
+     * are ignored. The mapping is built once per query and cached. Select the id to get records which can be saved.
+     * For a sharded table the query runs on all shards in parallel. The records are not cached.
+     * 
+     * <pre>
+     * List&lt;PersonAR&gt; persons = PersonAR.findBySql(PersonAR.class,
+     *         "SELECT id, name, surname FROM person WHERE name LIKE ? ORDER BY surname", "A%");
+     * </pre>
+     * 
+     * @param clazz
+     *            the Active Record class
+     * @param sql
+     *            the SQL query
+     * @param parameters
+     *            the parameters of the query
+     * @return the loaded Active Records in the order of the result, the results of the shards one after the other
+     * @throws ActiveRecordException
+     *             when an SQL error or an internal error occurs, see the wrapped cause for details.
+     */
+    public static <T extends BaseAR> List<T> findBySql(Class<T> clazz, String sql, Object... parameters)
+            throws ActiveRecordException {
+        TableMetadata metadata = MetadataCache.getTableMetadata(clazz);
+        LOGGER.debug(sql);
+        try {
+            List<List<T>> recordsPerShard = INSTANCE.readFromAllShards(metadata, lease -> {
+                try (PreparedStatement statement = lease.getConnection().prepareStatement(sql)) {
+                    for (int i = 0; i < parameters.length; i++) {
+                        statement.setObject(i + 1, parameters[i]);
+                    }
+                    try (ResultSet resultSet = statement.executeQuery()) {
+                        ResultSetMapping mapping = ResultSetMapping.get(clazz, sql, resultSet);
+                        List<T> records = new ArrayList<>();
+                        while (resultSet.next()) {
+                            records.add(mapping.read(clazz, resultSet));
+                        }
+                        return records;
+                    }
+                }
+            });
+            if (recordsPerShard.size() == 1) {
+                return recordsPerShard.get(0);
+            }
+            List<T> records = new ArrayList<>();
+            for (List<T> shardRecords : recordsPerShard) {
+                records.addAll(shardRecords);
+            }
+            return records;
         } catch (SQLException e) {
-            throw new ActiveRecordException("Could not query all records by field", e);
+            throw new ActiveRecordException("Could not query records by SQL", e);
         }
-        return records;
     }
 
-    protected static <T extends BaseAR> T resultSet2ActiveRecord(Class<T> clazz, ResultSet resultSet)
-            throws SQLException, ActiveRecordException {
-        try {
-            T activeRecord = clazz.newInstance();
-            TableMetadata tableMetadata = MetadataCache.getTableMetadata(clazz);
-            // Iterate Column-annotated fields and set values
-            for (ColumnWithAlias field : tableMetadata.columnAnnotatedFields) {
-                Field fieldInArInstance = activeRecord.getClass()
-                        .getDeclaredField(field.columnAnnotatedField.getName());
-                fieldInArInstance.setAccessible(true);
+    /**
+     * Loads Active Records by a {@link com.github.kaiwinter.activerecord.annotation.NamedQuery} of the Active Record
+     * class. The records are mapped like by {@link #findBySql(Class, String, Object...)}.
+     * 
+     * <pre>
+     * List&lt;PersonAR&gt; persons = PersonAR.findByNamedQuery(PersonAR.class, "bySurname",
+     *         Collections.singletonMap("surname", "Smith"));
+     * </pre>
+     * 
+     * @param clazz
+     *            the Active Record class
+     * @param name
+     *            the name of the query
+     * @param parameters
+     *            the values of the named parameters of the query
+     * @return the loaded Active Records
+     * @throws ActiveRecordException
+     *             when an SQL error or an internal error occurs, see the wrapped cause for details.
+     * @throws IllegalArgumentException
+     *             if there is no query with this name or a parameter is missing
+     */
+    public static <T extends BaseAR> List<T> findByNamedQuery(Class<T> clazz, String name, Map<String, ?> parameters)
+            throws ActiveRecordException {
+        NamedQueryDefinition namedQuery = getNamedQuery(clazz, name);
+        return findBySql(clazz, namedQuery.sql, namedQuery.bind(parameters));
+    }
 
-                // Not supported by sqlite-jdbc-3.8.11
-                // Object object = resultSet.getObject(field.columnName, fieldInArInstance.getType());
-                Object object = resultSet.getObject(field.columnName);
+    /**
+     * Streams Active Records of a {@link com.github.kaiwinter.activerecord.annotation.NamedQuery} of the Active Record
+     * class, like {@link #streamBySql(Class, String, Object...)}.
+     * 
+     * @param clazz
+     *            the Active Record class
+     * @param name
+     *            the name of the query
+     * @param parameters
+     *            the values of the named parameters of the query
+     * @return sequential {@link Stream} of the records
+     * @throws IllegalArgumentException
+     *             if there is no query with this name or a parameter is missing
+     */
+    public static <T extends BaseAR> Stream<T> streamByNamedQuery(Class<T> clazz, String name,
+            Map<String, ?> parameters) {
+        NamedQueryDefinition namedQuery = getNamedQuery(clazz, name);
+        return streamBySql(clazz, namedQuery.sql, namedQuery.bind(parameters));
+    }
 
-                boolean assignableFrom = fieldInArInstance.getType().isAssignableFrom(object.getClass());
-                if (!assignableFrom) {
-                    object = TypeConverter.convertToType(object, fieldInArInstance.getType());
-                }
-                fieldInArInstance.set(activeRecord, object);
-            }
-            return activeRecord;
-        } catch (InstantiationException e) {
-            String message = "Cannot instantiate '" + clazz.getName() + "', is there a default constructor?";
-            throw new ActiveRecordException(message, e);
-        } catch (IllegalAccessException | NoSuchFieldException | SecurityException | IllegalArgumentException e) {
-            throw new ActiveRecordException(e.getMessage(), e);
+    private static NamedQueryDefinition getNamedQuery(Class<? extends BaseAR> clazz, String name) {
+        NamedQueryDefinition namedQuery = MetadataCache.getTableMetadata(clazz).namedQueries.get(name);
+        if (namedQuery == null) {
+            throw new IllegalArgumentException("Active Record '" + clazz.getName() + "' has no named query '" + name
+                    + "'");
         }
+        return namedQuery;
     }
 
     /**
-     * Saves a new or updated Active Record.
+     * Streams Active Records of a custom SQL query, mapped like by {@link #findBySql(Class, String, Object...)}. The
+     * records are read by a cursor while the {@link Stream} is consumed, for a sharded table from one shard after the
+     * other. Close the {@link Stream} to release the cursor if it is not consumed completely. Errors while reading are
+     * thrown as {@link UncheckedActiveRecordException}.
      * 
-     * @throws ActiveRecordException
-     *             when an insert or update fails, see the wrapped cause for details
+     * @param clazz
+     *            the Active Record class
+     * @param sql
+     *            the SQL query
+     * @param parameters
+     *            the parameters of the query
+     * @return sequential {@link Stream} of the records
      */
-    public void save() throws ActiveRecordException {
-        try {
-            if (id == null) {
-                insert();
-            } else {
-                update();
+    public static <T extends BaseAR> Stream<T> streamBySql(Class<T> clazz, String sql, Object... parameters) {
+        TableMetadata metadata = MetadataCache.getTableMetadata(clazz);
+        List<SqlOperation<Lease>> leaseSuppliers = new ArrayList<>();
+        if (INSTANCE.isSharded(metadata)) {
+            for (int shard = 0; shard < INSTANCE.getShardCount(); shard++) {
+                int shardIndex = shard;
+                leaseSuppliers.add(() -> INSTANCE.leaseForShard(shardIndex));
             }
-        } catch (SQLException e) {
-            throw new ActiveRecordException("Could not save Active Record", e);
+        } else {
+            leaseSuppliers.add(INSTANCE::leaseForRead);
         }
+        SqlSpliterator<T> spliterator = new SqlSpliterator<>(clazz, sql, parameters, leaseSuppliers);
+        return StreamSupport.stream(spliterator, false).onClose(spliterator::close);
     }
 
-    private void insert() throws ActiveRecordException, SQLException {
-        Table declaredAnnotation = MetadataCache.getTableMetadata(getClass()).tableAnnotation;
-        SequenceGenerator sequenceGenerator = declaredAnnotation.sequenceGenerator();
-        switch (sequenceGenerator) {
-            case DATABASE :
-                insertWithDatabaseSequence();
-                break;
-            case INTERNAL :
-                insertWithInternalSequence();
-                break;
-            default :
-                throw new IllegalArgumentException("Unknown sequence generator: " + sequenceGenerator);
-        }
+    /**
+     * Counts the records of the table which is associated with the passed Active Record class, without loading them.
+     * The rows of a sharded table are counted on all shards.
+     * 
+     * @param clazz
+     *            the Active Record class
+     * @return the number of records
+     * @throws ActiveRecordException
+     *             when an SQL error or an internal error occurs, see the wrapped cause for details.
+     */
+    public static long count(Class<? extends BaseAR> clazz) throws ActiveRecordException {
+        TableMetadata metadata = MetadataCache.getTableMetadata(clazz);
+        return countRows(metadata, metadata.countQuery, null, false);
     }
 
     /**
-     * Inserts the AR to the database. Doesn't write the ID column, relies on the database to set an appropriate value.
-     * The driver have to return the generated ID which gets set in the AR.
+     * Counts the records with the given <code>value</code> in the given column, without loading them. A
+     * <code>null</code> value counts the records where the column is NULL.
+     * 
+     * @param clazz
+     *            the Active Record class
+     * @param columnName
+     *            the name of a column of the Active Record
+     * @param value
+     *            the value to query the column
+     * @return the number of matching records
+     * @throws ActiveRecordException
+     *             when an SQL error or an internal error occurs, see the wrapped cause for details.
+     * @throws IllegalArgumentException
+     *             if the Active Record has no such column
      */
-    private void insertWithDatabaseSequence() throws ActiveRecordException, SQLException {
-        TableMetadata metadata = MetadataCache.getTableMetadata(getClass());
-        LOGGER.debug(metadata.insertQueryDatabaseSequence);
-        try (PreparedStatement statement = INSTANCE.getConnection()
-                .prepareStatement(metadata.insertQueryDatabaseSequence, Statement.RETURN_GENERATED_KEYS)) {
-            setParameterInStatement(statement);
+    public static long countByColumn(Class<? extends BaseAR> clazz, String columnName, Object value)
+            throws ActiveRecordException {
+        TableMetadata metadata = MetadataCache.getTableMetadata(clazz);
+        String column = metadata.getDeclaredColumnName(columnName);
+        String query = metadata.countQuery + " WHERE " + column + (value == null ? " IS NULL" : "=?");
+        return countRows(metadata, query, value, value != null);
+    }
 
-            int affectedRows = statement.executeUpdate();
-            if (affectedRows == 0) {
-                throw new SQLException("Insert failed, could not acquire sequence number");
-            } else {
-                try (ResultSet generatedKeys = statement.getGeneratedKeys()) {
-                    if (generatedKeys.next()) {
-                        // Set generated ID in AR
-                        id = generatedKeys.getLong(1);
+    private static long countRows(TableMetadata metadata, String query, Object value, boolean hasParameter)
+            throws ActiveRecordException {
+        LOGGER.debug(query);
+        try {
+            List<Long> countPerShard = INSTANCE.readFromAllShards(metadata, lease -> {
+                try (PreparedStatement statement = lease.getConnection().prepareStatement(query)) {
+                    if (hasParameter) {
+                        statement.setObject(1, value);
+                    }
+                    try (ResultSet resultSet = statement.executeQuery()) {
+                        resultSet.next();
+                        return resultSet.getLong(1);
                     }
                 }
+            });
+            long count = 0;
+            for (long shardCount : countPerShard) {
+                count += shardCount;
             }
-
+            return count;
+        } catch (SQLException e) {
+            throw new ActiveRecordException("Could not count records", e);
         }
     }
 
     /**
-     * Inserts the AR to the database. Uses the {@link InternalSequenceGenerator} to fill the ID column.
+     * Checks if a record with the passed id exists, without loading it. A record in the write-behind buffer or in the
+     * cache of a {@link com.github.kaiwinter.activerecord.annotation.Cacheable} Active Record exists without a query.
+     * 
+     * @param clazz
+     *            the Active Record class
+     * @param id
+     *            the id of the record
+     * @return <code>true</code> if the record exists
+     * @throws ActiveRecordException
+     *             when an SQL error or an internal error occurs, see the wrapped cause for details.
      */
-    private void insertWithInternalSequence() throws ActiveRecordException, SQLException {
-        TableMetadata metadata = MetadataCache.getTableMetadata(getClass());
-        LOGGER.debug(metadata.insertQueryInternalSequence);
-        try (PreparedStatement statement = INSTANCE.getConnection()
-                .prepareStatement(metadata.insertQueryInternalSequence)) {
-            id = INSTANCE.getNextSequenceNumber(getClass());
-            statement.setLong(metadata.columnAnnotatedFields.length + 1, id);
-            setParameterInStatement(statement);
-
-            statement.execute();
+    public static boolean exists(Class<? extends BaseAR> clazz, long id) throws ActiveRecordException {
+        TableMetadata metadata = MetadataCache.getTableMetadata(clazz);
+        if (metadata.writeBehind != null && metadata.writeBehind.contains(id)) {
+            return true;
+        }
+        if (metadata.cache != null && metadata.cache.getRecord(id) != null) {
+            return true;
+        }
+        LOGGER.debug(metadata.existsQuery);
+        try {
+            return INSTANCE.call(true, () -> {
+                try (Lease lease = INSTANCE.leaseForRead(metadata, id);
+                        PreparedStatement statement = lease.getConnection().prepareStatement(metadata.existsQuery)) {
+                    statement.setLong(1, id);
+                    try (ResultSet resultSet = statement.executeQuery()) {
+                        return resultSet.next();
+                    }
+                }
+            });
+        } catch (SQLException e) {
+            throw new ActiveRecordException("Could not check record", e);
         }
     }
 
-    private void update() throws ActiveRecordException, SQLException {
-        TableMetadata metadata = MetadataCache.getTableMetadata(getClass());
-        LOGGER.debug(metadata.updateQuery);
-        try (PreparedStatement statement = INSTANCE.getConnection().prepareStatement(metadata.updateQuery)) {
-            statement.setLong(metadata.columnAnnotatedFields.length + 1, id);
-            setParameterInStatement(statement);
+    /**
+     * Returns the minimum of a numeric column of all records, computed by the database. A <code>double</code> is exact
+     * up to 2<sup>53</sup>, use {@link #minLong(Class, String)} for large integral values.
+     * 
+     * @param clazz
+     *            the Active Record class
+     * @param columnName
+     *            the name of a column of the Active Record
+     * @return the minimum or {@link Double#NaN} if there are no values
+     * @throws ActiveRecordException
+     *             when an SQL error or an internal error occurs, see the wrapped cause for details.
+     * @throws IllegalArgumentException
+     *             if the Active Record has no such column
+     */
+    public static double min(Class<? extends BaseAR> clazz, String columnName) throws ActiveRecordException {
+        return aggregate(clazz, "MIN", columnName, Math::min);
+    }
 
-            int count = statement.executeUpdate();
-            LOGGER.debug("Updated {} entries", count);
-        }
+    /**
+     * Returns the maximum of a numeric column of all records, computed by the database. A <code>double</code> is exact
+     * up to 2<sup>53</sup>, use {@link #maxLong(Class, String)} for large integral values.
+     * 
+     * @param clazz
+     *            the Active Record class
+     * @param columnName
+     *            the name of a column of the Active Record
+     * @return the maximum or {@link Double#NaN} if there are no values
+     * @throws ActiveRecordException
+     *             when an SQL error or an internal error occurs, see the wrapped cause for details.
+     * @throws IllegalArgumentException
+     *             if the Active Record has no such column
+     */
+    public static double max(Class<? extends BaseAR> clazz, String columnName) throws ActiveRecordException {
+        return aggregate(clazz, "MAX", columnName, Math::max);
     }
 
     /**
-     * Sets the values of this Active Record in the passed statement. The values are set in a specific order, here the
-     * same order is used as for building the statement with the column names.
+     * Returns the sum of a numeric column of all records, computed by the database. A <code>double</code> is exact up
+     * to 2<sup>53</sup>, use {@link #sumLong(Class, String)} for large integral values.
      * 
-     * @param statement
-     *            the {@link PreparedStatement} to set values on
+     * @param clazz
+     *            the Active Record class
+     * @param columnName
+     *            the name of a column of the Active Record
+     * @return the sum, 0 if there are no values
      * @throws ActiveRecordException
-     *             if an error occurs while reflectively reading data from the AR or setting the value on the statement
-     *             fails
+     *             when an SQL error or an internal error occurs, see the wrapped cause for details.
+     * @throws IllegalArgumentException
+     *             if the Active Record has no such column
      */
-    private void setParameterInStatement(PreparedStatement statement) throws ActiveRecordException {
-        TableMetadata tableMetadata = MetadataCache.getTableMetadata(getClass());
-        int count = 1;
-        for (ColumnWithAlias field : tableMetadata.columnAnnotatedFields) {
-            // mark as accessible for read
-            field.columnAnnotatedField.setAccessible(true);
+    public static double sum(Class<? extends BaseAR> clazz, String columnName) throws ActiveRecordException {
+        double sum = aggregate(clazz, "SUM", columnName, Double::sum);
+        return Double.isNaN(sum) ? 0 : sum;
+    }
 
-            // Trust in built-in type conversion
-            try {
-                statement.setObject(count++, field.columnAnnotatedField.get(this));
-            } catch (IllegalArgumentException | IllegalAccessException | SQLException e) {
-                throw new ActiveRecordException("Could not set parameter in statement", e);
-            }
-        }
+    /**
+     * Returns the minimum of an integral column of all records, computed by the database. Unlike
+     * {@link #min(Class, String)} the value is exact for the whole range of <code>long</code>.
+     * 
+     * @param clazz
+     *            the Active Record class
+     * @param columnName
+     *            the name of a column of the Active Record
+     * @return the minimum or <code>null</code> if there are no values
+     * @throws ActiveRecordException
+     *             when an SQL error or an internal error occurs, see the wrapped cause for details.
+     * @throws IllegalArgumentException
+     *             if the Active Record has no such column
+     */
+    public static Long minLong(Class<? extends BaseAR> clazz, String columnName) throws ActiveRecordException {
+        return aggregateLong(clazz, "MIN", columnName, Math::min);
     }
 
     /**
-     * Deletes this record from the database.
+     * Returns the maximum of an integral column of all records, computed by the database. Unlike
+     * {@link #max(Class, String)} the value is exact for the whole range of <code>long</code>.
      * 
+     * @param clazz
+     *            the Active Record class
+     * @param columnName
+     *            the name of a column of the Active Record
+     * @return the maximum or <code>null</code> if there are no values
      * @throws ActiveRecordException
-     *             when a delete fails, see the wrapped cause for details
+     *             when an SQL error or an internal error occurs, see the wrapped cause for details.
+     * @throws IllegalArgumentException
+     *             if the Active Record has no such column
      */
-    public void delete() throws ActiveRecordException {
-        TableMetadata metadata = MetadataCache.getTableMetadata(getClass());
-        LOGGER.debug(metadata.deleteQuery);
-        try (PreparedStatement statement = INSTANCE.getConnection().prepareStatement(metadata.deleteQuery)) {
-            statement.setLong(1, id);
-            int count = statement.executeUpdate();
-            LOGGER.debug("Deleted {} entries", count);
-        } catch (SQLException e) {
-            throw new ActiveRecordException("Could not delete Active Record", e);
-        }
+    public static Long maxLong(Class<? extends BaseAR> clazz, String columnName) throws ActiveRecordException {
+        return aggregateLong(clazz, "MAX", columnName, Math::max);
     }
 
     /**
-     * This method should be called by the framework only.
+     * Returns the sum of an integral column of all records, computed by the database. Unlike
+     * {@link #sum(Class, String)} the value is exact for the whole range of <code>long</code>.
      * 
-     * @param id
-     *            the id to set
+     * @param clazz
+     *            the Active Record class
+     * @param columnName
+     *            the name of a column of the Active Record
+     * @return the sum, 0 if there are no values
+     * @throws ActiveRecordException
+     *             when an SQL error or an internal error occurs, see the wrapped cause for details.
+     * @throws IllegalArgumentException
+     *             if the Active Record has no such column
+     * @throws ArithmeticException
+     *             if the sums of the shards of a sharded table overflow a <code>long</code>
      */
-    void setId(Long id) {
-        this.id = id;
+    public static long sumLong(Class<? extends BaseAR> clazz, String columnName) throws ActiveRecordException {
+        Long sum = aggregateLong(clazz, "SUM", columnName, Math::addExact);
+        return sum == null ? 0 : sum;
     }
 
     /**
-     * @return the id
+     * Returns the average of a numeric column of all records, computed by the database. NULL values are ignored. For
+     * a sharded table the sums and counts of all shards are combined.
+     * 
+     * @param clazz
+     *            the Active Record class
+     * @param columnName
+     *            the name of a column of the Active Record
+     * @return the average or {@link Double#NaN} if there are no values
+     * @throws ActiveRecordException
+     *             when an SQL error or an internal error occurs, see the wrapped cause for details.
+     * @throws IllegalArgumentException
+     *             if the Active Record has no such column
      */
-    public Long getId() {
-        return id;
+    public static double avg(Class<? extends BaseAR> clazz, String columnName) throws ActiveRecordException {
+        TableMetadata metadata = MetadataCache.getTableMetadata(clazz);
+        String column = metadata.getDeclaredColumnName(columnName);
+        String query = "SELECT SUM(" + column + "), COUNT(" + column + ") FROM " + metadata.tableName;
+        LOGGER.debug(query);
+        try {
+            List<double[]> sumAndCountPerShard = INSTANCE.readFromAllShards(metadata, lease -> {
+                try (PreparedStatement statement = lease.getConnection().prepareStatement(query);
+                        ResultSet resultSet = statement.executeQuery()) {
+                    resultSet.next();
+                    return new double[] { resultSet.getDouble(1), resultSet.getLong(2) };
+                }
+            });
+            double sum = 0;
+            long count = 0;
+            for (double[] sumAndCount : sumAndCountPerShard) {
+                sum += sumAndCount[0];
+                count += (long) sumAndCount[1];
+            }
+            return count == 0 ? Double.NaN : sum / count;
+        } catch (SQLException e) {
+            throw new ActiveRecordException("Could not aggregate column " + column, e);
+        }
+    }
+
+    /**
+     * Runs an aggregate <code>function</code> on a column, the results of the shards of a sharded table are combined
+     * by <code>merge</code>.
+     * 
+     * @return the result, {@link Double#NaN} if it is NULL
+     */
+    private static double aggregate(Class<? extends BaseAR> clazz, String function, String columnName,
+            DoubleBinaryOperator merge) throws ActiveRecordException {
+        TableMetadata metadata = MetadataCache.getTableMetadata(clazz);
+        String column = metadata.getDeclaredColumnName(columnName);
+        String query = "SELECT " + function + "(" + column + ") FROM " + metadata.tableName;
+        LOGGER.debug(query);
+        try {
+            List<Double> resultPerShard = INSTANCE.readFromAllShards(metadata, lease -> {
+                try (PreparedStatement statement = lease.getConnection().prepareStatement(query);
+                        ResultSet resultSet = statement.executeQuery()) {
+                    resultSet.next();
+                    double result = resultSet.getDouble(1);
+                    return resultSet.wasNull() ? Double.NaN : result;
+                }
+            });
+            double result = Double.NaN;
+            for (double shardResult : resultPerShard) {
+                if (Double.isNaN(result)) {
+                    result = shardResult;
+                } else if (!Double.isNaN(shardResult)) {
+                    result = merge.applyAsDouble(result, shardResult);
+                }
+            }
+            return result;
+        } catch (SQLException e) {
+            throw new ActiveRecordException("Could not aggregate column " + column, e);
+        }
+    }
+
+    /**
+     * Runs an aggregate <code>function</code> on an integral column, the results of the shards of a sharded table are
+     * combined by <code>merge</code>.
+     * 
+     * @return the result, <code>null</code> if it is NULL
+     */
+    private static Long aggregateLong(Class<? extends BaseAR> clazz, String function, String columnName,
+            LongBinaryOperator merge) throws ActiveRecordException {
+        TableMetadata metadata = MetadataCache.getTableMetadata(clazz);
+        String column = metadata.getDeclaredColumnName(columnName);
+        String query = "SELECT " + function + "(" + column + ") FROM " + metadata.tableName;
+        LOGGER.debug(query);
+        try {
+            List<Long> resultPerShard = INSTANCE.readFromAllShards(metadata, lease -> {
+                try (PreparedStatement statement = lease.getConnection().prepareStatement(query);
+                        ResultSet resultSet = statement.executeQuery()) {
+                    resultSet.next();
+                    long result = resultSet.getLong(1);
+                    return resultSet.wasNull() ? null : result;
+                }
+            });
+            Long result = null;
+            for (Long shardResult : resultPerShard) {
+                if (result == null) {
+                    result = shardResult;
+                } else if (shardResult != null) {
+                    result = merge.applyAsLong(result, shardResult);
+                }
+            }
+            return result;
+        } catch (SQLException e) {
+            throw new ActiveRecordException("Could not aggregate column " + column, e);
+        }
+    }
+
+    /**
+     * Loads the records of a query by the <code>loader</code>. If the Active Record is
+     * {@link com.github.kaiwinter.activerecord.annotation.Cacheable} the ids of the result are cached by the query
+     * and its <code>parameters</code>. A cached result is returned with the cached records if all of them are still
+     * cached.
+     */
+    private static <T extends BaseAR> Collection<T> findAllCached(Class<T> clazz, TableMetadata metadata, String query,
+            Object[] parameters, RecordLoader<Collection<T>> loader) throws ActiveRecordException {
+        RecordCache cache = metadata.cache;
+        if (cache == null) {
+            return loader.load();
+        }
+        long[] cachedIds = cache.getQueryResult(query, parameters);
+        if (cachedIds != null) {
+            List<T> records = new ArrayList<>(cachedIds.length);
+            for (long id : cachedIds) {
+                BaseAR activeRecord = cache.getRecord(id);
+                if (activeRecord == null) {
+                    break;
+                }
+                records.add(clazz.cast(activeRecord));
+            }
+            if (records.size() == cachedIds.length) {
+                return records;
+            }
+        }
+
+        long generation = cache.getGeneration();
+        Collection<T> loadedRecords = loader.load();
+        List<T> records = new ArrayList<>(loadedRecords.size());
+        long[] ids = new long[loadedRecords.size()];
+        for (T activeRecord : loadedRecords) {
+            ids[records.size()] = activeRecord.getIdValue();
+            records.add(cache.putRecord(generation, activeRecord));
+        }
+        cache.putQueryResult(generation, query, parameters, ids);
+        return records;
+    }
+
+    /**
+     * Loads records from the database.
+     */
+    @FunctionalInterface
+    private interface RecordLoader<R> {
+        R load() throws ActiveRecordException;
+    }
+
+    /**
+     * Creates Active Records from all rows of a <code>resultSet</code> of {@link TableMetadata#selectAllQuery}, which
+     * contains the id after the {@link Column}s.
+     */
+    private static <T extends BaseAR> Collection<T> resultSet2ActiveRecords(Class<T> clazz, ResultSet resultSet)
+            throws SQLException, ActiveRecordException {
+        Collection<T> records = new ArrayList<>();
+        int idIndex = MetadataCache.getTableMetadata(clazz).columnAnnotatedFields.length + 1;
+        while (resultSet.next()) {
+            T activeRecord = resultSet2ActiveRecord(clazz, resultSet);
+            activeRecord.setId(readId(resultSet, idIndex));
+            records.add(activeRecord);
+        }
+        return records;
+    }
+
+    /**
+     * Merges the records loaded from several shards.
+     */
+    private static <T extends BaseAR> Collection<T> merge(List<Collection<T>> recordsPerShard) {
+        if (recordsPerShard.size() == 1) {
+            return recordsPerShard.get(0);
+        }
+        Collection<T> records = new ArrayList<>();
+        for (Collection<T> shardRecords : recordsPerShard) {
+            records.addAll(shardRecords);
+        }
+        return records;
+    }
+
+    /**
+     * Creates a new Active Record from the current row of the <code>resultSet</code>. The {@link Column}s are read by
+     * index in the order of {@link TableMetadata#columnAnnotatedFields}, starting at 1, which is the order used by the
+     * queries of the {@link TableMetadata}.
+     * 
+     * @param clazz
+     *            the Active Record class
+     * @param resultSet
+     *            the {@link ResultSet} positioned on the row to read
+     * @return the new Active Record, without id
+     */
+    protected static <T extends BaseAR> T resultSet2ActiveRecord(Class<T> clazz, ResultSet resultSet)
+            throws SQLException, ActiveRecordException {
+        try {
+            TableMetadata tableMetadata = MetadataCache.getTableMetadata(clazz);
+            T activeRecord = clazz.cast(tableMetadata.constructor.newInstance());
+            // Iterate Column-annotated fields and set values with the typed getters
+            ColumnWithAlias.readRow(resultSet, tableMetadata.columnAnnotatedFields, 1, activeRecord);
+            return activeRecord;
+        } catch (InstantiationException | InvocationTargetException e) {
+            String message = "Cannot instantiate '" + clazz.getName() + "', is there a default constructor?";
+            throw new ActiveRecordException(message, e);
+        } catch (IllegalAccessException | SecurityException | IllegalArgumentException e) {
+            throw new ActiveRecordException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Saves a new or updated Active Record. A {@link com.github.kaiwinter.activerecord.annotation.WriteBehind} Active
+     * Record is only put in its {@link WriteBehindBuffer}, unless it is saved inside a transaction or is new and uses
+     * {@link SequenceGenerator#DATABASE}, then it is written immediately.
+     * 
+     * @throws OptimisticLockException
+     *             when the Active Record has a {@link Version} column and its row was changed or deleted since it was
+     *             read
+     * @throws ActiveRecordException
+     *             when an insert or update fails, see the wrapped cause for details
+     */
+    public void save() throws ActiveRecordException {
+        WriteBehindBuffer writeBehind = MetadataCache.getTableMetadata(getClass()).writeBehind;
+        if (writeBehind != null) {
+            if (!INSTANCE.isInTransaction() && (!isNew() || !usesDatabaseSequence())) {
+                if (isNew()) {
+                    try {
+                        id = INSTANCE.getNextSequenceNumber(getClass());
+                    } catch (SQLException e) {
+                        throw new ActiveRecordException("Could not acquire sequence number", e);
+                    }
+                }
+                writeBehind.put(this);
+                return;
+            }
+            writeBehind.remove(id);
+        }
+        try {
+            // acquired once, so a repeated insert doesn't write a second row
+            long internalId = isNew() && !usesDatabaseSequence() ? INSTANCE.getNextSequenceNumber(getClass()) : 0;
+            TableMetadata metadata = MetadataCache.getTableMetadata(getClass());
+            WriteQueries queries = getWriteQueries(metadata);
+            INSTANCE.call(metadata.retryWrites, () -> {
+                if (isNew()) {
+                    insert(queries, internalId);
+                } else {
+                    update(queries);
+                }
+                return null;
+            });
+            markLazyWritten(queries);
+        } catch (SQLException e) {
+            throw new ActiveRecordException("Could not save Active Record", e);
+        } finally {
+            INSTANCE.publishChange(MetadataCache.getTableMetadata(getClass()).tableName, id);
+        }
+    }
+
+    private boolean usesDatabaseSequence() {
+        return MetadataCache.getTableMetadata(getClass()).tableAnnotation
+                .sequenceGenerator() == SequenceGenerator.DATABASE;
+    }
+
+    private void insert(WriteQueries queries, long internalId) throws ActiveRecordException, SQLException {
+        Table declaredAnnotation = MetadataCache.getTableMetadata(getClass()).tableAnnotation;
+        SequenceGenerator sequenceGenerator = declaredAnnotation.sequenceGenerator();
+        switch (sequenceGenerator) {
+            case DATABASE :
+                insertWithDatabaseSequence(queries);
+                break;
+            case INTERNAL :
+                insertWithInternalSequence(queries, internalId);
+                break;
+            default :
+                throw new IllegalArgumentException("Unknown sequence generator: " + sequenceGenerator);
+        }
+    }
+
+    /**
+     * Inserts the AR to the database. Doesn't write the ID column, relies on the database to set an appropriate value.
+     * The generated ID is read by RETURNING if the dialect supports it, otherwise the driver have to return the
+     * generated ID. It gets set in the AR.
+     */
+    private void insertWithDatabaseSequence(WriteQueries queries) throws ActiveRecordException, SQLException {
+        if (queries.insertQueryReturningId != null) {
+            insertWithReturning(queries);
+            return;
+        }
+        LOGGER.debug(queries.insertQueryDatabaseSequence);
+        try (Lease lease = INSTANCE.leaseForWrite();
+                PreparedStatement statement = lease.getConnection()
+                        .prepareStatement(queries.insertQueryDatabaseSequence, Statement.RETURN_GENERATED_KEYS)) {
+            setParameterInStatement(statement, queries.columns);
+
+            int affectedRows = statement.executeUpdate();
+            if (affectedRows == 0) {
+                throw new SQLException("Insert failed, could not acquire sequence number");
+            } else {
+                try (ResultSet generatedKeys = statement.getGeneratedKeys()) {
+                    if (generatedKeys.next()) {
+                        // Set generated ID in AR
+                        id = generatedKeys.getLong(1);
+                    }
+                }
+            }
+
+        }
+    }
+
+    /**
+     * Inserts the AR to the database by the INSERT ... RETURNING statement of the dialect, the generated ID is returned
+     * as result set of the statement.
+     */
+    private void insertWithReturning(WriteQueries queries) throws ActiveRecordException, SQLException {
+        LOGGER.debug(queries.insertQueryReturningId);
+        try (Lease lease = INSTANCE.leaseForWrite();
+                PreparedStatement statement = lease.getConnection().prepareStatement(queries.insertQueryReturningId)) {
+            setParameterInStatement(statement, queries.columns);
+
+            try (ResultSet resultSet = statement.executeQuery()) {
+                if (!resultSet.next()) {
+                    throw new SQLException("Insert failed, could not acquire sequence number");
+                }
+                id = resultSet.getLong(1);
+            }
+        }
+    }
+
+    /**
+     * Inserts all passed new Active Records by multi-row INSERT statements. The statements are chunked to stay below
+     * the parameter and row limits of the {@link Dialect}. For {@link SequenceGenerator#DATABASE} the generated ids are
+     * read by RETURNING if the dialect supports it, otherwise by the generated keys of the driver, and are set in the
+     * Active Records in order. If the driver returns only one key per statement the ids of a statement are expected
+     * to be consecutive, which is the case if no other connection inserts into the table at the same time. For
+     * {@link SequenceGenerator#INTERNAL} the ids are assigned before and the records are inserted into their shards.
+     * 
+     * @param clazz
+     *            the Active Record class
+     * @param activeRecords
+     *            the new Active Records to insert
+     * @throws ActiveRecordException
+     *             when an insert fails, see the wrapped cause for details
+     */
+    public static <T extends BaseAR> void insertAll(Class<T> clazz, Collection<T> activeRecords)
+            throws ActiveRecordException {
+        TableMetadata metadata = MetadataCache.getTableMetadata(clazz);
+        boolean databaseSequence = metadata.tableAnnotation.sequenceGenerator() == SequenceGenerator.DATABASE;
+
+        List<BaseAR> records = new ArrayList<>(activeRecords);
+        for (BaseAR activeRecord : records) {
+            if (!activeRecord.isNew()) {
+                throw new IllegalArgumentException("Active Record is already saved: " + activeRecord.id);
+            }
+        }
+        try {
+            if (databaseSequence) {
+                for (Map.Entry<WriteQueries, List<BaseAR>> group : groupByWriteQueries(metadata, records).entrySet()) {
+                    insertWithDatabaseSequence(metadata, group.getKey(), group.getValue());
+                }
+                return;
+            }
+
+            for (BaseAR activeRecord : records) {
+                activeRecord.id = INSTANCE.getNextSequenceNumber(clazz);
+            }
+            Set<BaseAR> inserted = Collections.newSetFromMap(new IdentityHashMap<>());
+            try {
+                for (List<BaseAR> shardRecords : groupByShard(metadata, records).values()) {
+                    for (Map.Entry<WriteQueries, List<BaseAR>> group : groupByWriteQueries(metadata, shardRecords)
+                            .entrySet()) {
+                        insertWithInternalSequence(metadata, group.getKey(), group.getValue(), inserted);
+                    }
+                }
+            } catch (SQLException | ActiveRecordException e) {
+                // the chunks which were executed are committed unless a transaction is rolled back, their rows exist
+                for (BaseAR activeRecord : records) {
+                    if (!inserted.contains(activeRecord)) {
+                        activeRecord.id = UNSAVED_ID;
+                    }
+                }
+                throw e;
+            }
+        } catch (SQLException e) {
+            throw new ActiveRecordException("Could not insert Active Records", e);
+        } finally {
+            INSTANCE.publishChange(metadata.tableName, ChangeBus.ALL_ROWS);
+        }
+    }
+
+    /**
+     * Inserts new Active Records which are written by the same queries by multi-row INSERT statements, for
+     * {@link SequenceGenerator#DATABASE}.
+     */
+    private static void insertWithDatabaseSequence(TableMetadata metadata, WriteQueries queries, List<BaseAR> records)
+            throws SQLException, ActiveRecordException {
+        Dialect dialect = INSTANCE.getDialect();
+        List<String> columns = MetadataCache.getColumnNames(queries.columns);
+        int rowsPerStatement = Math.max(1,
+                Math.min(dialect.getMaxRowsPerInsert(), dialect.getMaxParameters() / columns.size()));
+        for (int from = 0; from < records.size(); from += rowsPerStatement) {
+            List<BaseAR> chunk = records.subList(from, Math.min(records.size(), from + rowsPerStatement));
+            String query = dialect.getMultiRowInsertQuery(metadata.tableName, columns, chunk.size());
+            insertChunkWithDatabaseSequence(queries.columns, dialect, query, chunk);
+        }
+        for (BaseAR activeRecord : records) {
+            activeRecord.markLazyWritten(queries);
+        }
+    }
+
+    /**
+     * Inserts new Active Records of one shard which are written by the same queries by multi-row INSERT statements,
+     * for {@link SequenceGenerator#INTERNAL}. The Active Records of each executed statement are added to
+     * <code>inserted</code>.
+     */
+    private static void insertWithInternalSequence(TableMetadata metadata, WriteQueries queries, List<BaseAR> records,
+            Set<BaseAR> inserted) throws SQLException, ActiveRecordException {
+        Dialect dialect = INSTANCE.getDialect();
+        List<String> columns = new ArrayList<>(MetadataCache.getColumnNames(queries.columns));
+        columns.add(ID_COLUMN_NAME);
+        int rowsPerStatement = Math.max(1,
+                Math.min(dialect.getMaxRowsPerInsert(), dialect.getMaxParameters() / columns.size()));
+        for (int from = 0; from < records.size(); from += rowsPerStatement) {
+            List<BaseAR> chunk = records.subList(from, Math.min(records.size(), from + rowsPerStatement));
+            String query = dialect.getMultiRowInsertQuery(metadata.tableName, columns, chunk.size());
+            insertChunkWithInternalSequence(metadata, queries.columns, query, chunk);
+            inserted.addAll(chunk);
+        }
+        for (BaseAR activeRecord : records) {
+            activeRecord.markLazyWritten(queries);
+        }
+    }
+
+    private static void insertChunkWithDatabaseSequence(ColumnWithAlias[] writtenColumns, Dialect dialect,
+            String query, List<BaseAR> chunk) throws SQLException, ActiveRecordException {
+        int columnCount = writtenColumns.length;
+        if (dialect.supportsReturning()) {
+            query = dialect.getInsertReturningIdQuery(query, ID_COLUMN_NAME);
+            LOGGER.debug(query);
+            try (Lease lease = INSTANCE.leaseForWrite();
+                    PreparedStatement statement = lease.getConnection().prepareStatement(query)) {
+                for (int i = 0; i < chunk.size(); i++) {
+                    chunk.get(i).setParameterInStatement(statement, writtenColumns, i * columnCount + 1);
+                }
+                List<Long> returnedIds = new ArrayList<>(chunk.size());
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    while (resultSet.next()) {
+                        returnedIds.add(resultSet.getLong(1));
+                    }
+                }
+                if (returnedIds.size() != chunk.size()) {
+                    throw new SQLException("Insert failed, " + returnedIds.size() + " IDs returned for " + chunk.size()
+                            + " rows");
+                }
+                for (int i = 0; i < chunk.size(); i++) {
+                    chunk.get(i).id = returnedIds.get(i);
+                }
+            }
+            return;
+        }
+
+        LOGGER.debug(query);
+        try (Lease lease = INSTANCE.leaseForWrite();
+                PreparedStatement statement = lease.getConnection().prepareStatement(query,
+                        Statement.RETURN_GENERATED_KEYS)) {
+            for (int i = 0; i < chunk.size(); i++) {
+                chunk.get(i).setParameterInStatement(statement, writtenColumns, i * columnCount + 1);
+            }
+            statement.executeUpdate();
+
+            List<Long> generatedIds = new ArrayList<>(chunk.size());
+            try (ResultSet generatedKeys = statement.getGeneratedKeys()) {
+                while (generatedKeys.next()) {
+                    generatedIds.add(generatedKeys.getLong(1));
+                }
+            }
+            if (generatedIds.size() == chunk.size()) {
+                for (int i = 0; i < chunk.size(); i++) {
+                    chunk.get(i).id = generatedIds.get(i);
+                }
+            } else if (generatedIds.size() == 1) {
+                long firstId = dialect.getFirstIdOfMultiRowInsert(generatedIds.get(0), chunk.size());
+                for (int i = 0; i < chunk.size(); i++) {
+                    chunk.get(i).id = firstId + i;
+                }
+            } else {
+                throw new SQLException("Insert failed, could not acquire sequence numbers");
+            }
+        }
+    }
+
+    private static void insertChunkWithInternalSequence(TableMetadata metadata, ColumnWithAlias[] writtenColumns,
+            String query, List<BaseAR> chunk) throws SQLException, ActiveRecordException {
+        LOGGER.debug(query);
+        int columnCount = writtenColumns.length + 1;
+        try (Lease lease = INSTANCE.leaseForWrite(metadata, chunk.get(0).id);
+                PreparedStatement statement = lease.getConnection().prepareStatement(query)) {
+            for (int i = 0; i < chunk.size(); i++) {
+                chunk.get(i).setParameterInStatement(statement, writtenColumns, i * columnCount + 1);
+                statement.setLong((i + 1) * columnCount, chunk.get(i).id);
+            }
+            statement.executeUpdate();
+        }
+    }
+
+    /**
+     * Groups Active Records with an id by the index of their shard, all are in shard 0 if the table is not sharded.
+     */
+    private static Map<Integer, List<BaseAR>> groupByShard(TableMetadata metadata,
+            Collection<? extends BaseAR> activeRecords) {
+        Map<Integer, List<BaseAR>> recordsByShard = new LinkedHashMap<>();
+        for (BaseAR activeRecord : activeRecords) {
+            int shard = INSTANCE.getShardIndex(metadata, activeRecord.id);
+            recordsByShard.computeIfAbsent(shard, key -> new ArrayList<>()).add(activeRecord);
+        }
+        return recordsByShard;
+    }
+
+    /**
+     * Groups Active Records by the queries which write them, Active Records with different loaded or set lazy columns
+     * need different statements.
+     */
+    private static Map<WriteQueries, List<BaseAR>> groupByWriteQueries(TableMetadata metadata,
+            Collection<BaseAR> activeRecords) throws ActiveRecordException {
+        Map<WriteQueries, List<BaseAR>> recordsByQueries = new LinkedHashMap<>();
+        for (BaseAR activeRecord : activeRecords) {
+            WriteQueries queries = activeRecord.getWriteQueries(metadata);
+            recordsByQueries.computeIfAbsent(queries, key -> new ArrayList<>()).add(activeRecord);
+        }
+        return recordsByQueries;
+    }
+
+    /**
+     * Inserts the AR to the database. Uses the {@link InternalSequenceGenerator} to fill the ID column. The ID is
+     * acquired first as it determines the shard of a sharded table.
+     */
+    private void insertWithInternalSequence(WriteQueries queries, long nextId)
+            throws ActiveRecordException, SQLException {
+        TableMetadata metadata = MetadataCache.getTableMetadata(getClass());
+        LOGGER.debug(queries.insertQueryInternalSequence);
+        try (Lease lease = INSTANCE.leaseForWrite(metadata, nextId);
+                PreparedStatement statement = lease.getConnection()
+                        .prepareStatement(queries.insertQueryInternalSequence)) {
+            statement.setLong(queries.columns.length + 1, nextId);
+            setParameterInStatement(statement, queries.columns);
+
+            statement.execute();
+            id = nextId;
+        }
+    }
+
+    /**
+     * Updates the row of this Active Record. If the Active Record has a {@link Version} column the row is only updated
+     * if its version is unchanged, the version is incremented.
+     * 
+     * @throws OptimisticLockException
+     *             if the row was changed or deleted since it was read
+     */
+    private void update(WriteQueries queries) throws ActiveRecordException, SQLException {
+        TableMetadata metadata = MetadataCache.getTableMetadata(getClass());
+        LOGGER.debug(queries.updateQuery);
+        ColumnWithAlias versionColumn = metadata.versionColumn;
+        long version = versionColumn == null ? 0 : incrementVersion(versionColumn);
+        boolean updated = false;
+        try (Lease lease = INSTANCE.leaseForWrite(metadata, id);
+                PreparedStatement statement = lease.getConnection().prepareStatement(queries.updateQuery)) {
+            statement.setLong(queries.columns.length + 1, id);
+            if (versionColumn != null) {
+                statement.setLong(queries.columns.length + 2, version);
+            }
+            setParameterInStatement(statement, queries.columns);
+
+            int count = statement.executeUpdate();
+            LOGGER.debug("Updated {} entries", count);
+            updated = count > 0;
+        } finally {
+            if (versionColumn != null && !updated) {
+                setVersion(versionColumn, version);
+            }
+        }
+        if (versionColumn != null && !updated) {
+            throw new OptimisticLockException("Active Record '" + getClass().getSimpleName() + "' with id " + id
+                    + " was changed or deleted since version " + version + " was read", this);
+        }
+    }
+
+    /**
+     * Updates all passed Active Records in one JDBC batch (one per shard for a sharded table). Active Records without
+     * an id are inserted by {@link #save()}.
+     * 
+     * <p>
+     * A row which was changed (if the Active Record has a {@link Version} column) or deleted since it was read is not
+     * updated. Instead of failing the whole batch these Active Records are returned, with the version which was read.
+     * If the JDBC driver doesn't report the update count of each row of a batch conflicts cannot be detected.
+     * </p>
+     * 
+     * @param clazz
+     *            the Active Record class
+     * @param activeRecords
+     *            the Active Records to update
+     * @return the Active Records which were not updated because of a conflict, empty if all were updated
+     * @throws ActiveRecordException
+     *             when the update fails, see the wrapped cause for details
+     */
+    public static <T extends BaseAR> List<T> updateAll(Class<T> clazz, Collection<T> activeRecords)
+            throws ActiveRecordException {
+        TableMetadata metadata = MetadataCache.getTableMetadata(clazz);
+        ColumnWithAlias versionColumn = metadata.versionColumn;
+        List<BaseAR> keyedRecords = new ArrayList<>();
+        for (BaseAR activeRecord : activeRecords) {
+            if (activeRecord.isNew()) {
+                activeRecord.save();
+            } else {
+                keyedRecords.add(activeRecord);
+            }
+        }
+        List<T> conflicts = new ArrayList<>();
+        try {
+            for (List<BaseAR> shardRecords : groupByShard(metadata, keyedRecords).values()) {
+                for (Map.Entry<WriteQueries, List<BaseAR>> group : groupByWriteQueries(metadata, shardRecords)
+                        .entrySet()) {
+                    updateAll(clazz, metadata, group.getKey(), group.getValue(), conflicts);
+                }
+            }
+            keyedRecords.removeAll(conflicts);
+            LOGGER.debug("Updated {} entries, {} conflicts", keyedRecords.size(), conflicts.size());
+        } catch (SQLException e) {
+            throw new ActiveRecordException("Could not update Active Records", e);
+        } finally {
+            INSTANCE.publishChange(metadata.tableName, ChangeBus.ALL_ROWS);
+        }
+        return conflicts;
+    }
+
+    /**
+     * Updates Active Records of one shard which are written by the same queries in one JDBC batch, the Active Records
+     * which were not updated because of a conflict are added to <code>conflicts</code>.
+     */
+    private static <T extends BaseAR> void updateAll(Class<T> clazz, TableMetadata metadata, WriteQueries queries,
+            List<BaseAR> records, List<T> conflicts) throws SQLException, ActiveRecordException {
+        LOGGER.debug(queries.updateQuery);
+        ColumnWithAlias versionColumn = metadata.versionColumn;
+        int idIndex = queries.columns.length + 1;
+        long[] versions = new long[records.size()];
+        int[] counts = null;
+        try (Lease lease = INSTANCE.leaseForWrite(metadata, records.get(0).id);
+                PreparedStatement statement = lease.getConnection().prepareStatement(queries.updateQuery)) {
+            for (int i = 0; i < records.size(); i++) {
+                BaseAR activeRecord = records.get(i);
+                statement.setLong(idIndex, activeRecord.id);
+                if (versionColumn != null) {
+                    versions[i] = activeRecord.incrementVersion(versionColumn);
+                    statement.setLong(idIndex + 1, versions[i]);
+                }
+                activeRecord.setParameterInStatement(statement, queries.columns);
+                statement.addBatch();
+            }
+            counts = statement.executeBatch();
+        } catch (BatchUpdateException e) {
+            counts = e.getUpdateCounts();
+            throw e;
+        } finally {
+            for (int i = 0; i < records.size(); i++) {
+                boolean updated = counts != null && i < counts.length && counts[i] != 0
+                        && counts[i] != Statement.EXECUTE_FAILED;
+                if (updated) {
+                    records.get(i).markLazyWritten(queries);
+                }
+                if (!updated && versionColumn != null) {
+                    records.get(i).setVersion(versionColumn, versions[i]);
+                }
+                if (!updated && counts != null && i < counts.length && counts[i] == 0) {
+                    conflicts.add(clazz.cast(records.get(i)));
+                }
+            }
+        }
+    }
+
+    /**
+     * Increments the version of this Active Record.
+     * 
+     * @return the version before the increment
+     */
+    private long incrementVersion(ColumnWithAlias versionColumn) throws ActiveRecordException {
+        try {
+            long version = versionColumn.columnAnnotatedField.getLong(this);
+            setVersion(versionColumn, version + 1);
+            return version;
+        } catch (IllegalAccessException e) {
+            throw new ActiveRecordException("Could not read version", e);
+        }
+    }
+
+    private void setVersion(ColumnWithAlias versionColumn, long version) throws ActiveRecordException {
+        try {
+            if (versionColumn.columnType == ColumnType.INT) {
+                versionColumn.columnAnnotatedField.setInt(this, (int) version);
+            } else {
+                versionColumn.columnAnnotatedField.setLong(this, version);
+            }
+        } catch (IllegalAccessException e) {
+            throw new ActiveRecordException("Could not set version", e);
+        }
+    }
+
+    /**
+     * Inserts this Active Record or, if a row with its id already exists, updates that row. Unlike {@link #save()}
+     * this needs a single round trip for records with an externally defined id, no {@link #findById(Class, long)} is
+     * necessary to decide between insert and update. If the Active Record has no id yet it is saved by
+     * {@link #save()}. The row is written as it is, a {@link Version} column is neither checked nor incremented. Lazy
+     * columns which were not loaded are kept.
+     * 
+     * @throws ActiveRecordException
+     *             when the upsert fails, see the wrapped cause for details
+     */
+    public void upsert() throws ActiveRecordException {
+        if (isNew()) {
+            save();
+            return;
+        }
+        TableMetadata metadata = MetadataCache.getTableMetadata(getClass());
+        try {
+            WriteQueries queries = getWriteQueries(metadata);
+            LOGGER.debug(queries.upsertQuery);
+            INSTANCE.call(metadata.retryWrites, () -> {
+                try (Lease lease = INSTANCE.leaseForWrite(metadata, id);
+                        PreparedStatement statement = lease.getConnection().prepareStatement(queries.upsertQuery)) {
+                    statement.setLong(queries.columns.length + 1, id);
+                    setParameterInStatement(statement, queries.columns);
+
+                    statement.executeUpdate();
+                }
+                INSTANCE.updateSequenceNumber(getClass(), id);
+                return null;
+            });
+            markLazyWritten(queries);
+        } catch (SQLException e) {
+            throw new ActiveRecordException("Could not upsert Active Record", e);
+        } finally {
+            INSTANCE.publishChange(metadata.tableName, id);
+        }
+    }
+
+    /**
+     * Upserts all passed Active Records in JDBC batches (per shard for a sharded table), see {@link #upsert()}. A batch
+     * holds at most as many rows as a multi-row insert. Active Records without an id are saved by {@link #save()}.
+     * 
+     * @param clazz
+     *            the Active Record class
+     * @param activeRecords
+     *            the Active Records to upsert
+     * @throws ActiveRecordException
+     *             when the upsert fails, see the wrapped cause for details
+     */
+    public static <T extends BaseAR> void upsertAll(Class<T> clazz, Collection<T> activeRecords)
+            throws ActiveRecordException {
+        TableMetadata metadata = MetadataCache.getTableMetadata(clazz);
+        List<BaseAR> keyedRecords = new ArrayList<>();
+        for (BaseAR activeRecord : activeRecords) {
+            if (activeRecord.isNew()) {
+                activeRecord.save();
+            } else {
+                keyedRecords.add(activeRecord);
+            }
+        }
+        try {
+            for (List<BaseAR> shardRecords : groupByShard(metadata, keyedRecords).values()) {
+                for (Map.Entry<WriteQueries, List<BaseAR>> group : groupByWriteQueries(metadata, shardRecords)
+                        .entrySet()) {
+                    upsertAll(clazz, metadata, group.getKey(), group.getValue());
+                }
+            }
+            LOGGER.debug("Upserted {} entries", keyedRecords.size());
+        } catch (SQLException e) {
+            throw new ActiveRecordException("Could not upsert Active Records", e);
+        } finally {
+            INSTANCE.publishChange(metadata.tableName, ChangeBus.ALL_ROWS);
+        }
+    }
+
+    /**
+     * Upserts Active Records of one shard which are written by the same queries in JDBC batches.
+     */
+    private static void upsertAll(Class<? extends BaseAR> clazz, TableMetadata metadata, WriteQueries queries,
+            List<BaseAR> records) throws SQLException, ActiveRecordException {
+        LOGGER.debug(queries.upsertQuery);
+        Dialect dialect = INSTANCE.getDialect();
+        int batchSize = Math.max(1,
+                Math.min(dialect.getMaxRowsPerInsert(), dialect.getMaxParameters() / (queries.columns.length + 1)));
+        try (Lease lease = INSTANCE.leaseForWrite(metadata, records.get(0).id);
+                PreparedStatement statement = lease.getConnection().prepareStatement(queries.upsertQuery)) {
+            for (int from = 0; from < records.size(); from += batchSize) {
+                long maxId = UNSAVED_ID;
+                for (BaseAR activeRecord : records.subList(from, Math.min(from + batchSize, records.size()))) {
+                    statement.setLong(queries.columns.length + 1, activeRecord.id);
+                    activeRecord.setParameterInStatement(statement, queries.columns);
+                    statement.addBatch();
+                    maxId = Math.max(maxId, activeRecord.id);
+                }
+                statement.executeBatch();
+                INSTANCE.updateSequenceNumber(clazz, maxId);
+            }
+        }
+        for (BaseAR activeRecord : records) {
+            activeRecord.markLazyWritten(queries);
+        }
+    }
+
+    /**
+     * Sets the values of this Active Record in the passed statement. The values are set in a specific order, here the
+     * same order is used as for building the statement with the column names.
+     * 
+     * @param statement
+     *            the {@link PreparedStatement} to set values on
+     * @param columns
+     *            the written columns, see {@link WriteQueries#columns}
+     * @throws ActiveRecordException
+     *             if an error occurs while reflectively reading data from the AR or setting the value on the statement
+     *             fails
+     */
+    private void setParameterInStatement(PreparedStatement statement, ColumnWithAlias[] columns)
+            throws ActiveRecordException {
+        setParameterInStatement(statement, columns, 1);
+    }
+
+    /**
+     * Sets the values of this Active Record in the passed statement, starting at the parameter
+     * <code>firstIndex</code>. Used for statements which contain more than one row.
+     */
+    private void setParameterInStatement(PreparedStatement statement, ColumnWithAlias[] columns, int firstIndex)
+            throws ActiveRecordException {
+        int count = firstIndex;
+        for (ColumnWithAlias field : columns) {
+            try {
+                field.write(statement, count++, this);
+            } catch (IllegalArgumentException | IllegalAccessException | SQLException e) {
+                throw new ActiveRecordException("Could not set parameter in statement", e);
+            }
+        }
+    }
+
+    /**
+     * Deletes this record from the database.
+     * 
+     * @throws ActiveRecordException
+     *             when a delete fails, see the wrapped cause for details
+     */
+    public void delete() throws ActiveRecordException {
+        TableMetadata metadata = MetadataCache.getTableMetadata(getClass());
+        if (metadata.writeBehind != null) {
+            metadata.writeBehind.remove(id);
+        }
+        LOGGER.debug(metadata.deleteQuery);
+        try {
+            INSTANCE.call(metadata.retryWrites, () -> {
+                try (Lease lease = INSTANCE.leaseForWrite(metadata, id);
+                        PreparedStatement statement = lease.getConnection().prepareStatement(metadata.deleteQuery)) {
+                    statement.setLong(1, id);
+                    int count = statement.executeUpdate();
+                    LOGGER.debug("Deleted {} entries", count);
+                }
+                return null;
+            });
+        } catch (SQLException e) {
+            throw new ActiveRecordException("Could not delete Active Record", e);
+        } finally {
+            INSTANCE.publishChange(metadata.tableName, id);
+        }
+    }
+
+    /**
+     * Returns a copy of this Active Record with its id and the values of its columns, including the loaded or set
+     * {@link FetchType#LAZY} columns. Embedded value objects are copied. Used to keep the state of a record at one
+     * point in time, e.g. by the {@link WriteBehindBuffer}.
+     * 
+     * @return the copy
+     * @throws ActiveRecordException
+     *             if the Active Record cannot be instantiated or its fields cannot be accessed
+     */
+    public BaseAR copy() throws ActiveRecordException {
+        TableMetadata metadata = MetadataCache.getTableMetadata(getClass());
+        try {
+            BaseAR copy = metadata.constructor.newInstance();
+            for (ColumnWithAlias[] columns : new ColumnWithAlias[][] { metadata.columnAnnotatedFields,
+                    metadata.lazyColumns }) {
+                for (ColumnWithAlias column : columns) {
+                    column.copy(this, copy);
+                }
+            }
+            copy.id = id;
+            if (loadedLazyColumns != null) {
+                copy.loadedLazyColumns = new HashSet<>(loadedLazyColumns);
+            }
+            return copy;
+        } catch (InstantiationException | InvocationTargetException e) {
+            String message = "Cannot instantiate '" + getClass().getName() + "', is there a default constructor?";
+            throw new ActiveRecordException(message, e);
+        } catch (IllegalAccessException e) {
+            throw new ActiveRecordException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Re-reads the columns of this Active Record from the database into this instance, so references to it stay
+     * valid, e.g. to refresh a long-lived or cached record. The {@link FetchType#LAZY} columns are reset and loaded
+     * again on the next access.
+     * 
+     * @throws ActiveRecordException
+     *             when the record doesn't exist anymore or cannot be read, see the wrapped cause for details
+     * @throws IllegalStateException
+     *             if the Active Record is not saved
+     */
+    public void reload() throws ActiveRecordException {
+        TableMetadata metadata = MetadataCache.getTableMetadata(getClass());
+        reload(metadata, metadata.selectQuery, metadata.columnAnnotatedFields);
+        for (ColumnWithAlias column : metadata.lazyColumns) {
+            try {
+                column.columnAnnotatedField.set(this, null);
+            } catch (IllegalAccessException e) {
+                throw new ActiveRecordException("Could not reset lazy column '" + column.columnName + "'", e);
+            }
+        }
+        loadedLazyColumns = null;
+    }
+
+    /**
+     * Re-reads only the passed columns of this Active Record from the database into this instance, the other fields
+     * are not changed. A {@link FetchType#LAZY} column is loaded.
+     * 
+     * @param columnNames
+     *            the names of the columns
+     * @throws ActiveRecordException
+     *             when the record doesn't exist anymore or cannot be read, see the wrapped cause for details
+     * @throws IllegalArgumentException
+     *             if no column is passed or the Active Record has no such column
+     * @throws IllegalStateException
+     *             if the Active Record is not saved
+     */
+    public void reload(String... columnNames) throws ActiveRecordException {
+        if (columnNames.length == 0) {
+            throw new IllegalArgumentException("No columns to reload");
+        }
+        TableMetadata metadata = MetadataCache.getTableMetadata(getClass());
+        ColumnWithAlias[] columns = new ColumnWithAlias[columnNames.length];
+        for (int i = 0; i < columnNames.length; i++) {
+            columns[i] = metadata.getColumn(columnNames[i]);
+        }
+        String query = "SELECT " + String.join(", ", MetadataCache.getColumnNames(columns)) //
+                + " FROM " + metadata.tableName //
+                + " WHERE " + ID_COLUMN_NAME + "=?";
+        reload(metadata, query, columns);
+        for (ColumnWithAlias column : columns) {
+            if (column.lazy) {
+                markLazyLoaded(column.columnAnnotatedField.getName());
+            }
+        }
+    }
+
+    /**
+     * Reads the <code>columns</code> by a query which selects them in this order by the id.
+     */
+    private void reload(TableMetadata metadata, String query, ColumnWithAlias[] columns)
+            throws ActiveRecordException {
+        if (isNew()) {
+            throw new IllegalStateException("Active Record '" + getClass().getSimpleName() + "' is not saved");
+        }
+        LOGGER.debug(query);
+        try {
+            INSTANCE.call(true, () -> {
+                try (Lease lease = INSTANCE.leaseForRead(metadata, id);
+                        PreparedStatement statement = lease.getConnection().prepareStatement(query)) {
+                    statement.setLong(1, id);
+                    try (ResultSet resultSet = statement.executeQuery()) {
+                        if (!resultSet.next()) {
+                            throw new ActiveRecordException("Active Record '" + getClass().getSimpleName()
+                                    + "' with id " + id + " doesn't exist");
+                        }
+                        ColumnWithAlias.readRow(resultSet, columns, 1, this);
+                    }
+                } catch (IllegalAccessException e) {
+                    throw new ActiveRecordException("Could not reload Active Record", e);
+                }
+                return null;
+            });
+        } catch (SQLException e) {
+            throw new ActiveRecordException("Could not reload Active Record", e);
+        }
+    }
+
+    /**
+     * Loads the value of a {@link FetchType#LAZY} column into its field unless it was loaded already. A value which
+     * was set but not loaded is kept. Call it in the getter of the field and {@link #markLazyLoaded(String)} in the
+     * setter.
+     * 
+     * @param fieldName
+     *            the name of the field
+     * @throws ActiveRecordException
+     *             when the value cannot be loaded, see the wrapped cause for details
+     */
+    protected void loadLazy(String fieldName) throws ActiveRecordException {
+        TableMetadata metadata = MetadataCache.getTableMetadata(getClass());
+        ColumnWithAlias column = getLazyColumn(metadata, fieldName, null);
+        if (!mustLoadLazy(column)) {
+            return;
+        }
+        LOGGER.debug(column.lazySelectQuery);
+        try (LazyCursor cursor = new LazyCursor(metadata, column)) {
+            if (cursor.next()) {
+                column.read(cursor.resultSet, 2, this);
+            }
+            markLazyLoaded(fieldName);
+        } catch (SQLException | IllegalAccessException e) {
+            throw new ActiveRecordException("Could not load lazy column '" + column.columnName + "'", e);
+        }
+    }
+
+    /**
+     * Opens a stream on the value of a <code>byte[]</code> {@link FetchType#LAZY} column, without loading the whole
+     * value into memory if the JDBC driver supports it. If the value is loaded or set already the stream reads the
+     * field. The field is not changed.
+     * 
+     * @param fieldName
+     *            the name of the field
+     * @return the stream, <code>null</code> if the value is <code>null</code>. Close it to release the connection.
+     * @throws ActiveRecordException
+     *             when the value cannot be read, see the wrapped cause for details
+     */
+    protected InputStream openLazyStream(String fieldName) throws ActiveRecordException {
+        TableMetadata metadata = MetadataCache.getTableMetadata(getClass());
+        ColumnWithAlias column = getLazyColumn(metadata, fieldName, byte[].class);
+        if (!mustLoadLazy(column)) {
+            byte[] value = (byte[]) getLazyValue(column);
+            return value == null ? null : new ByteArrayInputStream(value);
+        }
+        LOGGER.debug(column.lazySelectQuery);
+        try {
+            LazyCursor cursor = new LazyCursor(metadata, column);
+            boolean open = false;
+            try {
+                if (!cursor.next()) {
+                    return null;
+                }
+                InputStream stream = cursor.resultSet.getBinaryStream(2);
+                open = true;
+                return new FilterInputStream(stream) {
+                    @Override
+                    public void close() throws IOException {
+                        try {
+                            super.close();
+                        } finally {
+                            cursor.closeQuietly();
+                        }
+                    }
+                };
+            } finally {
+                if (!open) {
+                    cursor.closeQuietly();
+                }
+            }
+        } catch (SQLException e) {
+            throw new ActiveRecordException("Could not read lazy column '" + column.columnName + "'", e);
+        }
+    }
+
+    /**
+     * Opens a reader on the value of a {@link String} {@link FetchType#LAZY} column, without loading the whole value
+     * into memory if the JDBC driver supports it. If the value is loaded or set already the reader reads the field.
+     * The field is not changed.
+     * 
+     * @param fieldName
+     *            the name of the field
+     * @return the reader, <code>null</code> if the value is <code>null</code>. Close it to release the connection.
+     * @throws ActiveRecordException
+     *             when the value cannot be read, see the wrapped cause for details
+     */
+    protected Reader openLazyReader(String fieldName) throws ActiveRecordException {
+        TableMetadata metadata = MetadataCache.getTableMetadata(getClass());
+        ColumnWithAlias column = getLazyColumn(metadata, fieldName, String.class);
+        if (!mustLoadLazy(column)) {
+            String value = (String) getLazyValue(column);
+            return value == null ? null : new StringReader(value);
+        }
+        LOGGER.debug(column.lazySelectQuery);
+        try {
+            LazyCursor cursor = new LazyCursor(metadata, column);
+            boolean open = false;
+            try {
+                if (!cursor.next()) {
+                    return null;
+                }
+                Reader reader = cursor.resultSet.getCharacterStream(2);
+                open = true;
+                return new FilterReader(reader) {
+                    @Override
+                    public void close() throws IOException {
+                        try {
+                            super.close();
+                        } finally {
+                            cursor.closeQuietly();
+                        }
+                    }
+                };
+            } finally {
+                if (!open) {
+                    cursor.closeQuietly();
+                }
+            }
+        } catch (SQLException e) {
+            throw new ActiveRecordException("Could not read lazy column '" + column.columnName + "'", e);
+        }
+    }
+
+    /**
+     * @param type
+     *            the required type of the field, <code>null</code> for any type
+     * @return the lazy column of the field
+     */
+    private static ColumnWithAlias getLazyColumn(TableMetadata metadata, String fieldName, Class<?> type) {
+        for (ColumnWithAlias column : metadata.lazyColumns) {
+            if (column.columnAnnotatedField.getName().equals(fieldName)) {
+                if (type != null && column.columnAnnotatedField.getType() != type) {
+                    throw new IllegalArgumentException(
+                            "Lazy column '" + fieldName + "' is not of type " + type.getSimpleName());
+                }
+                return column;
+            }
+        }
+        throw new IllegalArgumentException("No lazy column '" + fieldName + "' in table '" + metadata.tableName + "'");
+    }
+
+    /**
+     * @return <code>true</code> if the value of the lazy column has to be read from the database
+     */
+    private boolean mustLoadLazy(ColumnWithAlias column) throws ActiveRecordException {
+        return !isNew() && !isLazyLoaded(column.columnAnnotatedField.getName()) && getLazyValue(column) == null;
+    }
+
+    private Object getLazyValue(ColumnWithAlias column) throws ActiveRecordException {
+        try {
+            return column.columnAnnotatedField.get(this);
+        } catch (IllegalAccessException e) {
+            throw new ActiveRecordException("Could not read lazy column '" + column.columnName + "'", e);
+        }
+    }
+
+    private boolean isLazyLoaded(String fieldName) {
+        return loadedLazyColumns != null && loadedLazyColumns.contains(fieldName);
+    }
+
+    /**
+     * Marks a {@link FetchType#LAZY} column as loaded: {@link #loadLazy(String)} doesn't load it anymore and
+     * {@link #save()} writes it even if it is <code>null</code>. Call it in the setter of the field, otherwise setting
+     * an unloaded value to <code>null</code> is not saved.
+     * 
+     * @param fieldName
+     *            the name of the field
+     */
+    protected void markLazyLoaded(String fieldName) {
+        if (loadedLazyColumns == null) {
+            loadedLazyColumns = new HashSet<>();
+        }
+        loadedLazyColumns.add(fieldName);
+    }
+
+    /**
+     * Returns the queries which write this Active Record in one statement: the eager columns and the lazy columns which
+     * were loaded or set, an unloaded lazy column is left unchanged in the database.
+     */
+    private WriteQueries getWriteQueries(TableMetadata metadata) throws ActiveRecordException {
+        if (metadata.lazyColumns.length == 0) {
+            return metadata.writeQueries;
+        }
+        BitSet writtenLazyColumns = new BitSet();
+        for (int i = 0; i < metadata.lazyColumns.length; i++) {
+            ColumnWithAlias column = metadata.lazyColumns[i];
+            if (getLazyValue(column) != null || isLazyLoaded(column.columnAnnotatedField.getName())) {
+                writtenLazyColumns.set(i);
+            }
+        }
+        return metadata.getWriteQueries(writtenLazyColumns);
+    }
+
+    /**
+     * Marks the lazy columns which were written as loaded, so they are written again if they are set to
+     * <code>null</code>.
+     */
+    private void markLazyWritten(WriteQueries queries) {
+        for (ColumnWithAlias column : queries.columns) {
+            if (column.lazy) {
+                markLazyLoaded(column.columnAnnotatedField.getName());
+            }
+        }
+    }
+
+    /**
+     * The open query on the value of a lazy column.
+     */
+    private final class LazyCursor implements AutoCloseable {
+        private final Lease lease;
+        private final PreparedStatement statement;
+        private final ResultSet resultSet;
+
+        private LazyCursor(TableMetadata metadata, ColumnWithAlias column) throws SQLException {
+            lease = INSTANCE.leaseForRead(metadata, id);
+            try {
+                statement = lease.getConnection().prepareStatement(column.lazySelectQuery);
+                statement.setLong(1, id);
+                resultSet = statement.executeQuery();
+            } catch (SQLException e) {
+                lease.close();
+                throw e;
+            }
+        }
+
+        /**
+         * Moves to the row of the Active Record.
+         * 
+         * @return <code>false</code> if the row doesn't exist or the value is <code>null</code>
+         */
+        private boolean next() throws SQLException {
+            // some drivers fail to open a stream on NULL, the first column tells if the value is NULL
+            return resultSet.next() && !resultSet.getBoolean(1);
+        }
+
+        @Override
+        public void close() throws SQLException {
+            try {
+                statement.close();
+            } finally {
+                lease.close();
+            }
+        }
+
+        private void closeQuietly() {
+            try {
+                close();
+            } catch (SQLException e) {
+                LOGGER.warn("Could not close query of lazy column", e);
+            }
+        }
+    }
+
+    /**
+     * Reads the id column of a row.
+     * 
+     * @throws SQLException
+     *             if the id is <code>NULL</code>, it would silently become 0
+     */
+    static long readId(ResultSet resultSet, int index) throws SQLException {
+        long id = resultSet.getLong(index);
+        if (resultSet.wasNull()) {
+            throw new SQLDataException("The id column must not be NULL", "22002");
+        }
+        return id;
+    }
+
+    /**
+     * Sets the id. Usually this is done by the framework, an Active Record whose rows are keyed externally and written
+     * by {@link #upsert()} may expose it.
+     * 
+     * @param id
+     *            the id to set
+     */
+    protected void setId(long id) {
+        this.id = id;
+    }
+
+    /**
+     * @return the id, <code>null</code> if this Active Record was not saved yet
+     */
+    public Long getId() {
+        if (isNew()) {
+            return null;
+        }
+        return id;
+    }
+
+    /**
+     * Returns the id without boxing it.
+     * 
+     * @return the id, {@link #UNSAVED_ID} if this Active Record was not saved yet
+     */
+    public long getIdValue() {
+        return id;
+    }
+
+    /**
+     * @return <code>true</code> if this Active Record was not saved yet
+     */
+    public boolean isNew() {
+        return id == UNSAVED_ID;
     }
 }
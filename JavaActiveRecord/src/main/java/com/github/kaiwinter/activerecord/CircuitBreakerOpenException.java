@@ -0,0 +1,14 @@
+package com.github.kaiwinter.activerecord;
+
+/**
+ * Thrown instead of accessing the database while the {@link com.github.kaiwinter.activerecord.db.CircuitBreaker} is
+ * open because of repeated transient errors.
+ */
+public final class CircuitBreakerOpenException extends ActiveRecordException {
+
+    private static final long serialVersionUID = 4712391650846275531L;
+
+    public CircuitBreakerOpenException(String message) {
+        super(message);
+    }
+}
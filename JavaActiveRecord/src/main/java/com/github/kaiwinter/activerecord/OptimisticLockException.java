@@ -0,0 +1,24 @@
+package com.github.kaiwinter.activerecord;
+
+/**
+ * Thrown if an Active Record with a {@link com.github.kaiwinter.activerecord.annotation.Version} column cannot be
+ * updated because its row was changed or deleted since it was read.
+ */
+public final class OptimisticLockException extends ActiveRecordException {
+
+    private static final long serialVersionUID = -2353735403151290335L;
+
+    private final transient BaseAR activeRecord;
+
+    public OptimisticLockException(String message, BaseAR activeRecord) {
+        super(message);
+        this.activeRecord = activeRecord;
+    }
+
+    /**
+     * @return the Active Record which could not be updated, its version is the one which was read
+     */
+    public BaseAR getActiveRecord() {
+        return activeRecord;
+    }
+}
@@ -0,0 +1,177 @@
+package com.github.kaiwinter.activerecord;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.kaiwinter.activerecord.db.Lease;
+import com.github.kaiwinter.activerecord.db.SqlOperation;
+import com.github.kaiwinter.activerecord.metadata.MetadataCache;
+import com.github.kaiwinter.activerecord.metadata.TableMetadata;
+
+/**
+ * {@link Spliterator} over the records of a table which is split into partitions by id ranges. Each partition is read
+ * by its own cursor on its own leased connection when it is reached, so a parallel stream reads the partitions
+ * concurrently. {@link #trySplit()} hands over half of the partitions which are not started yet.
+ * 
+ * @param <T>
+ *            the Active Record class
+ */
+final class PartitionSpliterator<T extends BaseAR> implements Spliterator<T> {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PartitionSpliterator.class.getSimpleName());
+
+    /**
+     * An inclusive id range which is read from the database of its {@link Lease}.
+     */
+    static final class Partition {
+        final SqlOperation<Lease> leaseSupplier;
+        final long fromId;
+        final long toId;
+
+        Partition(SqlOperation<Lease> leaseSupplier, long fromId, long toId) {
+            this.leaseSupplier = leaseSupplier;
+            this.fromId = fromId;
+            this.toId = toId;
+        }
+    }
+
+    /**
+     * The open cursor of a partition.
+     */
+    private static final class Cursor implements AutoCloseable {
+        private final Lease lease;
+        private PreparedStatement statement;
+        private ResultSet resultSet;
+
+        Cursor(Lease lease) {
+            this.lease = lease;
+        }
+
+        @Override
+        public void close() {
+            try {
+                if (resultSet != null) {
+                    resultSet.close();
+                }
+                if (statement != null) {
+                    statement.close();
+                }
+            } catch (SQLException e) {
+                LOGGER.warn("Could not close cursor", e);
+            } finally {
+                lease.close();
+            }
+        }
+    }
+
+    private final Class<T> clazz;
+    private final TableMetadata metadata;
+    private final List<Partition> partitions;
+    /** The cursors of all spliterators split from the same origin, closed by {@link #close()}. */
+    private final ConcurrentLinkedQueue<Cursor> openCursors;
+    private int nextPartition;
+    private Cursor cursor;
+
+    PartitionSpliterator(Class<T> clazz, List<Partition> partitions) {
+        this(clazz, partitions, new ConcurrentLinkedQueue<>());
+    }
+
+    private PartitionSpliterator(Class<T> clazz, List<Partition> partitions,
+            ConcurrentLinkedQueue<Cursor> openCursors) {
+        this.clazz = clazz;
+        this.metadata = MetadataCache.getTableMetadata(clazz);
+        this.partitions = new ArrayList<>(partitions);
+        this.openCursors = openCursors;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super T> action) {
+        try {
+            while (true) {
+                if (cursor == null) {
+                    if (nextPartition >= partitions.size()) {
+                        return false;
+                    }
+                    cursor = open(partitions.get(nextPartition++));
+                }
+                if (cursor.resultSet.next()) {
+                    T activeRecord = BaseAR.resultSet2ActiveRecord(clazz, cursor.resultSet);
+                    activeRecord.setId(BaseAR.readId(cursor.resultSet, metadata.columnAnnotatedFields.length + 1));
+                    action.accept(activeRecord);
+                    return true;
+                }
+                closeCursor();
+            }
+        } catch (SQLException e) {
+            closeCursor();
+            throw new UncheckedActiveRecordException(new ActiveRecordException("Could not query partition", e));
+        } catch (ActiveRecordException e) {
+            closeCursor();
+            throw new UncheckedActiveRecordException(e);
+        }
+    }
+
+    private Cursor open(Partition partition) throws SQLException, ActiveRecordException {
+        LOGGER.debug("{} [{}, {}]", metadata.selectRangeQuery, partition.fromId, partition.toId);
+        Cursor newCursor = new Cursor(partition.leaseSupplier.execute());
+        openCursors.add(newCursor);
+        newCursor.statement = newCursor.lease.getConnection().prepareStatement(metadata.selectRangeQuery);
+        newCursor.statement.setLong(1, partition.fromId);
+        newCursor.statement.setLong(2, partition.toId);
+        newCursor.resultSet = newCursor.statement.executeQuery();
+        return newCursor;
+    }
+
+    private void closeCursor() {
+        if (cursor != null) {
+            openCursors.remove(cursor);
+            cursor.close();
+            cursor = null;
+        }
+    }
+
+    @Override
+    public Spliterator<T> trySplit() {
+        int remaining = partitions.size() - nextPartition;
+        if (remaining < 2) {
+            return null;
+        }
+        int middle = nextPartition + remaining / 2;
+        List<Partition> splitPartitions = new ArrayList<>(partitions.subList(middle, partitions.size()));
+        partitions.subList(middle, partitions.size()).clear();
+        return new PartitionSpliterator<>(clazz, splitPartitions, openCursors);
+    }
+
+    @Override
+    public long estimateSize() {
+        long size = 0;
+        for (int i = nextPartition; i < partitions.size(); i++) {
+            size += partitions.get(i).toId - partitions.get(i).fromId + 1;
+        }
+        return size;
+    }
+
+    @Override
+    public int characteristics() {
+        return NONNULL | DISTINCT;
+    }
+
+    /**
+     * Closes the cursors which are still open because the stream was not consumed completely.
+     */
+    void close() {
+        Cursor openCursor;
+        while ((openCursor = openCursors.poll()) != null) {
+            openCursor.close();
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.github.kaiwinter.activerecord;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.kaiwinter.activerecord.metadata.MetadataCache;
+import com.github.kaiwinter.activerecord.metadata.TableMetadata;
+import com.github.kaiwinter.activerecord.metadata.TableMetadata.ColumnWithAlias;
+
+/**
+ * Maps the columns of the result of a custom SQL query to the
+ * {@link com.github.kaiwinter.activerecord.annotation.Column}s of an Active Record by their names. The mapping is built
+ * once per Active Record class and SQL query from the {@link ResultSetMetaData} and cached, so the rows are read by
+ * index afterwards.
+ */
+final class ResultSetMapping {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ResultSetMapping.class.getSimpleName());
+
+    /** The number of cached mappings after which new mappings are not cached anymore. */
+    private static final int MAX_CACHED_MAPPINGS = 1_000;
+
+    /** The mappings by Active Record class and SQL query. */
+    private static final Map<List<Object>, ResultSetMapping> MAPPINGS = new ConcurrentHashMap<>();
+
+    /** The column per index of the result, starting at 1, <code>null</code> if the column is not mapped. */
+    private final ColumnWithAlias[] columns;
+
+    /** The index of the id column, 0 if the result contains no id. */
+    private final int idIndex;
+
+    private ResultSetMapping(ColumnWithAlias[] columns, int idIndex) {
+        this.columns = columns;
+        this.idIndex = idIndex;
+    }
+
+    /**
+     * Returns the cached mapping of a query or builds it from the metadata of its result.
+     * 
+     * @param clazz
+     *            the Active Record class
+     * @param sql
+     *            the SQL query
+     * @param resultSet
+     *            the result of the query
+     * @return the mapping
+     * @throws SQLException
+     *             if the metadata of the result cannot be read
+     */
+    static ResultSetMapping get(Class<? extends BaseAR> clazz, String sql, ResultSet resultSet) throws SQLException {
+        List<Object> key = Arrays.asList(clazz, sql);
+        ResultSetMapping mapping = MAPPINGS.get(key);
+        if (mapping == null) {
+            mapping = create(MetadataCache.getTableMetadata(clazz), resultSet.getMetaData());
+            if (MAPPINGS.size() < MAX_CACHED_MAPPINGS) {
+                MAPPINGS.put(key, mapping);
+            }
+        }
+        return mapping;
+    }
+
+    private static ResultSetMapping create(TableMetadata metadata, ResultSetMetaData resultSetMetaData)
+            throws SQLException {
+        int columnCount = resultSetMetaData.getColumnCount();
+        ColumnWithAlias[] columns = new ColumnWithAlias[columnCount + 1];
+        int idIndex = 0;
+        List<String> unmappedColumns = new ArrayList<>();
+        for (int index = 1; index <= columnCount; index++) {
+            String label = resultSetMetaData.getColumnLabel(index);
+            if (MetadataCache.ID_COLUMN_NAME.equalsIgnoreCase(label)) {
+                idIndex = index;
+                continue;
+            }
+            try {
+                columns[index] = metadata.getColumn(label);
+            } catch (IllegalArgumentException e) {
+                unmappedColumns.add(label);
+            }
+        }
+        if (!unmappedColumns.isEmpty()) {
+            LOGGER.debug("Columns {} are not mapped to '{}'", unmappedColumns, metadata.tableName);
+        }
+        return new ResultSetMapping(columns, idIndex);
+    }
+
+    /**
+     * Creates a new Active Record from the current row of the <code>resultSet</code>. Mapped lazy columns are set as
+     * loaded.
+     * 
+     * @param clazz
+     *            the Active Record class
+     * @param resultSet
+     *            the {@link ResultSet} positioned on the row to read
+     * @return the new Active Record, without id if the result contains none
+     */
+    <T extends BaseAR> T read(Class<T> clazz, ResultSet resultSet) throws SQLException, ActiveRecordException {
+        TableMetadata metadata = MetadataCache.getTableMetadata(clazz);
+        try {
+            T activeRecord = clazz.cast(metadata.constructor.newInstance());
+            ColumnWithAlias.readRow(resultSet, columns, 0, activeRecord);
+            for (ColumnWithAlias column : columns) {
+                if (column != null && column.lazy) {
+                    activeRecord.markLazyLoaded(column.columnAnnotatedField.getName());
+                }
+            }
+            if (idIndex > 0) {
+                activeRecord.setId(BaseAR.readId(resultSet, idIndex));
+            }
+            return activeRecord;
+        } catch (ReflectiveOperationException e) {
+            throw new ActiveRecordException("Cannot create '" + clazz.getName() + "'", e);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.github.kaiwinter.activerecord;
+
+import static com.github.kaiwinter.activerecord.db.Db.INSTANCE;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.kaiwinter.activerecord.db.Lease;
+import com.github.kaiwinter.activerecord.db.SqlOperation;
+
+/**
+ * {@link Spliterator} over the Active Records of a custom SQL query. The query is run by a cursor on each database of
+ * its {@link Lease}s one after the other, the first when the first record is requested. The records are mapped by a
+ * {@link ResultSetMapping}.
+ * 
+ * @param <T>
+ *            the Active Record class
+ */
+final class SqlSpliterator<T extends BaseAR> extends Spliterators.AbstractSpliterator<T> {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SqlSpliterator.class.getSimpleName());
+
+    private final Class<T> clazz;
+    private final String sql;
+    private final Object[] parameters;
+    private final Iterator<SqlOperation<Lease>> leaseSuppliers;
+    private Lease lease;
+    private PreparedStatement statement;
+    private ResultSet resultSet;
+    private ResultSetMapping mapping;
+
+    SqlSpliterator(Class<T> clazz, String sql, Object[] parameters, List<SqlOperation<Lease>> leaseSuppliers) {
+        super(Long.MAX_VALUE, NONNULL);
+        this.clazz = clazz;
+        this.sql = sql;
+        this.parameters = parameters;
+        this.leaseSuppliers = leaseSuppliers.iterator();
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super T> action) {
+        try {
+            while (true) {
+                if (resultSet == null) {
+                    if (!leaseSuppliers.hasNext()) {
+                        return false;
+                    }
+                    open(leaseSuppliers.next().execute());
+                }
+                if (resultSet.next()) {
+                    action.accept(mapping.read(clazz, resultSet));
+                    return true;
+                }
+                close();
+            }
+        } catch (SQLException e) {
+            close();
+            throw new UncheckedActiveRecordException(new ActiveRecordException("Could not query records", e));
+        } catch (ActiveRecordException e) {
+            close();
+            throw new UncheckedActiveRecordException(e);
+        }
+    }
+
+    private void open(Lease newLease) throws SQLException {
+        LOGGER.debug(sql);
+        lease = newLease;
+        statement = lease.getConnection().prepareStatement(sql);
+        statement.setFetchSize(INSTANCE.getDialect().getStreamingFetchSize());
+        for (int i = 0; i < parameters.length; i++) {
+            statement.setObject(i + 1, parameters[i]);
+        }
+        resultSet = statement.executeQuery();
+        mapping = ResultSetMapping.get(clazz, sql, resultSet);
+    }
+
+    /**
+     * Closes the open cursor, if the stream was not consumed completely.
+     */
+    void close() {
+        try {
+            if (resultSet != null) {
+                resultSet.close();
+            }
+            if (statement != null) {
+                statement.close();
+            }
+        } catch (SQLException e) {
+            LOGGER.warn("Could not close cursor", e);
+        } finally {
+            resultSet = null;
+            statement = null;
+            if (lease != null) {
+                lease.close();
+                lease = null;
+            }
+        }
+    }
+}
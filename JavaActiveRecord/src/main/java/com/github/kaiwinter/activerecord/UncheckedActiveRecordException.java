@@ -0,0 +1,19 @@
+package com.github.kaiwinter.activerecord;
+
+/**
+ * Wraps an {@link ActiveRecordException} where a checked exception cannot be thrown, e.g. while consuming a
+ * {@link java.util.stream.Stream} of Active Records.
+ */
+public final class UncheckedActiveRecordException extends RuntimeException {
+
+    private static final long serialVersionUID = -2425327424398765911L;
+
+    public UncheckedActiveRecordException(ActiveRecordException cause) {
+        super(cause.getMessage(), cause);
+    }
+
+    @Override
+    public synchronized ActiveRecordException getCause() {
+        return (ActiveRecordException) super.getCause();
+    }
+}
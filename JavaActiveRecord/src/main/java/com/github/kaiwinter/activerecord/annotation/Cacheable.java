@@ -0,0 +1,32 @@
+package com.github.kaiwinter.activerecord.annotation;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Enables the {@link com.github.kaiwinter.activerecord.cache.RecordCache} for an Active Record. Loaded records are
+ * cached by id and the ids returned by a query are cached by the query and its parameters. Both are bounded, the least
+ * recently used entries are evicted first, and expire after {@link #ttlSeconds()}.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+@Documented
+public @interface Cacheable {
+    /**
+     * @return the maximum number of cached records
+     */
+    int maxRecords() default 10_000;
+
+    /**
+     * @return the maximum number of cached query results
+     */
+    int maxQueries() default 1_000;
+
+    /**
+     * @return the number of seconds after which a cached record or query result expires
+     */
+    long ttlSeconds() default 60;
+}
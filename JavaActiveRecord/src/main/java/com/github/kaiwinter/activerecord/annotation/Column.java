@@ -20,4 +20,12 @@ public @interface Column {
      * @return the name of the column in the database
      */
     String alias() default "";
+
+    /**
+     * Defines when the value is loaded. A {@link FetchType#LAZY} value is not part of the queries which load the
+     * record, it is loaded on first access.
+     * 
+     * @return the {@link FetchType}
+     */
+    FetchType fetch() default FetchType.EAGER;
 }
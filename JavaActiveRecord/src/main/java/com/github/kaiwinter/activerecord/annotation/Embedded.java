@@ -0,0 +1,32 @@
+package com.github.kaiwinter.activerecord.annotation;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Annotates a field whose value object is stored in the row of the Active Record. The {@link Column}s of the value
+ * object are flattened into the table, their names are prefixed. A value object may embed further value objects.
+ * 
+ * <pre>
+ * &#64;Embedded
+ * private Address address; // columns address_street, address_city
+ * </pre>
+ * 
+ * The value object needs a constructor without parameters, it is created when the row is read. If the field is
+ * <code>null</code> its columns are written as NULL. {@link FetchType#LAZY} and {@link Version} columns are not
+ * supported in value objects.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.FIELD)
+@Documented
+public @interface Embedded {
+    /**
+     * The prefix of the column names of the value object. Defaults to the name of the field and an underscore.
+     * 
+     * @return the prefix of the column names
+     */
+    String prefix() default "";
+}
@@ -0,0 +1,16 @@
+package com.github.kaiwinter.activerecord.annotation;
+
+/**
+ * Defines when the value of a {@link Column} is loaded from the database.
+ */
+public enum FetchType {
+    /** The value is loaded with the record. */
+    EAGER,
+
+    /**
+     * The value is not loaded with the record but on first access, see
+     * {@link com.github.kaiwinter.activerecord.BaseAR#loadLazy(String)}. Use it for large values which are not needed
+     * by every reader of the record.
+     */
+    LAZY
+}
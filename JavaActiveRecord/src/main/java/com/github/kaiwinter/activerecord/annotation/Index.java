@@ -0,0 +1,37 @@
+package com.github.kaiwinter.activerecord.annotation;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Repeatable;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Declares a database index on one or more columns of an Active Record. The order of the columns is the order of the
+ * index, so a lookup by the first column can use the index too.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+@Documented
+@Repeatable(Indexes.class)
+public @interface Index {
+    /**
+     * The name of the index in the database. If not set the name is derived from the table and column names.
+     * 
+     * @return the name of the index
+     */
+    String name() default "";
+
+    /**
+     * The names of the columns in the database (the field name or the alias of the {@link Column}).
+     * 
+     * @return the columns of the index
+     */
+    String[] columns();
+
+    /**
+     * @return <code>true</code> if the index should be a unique index
+     */
+    boolean unique() default false;
+}
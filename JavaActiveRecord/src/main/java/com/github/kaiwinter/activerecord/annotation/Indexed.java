@@ -0,0 +1,28 @@
+package com.github.kaiwinter.activerecord.annotation;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a {@link Column} which should have a database index of its own. Indexes spanning more than one column are
+ * declared by {@link Index} on the Active Record class.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.FIELD)
+@Documented
+public @interface Indexed {
+    /**
+     * The name of the index in the database. If not set the name is derived from the table and column name.
+     * 
+     * @return the name of the index
+     */
+    String name() default "";
+
+    /**
+     * @return <code>true</code> if the index should be a unique index
+     */
+    boolean unique() default false;
+}
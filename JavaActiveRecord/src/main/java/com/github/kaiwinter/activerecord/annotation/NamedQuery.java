@@ -0,0 +1,43 @@
+package com.github.kaiwinter.activerecord.annotation;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Repeatable;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Declares a query of an Active Record which is executed by its name, see
+ * {@link com.github.kaiwinter.activerecord.BaseAR#findByNamedQuery(Class, String, java.util.Map)}. The query is parsed
+ * when the metadata of the Active Record is built, which catches a syntax error of the query itself, e.g. an unknown
+ * placeholder or an unterminated quote. The SQL is checked by the database only when it is prepared, call
+ * {@link com.github.kaiwinter.activerecord.db.Db#warmUp(java.util.Collection)} on startup to prepare the named
+ * queries.
+ * 
+ * <pre>
+ * &#64;NamedQuery(name = "bySurname", query = "SELECT {columns} FROM {table} WHERE surname = :surname ORDER BY name")
+ * </pre>
+ * 
+ * <code>{table}</code> is replaced by the name of the table, <code>{columns}</code> by the id and all eagerly loaded
+ * columns. Parameters are named with a leading colon, a parameter may be used more than once.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+@Documented
+@Repeatable(NamedQueries.class)
+public @interface NamedQuery {
+    /**
+     * The name of the query, unique per Active Record.
+     * 
+     * @return the name of the query
+     */
+    String name();
+
+    /**
+     * The SQL of the query with named parameters.
+     * 
+     * @return the SQL of the query
+     */
+    String query();
+}
@@ -0,0 +1,26 @@
+package com.github.kaiwinter.activerecord.annotation;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks an Active Record whose {@link com.github.kaiwinter.activerecord.BaseAR#save()},
+ * {@link com.github.kaiwinter.activerecord.BaseAR#upsert()} and
+ * {@link com.github.kaiwinter.activerecord.BaseAR#delete()} are repeated after a transient error like reads are, see
+ * {@link com.github.kaiwinter.activerecord.db.Db#call(boolean, com.github.kaiwinter.activerecord.db.SqlOperation)}.
+ * 
+ * <p>
+ * A write which failed with a lost connection may have been committed nevertheless. Only mark Active Records whose
+ * writes can be repeated safely, e.g. with {@link com.github.kaiwinter.activerecord.db.SequenceGenerator#INTERNAL} ids
+ * (the id is acquired once, a repeated insert fails on the primary key instead of creating a second row) or which are
+ * written by upserts.
+ * </p>
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+@Documented
+public @interface RetryWrites {
+}
@@ -7,6 +7,7 @@ import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
 
 import com.github.kaiwinter.activerecord.db.SequenceGenerator;
+import com.github.kaiwinter.activerecord.db.ShardStrategy;
 
 /**
  * Annotates a database table. The class name will be used as database table name (this can be overridden by defining an
@@ -31,4 +32,19 @@ public @interface Table {
      * @return the {@link SequenceGenerator} to get the ID for new records
      */
     SequenceGenerator sequenceGenerator();
+
+    /**
+     * Distributes the rows of the table across the shards defined in the <code>db.properties</code>. A sharded table
+     * needs the id before the row is written, so it must use {@link SequenceGenerator#INTERNAL}.
+     * 
+     * @return the {@link ShardStrategy}, {@link ShardStrategy#NONE} if the table is stored in the primary database
+     */
+    ShardStrategy shardStrategy() default ShardStrategy.NONE;
+
+    /**
+     * The number of ids per shard if the {@link ShardStrategy#RANGE} is used.
+     * 
+     * @return the number of ids per shard
+     */
+    long shardRangeSize() default 1_000_000L;
 }
@@ -0,0 +1,19 @@
+package com.github.kaiwinter.activerecord.annotation;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks the {@link Column} which holds the version of a row for optimistic locking. The field must be a
+ * <code>long</code> or an <code>int</code>. An update only succeeds if the version in the database is still the version
+ * which was read, and increments it. Otherwise the row was changed concurrently and an
+ * {@link com.github.kaiwinter.activerecord.OptimisticLockException} is thrown.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.FIELD)
+@Documented
+public @interface Version {
+}
@@ -0,0 +1,34 @@
+package com.github.kaiwinter.activerecord.annotation;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Enables the {@link com.github.kaiwinter.activerecord.db.WriteBehindBuffer} for an Active Record. A save only puts the
+ * record in the buffer, several saves of the same record are coalesced. The buffer is written by one batched upsert
+ * every {@link #flushIntervalMillis()}, when it is full and on shutdown. Use it for rows which are written much more
+ * often than they have to be durable, e.g. counters. Cannot be combined with {@link Version}.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+@Documented
+public @interface WriteBehind {
+    /**
+     * @return the maximum number of buffered records, a save of a further record writes the buffer first
+     */
+    int maxRecords() default 10_000;
+
+    /**
+     * @return the number of milliseconds between two flushes of the buffer
+     */
+    long flushIntervalMillis() default 1_000;
+
+    /**
+     * @return the number of failed flushes after which a buffered record is logged and dropped instead of being kept
+     *         for the next flush
+     */
+    int maxFlushAttempts() default 10;
+}
@@ -0,0 +1,173 @@
+package com.github.kaiwinter.activerecord.bulk;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+
+import com.github.kaiwinter.activerecord.metadata.ColumnType;
+
+/**
+ * Writes {@link ExportFormat#BINARY}. The values of a block are collected in one buffer per column, a block is written
+ * when it has {@link #BLOCK_ROWS} rows or its buffers hold {@link #BLOCK_BYTES} bytes, so the memory doesn't grow with
+ * the size of the export.
+ */
+final class BinaryRowWriter implements RowWriter {
+
+    /** The first bytes of the format. */
+    static final byte[] MAGIC = "ARX1".getBytes(StandardCharsets.US_ASCII);
+
+    private static final int BLOCK_ROWS = 4096;
+    private static final int BLOCK_BYTES = 4 << 20;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final DataOutputStream out;
+    private final String[] columnNames;
+    private final ColumnType[] columnTypes;
+    private final ByteArrayOutputStream[] columnBuffers;
+    private final DataOutputStream[] columnOutputs;
+    /** The null bitmap per column, <code>null</code> for primitive columns. */
+    private final byte[][] nullBitmaps;
+    private int blockRows;
+
+    BinaryRowWriter(OutputStream out, String[] columnNames, ColumnType[] columnTypes) {
+        this.out = new DataOutputStream(new BufferedOutputStream(out, BUFFER_SIZE));
+        this.columnNames = columnNames;
+        this.columnTypes = columnTypes;
+        this.columnBuffers = new ByteArrayOutputStream[columnTypes.length];
+        this.columnOutputs = new DataOutputStream[columnTypes.length];
+        this.nullBitmaps = new byte[columnTypes.length][];
+        for (int i = 0; i < columnTypes.length; i++) {
+            columnBuffers[i] = new ByteArrayOutputStream();
+            columnOutputs[i] = new DataOutputStream(columnBuffers[i]);
+            if (!columnTypes[i].javaType.isPrimitive()) {
+                nullBitmaps[i] = new byte[BLOCK_ROWS / 8];
+            }
+        }
+    }
+
+    @Override
+    public void start() throws IOException {
+        out.write(MAGIC);
+        out.writeInt(columnNames.length);
+        for (int i = 0; i < columnNames.length; i++) {
+            out.writeUTF(columnNames[i]);
+            out.writeUTF(columnTypes[i].name());
+        }
+    }
+
+    @Override
+    public void writeRow(ResultSet resultSet) throws SQLException, IOException {
+        int blockBytes = 0;
+        for (int i = 0; i < columnTypes.length; i++) {
+            boolean written = writeValue(resultSet, i + 1, columnTypes[i], columnOutputs[i]);
+            RowWriter.checkNotNull(resultSet, columnNames[i], columnTypes[i]);
+            if (!written) {
+                nullBitmaps[i][blockRows / 8] |= 1 << (blockRows % 8);
+            }
+            blockBytes += columnBuffers[i].size();
+        }
+        blockRows++;
+        if (blockRows == BLOCK_ROWS || blockBytes >= BLOCK_BYTES) {
+            writeBlock();
+        }
+    }
+
+    /**
+     * Writes the value of a column to its buffer.
+     * 
+     * @return <code>false</code> if the value is NULL and nothing was written
+     */
+    private static boolean writeValue(ResultSet resultSet, int index, ColumnType columnType, DataOutputStream output)
+            throws SQLException, IOException {
+        switch (columnType) {
+            case LONG :
+                output.writeLong(resultSet.getLong(index));
+                return true;
+            case INT :
+                output.writeInt(resultSet.getInt(index));
+                return true;
+            case SHORT :
+                output.writeShort(resultSet.getShort(index));
+                return true;
+            case BYTE :
+                output.writeByte(resultSet.getByte(index));
+                return true;
+            case DOUBLE :
+                output.writeDouble(resultSet.getDouble(index));
+                return true;
+            case FLOAT :
+                output.writeFloat(resultSet.getFloat(index));
+                return true;
+            case BOOLEAN :
+                output.writeBoolean(resultSet.getBoolean(index));
+                return true;
+            case BOXED_LONG : {
+                long value = resultSet.getLong(index);
+                if (resultSet.wasNull()) {
+                    return false;
+                }
+                output.writeLong(value);
+                return true;
+            }
+            case BOXED_INTEGER : {
+                int value = resultSet.getInt(index);
+                if (resultSet.wasNull()) {
+                    return false;
+                }
+                output.writeInt(value);
+                return true;
+            }
+            case BOXED_DOUBLE : {
+                double value = resultSet.getDouble(index);
+                if (resultSet.wasNull()) {
+                    return false;
+                }
+                output.writeDouble(value);
+                return true;
+            }
+            case BYTES :
+                return writeBytes(resultSet.getBytes(index), output);
+            default : {
+                String value = resultSet.getString(index);
+                return writeBytes(value == null ? null : value.getBytes(StandardCharsets.UTF_8), output);
+            }
+        }
+    }
+
+    private static boolean writeBytes(byte[] value, DataOutputStream output) throws IOException {
+        if (value == null) {
+            return false;
+        }
+        output.writeInt(value.length);
+        output.write(value);
+        return true;
+    }
+
+    private void writeBlock() throws IOException {
+        out.writeInt(blockRows);
+        for (int i = 0; i < columnTypes.length; i++) {
+            if (nullBitmaps[i] != null) {
+                out.write(nullBitmaps[i], 0, (blockRows + 7) / 8);
+                Arrays.fill(nullBitmaps[i], (byte) 0);
+            }
+            columnBuffers[i].writeTo(out);
+            columnBuffers[i].reset();
+        }
+        blockRows = 0;
+    }
+
+    @Override
+    public void finish() throws IOException {
+        if (blockRows > 0) {
+            writeBlock();
+        }
+        out.writeInt(0);
+        out.flush();
+    }
+}
@@ -0,0 +1,138 @@
+package com.github.kaiwinter.activerecord.bulk;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Parses CSV as written by {@link ExportFormat#CSV} record by record from a {@link Reader}. The input is read in
+ * chunks into a reused buffer, only the current record is held in memory. An empty unquoted value is returned as
+ * <code>null</code>, a quoted empty value as empty string. Empty lines are skipped.
+ */
+final class CsvParser {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final Reader reader;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private final StringBuilder value = new StringBuilder();
+    private final List<String> values = new ArrayList<>();
+    private int position;
+    private int limit;
+    private long line = 1;
+
+    CsvParser(Reader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * @return the number of the line the parser is in, starting at 1
+     */
+    long getLine() {
+        return line;
+    }
+
+    /**
+     * Parses the next record.
+     * 
+     * @return the values of the record or <code>null</code> at the end of the input
+     * @throws IOException
+     *             if the input cannot be read or is not valid CSV
+     */
+    String[] next() throws IOException {
+        int c;
+        do {
+            c = read();
+            if (c == -1) {
+                return null;
+            }
+        } while (skipLineBreak(c));
+
+        values.clear();
+        while (true) {
+            value.setLength(0);
+            if (c == '"') {
+                c = readQuoted();
+                values.add(value.toString());
+            } else {
+                while (c != ',' && c != '\r' && c != '\n' && c != -1) {
+                    value.append((char) c);
+                    c = read();
+                }
+                values.add(value.length() == 0 ? null : value.toString());
+            }
+
+            if (c == ',') {
+                c = read();
+            } else if (c == -1 || skipLineBreak(c)) {
+                return values.toArray(new String[values.size()]);
+            } else {
+                throw new IOException("Unexpected character '" + (char) c + "' after quoted value in line " + line);
+            }
+        }
+    }
+
+    /**
+     * Reads a quoted value into {@link #value}, the opening quote is already read.
+     * 
+     * @return the character after the closing quote
+     */
+    private int readQuoted() throws IOException {
+        long startLine = line;
+        while (true) {
+            int c = read();
+            if (c == -1) {
+                throw new IOException("Quoted value of line " + startLine + " is not terminated");
+            }
+            if (c == '"') {
+                c = read();
+                if (c != '"') {
+                    return c;
+                }
+            } else if (c == '\n') {
+                line++;
+            }
+            value.append((char) c);
+        }
+    }
+
+    /**
+     * Consumes a line break (CRLF, LF or CR) if <code>c</code> starts one.
+     * 
+     * @return <code>true</code> if <code>c</code> was a line break
+     */
+    private boolean skipLineBreak(int c) throws IOException {
+        if (c == '\r') {
+            if (fill() && buffer[position] == '\n') {
+                position++;
+            }
+        } else if (c != '\n') {
+            return false;
+        }
+        line++;
+        return true;
+    }
+
+    private int read() throws IOException {
+        if (!fill()) {
+            return -1;
+        }
+        return buffer[position++];
+    }
+
+    /**
+     * @return <code>true</code> if there is at least one character in the buffer
+     */
+    private boolean fill() throws IOException {
+        while (position == limit) {
+            limit = reader.read(buffer);
+            position = 0;
+            if (limit == -1) {
+                limit = 0;
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,147 @@
+package com.github.kaiwinter.activerecord.bulk;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Base64;
+
+import com.github.kaiwinter.activerecord.metadata.ColumnType;
+
+/**
+ * Writes {@link ExportFormat#CSV}. The values are read by the typed getters of the {@link ResultSet}, primitive columns
+ * are not boxed.
+ */
+final class CsvRowWriter implements RowWriter {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final Writer writer;
+    private final String[] columnNames;
+    private final ColumnType[] columnTypes;
+
+    CsvRowWriter(OutputStream out, String[] columnNames, ColumnType[] columnTypes) {
+        this.writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE);
+        this.columnNames = columnNames;
+        this.columnTypes = columnTypes;
+    }
+
+    @Override
+    public void start() throws IOException {
+        for (int i = 0; i < columnNames.length; i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            writeString(columnNames[i]);
+        }
+        writer.write("\r\n");
+    }
+
+    @Override
+    public void writeRow(ResultSet resultSet) throws SQLException, IOException {
+        for (int i = 0; i < columnTypes.length; i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            writeValue(resultSet, i + 1, columnTypes[i]);
+            RowWriter.checkNotNull(resultSet, columnNames[i], columnTypes[i]);
+        }
+        writer.write("\r\n");
+    }
+
+    private void writeValue(ResultSet resultSet, int index, ColumnType columnType) throws SQLException, IOException {
+        switch (columnType) {
+            case LONG :
+                writer.write(Long.toString(resultSet.getLong(index)));
+                break;
+            case INT :
+            case SHORT :
+            case BYTE :
+                writer.write(Integer.toString(resultSet.getInt(index)));
+                break;
+            case DOUBLE :
+                writer.write(Double.toString(resultSet.getDouble(index)));
+                break;
+            case FLOAT :
+                writer.write(Float.toString(resultSet.getFloat(index)));
+                break;
+            case BOOLEAN :
+                writer.write(resultSet.getBoolean(index) ? "true" : "false");
+                break;
+            case BOXED_LONG : {
+                long value = resultSet.getLong(index);
+                if (!resultSet.wasNull()) {
+                    writer.write(Long.toString(value));
+                }
+                break;
+            }
+            case BOXED_INTEGER : {
+                int value = resultSet.getInt(index);
+                if (!resultSet.wasNull()) {
+                    writer.write(Integer.toString(value));
+                }
+                break;
+            }
+            case BOXED_DOUBLE : {
+                double value = resultSet.getDouble(index);
+                if (!resultSet.wasNull()) {
+                    writer.write(Double.toString(value));
+                }
+                break;
+            }
+            case BYTES : {
+                byte[] value = resultSet.getBytes(index);
+                if (value != null) {
+                    writer.write(Base64.getEncoder().encodeToString(value));
+                }
+                break;
+            }
+            default : {
+                String value = resultSet.getString(index);
+                if (value != null) {
+                    writeString(value);
+                }
+                break;
+            }
+        }
+    }
+
+    /**
+     * Writes a non-null string, quoted if it is empty or contains a character with a meaning in CSV.
+     */
+    private void writeString(String value) throws IOException {
+        if (!value.isEmpty() && !needsQuotes(value)) {
+            writer.write(value);
+            return;
+        }
+        writer.write('"');
+        int start = 0;
+        int quote;
+        while ((quote = value.indexOf('"', start)) >= 0) {
+            writer.write(value, start, quote + 1 - start);
+            writer.write('"');
+            start = quote + 1;
+        }
+        writer.write(value, start, value.length() - start);
+        writer.write('"');
+    }
+
+    private static boolean needsQuotes(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == ',' || c == '"' || c == '\r' || c == '\n') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void finish() throws IOException {
+        writer.flush();
+    }
+}
@@ -0,0 +1,52 @@
+package com.github.kaiwinter.activerecord.bulk;
+
+import java.io.OutputStream;
+
+import com.github.kaiwinter.activerecord.metadata.ColumnType;
+
+/**
+ * The formats written by the {@link Exporter}.
+ */
+public enum ExportFormat {
+
+    /**
+     * CSV as of RFC 4180 in UTF-8: a header line with the column names, then one line per row, separated by CRLF. A
+     * value which contains a comma, a quote or a line break is quoted. NULL is written as empty field, an empty string
+     * as <code>""</code>. <code>byte[]</code> values are Base64 encoded. NULL in a column of a primitive type fails the
+     * export.
+     */
+    CSV {
+        @Override
+        RowWriter createRowWriter(OutputStream out, String[] columnNames, ColumnType[] columnTypes) {
+            return new CsvRowWriter(out, columnNames, columnTypes);
+        }
+    },
+
+    /**
+     * A compact columnar binary format, written in blocks of rows. All numbers are big-endian as written by
+     * {@link java.io.DataOutputStream}.
+     * 
+     * <pre>
+     * header:  "ARX1", int column count, per column: UTF name, UTF {@link ColumnType} name
+     * blocks:  int row count, per column: null bitmap and values (see below)
+     * end:     int 0
+     * </pre>
+     * 
+     * The values of one column in a block follow each other. Columns of a primitive type have no null bitmap and a
+     * value for each row, NULL in such a column fails the export. The other columns start with a bitmap of
+     * <code>(rows + 7) / 8</code> bytes, bit <code>row % 8</code> of byte <code>row / 8</code> is set for a NULL value,
+     * followed by the values of the non-NULL rows only. Strings are written as int length and UTF-8 bytes,
+     * <code>byte[]</code> as int length and the bytes, {@link ColumnType#OBJECT} values as strings.
+     */
+    BINARY {
+        @Override
+        RowWriter createRowWriter(OutputStream out, String[] columnNames, ColumnType[] columnTypes) {
+            return new BinaryRowWriter(out, columnNames, columnTypes);
+        }
+    };
+
+    /**
+     * Creates the {@link RowWriter} which writes the export to <code>out</code>.
+     */
+    abstract RowWriter createRowWriter(OutputStream out, String[] columnNames, ColumnType[] columnTypes);
+}
@@ -0,0 +1,194 @@
+package com.github.kaiwinter.activerecord.bulk;
+
+import static com.github.kaiwinter.activerecord.db.Db.INSTANCE;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.kaiwinter.activerecord.ActiveRecordException;
+import com.github.kaiwinter.activerecord.BaseAR;
+import com.github.kaiwinter.activerecord.db.Lease;
+import com.github.kaiwinter.activerecord.metadata.ColumnType;
+import com.github.kaiwinter.activerecord.metadata.MetadataCache;
+import com.github.kaiwinter.activerecord.metadata.TableMetadata;
+import com.github.kaiwinter.activerecord.metadata.TableMetadata.ColumnWithAlias;
+
+/**
+ * Exports the rows of a table to an {@link OutputStream} or a {@link WritableByteChannel} in an {@link ExportFormat}.
+ * 
+ * <p>
+ * The rows are written directly from the {@link ResultSet}, no Active Records are created. The column plan is taken
+ * from the {@link TableMetadata}: the id followed by the eager and the
+ * {@link com.github.kaiwinter.activerecord.annotation.FetchType#LAZY} columns. The query is read by a forward-only
+ * cursor with the streaming fetch size of the {@link com.github.kaiwinter.activerecord.dialect.Dialect} and the output
+ * is written in blocks, so the memory stays flat regardless of the size of the table. A sharded table is exported
+ * shard by shard.
+ * </p>
+ * 
+ * <pre>
+ * try (OutputStream out = Files.newOutputStream(Paths.get("persons.csv"))) {
+ *     Exporter.export(PersonAR.class, ExportFormat.CSV, out);
+ * }
+ * </pre>
+ */
+public final class Exporter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(Exporter.class.getSimpleName());
+
+    private Exporter() {
+        // utility class
+    }
+
+    /**
+     * Exports all rows of the table of an Active Record.
+     * 
+     * @param clazz
+     *            the Active Record class
+     * @param format
+     *            the format to write
+     * @param out
+     *            the target, flushed but not closed
+     * @return the number of exported rows
+     * @throws ActiveRecordException
+     *             when an SQL error occurs, see the wrapped cause for details.
+     * @throws IOException
+     *             if the export cannot be written
+     */
+    public static long export(Class<? extends BaseAR> clazz, ExportFormat format, OutputStream out)
+            throws ActiveRecordException, IOException {
+        return export(clazz, null, null, format, out);
+    }
+
+    /**
+     * Exports all rows of the table of an Active Record to a channel.
+     * 
+     * @param clazz
+     *            the Active Record class
+     * @param format
+     *            the format to write
+     * @param channel
+     *            the target, not closed
+     * @return the number of exported rows
+     * @throws ActiveRecordException
+     *             when an SQL error occurs, see the wrapped cause for details.
+     * @throws IOException
+     *             if the export cannot be written
+     */
+    public static long export(Class<? extends BaseAR> clazz, ExportFormat format, WritableByteChannel channel)
+            throws ActiveRecordException, IOException {
+        return export(clazz, null, null, format, Channels.newOutputStream(channel));
+    }
+
+    /**
+     * Exports the rows of the table of an Active Record with the given <code>value</code> in the given column, like
+     * {@link BaseAR#findAllByColumn(Class, String, Object)}.
+     * 
+     * @param clazz
+     *            the Active Record class
+     * @param columnName
+     *            the name of a column of the Active Record
+     * @param value
+     *            the value to query the column
+     * @param format
+     *            the format to write
+     * @param out
+     *            the target, flushed but not closed
+     * @return the number of exported rows
+     * @throws ActiveRecordException
+     *             when an SQL error occurs, see the wrapped cause for details.
+     * @throws IOException
+     *             if the export cannot be written
+     */
+    public static long exportByColumn(Class<? extends BaseAR> clazz, String columnName, Object value,
+            ExportFormat format, OutputStream out) throws ActiveRecordException, IOException {
+        if (columnName == null) {
+            throw new IllegalArgumentException("Column name must not be null");
+        }
+        return export(clazz, columnName, value, format, out);
+    }
+
+    private static long export(Class<? extends BaseAR> clazz, String columnName, Object value, ExportFormat format,
+            OutputStream out) throws ActiveRecordException, IOException {
+        TableMetadata metadata = MetadataCache.getTableMetadata(clazz);
+        List<String> columnNames = new ArrayList<>();
+        List<ColumnType> columnTypes = new ArrayList<>();
+        columnNames.add(MetadataCache.ID_COLUMN_NAME);
+        columnTypes.add(ColumnType.LONG);
+        for (ColumnWithAlias[] columns : new ColumnWithAlias[][] { metadata.columnAnnotatedFields,
+                metadata.lazyColumns }) {
+            for (ColumnWithAlias column : columns) {
+                columnNames.add(column.columnName);
+                columnTypes.add(column.columnType);
+            }
+        }
+        String query = "SELECT " + String.join(", ", columnNames) + " FROM " + metadata.tableName
+                + (columnName == null ? "" : " WHERE " + metadata.getDeclaredColumnName(columnName) + "=?");
+        LOGGER.debug(query);
+
+        RowWriter rowWriter = format.createRowWriter(out, columnNames.toArray(new String[columnNames.size()]),
+                columnTypes.toArray(new ColumnType[columnTypes.size()]));
+        rowWriter.start();
+        long rows = 0;
+        try {
+            if (INSTANCE.isSharded(metadata)) {
+                for (int shard = 0; shard < INSTANCE.getShardCount(); shard++) {
+                    try (Lease lease = INSTANCE.leaseExclusiveForShard(shard)) {
+                        rows += exportRows(lease.getConnection(), query, value, columnName != null, rowWriter);
+                    }
+                }
+            } else {
+                try (Lease lease = INSTANCE.leaseExclusiveForRead()) {
+                    rows = exportRows(lease.getConnection(), query, value, columnName != null, rowWriter);
+                }
+            }
+        } catch (SQLException e) {
+            throw new ActiveRecordException("Could not export table " + metadata.tableName, e);
+        }
+        rowWriter.finish();
+        LOGGER.debug("Exported {} rows of table '{}' as {}", rows, metadata.tableName, format);
+        return rows;
+    }
+
+    /**
+     * Writes the rows of the query. Some drivers (e.g. PostgreSQL) use a cursor only inside a transaction, so a
+     * connection in auto-commit mode reads in a transaction which is ended afterwards. The connection is leased
+     * exclusively, no other operation runs in this transaction.
+     */
+    private static long exportRows(Connection connection, String query, Object value, boolean hasParameter,
+            RowWriter rowWriter) throws SQLException, IOException {
+        boolean autoCommit = connection.getAutoCommit();
+        if (autoCommit) {
+            connection.setAutoCommit(false);
+        }
+        try (PreparedStatement statement = connection.prepareStatement(query, ResultSet.TYPE_FORWARD_ONLY,
+                ResultSet.CONCUR_READ_ONLY)) {
+            statement.setFetchSize(INSTANCE.getDialect().getStreamingFetchSize());
+            if (hasParameter) {
+                statement.setObject(1, value);
+            }
+            long rows = 0;
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    rowWriter.writeRow(resultSet);
+                    rows++;
+                }
+            }
+            return rows;
+        } finally {
+            if (autoCommit) {
+                connection.setAutoCommit(true);
+            }
+        }
+    }
+}
@@ -0,0 +1,515 @@
+package com.github.kaiwinter.activerecord.bulk;
+
+import static com.github.kaiwinter.activerecord.db.Db.INSTANCE;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.kaiwinter.activerecord.ActiveRecordException;
+import com.github.kaiwinter.activerecord.BaseAR;
+import com.github.kaiwinter.activerecord.cache.ChangeBus;
+import com.github.kaiwinter.activerecord.db.Lease;
+import com.github.kaiwinter.activerecord.db.SequenceGenerator;
+import com.github.kaiwinter.activerecord.metadata.ColumnType;
+import com.github.kaiwinter.activerecord.metadata.MetadataCache;
+import com.github.kaiwinter.activerecord.metadata.TableMetadata;
+import com.github.kaiwinter.activerecord.metadata.TableMetadata.ColumnWithAlias;
+
+/**
+ * Imports CSV as written by {@link ExportFormat#CSV} into the table of an Active Record, without creating Active
+ * Records.
+ * 
+ * <p>
+ * The header line names the columns, in any order and case. Columns of the Active Record which are missing get the
+ * default of the database. The id column is optional: if it is missing the ids are acquired from the
+ * {@link SequenceGenerator} of the Active Record, i.e. from the internal sequence or by the database. Committed
+ * imported ids are reported to the internal sequence, also if the import fails later. With
+ * {@link SequenceGenerator#DATABASE} the database sequence is not adjusted.
+ * </p>
+ * 
+ * <p>
+ * The input is parsed incrementally into batches of rows. A batch is bound to a {@link PreparedStatement} and executed
+ * as JDBC batch on a separate thread while the next batch is parsed, so parsing and writing overlap and at most two
+ * batches are in memory. The rows are committed in chunks; if the import fails the rows of the current chunk are
+ * rolled back, the chunks committed before are kept. Inside a transaction of
+ * {@link com.github.kaiwinter.activerecord.db.Db} nothing is committed, the transaction decides. A sharded table is
+ * written to all shards, each row to the shard of its id.
+ * </p>
+ * 
+ * <pre>
+ * long rows = Importer.importCsv(PersonAR.class, Paths.get("persons.csv"));
+ * </pre>
+ */
+public final class Importer {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(Importer.class.getSimpleName());
+
+    /** The default number of rows of one JDBC batch. */
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+
+    /** The default number of rows of one transaction. */
+    public static final int DEFAULT_COMMIT_SIZE = 50_000;
+
+    private Importer() {
+        // utility class
+    }
+
+    /**
+     * Imports a CSV file with the default batch and commit sizes.
+     * 
+     * @param clazz
+     *            the Active Record class
+     * @param file
+     *            the CSV file in UTF-8
+     * @return the number of imported rows
+     * @throws ActiveRecordException
+     *             when the rows cannot be inserted, see the wrapped cause for details.
+     * @throws IOException
+     *             if the file cannot be read or is not valid CSV
+     */
+    public static long importCsv(Class<? extends BaseAR> clazz, Path file) throws ActiveRecordException, IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return importCsv(clazz, channel);
+        }
+    }
+
+    /**
+     * Imports CSV from a channel with the default batch and commit sizes.
+     * 
+     * @param clazz
+     *            the Active Record class
+     * @param channel
+     *            the CSV in UTF-8, not closed
+     * @return the number of imported rows
+     * @throws ActiveRecordException
+     *             when the rows cannot be inserted, see the wrapped cause for details.
+     * @throws IOException
+     *             if the channel cannot be read or is not valid CSV
+     */
+    public static long importCsv(Class<? extends BaseAR> clazz, ReadableByteChannel channel)
+            throws ActiveRecordException, IOException {
+        return importCsv(clazz, Channels.newInputStream(channel), DEFAULT_BATCH_SIZE, DEFAULT_COMMIT_SIZE);
+    }
+
+    /**
+     * Imports CSV from a stream.
+     * 
+     * @param clazz
+     *            the Active Record class
+     * @param in
+     *            the CSV in UTF-8, not closed
+     * @param batchSize
+     *            the number of rows of one JDBC batch
+     * @param commitSize
+     *            the number of rows after which the rows are committed, rounded up to whole batches
+     * @return the number of imported rows
+     * @throws ActiveRecordException
+     *             when the rows cannot be inserted, see the wrapped cause for details.
+     * @throws IOException
+     *             if the stream cannot be read or is not valid CSV
+     */
+    public static long importCsv(Class<? extends BaseAR> clazz, InputStream in, int batchSize, int commitSize)
+            throws ActiveRecordException, IOException {
+        if (batchSize < 1 || commitSize < 1) {
+            throw new IllegalArgumentException("Batch size and commit size must be positive");
+        }
+        TableMetadata metadata = MetadataCache.getTableMetadata(clazz);
+        CsvParser parser = new CsvParser(new InputStreamReader(in, StandardCharsets.UTF_8));
+        String[] header = parser.next();
+        if (header == null) {
+            return 0;
+        }
+
+        // the columns of the CSV in the order of the header, null for the id column
+        ColumnWithAlias[] columns = new ColumnWithAlias[header.length];
+        int idIndex = -1;
+        for (int i = 0; i < header.length; i++) {
+            if (MetadataCache.ID_COLUMN_NAME.equalsIgnoreCase(header[i])) {
+                idIndex = i;
+            } else {
+                columns[i] = metadata.getColumn(header[i]);
+            }
+        }
+        boolean databaseSequence = idIndex < 0
+                && metadata.tableAnnotation.sequenceGenerator() == SequenceGenerator.DATABASE;
+        Load load = new Load(clazz, metadata, columns, idIndex, !databaseSequence, batchSize, commitSize);
+
+        ExecutorService writer = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "activerecord-import");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            load.openWriters();
+            String[] values;
+            while ((values = parser.next()) != null) {
+                if (values.length != header.length) {
+                    throw new IOException("Line " + (parser.getLine() - 1) + " has " + values.length
+                            + " values instead of " + header.length);
+                }
+                load.add(values, writer);
+            }
+            load.finish(writer);
+            LOGGER.debug("Imported {} rows into table '{}'", load.rows, metadata.tableName);
+            return load.rows;
+        } catch (SQLException e) {
+            load.rollback();
+            throw new ActiveRecordException("Import into table '" + metadata.tableName + "' failed, "
+                    + load.committedRows + " rows were committed", e);
+        } catch (IOException | ActiveRecordException | RuntimeException e) {
+            load.rollback();
+            throw e;
+        } finally {
+            writer.shutdown();
+            load.close();
+            load.updateSequenceNumber();
+            INSTANCE.publishChange(metadata.tableName, ChangeBus.ALL_ROWS);
+        }
+    }
+
+    /**
+     * The state of one import. The rows are collected per shard on the parsing thread, a full batch is handed to the
+     * writer thread after the previous batch is written.
+     */
+    private static final class Load {
+        private final Class<? extends BaseAR> clazz;
+        private final TableMetadata metadata;
+        private final ColumnWithAlias[] columns;
+        private final int idIndex;
+        private final boolean withId;
+        private final int batchSize;
+        private final int commitSize;
+        private final boolean sharded;
+        private final String query;
+        private final List<ShardWriter> shardWriters = new ArrayList<>();
+        private final List<List<String[]>> pendingRows = new ArrayList<>();
+        private final List<List<Long>> pendingIds = new ArrayList<>();
+        private Future<?> previousBatch;
+        private long rows;
+        private volatile long committedRows;
+
+        /** The highest imported id which was committed, written by the writer thread. */
+        private volatile long committedMaxId = Long.MIN_VALUE;
+
+        /** The id which was acquired before the connections were leased, 0 if it was used. */
+        private long reservedId;
+
+        Load(Class<? extends BaseAR> clazz, TableMetadata metadata, ColumnWithAlias[] columns, int idIndex,
+                boolean withId, int batchSize, int commitSize) {
+            this.clazz = clazz;
+            this.metadata = metadata;
+            this.columns = columns;
+            this.idIndex = idIndex;
+            this.withId = withId;
+            this.batchSize = batchSize;
+            this.commitSize = commitSize;
+            this.sharded = INSTANCE.isSharded(metadata);
+
+            List<String> columnNames = new ArrayList<>();
+            for (ColumnWithAlias column : columns) {
+                if (column != null) {
+                    columnNames.add(column.columnName);
+                }
+            }
+            if (withId) {
+                columnNames.add(MetadataCache.ID_COLUMN_NAME);
+            }
+            StringBuilder parameters = new StringBuilder();
+            for (int i = 0; i < columnNames.size(); i++) {
+                parameters.append(i == 0 ? "?" : ", ?");
+            }
+            this.query = "INSERT INTO " + metadata.tableName + " (" + String.join(", ", columnNames) + ") VALUES ("
+                    + parameters + ")";
+            LOGGER.debug(query);
+        }
+
+        /**
+         * Leases the connections exclusively on the calling thread, which may be in a transaction.
+         */
+        void openWriters() throws SQLException {
+            if (withId && idIndex < 0) {
+                // the sequence may read the table on first use, which waits for the exclusively leased connections
+                reservedId = INSTANCE.getNextSequenceNumber(clazz);
+            }
+            int shardCount = sharded ? INSTANCE.getShardCount() : 1;
+            for (int shard = 0; shard < shardCount; shard++) {
+                ShardWriter shardWriter = new ShardWriter(
+                        sharded ? INSTANCE.leaseExclusiveForShard(shard) : INSTANCE.leaseExclusiveForWrite());
+                shardWriters.add(shardWriter);
+                shardWriter.open(query);
+                pendingRows.add(new ArrayList<>(batchSize));
+                pendingIds.add(new ArrayList<>(batchSize));
+            }
+        }
+
+        void add(String[] values, ExecutorService writer) throws SQLException, ActiveRecordException {
+            long id = 0;
+            if (idIndex >= 0) {
+                if (values[idIndex] == null) {
+                    throw new IllegalArgumentException("Row " + (rows + 1) + " has no id");
+                }
+                id = Long.parseLong(values[idIndex]);
+            } else if (withId) {
+                id = reservedId != 0 ? reservedId : INSTANCE.getNextSequenceNumber(clazz);
+                reservedId = 0;
+            }
+            int shard = INSTANCE.getShardIndex(metadata, id);
+            pendingRows.get(shard).add(values);
+            pendingIds.get(shard).add(id);
+            rows++;
+            if (pendingRows.get(shard).size() == batchSize) {
+                submit(shard, writer);
+            }
+        }
+
+        /**
+         * Waits until the previous batch is written and hands the pending rows of a shard to the writer thread.
+         */
+        private void submit(int shard, ExecutorService writer) throws SQLException, ActiveRecordException {
+            awaitPreviousBatch();
+            List<String[]> batchRows = pendingRows.set(shard, new ArrayList<>(batchSize));
+            List<Long> batchIds = pendingIds.set(shard, new ArrayList<>(batchSize));
+            long firstRow = rows - batchRows.size() + 1;
+            ShardWriter shardWriter = shardWriters.get(shard);
+            previousBatch = writer.submit(() -> {
+                shardWriter.write(batchRows, batchIds, firstRow);
+                if (shardWriter.uncommittedRows >= commitSize) {
+                    committedRows += shardWriter.commit();
+                }
+                return null;
+            });
+        }
+
+        private void awaitPreviousBatch() throws SQLException, ActiveRecordException {
+            if (previousBatch == null) {
+                return;
+            }
+            try {
+                previousBatch.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ActiveRecordException("Interrupted while waiting for the import", e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof SQLException) {
+                    throw (SQLException) cause;
+                } else if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                throw new ActiveRecordException("Import failed", cause);
+            } finally {
+                previousBatch = null;
+            }
+        }
+
+        /**
+         * Writes the remaining rows and commits them.
+         */
+        void finish(ExecutorService writer) throws SQLException, ActiveRecordException {
+            for (int shard = 0; shard < pendingRows.size(); shard++) {
+                if (!pendingRows.get(shard).isEmpty()) {
+                    submit(shard, writer);
+                }
+            }
+            awaitPreviousBatch();
+            for (ShardWriter shardWriter : shardWriters) {
+                committedRows += shardWriter.commit();
+            }
+        }
+
+        /**
+         * Reports the highest committed imported id to the internal sequence. Called on the calling thread after the
+         * connections are released, the sequence depends on the tenant of the thread and may read the table.
+         */
+        void updateSequenceNumber() {
+            if (committedMaxId != Long.MIN_VALUE) {
+                INSTANCE.updateSequenceNumber(clazz, committedMaxId);
+            }
+        }
+
+        /**
+         * Rolls back the rows which are not committed yet, after the writer thread finished the current batch.
+         */
+        void rollback() {
+            try {
+                awaitPreviousBatch();
+            } catch (SQLException | ActiveRecordException | RuntimeException e) {
+                LOGGER.debug("Batch failed during rollback", e);
+            }
+            for (ShardWriter shardWriter : shardWriters) {
+                shardWriter.rollback();
+            }
+        }
+
+        void close() {
+            for (ShardWriter shardWriter : shardWriters) {
+                shardWriter.close();
+            }
+        }
+
+        /**
+         * The statement of one shard, only used by one thread at a time.
+         */
+        private final class ShardWriter {
+            private final Lease lease;
+            private Connection connection;
+            private boolean ownsTransaction;
+            private PreparedStatement statement;
+            private long uncommittedRows;
+            private long uncommittedMaxId = Long.MIN_VALUE;
+
+            ShardWriter(Lease lease) {
+                this.lease = lease;
+            }
+
+            void open(String query) throws SQLException {
+                connection = lease.getConnection();
+                ownsTransaction = connection.getAutoCommit();
+                if (ownsTransaction) {
+                    connection.setAutoCommit(false);
+                }
+                statement = connection.prepareStatement(query);
+            }
+
+            void write(List<String[]> batchRows, List<Long> batchIds, long firstRow) throws SQLException {
+                for (int row = 0; row < batchRows.size(); row++) {
+                    String[] values = batchRows.get(row);
+                    int parameter = 1;
+                    for (int i = 0; i < values.length; i++) {
+                        ColumnWithAlias column = columns[i];
+                        if (column == null) {
+                            continue;
+                        }
+                        try {
+                            bind(statement, parameter++, column.columnType, values[i]);
+                        } catch (IllegalArgumentException e) {
+                            throw new IllegalArgumentException("Invalid value '" + values[i] + "' for column '"
+                                    + column.columnName + "' in row " + (firstRow + row), e);
+                        }
+                    }
+                    if (withId) {
+                        statement.setLong(parameter, batchIds.get(row));
+                    }
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+                uncommittedRows += batchRows.size();
+                if (idIndex >= 0) {
+                    for (long id : batchIds) {
+                        uncommittedMaxId = Math.max(uncommittedMaxId, id);
+                    }
+                }
+            }
+
+            /**
+             * @return the number of committed rows
+             */
+            long commit() throws SQLException {
+                long rowCount = uncommittedRows;
+                if (ownsTransaction) {
+                    connection.commit();
+                }
+                if (uncommittedMaxId > committedMaxId) {
+                    committedMaxId = uncommittedMaxId;
+                }
+                uncommittedRows = 0;
+                uncommittedMaxId = Long.MIN_VALUE;
+                return rowCount;
+            }
+
+            void rollback() {
+                if (ownsTransaction && connection != null) {
+                    try {
+                        connection.rollback();
+                    } catch (SQLException e) {
+                        LOGGER.warn("Could not roll back import", e);
+                    }
+                }
+            }
+
+            void close() {
+                try {
+                    if (statement != null) {
+                        statement.close();
+                    }
+                    if (ownsTransaction) {
+                        connection.setAutoCommit(true);
+                    }
+                } catch (SQLException e) {
+                    LOGGER.warn("Could not close import statement", e);
+                } finally {
+                    lease.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Binds a CSV value as parameter by the typed setter of its {@link ColumnType}.
+     * 
+     * @throws IllegalArgumentException
+     *             if the value cannot be converted to the type of the column
+     */
+    private static void bind(PreparedStatement statement, int index, ColumnType columnType, String value)
+            throws SQLException {
+        if (value == null) {
+            statement.setNull(index, columnType.sqlType);
+            return;
+        }
+        switch (columnType) {
+            case LONG :
+            case BOXED_LONG :
+                statement.setLong(index, Long.parseLong(value));
+                break;
+            case INT :
+            case BOXED_INTEGER :
+                statement.setInt(index, Integer.parseInt(value));
+                break;
+            case SHORT :
+                statement.setShort(index, Short.parseShort(value));
+                break;
+            case BYTE :
+                statement.setByte(index, Byte.parseByte(value));
+                break;
+            case DOUBLE :
+            case BOXED_DOUBLE :
+                statement.setDouble(index, Double.parseDouble(value));
+                break;
+            case FLOAT :
+                statement.setFloat(index, Float.parseFloat(value));
+                break;
+            case BOOLEAN :
+                if (!"true".equalsIgnoreCase(value) && !"false".equalsIgnoreCase(value)) {
+                    throw new IllegalArgumentException("Not a boolean: " + value);
+                }
+                statement.setBoolean(index, Boolean.parseBoolean(value));
+                break;
+            case BYTES :
+                statement.setBytes(index, Base64.getDecoder().decode(value));
+                break;
+            default :
+                statement.setString(index, value);
+                break;
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.github.kaiwinter.activerecord.bulk;
+
+import java.io.IOException;
+import java.sql.ResultSet;
+import java.sql.SQLDataException;
+import java.sql.SQLException;
+
+import com.github.kaiwinter.activerecord.metadata.ColumnType;
+
+/**
+ * Writes the rows of an export in one {@link ExportFormat}.
+ */
+interface RowWriter {
+
+    /**
+     * Writes the header with the column plan of the export.
+     */
+    void start() throws IOException;
+
+    /**
+     * Writes the current row of the <code>resultSet</code>, the columns are read by index in the order of the column
+     * plan of the export.
+     */
+    void writeRow(ResultSet resultSet) throws SQLException, IOException;
+
+    /**
+     * Writes what is still buffered and the end of the export. The target stream is flushed but not closed.
+     */
+    void finish() throws IOException;
+
+    /**
+     * Checks the value which was read last from the <code>resultSet</code>, a column of a primitive type cannot be
+     * NULL.
+     * 
+     * @throws SQLException
+     *             if the column of a primitive type was <code>NULL</code>
+     */
+    static void checkNotNull(ResultSet resultSet, String columnName, ColumnType columnType) throws SQLException {
+        if (columnType.javaType.isPrimitive() && resultSet.wasNull()) {
+            throw new SQLDataException("NULL cannot be exported in the primitive column '" + columnName
+                    + "', use the boxed type for a nullable column", "22002");
+        }
+    }
+}
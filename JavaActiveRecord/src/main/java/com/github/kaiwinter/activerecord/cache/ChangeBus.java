@@ -0,0 +1,42 @@
+package com.github.kaiwinter.activerecord.cache;
+
+/**
+ * Distributes the changes of the rows of cached tables, so every node can evict the changed rows from its
+ * {@link RecordCache}. A change is delivered to the listeners of the publishing node immediately and to the listeners
+ * of the other nodes as soon as the implementation has transported it.
+ * 
+ * <p>
+ * The {@link ChangeBus} is chosen by the <code>changeBus</code> property of the <code>db.properties</code>, see
+ * {@link ChangeBuses}.
+ * </p>
+ */
+public interface ChangeBus {
+
+    /** The id of a change which affects several rows of a table. */
+    long ALL_ROWS = Long.MIN_VALUE;
+
+    /**
+     * Publishes the change of a row.
+     * 
+     * @param tableName
+     *            the name of the table
+     * @param id
+     *            the id of the row, {@link #ALL_ROWS} if several rows were changed
+     */
+    void publish(String tableName, long id);
+
+    /**
+     * Registers a listener for the changes of this and of all other nodes.
+     * 
+     * @param listener
+     *            the {@link ChangeListener}
+     */
+    void subscribe(ChangeListener listener);
+
+    /**
+     * Stops the delivery of changes from other nodes.
+     */
+    default void close() {
+        // nothing to release
+    }
+}
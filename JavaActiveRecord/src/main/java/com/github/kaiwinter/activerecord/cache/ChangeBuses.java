@@ -0,0 +1,43 @@
+package com.github.kaiwinter.activerecord.cache;
+
+import java.sql.SQLException;
+
+/**
+ * Chooses the {@link ChangeBus}.
+ */
+public final class ChangeBuses {
+
+    private ChangeBuses() {
+        // intentionally
+    }
+
+    /**
+     * Returns the {@link ChangeBus} for the passed name.
+     * 
+     * @param changeBusName
+     *            either <code>jvm</code> ({@link InJvmChangeBus}), <code>polling</code> ({@link PollingChangeBus}) or
+     *            the name of a class implementing {@link ChangeBus}, may be <code>null</code>
+     * @param pollIntervalMillis
+     *            the poll interval of the {@link PollingChangeBus}
+     * @return the {@link ChangeBus}, {@link InJvmChangeBus} if no name is passed
+     * @throws SQLException
+     *             if the {@link PollingChangeBus} cannot set up its change log table
+     */
+    public static ChangeBus resolve(String changeBusName, long pollIntervalMillis) throws SQLException {
+        if (changeBusName == null || changeBusName.trim().isEmpty()) {
+            return new InJvmChangeBus();
+        }
+        switch (changeBusName.trim().toLowerCase()) {
+            case "jvm" :
+                return new InJvmChangeBus();
+            case "polling" :
+                return new PollingChangeBus(pollIntervalMillis);
+            default :
+                try {
+                    return (ChangeBus) Class.forName(changeBusName.trim()).getDeclaredConstructor().newInstance();
+                } catch (ReflectiveOperationException | ClassCastException e) {
+                    throw new IllegalArgumentException("Unknown change bus: " + changeBusName, e);
+                }
+        }
+    }
+}
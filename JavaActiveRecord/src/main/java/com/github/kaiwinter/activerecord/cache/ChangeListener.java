@@ -0,0 +1,18 @@
+package com.github.kaiwinter.activerecord.cache;
+
+/**
+ * Receives the changes published on a {@link ChangeBus}.
+ */
+@FunctionalInterface
+public interface ChangeListener {
+
+    /**
+     * Called when a row was written or deleted.
+     * 
+     * @param tableName
+     *            the name of the table
+     * @param id
+     *            the id of the row, {@link ChangeBus#ALL_ROWS} if several rows were changed
+     */
+    void onChange(String tableName, long id);
+}
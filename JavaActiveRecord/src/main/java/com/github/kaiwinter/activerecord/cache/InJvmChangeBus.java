@@ -0,0 +1,32 @@
+package com.github.kaiwinter.activerecord.cache;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * {@link ChangeBus} which delivers the changes to the listeners of this JVM only. Use it if a single node writes to
+ * the database.
+ */
+public class InJvmChangeBus implements ChangeBus {
+
+    private final List<ChangeListener> listeners = new CopyOnWriteArrayList<>();
+
+    @Override
+    public void publish(String tableName, long id) {
+        notifyListeners(tableName, id);
+    }
+
+    @Override
+    public void subscribe(ChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Delivers a change to the listeners of this JVM.
+     */
+    protected void notifyListeners(String tableName, long id) {
+        for (ChangeListener listener : listeners) {
+            listener.onChange(tableName, id);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.github.kaiwinter.activerecord.cache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A thread-safe map of bounded size whose entries expire. If the map is full the least recently used entry is
+ * evicted.
+ * 
+ * @param <K>
+ *            the type of the keys
+ * @param <V>
+ *            the type of the values
+ */
+final class LruCache<K, V> {
+
+    private final long ttlNanos;
+    private final Map<K, CacheEntry<V>> entries;
+
+    /**
+     * @param maxSize
+     *            the maximum number of entries
+     * @param ttlNanos
+     *            the time after which an entry expires
+     */
+    LruCache(int maxSize, long ttlNanos) {
+        this.ttlNanos = ttlNanos;
+        this.entries = new LinkedHashMap<K, CacheEntry<V>>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, CacheEntry<V>> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * @return the value, <code>null</code> if there is none or if it is expired
+     */
+    synchronized V get(K key) {
+        CacheEntry<V> entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (System.nanoTime() - entry.created > ttlNanos) {
+            entries.remove(key);
+            return null;
+        }
+        return entry.value;
+    }
+
+    synchronized void put(K key, V value) {
+        entries.put(key, new CacheEntry<>(value, System.nanoTime()));
+    }
+
+    /**
+     * Puts the value if there is no value for the key which is not expired.
+     * 
+     * @return the value of the cache
+     */
+    synchronized V putIfAbsent(K key, V value) {
+        V existing = get(key);
+        if (existing != null) {
+            return existing;
+        }
+        put(key, value);
+        return value;
+    }
+
+    synchronized void remove(K key) {
+        entries.remove(key);
+    }
+
+    synchronized void clear() {
+        entries.clear();
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    private static final class CacheEntry<V> {
+        private final V value;
+        private final long created;
+
+        private CacheEntry(V value, long created) {
+            this.value = value;
+            this.created = created;
+        }
+    }
+}
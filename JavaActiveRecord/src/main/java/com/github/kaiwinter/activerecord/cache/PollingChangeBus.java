@@ -0,0 +1,151 @@
+package com.github.kaiwinter.activerecord.cache;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.kaiwinter.activerecord.db.Db;
+import com.github.kaiwinter.activerecord.db.Lease;
+import com.github.kaiwinter.activerecord.dialect.Dialect;
+import com.github.kaiwinter.activerecord.metadata.ColumnType;
+
+/**
+ * {@link ChangeBus} which transports the changes through the change log table <code>ar_change_log</code> of the
+ * primary database, no other service is needed. Each published change is inserted into the table, inside the
+ * transaction of the publishing thread if there is one. Every node polls the table for the changes of the other
+ * nodes. Entries are deleted after ten minutes.
+ * 
+ * <p>
+ * The change log is read with a look-back of {@value #LOOK_BACK} entries, so a change which gets a lower sequence
+ * number than an already delivered one, because its transaction committed later, is still delivered.
+ * </p>
+ */
+public class PollingChangeBus extends InJvmChangeBus {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PollingChangeBus.class.getSimpleName());
+
+    private static final String TABLE_NAME = "ar_change_log";
+    private static final long LOOK_BACK = 1000;
+    private static final long RETENTION_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+    private static final String INSERT_QUERY = "INSERT INTO " + TABLE_NAME
+            + " (table_name, row_id, node, created) VALUES (?, ?, ?, ?)";
+    private static final String SELECT_QUERY = "SELECT seq, table_name, row_id FROM " + TABLE_NAME
+            + " WHERE seq > ? AND node <> ? ORDER BY seq";
+    private static final String DELETE_QUERY = "DELETE FROM " + TABLE_NAME + " WHERE created < ?";
+
+    /** Identifies the changes of this node in the change log. */
+    private final String node = UUID.randomUUID().toString();
+
+    private final ScheduledExecutorService poller;
+
+    /** The highest sequence number which was read. */
+    private long lastSequenceNumber;
+
+    /** The sequence numbers within the look-back which were delivered already. */
+    private final NavigableSet<Long> delivered = new TreeSet<>();
+
+    private long lastPruned = System.currentTimeMillis();
+
+    /**
+     * Creates the change log table if it doesn't exist and starts polling.
+     * 
+     * @param pollIntervalMillis
+     *            the milliseconds between two polls
+     * @throws SQLException
+     *             if the change log table cannot be created or read
+     */
+    public PollingChangeBus(long pollIntervalMillis) throws SQLException {
+        Dialect dialect = Db.INSTANCE.getDialect();
+        try (Lease lease = Db.INSTANCE.leaseForWrite();
+                Statement statement = lease.getConnection().createStatement()) {
+            statement.execute("CREATE TABLE IF NOT EXISTS " + TABLE_NAME //
+                    + " (" + dialect.getIdColumnDefinition("seq", true) //
+                    + ", table_name " + dialect.getColumnType(ColumnType.STRING) //
+                    + ", row_id " + dialect.getColumnType(ColumnType.LONG) //
+                    + ", node " + dialect.getColumnType(ColumnType.STRING) //
+                    + ", created " + dialect.getColumnType(ColumnType.LONG) + ")");
+            try (ResultSet resultSet = statement.executeQuery("SELECT MAX(seq) FROM " + TABLE_NAME)) {
+                lastSequenceNumber = resultSet.next() ? resultSet.getLong(1) : 0;
+            }
+        }
+        poller = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "activerecord-change-poller");
+            thread.setDaemon(true);
+            return thread;
+        });
+        poller.scheduleWithFixedDelay(() -> {
+            try {
+                poll();
+            } catch (SQLException | RuntimeException e) {
+                LOGGER.error("Could not poll the change log", e);
+            }
+        }, pollIntervalMillis, pollIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void publish(String tableName, long id) {
+        try (Lease lease = Db.INSTANCE.leaseForWrite();
+                PreparedStatement statement = lease.getConnection().prepareStatement(INSERT_QUERY)) {
+            statement.setString(1, tableName);
+            statement.setLong(2, id);
+            statement.setString(3, node);
+            statement.setLong(4, System.currentTimeMillis());
+            statement.executeUpdate();
+        } catch (SQLException e) {
+            LOGGER.error("Could not publish change of table '" + tableName + "', other nodes may read stale records",
+                    e);
+        }
+        notifyListeners(tableName, id);
+    }
+
+    /**
+     * Delivers the changes of the other nodes which were not delivered yet and deletes outdated entries. The change
+     * log is read from a read replica if there is one, a lagging replica only delays the delivery of the changes.
+     * 
+     * @throws SQLException
+     *             if the change log cannot be read
+     */
+    synchronized void poll() throws SQLException {
+        try (Lease lease = Db.INSTANCE.leaseForRead();
+                PreparedStatement statement = lease.getConnection().prepareStatement(SELECT_QUERY)) {
+            statement.setLong(1, lastSequenceNumber - LOOK_BACK);
+            statement.setString(2, node);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    long sequenceNumber = resultSet.getLong(1);
+                    if (delivered.add(sequenceNumber)) {
+                        notifyListeners(resultSet.getString(2), resultSet.getLong(3));
+                    }
+                    lastSequenceNumber = Math.max(lastSequenceNumber, sequenceNumber);
+                }
+            }
+        }
+        delivered.headSet(lastSequenceNumber - LOOK_BACK, true).clear();
+
+        long now = System.currentTimeMillis();
+        if (now - lastPruned > RETENTION_MILLIS) {
+            try (Lease lease = Db.INSTANCE.leaseForWrite();
+                    PreparedStatement statement = lease.getConnection().prepareStatement(DELETE_QUERY)) {
+                statement.setLong(1, now - RETENTION_MILLIS);
+                statement.executeUpdate();
+            }
+            lastPruned = now;
+        }
+    }
+
+    @Override
+    public void close() {
+        poller.shutdownNow();
+    }
+}
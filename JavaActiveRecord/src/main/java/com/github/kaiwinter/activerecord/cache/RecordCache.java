@@ -0,0 +1,212 @@
+package com.github.kaiwinter.activerecord.cache;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.github.kaiwinter.activerecord.BaseAR;
+import com.github.kaiwinter.activerecord.annotation.Cacheable;
+import com.github.kaiwinter.activerecord.db.Db;
+
+/**
+ * The cache of a {@link Cacheable} Active Record. It holds the loaded records by id and the ids of query results by
+ * the SQL query and its parameters. A query result is only served from the cache if all its records are cached too, so
+ * a cache hit doesn't create any Active Record.
+ * 
+ * <p>
+ * Every write through an Active Record is published on the {@link ChangeBus} and invalidates the caches of its table
+ * on every node, that is of all Active Records which are mapped to the same table: the record is evicted and all query
+ * results are dropped. Writes which bypass the Active Records (other applications, plain SQL) are not detected, the
+ * entries expire after {@link Cacheable#ttlSeconds()}.
+ * </p>
+ * 
+ * <p>
+ * The cached records are shared by all callers. Change a record returned by a cached finder only to save it. Records
+ * and query results loaded inside a transaction are not cached, they may contain uncommitted changes.
+ * </p>
+ */
+public final class RecordCache {
+
+    /** The caches of all cached Active Records by their table name. */
+    private static final Map<String, List<RecordCache>> CACHES_BY_TABLE = new ConcurrentHashMap<>();
+
+    private final LruCache<Long, BaseAR> records;
+    private final LruCache<List<Object>, long[]> queryResults;
+
+    /**
+     * Incremented by every invalidation. A loaded record or query result is only put in the cache if no invalidation
+     * happened while it was loaded.
+     */
+    private final AtomicLong generation = new AtomicLong();
+
+    private RecordCache(Cacheable cacheable) {
+        long ttlNanos = TimeUnit.SECONDS.toNanos(cacheable.ttlSeconds());
+        records = new LruCache<>(cacheable.maxRecords(), ttlNanos);
+        queryResults = new LruCache<>(cacheable.maxQueries(), ttlNanos);
+    }
+
+    /**
+     * Creates the cache of an Active Record and registers it for the invalidation of its table.
+     * 
+     * @param tableName
+     *            the name of the table of the Active Record
+     * @param cacheable
+     *            the annotation of the Active Record
+     * @return the new cache
+     */
+    public static RecordCache create(String tableName, Cacheable cacheable) {
+        RecordCache cache = new RecordCache(cacheable);
+        CACHES_BY_TABLE.computeIfAbsent(tableName, key -> new CopyOnWriteArrayList<>()).add(cache);
+        // starts receiving the changes of the other nodes
+        Db.INSTANCE.getChangeBus();
+        return cache;
+    }
+
+    /**
+     * @param tableName
+     *            the name of the table
+     * @return <code>true</code> if an Active Record of the table is cached
+     */
+    public static boolean isCached(String tableName) {
+        return CACHES_BY_TABLE.containsKey(tableName);
+    }
+
+    /**
+     * The {@link ChangeListener} which invalidates the caches of the changed table.
+     * 
+     * @param tableName
+     *            the name of the table
+     * @param id
+     *            the id of the row, {@link ChangeBus#ALL_ROWS} if several rows were changed
+     */
+    public static void onChange(String tableName, long id) {
+        if (id == ChangeBus.ALL_ROWS) {
+            invalidate(tableName);
+        } else {
+            invalidate(tableName, id);
+        }
+    }
+
+    /**
+     * @return the current generation, pass it to {@link #putRecord(long, BaseAR)} and
+     *         {@link #putQueryResult(long, String, Object[], long[])} after loading
+     */
+    public long getGeneration() {
+        return generation.get();
+    }
+
+    /**
+     * @param id
+     *            the id of the record
+     * @return the cached record, <code>null</code> if it is not cached
+     */
+    public BaseAR getRecord(long id) {
+        return records.get(id);
+    }
+
+    /**
+     * Caches a loaded record. If the record is already cached the cached instance is kept.
+     * 
+     * @param loadedGeneration
+     *            the generation before the record was loaded
+     * @param activeRecord
+     *            the loaded record
+     * @return the cached instance, or the loaded record if the cache was invalidated while it was loaded or if it was
+     *         loaded inside a transaction
+     */
+    @SuppressWarnings("unchecked")
+    public <T extends BaseAR> T putRecord(long loadedGeneration, T activeRecord) {
+        if (loadedGeneration != generation.get() || Db.INSTANCE.isInTransaction()) {
+            return activeRecord;
+        }
+        return (T) records.putIfAbsent(activeRecord.getIdValue(), activeRecord);
+    }
+
+    /**
+     * @param query
+     *            the SQL query
+     * @param parameters
+     *            the parameters of the query
+     * @return the ids of the cached result, <code>null</code> if it is not cached
+     */
+    public long[] getQueryResult(String query, Object... parameters) {
+        return queryResults.get(getKey(query, parameters));
+    }
+
+    /**
+     * Caches the ids of a query result, unless it was loaded inside a transaction.
+     * 
+     * @param loadedGeneration
+     *            the generation before the query was executed
+     * @param query
+     *            the SQL query
+     * @param parameters
+     *            the parameters of the query
+     * @param ids
+     *            the ids of the result
+     */
+    public void putQueryResult(long loadedGeneration, String query, Object[] parameters, long[] ids) {
+        if (loadedGeneration == generation.get() && !Db.INSTANCE.isInTransaction()) {
+            queryResults.put(getKey(query, parameters), ids);
+        }
+    }
+
+    private static List<Object> getKey(String query, Object[] parameters) {
+        List<Object> key = new ArrayList<>(parameters.length + 1);
+        key.add(query);
+        key.addAll(Arrays.asList(parameters));
+        return key;
+    }
+
+    /**
+     * Invalidates the caches of a table after a row was written or deleted: the record is evicted and all query
+     * results are dropped.
+     * 
+     * @param tableName
+     *            the name of the table
+     * @param id
+     *            the id of the written row
+     */
+    public static void invalidate(String tableName, long id) {
+        for (RecordCache cache : CACHES_BY_TABLE.getOrDefault(tableName, Collections.emptyList())) {
+            cache.generation.incrementAndGet();
+            cache.records.remove(id);
+            cache.queryResults.clear();
+        }
+    }
+
+    /**
+     * Invalidates the caches of a table after several rows were written.
+     * 
+     * @param tableName
+     *            the name of the table
+     */
+    public static void invalidate(String tableName) {
+        for (RecordCache cache : CACHES_BY_TABLE.getOrDefault(tableName, Collections.emptyList())) {
+            cache.clear();
+        }
+    }
+
+    /**
+     * Invalidates the caches of all tables, e.g. after a rollback.
+     */
+    public static void invalidateAll() {
+        for (List<RecordCache> caches : CACHES_BY_TABLE.values()) {
+            for (RecordCache cache : caches) {
+                cache.clear();
+            }
+        }
+    }
+
+    private void clear() {
+        generation.incrementAndGet();
+        records.clear();
+        queryResults.clear();
+    }
+}
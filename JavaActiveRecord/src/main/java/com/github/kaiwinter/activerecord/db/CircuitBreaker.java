@@ -0,0 +1,127 @@
+package com.github.kaiwinter.activerecord.db;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Fails operations fast while the database is unhealthy, see {@link Db#call(boolean, SqlOperation)}. After
+ * <code>failureThreshold</code> consecutive transient errors the breaker opens and rejects all operations for
+ * <code>openMillis</code>. Then a single operation is let through: if it succeeds the breaker closes, otherwise it
+ * opens again. Only this trial decides, the outcome of an operation which was let through before the breaker opened
+ * is ignored. Errors which are not transient (e.g. a constraint violation) show that the database is reachable and
+ * count as success.
+ */
+public final class CircuitBreaker {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CircuitBreaker.class.getSimpleName());
+
+    /** Never opens. */
+    public static final CircuitBreaker DISABLED = new CircuitBreaker(0, 0);
+
+    private final int failureThreshold;
+    private final long openNanos;
+
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+
+    /** When the breaker lets the next trial operation through, 0 if it is closed. */
+    private volatile long openUntilNanos;
+
+    /** The thread which runs the trial operation of the half-open breaker, <code>null</code> if none. */
+    private final AtomicReference<Thread> trial = new AtomicReference<>();
+
+    /**
+     * Constructs a new {@link CircuitBreaker}.
+     * 
+     * @param failureThreshold
+     *            the number of consecutive transient errors which open the breaker, 0 to disable it
+     * @param openMillis
+     *            how long the open breaker rejects operations
+     */
+    public CircuitBreaker(int failureThreshold, long openMillis) {
+        if (failureThreshold < 0 || openMillis < 0) {
+            throw new IllegalArgumentException(
+                    "Invalid circuit breaker: threshold " + failureThreshold + ", open " + openMillis + " ms");
+        }
+        this.failureThreshold = failureThreshold;
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(openMillis);
+    }
+
+    /**
+     * Asks for permission to run an operation.
+     * 
+     * @return <code>true</code> if the breaker is closed or the operation is the trial of the half-open breaker, the
+     *         trial is owned by the current thread until it records its outcome
+     */
+    boolean tryAcquire() {
+        long openUntil = openUntilNanos;
+        if (openUntil == 0) {
+            return true;
+        }
+        if (System.nanoTime() - openUntil < 0) {
+            return false;
+        }
+        Thread current = Thread.currentThread();
+        return trial.compareAndSet(null, current) || trial.get() == current;
+    }
+
+    /**
+     * Records the outcome of a permitted operation. While the breaker is open only the outcome of the trial counts.
+     * 
+     * @param transientFailure
+     *            <code>true</code> if the operation failed with a transient error
+     */
+    void record(boolean transientFailure) {
+        if (failureThreshold == 0) {
+            return;
+        }
+        boolean trialOwner = trial.get() == Thread.currentThread();
+        if (openUntilNanos != 0 && !trialOwner) {
+            // let through before the breaker opened
+            return;
+        }
+        if (!transientFailure) {
+            if (consecutiveFailures.get() != 0) {
+                consecutiveFailures.set(0);
+            }
+            if (trialOwner) {
+                openUntilNanos = 0;
+                trial.set(null);
+                LOGGER.info("Circuit breaker closed");
+            }
+            return;
+        }
+        int failures = consecutiveFailures.incrementAndGet();
+        if (failures >= failureThreshold || trialOwner) {
+            openUntilNanos = System.nanoTime() + Math.max(1, openNanos);
+            trial.set(null);
+            LOGGER.warn("Circuit breaker opened after {} consecutive transient errors", failures);
+        }
+    }
+
+    /**
+     * Gives up the trial of the current thread if it didn't record an outcome, the next operation becomes the trial.
+     */
+    void releaseTrial() {
+        Thread current = Thread.currentThread();
+        if (trial.get() == current) {
+            trial.compareAndSet(current, null);
+        }
+    }
+
+    /**
+     * @return <code>true</code> if the breaker rejects operations, at least until the next trial
+     */
+    public boolean isOpen() {
+        return openUntilNanos != 0;
+    }
+
+    @Override
+    public String toString() {
+        return failureThreshold == 0 ? "disabled"
+                : "threshold " + failureThreshold + ", open " + TimeUnit.NANOSECONDS.toMillis(openNanos) + " ms";
+    }
+}
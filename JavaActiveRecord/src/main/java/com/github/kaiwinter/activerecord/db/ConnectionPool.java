@@ -0,0 +1,352 @@
+package com.github.kaiwinter.activerecord.db;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The connections to one database (the primary, a read replica or a shard). A connection in auto-commit mode is
+ * shared by all callers, a shared {@link Lease} doesn't get a connection exclusively but counts the operations which
+ * are currently running on it. A new shared {@link Lease} gets the connection with the fewest running operations, so
+ * concurrent operations are spread across all connections.
+ * 
+ * <p>
+ * Work which changes the state of a connection, e.g. a transaction, needs an exclusive {@link Lease}
+ * ({@link #leaseExclusive()}). The connection is reserved, it waits for the running operations to finish and no
+ * shared {@link Lease} gets it until the exclusive {@link Lease} is closed. If no connection can be leased within the
+ * timeout an {@link SQLTransientConnectionException} is thrown, e.g. if all connections are leased exclusively.
+ * </p>
+ * 
+ * <p>
+ * A {@link ConnectionPool} of a {@link DataSource} ({@link #ConnectionPool(String, DataSource, int, long)}) doesn't
+ * keep connections open, the {@link DataSource} is the actual pool. Each {@link Lease} borrows a connection from the
+ * {@link DataSource} and closes it when it is closed, so a broken connection is replaced by the {@link DataSource}. An
+ * exclusive {@link Lease}, e.g. of a transaction, keeps its connection until it is closed.
+ * </p>
+ */
+public final class ConnectionPool {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ConnectionPool.class.getSimpleName());
+
+    /** The default milliseconds to wait for a connection. */
+    public static final long DEFAULT_TIMEOUT_MILLIS = 30_000;
+
+    private final String name;
+    /** The {@link DataSource} the connections are borrowed from, <code>null</code> for fixed connections. */
+    private final DataSource dataSource;
+    /** The connections, for a {@link DataSource} the borrowed ones or <code>null</code>, guarded by this. */
+    private final List<Connection> connections;
+    private final long timeoutMillis;
+
+    /** The running operations per connection, guarded by <code>this</code>. */
+    private final int[] inFlightPerConnection;
+
+    /** Marks the connections which are leased or reserved exclusively, guarded by <code>this</code>. */
+    private final boolean[] exclusive;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private int counter;
+
+    /**
+     * Constructs a new {@link ConnectionPool} with a single connection.
+     * 
+     * @param name
+     *            the name of the database, used for logging
+     * @param connection
+     *            the connection to the database
+     */
+    public ConnectionPool(String name, Connection connection) {
+        this(name, Collections.singletonList(connection));
+    }
+
+    /**
+     * Constructs a new {@link ConnectionPool} with the default timeout.
+     * 
+     * @param name
+     *            the name of the database, used for logging
+     * @param connections
+     *            the connections to the database, at least one
+     */
+    public ConnectionPool(String name, List<Connection> connections) {
+        this(name, connections, DEFAULT_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Constructs a new {@link ConnectionPool}.
+     * 
+     * @param name
+     *            the name of the database, used for logging
+     * @param connections
+     *            the connections to the database, at least one
+     * @param timeoutMillis
+     *            the milliseconds to wait for a connection
+     */
+    public ConnectionPool(String name, List<Connection> connections, long timeoutMillis) {
+        this(name, null, new ArrayList<>(connections), timeoutMillis);
+    }
+
+    /**
+     * Constructs a new {@link ConnectionPool} which borrows a connection from a {@link DataSource} for each
+     * {@link Lease}.
+     * 
+     * @param name
+     *            the name of the database, used for logging
+     * @param dataSource
+     *            the {@link DataSource} of the database
+     * @param poolSize
+     *            the maximum number of connections which are borrowed at the same time, at least one
+     * @param timeoutMillis
+     *            the milliseconds to wait until fewer than <code>poolSize</code> connections are borrowed
+     */
+    public ConnectionPool(String name, DataSource dataSource, int poolSize, long timeoutMillis) {
+        this(name, dataSource, new ArrayList<>(Collections.nCopies(poolSize, (Connection) null)), timeoutMillis);
+    }
+
+    private ConnectionPool(String name, DataSource dataSource, List<Connection> connections, long timeoutMillis) {
+        this.name = name;
+        this.dataSource = dataSource;
+        this.connections = connections;
+        this.timeoutMillis = timeoutMillis;
+        this.inFlightPerConnection = new int[connections.size()];
+        this.exclusive = new boolean[connections.size()];
+    }
+
+    /**
+     * @return the first connection
+     * @throws IllegalStateException
+     *             if the connections are borrowed from a {@link DataSource}, use a {@link Lease} instead
+     */
+    public Connection getConnection() {
+        if (dataSource != null) {
+            throw new IllegalStateException(name + " borrows its connections from a DataSource, use a Lease");
+        }
+        return connections.get(0);
+    }
+
+    /**
+     * @return all connections of this pool, for a {@link DataSource} the connections which are currently borrowed
+     */
+    public synchronized List<Connection> getConnections() {
+        List<Connection> open = new ArrayList<>(connections);
+        open.removeIf(connection -> connection == null);
+        return Collections.unmodifiableList(open);
+    }
+
+    /**
+     * @return <code>true</code> if each {@link Lease} borrows a connection from a {@link DataSource}
+     */
+    public boolean borrowsConnections() {
+        return dataSource != null;
+    }
+
+    /**
+     * Creates a new pool of the same {@link DataSource}, which is independent of the leases and the closing of this
+     * one.
+     * 
+     * @return the new pool
+     */
+    ConnectionPool reopen() {
+        if (dataSource == null) {
+            throw new IllegalStateException(name + " has fixed connections which cannot be reopened");
+        }
+        return new ConnectionPool(name, dataSource, connections.size(), timeoutMillis);
+    }
+
+    /**
+     * Leases the shared connection with the fewest running operations for one operation. Connections which are leased
+     * exclusively are skipped. For a {@link DataSource} a connection is borrowed. The {@link Lease} has to be closed
+     * when the operation is finished.
+     * 
+     * @return the {@link Lease}
+     * @throws SQLTransientConnectionException
+     *             if all connections stay leased exclusively for the timeout
+     * @throws SQLException
+     *             if the {@link DataSource} cannot open a connection
+     */
+    public Lease lease() throws SQLException {
+        return borrow(reserveShared(), false);
+    }
+
+    private synchronized int reserveShared() throws SQLException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        while (true) {
+            int start = Math.floorMod(counter++, connections.size());
+            int selected = -1;
+            for (int i = 0; i < connections.size(); i++) {
+                int index = (start + i) % connections.size();
+                // a borrowed connection is not shared
+                if (!exclusive[index] && (dataSource == null || inFlightPerConnection[index] == 0)
+                        && (selected < 0 || inFlightPerConnection[index] < inFlightPerConnection[selected])) {
+                    selected = index;
+                }
+            }
+            if (selected >= 0) {
+                acquire(selected);
+                return selected;
+            }
+            await(deadline);
+        }
+    }
+
+    /**
+     * Leases a connection exclusively, e.g. for a transaction. The connection with the fewest running operations is
+     * reserved and returned when they are finished. The {@link Lease} has to be closed when the work is finished.
+     * 
+     * @return the {@link Lease}
+     * @throws SQLTransientConnectionException
+     *             if no connection becomes free within the timeout
+     * @throws SQLException
+     *             if the {@link DataSource} cannot open a connection
+     */
+    public Lease leaseExclusive() throws SQLException {
+        return borrow(reserveExclusive(), true);
+    }
+
+    private synchronized int reserveExclusive() throws SQLException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        int selected = -1;
+        while (selected < 0) {
+            for (int index = 0; index < connections.size(); index++) {
+                if (!exclusive[index]
+                        && (selected < 0 || inFlightPerConnection[index] < inFlightPerConnection[selected])) {
+                    selected = index;
+                }
+            }
+            if (selected < 0) {
+                await(deadline);
+            }
+        }
+        // reserved, so no shared lease gets it while its operations finish
+        exclusive[selected] = true;
+        try {
+            while (inFlightPerConnection[selected] > 0) {
+                await(deadline);
+            }
+        } catch (SQLTransientConnectionException e) {
+            exclusive[selected] = false;
+            notifyAll();
+            throw e;
+        }
+        acquire(selected);
+        return selected;
+    }
+
+    /**
+     * Leases a specific connection of this pool, e.g. the connection of a transaction for an operation of the thread
+     * which leased it exclusively.
+     * 
+     * @param connection
+     *            a connection of this pool
+     * @return the {@link Lease}
+     */
+    synchronized Lease lease(Connection connection) {
+        int index = connections.indexOf(connection);
+        acquire(index);
+        return new Lease(this, connection, index, false);
+    }
+
+    private void acquire(int index) {
+        inFlight.incrementAndGet();
+        inFlightPerConnection[index]++;
+    }
+
+    /**
+     * Creates the {@link Lease} of a reserved connection, for a {@link DataSource} the connection is borrowed first.
+     */
+    private Lease borrow(int index, boolean exclusiveLease) throws SQLException {
+        if (dataSource == null) {
+            return new Lease(this, connections.get(index), index, exclusiveLease);
+        }
+        Connection connection;
+        try {
+            connection = dataSource.getConnection();
+        } catch (SQLException | RuntimeException e) {
+            release(index, exclusiveLease);
+            throw e;
+        }
+        synchronized (this) {
+            connections.set(index, connection);
+        }
+        return new Lease(this, connection, index, exclusiveLease);
+    }
+
+    private void await(long deadline) throws SQLTransientConnectionException {
+        long remainingNanos = deadline - System.nanoTime();
+        if (remainingNanos <= 0) {
+            throw new SQLTransientConnectionException(
+                    "No connection of " + name + " available within " + timeoutMillis + " ms");
+        }
+        try {
+            TimeUnit.NANOSECONDS.timedWait(this, remainingNanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLTransientConnectionException("Interrupted while waiting for a connection of " + name, e);
+        }
+    }
+
+    void release(int index, boolean exclusiveLease) {
+        Connection returned = null;
+        synchronized (this) {
+            if (dataSource != null && inFlightPerConnection[index] == 1) {
+                // the last operation on a borrowed connection, it goes back to the DataSource
+                returned = connections.set(index, null);
+            }
+            inFlightPerConnection[index]--;
+            inFlight.decrementAndGet();
+            if (exclusiveLease) {
+                exclusive[index] = false;
+            }
+            if (exclusiveLease || inFlightPerConnection[index] == 0) {
+                notifyAll();
+            }
+        }
+        if (returned != null) {
+            try {
+                returned.close();
+            } catch (SQLException e) {
+                LOGGER.warn("Could not return connection to {}", name, e);
+            }
+        }
+    }
+
+    /**
+     * @return the number of operations which are currently running on this database
+     */
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * @return the name of the database
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Closes all connections, for a {@link DataSource} the connections which are currently borrowed.
+     * 
+     * @throws SQLException
+     *             if closing a connection fails
+     */
+    public void close() throws SQLException {
+        for (Connection connection : getConnections()) {
+            connection.close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -1,17 +1,103 @@
 package com.github.kaiwinter.activerecord.db;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.github.kaiwinter.activerecord.ActiveRecordException;
 import com.github.kaiwinter.activerecord.BaseAR;
+import com.github.kaiwinter.activerecord.CircuitBreakerOpenException;
+import com.github.kaiwinter.activerecord.cache.ChangeBus;
+import com.github.kaiwinter.activerecord.cache.ChangeBuses;
+import com.github.kaiwinter.activerecord.cache.InJvmChangeBus;
+import com.github.kaiwinter.activerecord.cache.RecordCache;
+import com.github.kaiwinter.activerecord.dialect.Dialect;
+import com.github.kaiwinter.activerecord.dialect.Dialects;
+import com.github.kaiwinter.activerecord.metadata.MetadataCache;
+import com.github.kaiwinter.activerecord.metadata.TableMetadata;
 
 /**
  * Singleton for accessing the database.
+ * 
+ * <p>
+ * Besides the primary database the <code>db.properties</code> can define read replicas by
+ * <code>replica.1.connectionString</code>, <code>replica.2.connectionString</code> and so on. Reads which are not
+ * part of a transaction are routed to the replicas, the replica is chosen by the {@link ReplicaSelection} of the
+ * <code>replicaSelection</code> property (default {@link ReplicaSelection#ROUND_ROBIN}). Writes and all operations of
+ * a thread inside a transaction ({@link #beginTransaction()}) use the primary database. Replicas may lag behind the
+ * primary, a record may not be readable from a replica immediately after it was written.
+ * </p>
+ * 
+ * <p>
+ * Tables with a {@link ShardStrategy} are stored in the shards defined by <code>shard.1.connectionString</code>,
+ * <code>shard.2.connectionString</code> and so on. Operations on a single row are routed to the shard of its id,
+ * operations on the whole table run in parallel on all shards. Sharded tables are not part of transactions.
+ * </p>
+ * 
+ * <p>
+ * The changes of the rows of {@link com.github.kaiwinter.activerecord.annotation.Cacheable} Active Records are
+ * published on the {@link ChangeBus} of the <code>changeBus</code> property (see {@link ChangeBuses}), so the caches of
+ * all nodes are invalidated. The {@link com.github.kaiwinter.activerecord.cache.PollingChangeBus} polls every
+ * <code>changeBus.pollIntervalMillis</code> (default 1000).
+ * </p>
+ * 
+ * <p>
+ * The <code>poolSize</code> property defines the number of connections which are opened to each database (default
+ * 1). Keep it at 1 for in-memory databases, each connection would see its own database. A transaction leases a
+ * connection exclusively, other threads wait up to <code>poolTimeoutMillis</code> (default 30000) for a free
+ * connection, see {@link ConnectionPool}.
+ * </p>
+ * 
+ * <p>
+ * Instead of the <code>db.properties</code> the databases can be configured by {@link #init(Properties)} or
+ * {@link #init(DataSource, int)}, which also replace a configuration at runtime. {@link #close(long, TimeUnit)} drains
+ * the running operations and closes all connections.
+ * </p>
+ * 
+ * <p>
+ * Reads which are not part of a transaction are repeated after transient errors (see
+ * {@link Dialect#isTransient(SQLException)}), writes only for
+ * {@link com.github.kaiwinter.activerecord.annotation.RetryWrites} Active Records. The {@link RetryPolicy} is set by
+ * <code>retry.maxAttempts</code> (default 3), <code>retry.backoffMillis</code> (default 10) and
+ * <code>retry.maxBackoffMillis</code> (default 500). The {@link CircuitBreaker} is enabled by
+ * <code>circuitBreaker.failureThreshold</code> and <code>circuitBreaker.openMillis</code> (default 5000).
+ * </p>
+ * 
+ * <p>
+ * The operations of a thread with a {@link TenantContext tenant} use the tables named by the
+ * <code>tenant.tableName</code> property, e.g. <code>{tenant}_{table}</code> for a table per tenant or
+ * <code>{tenant}.{table}</code> for a schema per tenant (default <code>{table}</code>, the tables of the default
+ * tenant). A tenant with a <code>tenant.&lt;name&gt;.connectionString</code> property or added by
+ * {@link #addTenant(String, DataSource, int)} uses its own connection pool instead of the primary database and the
+ * replicas, it has no shards. A tenant needs its own tables or its own database: without a connection pool of its own
+ * the operations of a tenant are rejected unless the table name contains <code>{tenant}</code>, as the IDs, the
+ * caches and the write-behind buffers are kept per tenant. The table name must be configured before the metadata of
+ * a tenant is built. A tenant added by {@link #addTenant(String, DataSource, int)} is kept by a new
+ * {@link #init(Properties)} or {@link #init(DataSource, int)}, unless the new configuration defines its database.
+ * </p>
  */
 public enum Db {
     INSTANCE;
@@ -19,30 +105,990 @@ public enum Db {
     private static final String PROPERTIES_FILE = "db.properties";
     private static final String PROPERTY_DRIVERCLASS = "driverClass";
     private static final String PROPERTY_CONNECTIONSTRING = "connectionString";
+    private static final String PROPERTY_DIALECT = "dialect";
+    private static final String PROPERTY_REPLICA_CONNECTIONSTRING = "replica.%d.connectionString";
+    private static final String PROPERTY_REPLICA_SELECTION = "replicaSelection";
+    private static final String PROPERTY_SHARD_CONNECTIONSTRING = "shard.%d.connectionString";
+    private static final String PROPERTY_POOL_SIZE = "poolSize";
+    private static final String PROPERTY_POOL_TIMEOUT = "poolTimeoutMillis";
+    private static final String PROPERTY_CHANGE_BUS = "changeBus";
+    private static final String PROPERTY_CHANGE_BUS_POLL_INTERVAL = "changeBus.pollIntervalMillis";
+    private static final String PROPERTY_RETRY_MAX_ATTEMPTS = "retry.maxAttempts";
+    private static final String PROPERTY_RETRY_BACKOFF = "retry.backoffMillis";
+    private static final String PROPERTY_RETRY_MAX_BACKOFF = "retry.maxBackoffMillis";
+    private static final String PROPERTY_CIRCUIT_BREAKER_THRESHOLD = "circuitBreaker.failureThreshold";
+    private static final String PROPERTY_CIRCUIT_BREAKER_OPEN = "circuitBreaker.openMillis";
+    private static final String PROPERTY_TENANT_TABLE_NAME = "tenant.tableName";
+    private static final String PROPERTY_TENANT_CONNECTIONSTRING = "tenant\\.(\\w+)\\.connectionString";
+
+    /** How long a reconfiguration waits for the operations on the replaced databases. */
+    private static final long SWAP_DRAIN_TIMEOUT_MILLIS = 30_000;
+
+    /** The databases of the current configuration, <code>null</code> if not initialized or closed. */
+    private volatile Databases databases;
+
+    /** The lease of the transaction of the current thread, held until the transaction ends. */
+    private final ThreadLocal<Lease> transactionLease = new ThreadLocal<>();
+
+    private final InternalSequenceGenerator sequenceGenerator = new InternalSequenceGenerator();
+
+    private volatile Dialect dialect;
+
+    private String changeBusName;
+
+    private long changeBusPollInterval = 1000;
+
+    /** Created on first use as it may need the database. */
+    private ChangeBus changeBus;
+
+    private volatile RetryPolicy retryPolicy = new RetryPolicy(3, 10, 500);
 
-    private Connection connection;
+    private volatile CircuitBreaker circuitBreaker = CircuitBreaker.DISABLED;
 
-    private InternalSequenceGenerator sequenceGenerator;
+    /** The table name of a tenant, <code>{tenant}</code> and <code>{table}</code> are replaced. */
+    private volatile String tenantTableName = "{table}";
 
     private Db() {
+        try (InputStream in = getClass().getResourceAsStream(PROPERTIES_FILE)) {
+            if (in == null) {
+                logger().debug("No {} found, waiting for init()", PROPERTIES_FILE);
+            } else {
+                logger().debug("Initializing DB Connection");
+                Properties properties = new Properties();
+                properties.load(in);
+                init(properties);
+            }
+        } catch (ClassNotFoundException | SQLException | IOException | RuntimeException e) {
+            // an invalid db.properties must not fail the class initialization, the Db waits for init()
+            logger().error(e.getMessage(), e);
+        }
+        if (dialect == null) {
+            dialect = Dialects.resolve(null, null);
+        }
+    }
+
+    /**
+     * Initializes the databases from properties with the keys of the <code>db.properties</code>, which is loaded
+     * automatically on first use of the {@link Db}. If the {@link Db} is initialized already the configuration is
+     * replaced at runtime, e.g. to fail over to another database or after {@link #close(long, TimeUnit)}:
+     * 
+     * <ul>
+     * <li>all new connections are opened first, if this fails the current configuration stays active</li>
+     * <li>new operations use the new databases, operations which are running on the old databases (including open
+     * transactions) are waited for up to 30 seconds before the old connections are closed</li>
+     * <li>the caches of the {@link com.github.kaiwinter.activerecord.annotation.Cacheable} Active Records and the
+     * internal sequence numbers are reset</li>
+     * </ul>
+     * 
+     * The queries of the metadata are not rebuilt, the new databases should use the same {@link Dialect}. The
+     * {@link ChangeBus} settings take effect when the {@link ChangeBus} is created the next time.
+     * 
+     * @param properties
+     *            the database properties
+     * @throws SQLException
+     *             if a connection cannot be opened
+     * @throws ClassNotFoundException
+     *             if the <code>driverClass</code> is not found
+     */
+    public void init(Properties properties) throws SQLException, ClassNotFoundException {
+        String driverClass = properties.getProperty(PROPERTY_DRIVERCLASS);
+        if (driverClass != null) {
+            Class.forName(driverClass);
+        }
+        int poolSize = Integer.parseInt(properties.getProperty(PROPERTY_POOL_SIZE, "1"));
+        long poolTimeout = Long.parseLong(
+                properties.getProperty(PROPERTY_POOL_TIMEOUT, String.valueOf(ConnectionPool.DEFAULT_TIMEOUT_MILLIS)));
+        ReplicaSelection replicaSelection = ReplicaSelection
+                .valueOf(properties.getProperty(PROPERTY_REPLICA_SELECTION, ReplicaSelection.ROUND_ROBIN.name()));
+        List<ConnectionPool> pools = new ArrayList<>();
+        try {
+            ConnectionPool primary = openPool("primary", properties.getProperty(PROPERTY_CONNECTIONSTRING), poolSize,
+                    poolTimeout);
+            pools.add(primary);
+            List<ConnectionPool> replicas = new ArrayList<>();
+            for (int i = 1; properties.containsKey(String.format(PROPERTY_REPLICA_CONNECTIONSTRING, i)); i++) {
+                String connectionString = properties.getProperty(String.format(PROPERTY_REPLICA_CONNECTIONSTRING, i));
+                replicas.add(openPool("replica " + i, connectionString, poolSize, poolTimeout));
+                pools.add(replicas.get(replicas.size() - 1));
+            }
+            List<ConnectionPool> shards = new ArrayList<>();
+            for (int i = 1; properties.containsKey(String.format(PROPERTY_SHARD_CONNECTIONSTRING, i)); i++) {
+                String connectionString = properties.getProperty(String.format(PROPERTY_SHARD_CONNECTIONSTRING, i));
+                shards.add(openPool("shard " + i, connectionString, poolSize, poolTimeout));
+                pools.add(shards.get(shards.size() - 1));
+            }
+            Databases newDatabases = new Databases(primary, replicas, shards, replicaSelection);
+            Pattern tenantConnectionString = Pattern.compile(PROPERTY_TENANT_CONNECTIONSTRING);
+            for (String property : properties.stringPropertyNames()) {
+                Matcher matcher = tenantConnectionString.matcher(property);
+                if (matcher.matches()) {
+                    String tenant = matcher.group(1);
+                    ConnectionPool tenantPool = openPool("tenant " + tenant, properties.getProperty(property),
+                            poolSize, poolTimeout);
+                    pools.add(tenantPool);
+                    newDatabases.tenants.put(tenant, new Databases(tenantPool, Collections.emptyList(),
+                            Collections.emptyList(), ReplicaSelection.ROUND_ROBIN));
+                }
+            }
+            Dialect newDialect = Dialects.resolve(properties.getProperty(PROPERTY_DIALECT), primary.getConnection());
+            RetryPolicy newRetryPolicy = new RetryPolicy(
+                    Integer.parseInt(properties.getProperty(PROPERTY_RETRY_MAX_ATTEMPTS, "3")),
+                    Long.parseLong(properties.getProperty(PROPERTY_RETRY_BACKOFF, "10")),
+                    Long.parseLong(properties.getProperty(PROPERTY_RETRY_MAX_BACKOFF, "500")));
+            CircuitBreaker newCircuitBreaker = new CircuitBreaker(
+                    Integer.parseInt(properties.getProperty(PROPERTY_CIRCUIT_BREAKER_THRESHOLD, "0")),
+                    Long.parseLong(properties.getProperty(PROPERTY_CIRCUIT_BREAKER_OPEN, "5000")));
+            synchronized (this) {
+                tenantTableName = properties.getProperty(PROPERTY_TENANT_TABLE_NAME, tenantTableName);
+                retryPolicy = newRetryPolicy;
+                circuitBreaker = newCircuitBreaker;
+                changeBusName = properties.getProperty(PROPERTY_CHANGE_BUS);
+                changeBusPollInterval = Long.parseLong(properties.getProperty(PROPERTY_CHANGE_BUS_POLL_INTERVAL,
+                        String.valueOf(changeBusPollInterval)));
+            }
+            swap(newDatabases, newDialect);
+        } catch (SQLException | RuntimeException e) {
+            for (ConnectionPool pool : pools) {
+                closeQuietly(pool);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Initializes the primary database from a {@link DataSource}, e.g. of an application server or a connection pool
+     * library. Each operation borrows a connection from the {@link DataSource} and closes it when it is finished, a
+     * transaction keeps its connection until it ends (see {@link ConnectionPool}). Replicas and shards are only
+     * supported by {@link #init(Properties)}. If the {@link Db} is initialized already the configuration is replaced
+     * like by {@link #init(Properties)}.
+     * 
+     * @param dataSource
+     *            the {@link DataSource} of the primary database
+     * @param poolSize
+     *            the maximum number of connections which are borrowed from the {@link DataSource} at the same time
+     * @throws SQLException
+     *             if a connection cannot be opened
+     * @throws IllegalArgumentException
+     *             if the database product is unknown, use {@link #init(DataSource, int, String)}
+     */
+    public void init(DataSource dataSource, int poolSize) throws SQLException {
+        init(dataSource, poolSize, null);
+    }
+
+    /**
+     * Initializes the primary database from a {@link DataSource} like {@link #init(DataSource, int)} with an explicit
+     * {@link Dialect}.
+     * 
+     * @param dataSource
+     *            the {@link DataSource} of the primary database
+     * @param poolSize
+     *            the maximum number of connections which are borrowed from the {@link DataSource} at the same time
+     * @param dialectName
+     *            the name of the dialect like the <code>dialect</code> property, <code>null</code> to choose it by
+     *            the database product
+     * @throws SQLException
+     *             if a connection cannot be opened
+     */
+    public void init(DataSource dataSource, int poolSize, String dialectName) throws SQLException {
+        ConnectionPool primary = new ConnectionPool("primary", dataSource, poolSize,
+                ConnectionPool.DEFAULT_TIMEOUT_MILLIS);
+        Dialect newDialect;
+        try (Lease lease = primary.lease()) {
+            newDialect = Dialects.resolve(dialectName, lease.getConnection());
+        }
+        swap(new Databases(primary, Collections.emptyList(), Collections.emptyList(), ReplicaSelection.ROUND_ROBIN),
+                newDialect);
+    }
+
+    private void swap(Databases newDatabases, Dialect newDialect) {
+        Databases oldDatabases;
+        synchronized (this) {
+            if (dialect != null && dialect.getClass() != newDialect.getClass()) {
+                logger().warn("Dialect changed from {} to {}, queries of existing metadata are not rebuilt",
+                        dialect.getClass().getSimpleName(), newDialect.getClass().getSimpleName());
+            }
+            oldDatabases = databases;
+            if (oldDatabases != null) {
+                keepAddedTenants(oldDatabases, newDatabases);
+            }
+            databases = newDatabases;
+            dialect = newDialect;
+        }
+        WriteBehindBuffer.start();
+        if (oldDatabases != null) {
+            logger().info("Configuration replaced, draining the old databases");
+            drain(oldDatabases, SWAP_DRAIN_TIMEOUT_MILLIS);
+            // after the drain, so the operations on the old databases don't leave IDs or records behind
+            sequenceGenerator.reset();
+            RecordCache.invalidateAll();
+            oldDatabases.close();
+        }
+    }
+
+    /**
+     * Waits until the operations which are running on the databases are finished, including open transactions. New
+     * operations are not blocked.
+     * 
+     * @param timeout
+     *            the maximum time to wait
+     * @param unit
+     *            the unit of the <code>timeout</code>
+     * @return <code>true</code> if no operation is running, <code>false</code> if the timeout elapsed
+     */
+    public boolean drain(long timeout, TimeUnit unit) {
+        Databases current = databases;
+        return current == null || drain(current, unit.toMillis(timeout));
+    }
+
+    private static boolean drain(Databases drained, long timeoutMillis) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        while (drained.getInFlight() > 0) {
+            if (System.nanoTime() - deadline >= 0) {
+                logger().warn("{} operations still running after {} ms", drained.getInFlight(), timeoutMillis);
+                return false;
+            }
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Shuts the database access down: the buffers of the
+     * {@link com.github.kaiwinter.activerecord.annotation.WriteBehind} Active Records are flushed and their background
+     * flushes are stopped until the next init, new operations are
+     * rejected with an {@link IllegalStateException}, running operations are drained (see
+     * {@link #drain(long, TimeUnit)}) and all connections and the {@link ChangeBus} are closed. The {@link Db} can be
+     * initialized again by {@link #init(Properties)}.
+     * 
+     * @param timeout
+     *            the maximum time to wait for running operations, the connections are closed anyway afterwards
+     * @param unit
+     *            the unit of the <code>timeout</code>
+     * @return <code>true</code> if all operations finished before the connections were closed
+     */
+    public boolean close(long timeout, TimeUnit unit) {
+        WriteBehindBuffer.stop();
         try {
-            LoggerFactory.getLogger(Db.class.getSimpleName()).debug("Initializing DB Connection");
+            WriteBehindBuffer.flushAll();
+        } catch (ActiveRecordException | RuntimeException e) {
+            logger().error("Could not flush write-behind buffers on close", e);
+        }
+        Databases closed;
+        ChangeBus closedChangeBus;
+        synchronized (this) {
+            closed = databases;
+            databases = null;
+            closedChangeBus = changeBus;
+            changeBus = null;
+        }
+        if (closedChangeBus != null) {
+            closedChangeBus.close();
+        }
+        if (closed == null) {
+            return true;
+        }
+        boolean drained = drain(closed, unit.toMillis(timeout));
+        closed.close();
+        logger().info("Database access closed");
+        return drained;
+    }
 
-            Properties properties = new Properties();
-            properties.load(getClass().getResourceAsStream(PROPERTIES_FILE));
-            Class.forName(properties.getProperty(PROPERTY_DRIVERCLASS));
-            connection = DriverManager.getConnection(properties.getProperty(PROPERTY_CONNECTIONSTRING));
-            sequenceGenerator = new InternalSequenceGenerator();
-        } catch (ClassNotFoundException | SQLException | IOException e) {
-            LoggerFactory.getLogger(Db.class.getSimpleName()).error(e.getMessage(), e);
+    /**
+     * @return <code>true</code> if the {@link Db} is initialized and not closed
+     */
+    public boolean isInitialized() {
+        return databases != null;
+    }
+
+    /**
+     * @return the logger, not a static field as it is used by the enum constructor
+     */
+    private static Logger logger() {
+        return LoggerFactory.getLogger(Db.class.getSimpleName());
+    }
+
+    /**
+     * Adds a tenant with its own database or replaces the database of a tenant at runtime, see {@link TenantContext}.
+     * Like by {@link #init(DataSource, int)} each operation borrows a connection from the {@link DataSource}. The
+     * connections of a replaced database are closed after the operations on them are drained, then the cached IDs of
+     * the tenant and the record cache are reset.
+     * 
+     * @param tenant
+     *            the name of the tenant
+     * @param dataSource
+     *            the {@link DataSource} of the database of the tenant
+     * @param poolSize
+     *            the maximum number of connections which are borrowed from the {@link DataSource} at the same time
+     * @throws SQLException
+     *             if a connection cannot be opened
+     */
+    public void addTenant(String tenant, DataSource dataSource, int poolSize) throws SQLException {
+        Databases current = databases;
+        if (current == null) {
+            throw new IllegalStateException("Db is not initialized or closed, call init()");
+        }
+        ConnectionPool pool = new ConnectionPool("tenant " + tenant, dataSource, poolSize,
+                ConnectionPool.DEFAULT_TIMEOUT_MILLIS);
+        // fails early if the DataSource cannot open a connection
+        pool.lease().close();
+        Databases replaced = current.tenants.put(tenant,
+                new Databases(pool, Collections.emptyList(), Collections.emptyList(), ReplicaSelection.ROUND_ROBIN));
+        if (replaced != null) {
+            drain(replaced, SWAP_DRAIN_TIMEOUT_MILLIS);
+            sequenceGenerator.reset(tenant);
+            RecordCache.invalidateAll();
+            replaced.close();
         }
     }
 
     /**
-     * @return the connection
+     * Keeps the tenants which were added by {@link #addTenant(String, DataSource, int)} in a new configuration unless
+     * it defines their databases. They get a new {@link ConnectionPool} of their {@link DataSource}, the old one is
+     * closed with the old configuration.
+     */
+    private static void keepAddedTenants(Databases oldDatabases, Databases newDatabases) {
+        for (Map.Entry<String, Databases> tenant : oldDatabases.tenants.entrySet()) {
+            ConnectionPool pool = tenant.getValue().primary;
+            if (pool.borrowsConnections() && !newDatabases.tenants.containsKey(tenant.getKey())) {
+                newDatabases.tenants.put(tenant.getKey(), new Databases(pool.reopen(), Collections.emptyList(),
+                        Collections.emptyList(), ReplicaSelection.ROUND_ROBIN));
+            }
+        }
+    }
+
+    /**
+     * Returns the name of the table of a tenant, see {@link TenantContext}.
+     * 
+     * @param tenant
+     *            the name of the tenant
+     * @param tableName
+     *            the name of the table of the default tenant
+     * @return the name of the table of the tenant
+     * @throws IllegalStateException
+     *             if the tenant would share the tables of the default tenant, see {@link Db}
+     */
+    public String getTenantTableName(String tenant, String tableName) {
+        Databases current = databases;
+        if (current == null || !current.tenants.containsKey(tenant)) {
+            checkOwnTables(tenant);
+        }
+        return tenantTableName.replace("{tenant}", tenant).replace("{table}", tableName);
+    }
+
+    /**
+     * Rejects a tenant without its own database if the table name has no <code>{tenant}</code>: it would write the
+     * tables of the default tenant with IDs, caches and write-behind buffers of its own.
+     */
+    private void checkOwnTables(String tenant) {
+        if (!tenantTableName.contains("{tenant}")) {
+            throw new IllegalStateException("Tenant '" + tenant + "' would share the tables of the default tenant, "
+                    + "add its database or use a tenant.tableName with {tenant} instead of '" + tenantTableName + "'");
+        }
+    }
+
+    /**
+     * @return the databases of the {@link TenantContext tenant} of the current thread
+     */
+    private Databases current() {
+        Databases current = databases;
+        if (current == null) {
+            throw new IllegalStateException("Db is not initialized or closed, call init()");
+        }
+        String tenant = TenantContext.get();
+        if (tenant != null) {
+            Databases tenantDatabases = current.tenants.get(tenant);
+            if (tenantDatabases != null) {
+                return tenantDatabases;
+            }
+            checkOwnTables(tenant);
+        }
+        return current;
+    }
+
+    private static ConnectionPool openPool(String name, String connectionString, int poolSize, long timeoutMillis)
+            throws SQLException {
+        List<Connection> connections = new ArrayList<>();
+        try {
+            for (int i = 0; i < poolSize; i++) {
+                connections.add(DriverManager.getConnection(connectionString));
+            }
+        } catch (SQLException e) {
+            closeQuietly(new ConnectionPool(name, connections));
+            throw e;
+        }
+        return new ConnectionPool(name, connections, timeoutMillis);
+    }
+
+    private static void closeQuietly(ConnectionPool pool) {
+        try {
+            pool.close();
+        } catch (SQLException e) {
+            logger().warn("Could not close connections of {}", pool, e);
+        }
+    }
+
+    /**
+     * @return the first connection of the primary database
+     * @throws IllegalStateException
+     *             if the primary database borrows its connections from a {@link DataSource}, lease a connection instead
      */
     public Connection getConnection() {
-        return connection;
+        return current().primary.getConnection();
+    }
+
+    /**
+     * Leases a connection for a read operation. This is a read replica if replicas are configured and the current
+     * thread is not inside a transaction, otherwise the primary database.
+     * 
+     * @return the {@link Lease}, has to be closed after the operation
+     * @throws SQLException
+     *             if no connection is available, see {@link ConnectionPool#lease()}
+     */
+    public Lease leaseForRead() throws SQLException {
+        Lease transaction = transactionLease.get();
+        if (transaction != null) {
+            return transaction.getPool().lease(transaction.getConnection());
+        }
+        Databases current = current();
+        if (current.replicas.isEmpty()) {
+            return current.primary.lease();
+        }
+        return current.replicaSelection.select(current.replicas, current.replicaCounter).lease();
+    }
+
+    /**
+     * Leases a connection of the primary database for a write operation.
+     * 
+     * @return the {@link Lease}, has to be closed after the operation
+     * @throws SQLException
+     *             if no connection is available, see {@link ConnectionPool#lease()}
+     */
+    public Lease leaseForWrite() throws SQLException {
+        Lease transaction = transactionLease.get();
+        if (transaction != null) {
+            return transaction.getPool().lease(transaction.getConnection());
+        }
+        return current().primary.lease();
+    }
+
+    /**
+     * Leases a connection exclusively for a read operation which changes the state of the connection, e.g. its
+     * auto-commit mode. This is a read replica if replicas are configured, otherwise the primary database, see
+     * {@link ConnectionPool#leaseExclusive()}. Inside a transaction the connection of the transaction is leased, it is
+     * already leased exclusively by the current thread.
+     * 
+     * @return the {@link Lease}, has to be closed after the operation
+     * @throws SQLException
+     *             if no connection becomes free, see {@link ConnectionPool#leaseExclusive()}
+     */
+    public Lease leaseExclusiveForRead() throws SQLException {
+        Lease transaction = transactionLease.get();
+        if (transaction != null) {
+            return transaction.getPool().lease(transaction.getConnection());
+        }
+        Databases current = current();
+        if (current.replicas.isEmpty()) {
+            return current.primary.leaseExclusive();
+        }
+        return current.replicaSelection.select(current.replicas, current.replicaCounter).leaseExclusive();
+    }
+
+    /**
+     * Leases a connection of the primary database exclusively for a write operation which changes the state of the
+     * connection, e.g. its auto-commit mode, see {@link ConnectionPool#leaseExclusive()}. Inside a transaction the
+     * connection of the transaction is leased, it is already leased exclusively by the current thread.
+     * 
+     * @return the {@link Lease}, has to be closed after the operation
+     * @throws SQLException
+     *             if no connection becomes free, see {@link ConnectionPool#leaseExclusive()}
+     */
+    public Lease leaseExclusiveForWrite() throws SQLException {
+        Lease transaction = transactionLease.get();
+        if (transaction != null) {
+            return transaction.getPool().lease(transaction.getConnection());
+        }
+        return current().primary.leaseExclusive();
+    }
+
+    /**
+     * Leases a connection for a read operation on the row with the passed id. For a sharded table this is the shard
+     * of the row, otherwise see {@link #leaseForRead()}.
+     * 
+     * @param metadata
+     *            the metadata of the table
+     * @param id
+     *            the id of the row
+     * @return the {@link Lease}, has to be closed after the operation
+     * @throws SQLException
+     *             if no connection is available, see {@link ConnectionPool#lease()}
+     */
+    public Lease leaseForRead(TableMetadata metadata, long id) throws SQLException {
+        if (isSharded(metadata)) {
+            return getShard(metadata, id).lease();
+        }
+        return leaseForRead();
+    }
+
+    /**
+     * Leases a connection for a write operation on the row with the passed id. For a sharded table this is the shard
+     * of the row, otherwise see {@link #leaseForWrite()}.
+     * 
+     * @param metadata
+     *            the metadata of the table
+     * @param id
+     *            the id of the row
+     * @return the {@link Lease}, has to be closed after the operation
+     * @throws SQLException
+     *             if no connection is available, see {@link ConnectionPool#lease()}
+     */
+    public Lease leaseForWrite(TableMetadata metadata, long id) throws SQLException {
+        if (isSharded(metadata)) {
+            return getShard(metadata, id).lease();
+        }
+        return leaseForWrite();
+    }
+
+    /**
+     * Leases a connection of a shard.
+     * 
+     * @param shard
+     *            the index of the shard, from 0 to {@link #getShardCount()} - 1
+     * @return the {@link Lease}, has to be closed after the operation
+     * @throws SQLException
+     *             if no connection is available, see {@link ConnectionPool#lease()}
+     */
+    public Lease leaseForShard(int shard) throws SQLException {
+        return current().shards.get(shard).lease();
+    }
+
+    /**
+     * Leases a connection of a shard exclusively, for an operation which changes the state of the connection.
+     * 
+     * @param shard
+     *            the index of the shard, from 0 to {@link #getShardCount()} - 1
+     * @return the {@link Lease}, has to be closed after the operation
+     * @throws SQLException
+     *             if no connection becomes free, see {@link ConnectionPool#leaseExclusive()}
+     */
+    public Lease leaseExclusiveForShard(int shard) throws SQLException {
+        return current().shards.get(shard).leaseExclusive();
+    }
+
+    /**
+     * @return the number of shards
+     */
+    public int getShardCount() {
+        return current().shards.size();
+    }
+
+    /**
+     * Returns the index of the shard which stores the row with the passed id.
+     * 
+     * @param metadata
+     *            the metadata of the table
+     * @param id
+     *            the id of the row
+     * @return the index of the shard, 0 if the table is not sharded
+     */
+    public int getShardIndex(TableMetadata metadata, long id) {
+        if (!isSharded(metadata)) {
+            return 0;
+        }
+        return metadata.tableAnnotation.shardStrategy().getShard(id, getShardCount(),
+                metadata.tableAnnotation.shardRangeSize());
+    }
+
+    /**
+     * Runs an operation under the {@link CircuitBreaker} and repeats it according to the {@link RetryPolicy} if it
+     * fails with a transient error. Operations inside a transaction are not repeated, the database may have rolled
+     * back the transaction.
+     * 
+     * @param retryable
+     *            <code>true</code> if the operation can be repeated safely, e.g. a read or an idempotent write
+     * @param operation
+     *            the operation, it leases its connections itself
+     * @return the result of the operation
+     * @throws SQLException
+     *             if the operation fails with an SQL error which is not transient or if the attempts are exhausted
+     * @throws ActiveRecordException
+     *             if the operation fails with an internal error
+     * @throws CircuitBreakerOpenException
+     *             if the {@link CircuitBreaker} is open
+     */
+    public <R> R call(boolean retryable, SqlOperation<R> operation) throws SQLException, ActiveRecordException {
+        RetryPolicy policy = retryPolicy;
+        CircuitBreaker breaker = circuitBreaker;
+        int maxAttempts = retryable && !isInTransaction() ? policy.getMaxAttempts() : 1;
+        for (int attempt = 1;; attempt++) {
+            if (!breaker.tryAcquire()) {
+                throw new CircuitBreakerOpenException("Circuit breaker is open, the database is unhealthy");
+            }
+            try {
+                R result = operation.execute();
+                breaker.record(false);
+                return result;
+            } catch (SQLException e) {
+                boolean transientFailure = dialect.isTransient(e);
+                breaker.record(transientFailure);
+                if (!transientFailure || attempt >= maxAttempts) {
+                    throw e;
+                }
+                long backoff = policy.getBackoffMillis(attempt);
+                logger().debug("Attempt {} failed with transient error '{}', retrying in {} ms", attempt,
+                        e.getMessage(), backoff);
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            } catch (ActiveRecordException | RuntimeException e) {
+                breaker.record(false);
+                throw e;
+            } finally {
+                // e.g. an Error was thrown without an outcome
+                breaker.releaseTrial();
+            }
+        }
+    }
+
+    /**
+     * Sets the {@link RetryPolicy} of {@link #call(boolean, SqlOperation)}, overriding the <code>retry.*</code>
+     * properties.
+     * 
+     * @param retryPolicy
+     *            the {@link RetryPolicy}, {@link RetryPolicy#NONE} to disable retries
+     */
+    public void setRetryPolicy(RetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
+    }
+
+    /**
+     * @return the current {@link RetryPolicy}
+     */
+    public RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    /**
+     * Sets the {@link CircuitBreaker} of {@link #call(boolean, SqlOperation)}, overriding the
+     * <code>circuitBreaker.*</code> properties.
+     * 
+     * @param circuitBreaker
+     *            the {@link CircuitBreaker}, {@link CircuitBreaker#DISABLED} to disable it
+     */
+    public void setCircuitBreaker(CircuitBreaker circuitBreaker) {
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    /**
+     * @return the current {@link CircuitBreaker}, e.g. to monitor its state
+     */
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    /**
+     * Runs a read operation on the whole table. For a sharded table the operation runs in parallel on all shards,
+     * otherwise it runs once with a {@link #leaseForRead()}. It is repeated after a transient error, see
+     * {@link #call(boolean, SqlOperation)}.
+     * 
+     * @param metadata
+     *            the metadata of the table
+     * @param operation
+     *            the operation
+     * @return the results of the operation, one per shard
+     * @throws SQLException
+     *             if the operation fails with an SQL error on any shard
+     * @throws ActiveRecordException
+     *             if the operation fails with an internal error on any shard
+     */
+    public <R> List<R> readFromAllShards(TableMetadata metadata, LeaseOperation<R> operation)
+            throws SQLException, ActiveRecordException {
+        return call(true, () -> executeOnAllShards(metadata, false, operation));
+    }
+
+    /**
+     * Like {@link #readFromAllShards(TableMetadata, LeaseOperation)} but uses the primary database if the table is not
+     * sharded. Use this for reads which must not see a lagging replica.
+     * 
+     * @param metadata
+     *            the metadata of the table
+     * @param operation
+     *            the operation
+     * @return the results of the operation, one per shard
+     * @throws SQLException
+     *             if the operation fails with an SQL error on any shard
+     * @throws ActiveRecordException
+     *             if the operation fails with an internal error on any shard
+     */
+    public <R> List<R> executeOnAllShards(TableMetadata metadata, LeaseOperation<R> operation)
+            throws SQLException, ActiveRecordException {
+        return executeOnAllShards(metadata, true, operation);
+    }
+
+    private <R> List<R> executeOnAllShards(TableMetadata metadata, boolean primaryOnly, LeaseOperation<R> operation)
+            throws SQLException, ActiveRecordException {
+        List<R> results = new ArrayList<>();
+        if (!isSharded(metadata)) {
+            try (Lease lease = primaryOnly ? leaseForWrite() : leaseForRead()) {
+                results.add(operation.execute(lease));
+            }
+            return results;
+        }
+
+        Databases current = current();
+        List<Future<R>> futures = new ArrayList<>();
+        for (ConnectionPool shard : current.shards) {
+            futures.add(current.getShardExecutor().submit(() -> {
+                try (Lease lease = shard.lease()) {
+                    return operation.execute(lease);
+                }
+            }));
+        }
+        for (Future<R> future : futures) {
+            try {
+                results.add(future.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ActiveRecordException("Interrupted while waiting for shards", e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof SQLException) {
+                    throw (SQLException) cause;
+                } else if (cause instanceof ActiveRecordException) {
+                    throw (ActiveRecordException) cause;
+                }
+                throw new ActiveRecordException("Operation on shard failed", cause);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * @param metadata
+     *            the metadata of the table
+     * @return <code>true</code> if the table is distributed across shards
+     */
+    public boolean isSharded(TableMetadata metadata) {
+        if (metadata.tableAnnotation.shardStrategy() == ShardStrategy.NONE) {
+            return false;
+        }
+        if (current().shards.isEmpty()) {
+            throw new IllegalStateException("Table '" + metadata.tableName + "' is sharded but no shards are defined");
+        }
+        return true;
+    }
+
+    private ConnectionPool getShard(TableMetadata metadata, long id) {
+        return current().shards.get(getShardIndex(metadata, id));
+    }
+
+    /**
+     * Warms up the database access of the passed Active Records before the first request, see
+     * {@link #warmUp(int, Collection)}. No round trips are made.
+     * 
+     * @param classes
+     *            the Active Record classes
+     * @throws ActiveRecordException
+     *             if a statement cannot be prepared, e.g. because a table or column doesn't exist
+     */
+    public void warmUp(Collection<Class<? extends BaseAR>> classes) throws ActiveRecordException {
+        warmUp(0, classes);
+    }
+
+    /**
+     * Warms up the database access of the passed Active Records before the first request. Their metadata is built,
+     * every statement of each table ({@link TableMetadata#getStatements()}) is prepared once on each connection to the
+     * databases of the table (the primary and the replicas or the shards) and the {@link ChangeBus} is created if a
+     * table is cached. This validates the SQL against the database and fills the statement caches of the driver and the
+     * database. The <code>roundTrips</code> then load a record by id per Active Record to let the JIT compile the
+     * read path.
+     * 
+     * @param roundTrips
+     *            the number of round trips per Active Record, 0 for none
+     * @param classes
+     *            the Active Record classes
+     * @throws ActiveRecordException
+     *             if a statement cannot be prepared, e.g. because a table or column doesn't exist
+     */
+    public void warmUp(int roundTrips, Collection<Class<? extends BaseAR>> classes) throws ActiveRecordException {
+        long start = System.nanoTime();
+        int preparedStatements = 0;
+        for (Class<? extends BaseAR> clazz : classes) {
+            TableMetadata metadata = MetadataCache.getTableMetadata(clazz);
+            Databases current = current();
+            List<ConnectionPool> pools = new ArrayList<>();
+            if (isSharded(metadata)) {
+                pools.addAll(current.shards);
+            } else {
+                pools.add(current.primary);
+                pools.addAll(current.replicas);
+            }
+            List<String> statements = metadata.getStatements();
+            for (ConnectionPool pool : pools) {
+                if (pool.borrowsConnections()) {
+                    // the connections of a DataSource are unknown, the statements are validated on one of them
+                    try (Lease lease = pool.lease()) {
+                        preparedStatements += prepare(metadata, pool, lease.getConnection(), statements);
+                    } catch (SQLException e) {
+                        throw new ActiveRecordException("Could not lease a connection of " + pool, e);
+                    }
+                } else {
+                    for (Connection poolConnection : pool.getConnections()) {
+                        preparedStatements += prepare(metadata, pool, poolConnection, statements);
+                    }
+                }
+            }
+            if (metadata.cache != null) {
+                getChangeBus();
+            }
+        }
+        for (int i = 0; i < roundTrips; i++) {
+            for (Class<? extends BaseAR> clazz : classes) {
+                // ids start at 1, so this finds nothing but runs the whole read path
+                BaseAR.findById(clazz, 0);
+            }
+        }
+        logger().info("Warm-up prepared {} statements and made {} round trips in {} ms", preparedStatements, roundTrips,
+                (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private static int prepare(TableMetadata metadata, ConnectionPool pool, Connection connection,
+            List<String> statements) throws ActiveRecordException {
+        for (String statement : statements) {
+            try {
+                connection.prepareStatement(statement).close();
+            } catch (SQLException e) {
+                throw new ActiveRecordException("Could not prepare statement of table '" + metadata.tableName + "' on "
+                        + pool + ": " + statement, e);
+            }
+        }
+        return statements.size();
+    }
+
+    /**
+     * Starts a transaction on the primary database for the current thread. Until {@link #commit()} or
+     * {@link #rollback()} is called all operations of this thread are pinned to one connection of the primary
+     * database. The connection is leased exclusively ({@link ConnectionPool#leaseExclusive()}), operations of other
+     * threads use the other connections or wait until the transaction ends.
+     * 
+     * @throws SQLException
+     *             if the transaction cannot be started, e.g. because no connection became free within the timeout
+     */
+    public void beginTransaction() throws SQLException {
+        if (transactionLease.get() != null) {
+            throw new IllegalStateException("Transaction already started");
+        }
+        Lease lease = current().primary.leaseExclusive();
+        try {
+            lease.getConnection().setAutoCommit(false);
+        } catch (SQLException e) {
+            lease.close();
+            throw e;
+        }
+        transactionLease.set(lease);
+    }
+
+    /**
+     * Commits the transaction of the current thread.
+     * 
+     * @throws SQLException
+     *             if the commit fails
+     */
+    public void commit() throws SQLException {
+        Connection transaction = getTransactionConnection();
+        try {
+            transaction.commit();
+        } finally {
+            endTransaction(transaction);
+        }
+    }
+
+    /**
+     * Rolls back the transaction of the current thread.
+     * 
+     * @throws SQLException
+     *             if the rollback fails
+     */
+    public void rollback() throws SQLException {
+        Connection transaction = getTransactionConnection();
+        try {
+            transaction.rollback();
+        } finally {
+            // cached records may contain the rolled back changes
+            RecordCache.invalidateAll();
+            endTransaction(transaction);
+        }
+    }
+
+    /**
+     * @return <code>true</code> if the current thread is inside a transaction
+     */
+    public boolean isInTransaction() {
+        return transactionLease.get() != null;
+    }
+
+    private Connection getTransactionConnection() {
+        Lease transaction = transactionLease.get();
+        if (transaction == null) {
+            throw new IllegalStateException("No transaction started");
+        }
+        return transaction.getConnection();
+    }
+
+    private void endTransaction(Connection transaction) throws SQLException {
+        Lease lease = transactionLease.get();
+        transactionLease.remove();
+        try {
+            transaction.setAutoCommit(true);
+        } finally {
+            lease.close();
+        }
+    }
+
+    /**
+     * @return the {@link Dialect} of the database
+     */
+    public Dialect getDialect() {
+        return dialect;
+    }
+
+    /**
+     * Returns the {@link ChangeBus}, the caches of the {@link RecordCache} are subscribed to it.
+     * 
+     * @return the {@link ChangeBus}
+     */
+    public synchronized ChangeBus getChangeBus() {
+        if (changeBus == null) {
+            try {
+                changeBus = ChangeBuses.resolve(changeBusName, changeBusPollInterval);
+            } catch (SQLException e) {
+                logger().error("Could not create change bus, changes are not published to other nodes", e);
+                changeBus = new InJvmChangeBus();
+            }
+            changeBus.subscribe(RecordCache::onChange);
+        }
+        return changeBus;
+    }
+
+    /**
+     * Publishes the change of a row on the {@link ChangeBus} if the table is cached.
+     * 
+     * @param tableName
+     *            the name of the table
+     * @param id
+     *            the id of the row, {@link ChangeBus#ALL_ROWS} if several rows were changed
+     */
+    public void publishChange(String tableName, long id) {
+        if (RecordCache.isCached(tableName)) {
+            getChangeBus().publish(tableName, id);
+        }
     }
 
     /**
@@ -57,4 +1103,90 @@ public enum Db {
     public long getNextSequenceNumber(Class<? extends BaseAR> clazz) throws SQLException {
         return sequenceGenerator.getNextSequenceNumber(clazz);
     }
+
+    /**
+     * Resets the internal sequence generator, see {@link InternalSequenceGenerator#reset()}.
+     */
+    public void resetSequenceNumbers() {
+        sequenceGenerator.reset();
+    }
+
+    /**
+     * Tells the internal sequence generator that an ID was written which was not acquired from it.
+     * 
+     * @param clazz
+     *            the Active Record class which identifies the database table
+     * @param usedId
+     *            the ID which was written
+     */
+    public void updateSequenceNumber(Class<? extends BaseAR> clazz, long usedId) {
+        sequenceGenerator.updateSequenceNumber(clazz, usedId);
+    }
+
+    /**
+     * The connection pools of one configuration, replaced as a whole by a reconfiguration.
+     */
+    private static final class Databases {
+        final ConnectionPool primary;
+        final List<ConnectionPool> replicas;
+        final List<ConnectionPool> shards;
+        final ReplicaSelection replicaSelection;
+        final AtomicInteger replicaCounter = new AtomicInteger();
+
+        /** The databases of the tenants which don't use the default databases. */
+        final Map<String, Databases> tenants = new ConcurrentHashMap<>();
+
+        /** Runs the operations on all shards in parallel, created on first use, idle threads are stopped. */
+        private ThreadPoolExecutor shardExecutor;
+        private boolean closed;
+
+        Databases(ConnectionPool primary, List<ConnectionPool> replicas, List<ConnectionPool> shards,
+                ReplicaSelection replicaSelection) {
+            this.primary = primary;
+            this.replicas = replicas;
+            this.shards = shards;
+            this.replicaSelection = replicaSelection;
+        }
+
+        synchronized ExecutorService getShardExecutor() {
+            if (closed) {
+                throw new IllegalStateException("Databases are closed, call init()");
+            }
+            if (shardExecutor == null) {
+                shardExecutor = new ThreadPoolExecutor(shards.size(), shards.size(), 60, TimeUnit.SECONDS,
+                        new LinkedBlockingQueue<>(), runnable -> {
+                            Thread thread = new Thread(runnable, "activerecord-shard");
+                            thread.setDaemon(true);
+                            return thread;
+                        });
+                shardExecutor.allowCoreThreadTimeOut(true);
+            }
+            return shardExecutor;
+        }
+
+        int getInFlight() {
+            int inFlight = primary.getInFlight();
+            for (ConnectionPool pool : replicas) {
+                inFlight += pool.getInFlight();
+            }
+            for (ConnectionPool pool : shards) {
+                inFlight += pool.getInFlight();
+            }
+            for (Databases tenant : tenants.values()) {
+                inFlight += tenant.getInFlight();
+            }
+            return inFlight;
+        }
+
+        synchronized void close() {
+            closed = true;
+            if (shardExecutor != null) {
+                shardExecutor.shutdown();
+            }
+            closeQuietly(primary);
+            replicas.forEach(Db::closeQuietly);
+            shards.forEach(Db::closeQuietly);
+            tenants.values().forEach(Databases::close);
+        }
+    }
 }
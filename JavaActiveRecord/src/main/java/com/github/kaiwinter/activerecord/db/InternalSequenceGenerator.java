@@ -3,11 +3,16 @@ package com.github.kaiwinter.activerecord.db;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
+import com.github.kaiwinter.activerecord.ActiveRecordException;
 import com.github.kaiwinter.activerecord.BaseAR;
 import com.github.kaiwinter.activerecord.metadata.MetadataCache;
+import com.github.kaiwinter.activerecord.metadata.TableMetadata;
 
 /**
  * Sequence generator which increments IDs by one starting at the highest existing ID. This assumes that no one else
@@ -16,22 +21,38 @@ import com.github.kaiwinter.activerecord.metadata.MetadataCache;
 public final class InternalSequenceGenerator {
 
     /**
-     * Caches the last used ID for each database table (= AR class).
+     * Caches the last used ID for each database table (= AR class and {@link TenantContext tenant}).
      */
-    private Map<Class<? extends BaseAR>, Long> table2lastSequenceNumber = new HashMap<>();
+    private Map<List<Object>, Long> table2lastSequenceNumber = new HashMap<>();
 
+    private static List<Object> getTableKey(Class<? extends BaseAR> clazz) {
+        return Arrays.asList(clazz, TenantContext.get());
+    }
+
+    /**
+     * Loads the highest ID of the table. For a sharded table this is the highest ID of all shards, so the IDs are
+     * unique across all shards.
+     */
     private Long initLastSequenceNumber(Class<? extends BaseAR> clazz) throws SQLException {
-        String initLastSequence = "SELECT MAX(id) from " + MetadataCache.getTableName(clazz);
-
-        try (PreparedStatement statement = Db.INSTANCE.getConnection().prepareStatement(initLastSequence);
-                ResultSet resultSet = statement.executeQuery()) {
-            Long lastSequenceNumber;
-            if (resultSet.next()) {
-                lastSequenceNumber = resultSet.getLong(1);
-            } else {
-                lastSequenceNumber = 0L;
-            }
-            return lastSequenceNumber;
+        TableMetadata metadata = MetadataCache.getTableMetadata(clazz);
+        String initLastSequence = "SELECT MAX(id) from " + metadata.tableName;
+
+        try {
+            List<Long> lastSequenceNumbers = Db.INSTANCE.executeOnAllShards(metadata, lease -> {
+                try (PreparedStatement statement = lease.getConnection().prepareStatement(initLastSequence);
+                        ResultSet resultSet = statement.executeQuery()) {
+                    Long lastSequenceNumber;
+                    if (resultSet.next()) {
+                        lastSequenceNumber = resultSet.getLong(1);
+                    } else {
+                        lastSequenceNumber = 0L;
+                    }
+                    return lastSequenceNumber;
+                }
+            });
+            return Collections.max(lastSequenceNumbers);
+        } catch (ActiveRecordException e) {
+            throw new SQLException(e.getMessage(), e);
         }
     }
 
@@ -45,13 +66,50 @@ public final class InternalSequenceGenerator {
      *             when the current sequence number cannot be loaded from the database
      */
     public synchronized long getNextSequenceNumber(Class<? extends BaseAR> clazz) throws SQLException {
-        Long lastSequenceNumber = table2lastSequenceNumber.get(clazz);
+        List<Object> tableKey = getTableKey(clazz);
+        Long lastSequenceNumber = table2lastSequenceNumber.get(tableKey);
         if (lastSequenceNumber == null) {
             lastSequenceNumber = initLastSequenceNumber(clazz);
-            table2lastSequenceNumber.put(clazz, ++lastSequenceNumber);
+            table2lastSequenceNumber.put(tableKey, ++lastSequenceNumber);
         } else {
-            table2lastSequenceNumber.put(clazz, ++lastSequenceNumber);
+            table2lastSequenceNumber.put(tableKey, ++lastSequenceNumber);
         }
         return lastSequenceNumber;
     }
+
+    /**
+     * Forgets the cached IDs of all tables, they are loaded from the tables again on next use. Call this when tables
+     * were changed without this generator, e.g. dropped and re-created.
+     */
+    public synchronized void reset() {
+        table2lastSequenceNumber.clear();
+    }
+
+    /**
+     * Forgets the cached IDs of all tables of a tenant, e.g. because the database of the tenant was replaced.
+     * 
+     * @param tenant
+     *            the name of the tenant
+     */
+    public synchronized void reset(String tenant) {
+        table2lastSequenceNumber.keySet().removeIf(tableKey -> tenant.equals(tableKey.get(1)));
+    }
+
+    /**
+     * Makes sure the next ID is greater than an ID which was written without this generator (e.g. by an upsert with
+     * an externally defined ID).
+     * 
+     * @param clazz
+     *            The AR class the ID was written for
+     * @param usedId
+     *            the ID which is used now
+     */
+    public synchronized void updateSequenceNumber(Class<? extends BaseAR> clazz, long usedId) {
+        List<Object> tableKey = getTableKey(clazz);
+        Long lastSequenceNumber = table2lastSequenceNumber.get(tableKey);
+        if (lastSequenceNumber != null && lastSequenceNumber < usedId) {
+            // otherwise it gets initialized from the table on first use
+            table2lastSequenceNumber.put(tableKey, usedId);
+        }
+    }
 }
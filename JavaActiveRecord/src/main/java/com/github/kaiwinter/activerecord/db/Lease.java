@@ -0,0 +1,60 @@
+package com.github.kaiwinter.activerecord.db;
+
+import java.sql.Connection;
+
+/**
+ * A {@link Connection} which is used for one operation. Close the {@link Lease} when the operation is finished, this
+ * doesn't close the {@link Connection} unless it was borrowed from a {@link javax.sql.DataSource}, see
+ * {@link ConnectionPool}.
+ * 
+ * <pre>
+ * try (Lease lease = Db.INSTANCE.leaseForRead();
+ *         PreparedStatement statement = lease.getConnection().prepareStatement(query)) {
+ *     ...
+ * }
+ * </pre>
+ */
+public final class Lease implements AutoCloseable {
+
+    private final ConnectionPool pool;
+    private final Connection connection;
+    private final int index;
+    private final boolean exclusive;
+    private boolean closed;
+
+    Lease(ConnectionPool pool, Connection connection, int index, boolean exclusive) {
+        this.pool = pool;
+        this.connection = connection;
+        this.index = index;
+        this.exclusive = exclusive;
+    }
+
+    /**
+     * @return the connection
+     */
+    public Connection getConnection() {
+        return connection;
+    }
+
+    /**
+     * @return <code>true</code> if the connection is leased exclusively, see {@link ConnectionPool#leaseExclusive()}
+     */
+    public boolean isExclusive() {
+        return exclusive;
+    }
+
+    /**
+     * @return the {@link ConnectionPool} this {@link Lease} belongs to
+     */
+    public ConnectionPool getPool() {
+        return pool;
+    }
+
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            pool.release(index, exclusive);
+        }
+    }
+}
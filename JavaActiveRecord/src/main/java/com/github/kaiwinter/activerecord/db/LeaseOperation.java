@@ -0,0 +1,28 @@
+package com.github.kaiwinter.activerecord.db;
+
+import java.sql.SQLException;
+
+import com.github.kaiwinter.activerecord.ActiveRecordException;
+
+/**
+ * An operation on the connection of a {@link Lease}.
+ * 
+ * @param <R>
+ *            the result type of the operation
+ */
+@FunctionalInterface
+public interface LeaseOperation<R> {
+
+    /**
+     * Executes the operation.
+     * 
+     * @param lease
+     *            the {@link Lease} of the connection to use
+     * @return the result of the operation
+     * @throws SQLException
+     *             if an SQL error occurs
+     * @throws ActiveRecordException
+     *             if an internal error occurs
+     */
+    R execute(Lease lease) throws SQLException, ActiveRecordException;
+}
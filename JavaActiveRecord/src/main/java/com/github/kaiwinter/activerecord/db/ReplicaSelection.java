@@ -0,0 +1,49 @@
+package com.github.kaiwinter.activerecord.db;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Strategy to select the read replica for a read operation. Configured by the <code>replicaSelection</code> property
+ * of the <code>db.properties</code>.
+ */
+public enum ReplicaSelection {
+    /**
+     * Uses the replicas one after the other.
+     */
+    ROUND_ROBIN {
+        @Override
+        ConnectionPool select(List<ConnectionPool> replicas, AtomicInteger counter) {
+            return replicas.get(Math.floorMod(counter.getAndIncrement(), replicas.size()));
+        }
+    },
+
+    /**
+     * Uses the replica with the fewest running operations, ties are resolved round robin.
+     */
+    LEAST_LOADED {
+        @Override
+        ConnectionPool select(List<ConnectionPool> replicas, AtomicInteger counter) {
+            int start = Math.floorMod(counter.getAndIncrement(), replicas.size());
+            ConnectionPool selected = null;
+            for (int i = 0; i < replicas.size(); i++) {
+                ConnectionPool replica = replicas.get((start + i) % replicas.size());
+                if (selected == null || replica.getInFlight() < selected.getInFlight()) {
+                    selected = replica;
+                }
+            }
+            return selected;
+        }
+    };
+
+    /**
+     * Selects one of the <code>replicas</code>.
+     * 
+     * @param replicas
+     *            the replicas, not empty
+     * @param counter
+     *            the counter which is used to rotate the replicas
+     * @return the selected replica
+     */
+    abstract ConnectionPool select(List<ConnectionPool> replicas, AtomicInteger counter);
+}
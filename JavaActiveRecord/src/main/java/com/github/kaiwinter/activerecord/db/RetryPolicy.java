@@ -0,0 +1,66 @@
+package com.github.kaiwinter.activerecord.db;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * How often and after which delay an operation which failed with a transient error is repeated, see
+ * {@link Db#call(boolean, SqlOperation)}. The delay grows exponentially from the backoff up to the maximum backoff,
+ * the actual delay is chosen randomly between 0 and this value ("full jitter"), so clients which failed at the same
+ * time don't retry at the same time.
+ */
+public final class RetryPolicy {
+
+    /** Doesn't retry. */
+    public static final RetryPolicy NONE = new RetryPolicy(1, 0, 0);
+
+    private final int maxAttempts;
+    private final long backoffMillis;
+    private final long maxBackoffMillis;
+
+    /**
+     * Constructs a new {@link RetryPolicy}.
+     * 
+     * @param maxAttempts
+     *            the number of attempts including the first one, 1 to not retry
+     * @param backoffMillis
+     *            the maximum delay before the first retry
+     * @param maxBackoffMillis
+     *            the upper bound of the growing delay
+     */
+    public RetryPolicy(int maxAttempts, long backoffMillis, long maxBackoffMillis) {
+        if (maxAttempts < 1 || backoffMillis < 0 || maxBackoffMillis < backoffMillis) {
+            throw new IllegalArgumentException("Invalid retry policy: " + maxAttempts + " attempts, backoff "
+                    + backoffMillis + " to " + maxBackoffMillis + " ms");
+        }
+        this.maxAttempts = maxAttempts;
+        this.backoffMillis = backoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+    }
+
+    /**
+     * @return the number of attempts including the first one
+     */
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * Returns the delay before the next attempt.
+     * 
+     * @param failedAttempts
+     *            the number of attempts which failed so far, at least 1
+     * @return the random delay in milliseconds
+     */
+    public long getBackoffMillis(int failedAttempts) {
+        long bound = backoffMillis;
+        for (int i = 1; i < failedAttempts && bound < maxBackoffMillis; i++) {
+            bound *= 2;
+        }
+        return ThreadLocalRandom.current().nextLong(Math.min(bound, maxBackoffMillis) + 1);
+    }
+
+    @Override
+    public String toString() {
+        return maxAttempts + " attempts, backoff " + backoffMillis + " to " + maxBackoffMillis + " ms";
+    }
+}
@@ -0,0 +1,56 @@
+package com.github.kaiwinter.activerecord.db;
+
+/**
+ * Distributes the rows of a table across the shards (databases) which are defined in the <code>db.properties</code>
+ * by <code>shard.1.connectionString</code>, <code>shard.2.connectionString</code> and so on. The shard of a row is
+ * determined by its id.
+ */
+public enum ShardStrategy {
+    /**
+     * The table is not sharded, it is stored in the primary database.
+     */
+    NONE {
+        @Override
+        public int getShard(long id, int shardCount, long rangeSize) {
+            return 0;
+        }
+    },
+
+    /**
+     * The shard is determined by a hash of the id, rows are spread evenly across all shards.
+     */
+    HASH {
+        @Override
+        public int getShard(long id, int shardCount, long rangeSize) {
+            long hash = id * 0x9E3779B97F4A7C15L;
+            hash ^= hash >>> 32;
+            return Math.floorMod((int) hash, shardCount);
+        }
+    },
+
+    /**
+     * Consecutive ranges of ids are stored in the same shard: ids 1 to <code>rangeSize</code> in the first shard, the
+     * next <code>rangeSize</code> ids in the second shard and so on. Ids beyond the last range are stored in the last
+     * shard.
+     */
+    RANGE {
+        @Override
+        public int getShard(long id, int shardCount, long rangeSize) {
+            long shard = Math.floorDiv(id - 1, rangeSize);
+            return (int) Math.max(0, Math.min(shardCount - 1, shard));
+        }
+    };
+
+    /**
+     * Returns the shard of a row.
+     * 
+     * @param id
+     *            the id of the row
+     * @param shardCount
+     *            the number of shards
+     * @param rangeSize
+     *            the number of ids per shard, used by {@link #RANGE} only
+     * @return the index of the shard, from 0 to <code>shardCount - 1</code>
+     */
+    public abstract int getShard(long id, int shardCount, long rangeSize);
+}
@@ -0,0 +1,27 @@
+package com.github.kaiwinter.activerecord.db;
+
+import java.sql.SQLException;
+
+import com.github.kaiwinter.activerecord.ActiveRecordException;
+
+/**
+ * An operation on the database which leases its connections itself, see
+ * {@link Db#call(boolean, SqlOperation)}.
+ * 
+ * @param <R>
+ *            the result type of the operation
+ */
+@FunctionalInterface
+public interface SqlOperation<R> {
+
+    /**
+     * Executes the operation.
+     * 
+     * @return the result of the operation
+     * @throws SQLException
+     *             if an SQL error occurs
+     * @throws ActiveRecordException
+     *             if an internal error occurs
+     */
+    R execute() throws SQLException, ActiveRecordException;
+}
@@ -0,0 +1,94 @@
+package com.github.kaiwinter.activerecord.db;
+
+import java.sql.SQLException;
+import java.util.regex.Pattern;
+
+import com.github.kaiwinter.activerecord.ActiveRecordException;
+
+/**
+ * Holds the tenant of the current thread. All operations of the thread use the tables and the databases of this
+ * tenant: the metadata of the Active Records is built once per tenant with the table name of the tenant (see the
+ * <code>tenant.tableName</code> property of {@link Db}) and a tenant with its own databases (see
+ * {@link Db#addTenant(String, javax.sql.DataSource, int)}) is routed to them. Without a tenant the default tables and
+ * databases are used.
+ * 
+ * <pre>
+ * TenantContext.set("acme");
+ * try {
+ *     PersonAR.findAll(PersonAR.class); // acme_person
+ * } finally {
+ *     TenantContext.clear();
+ * }
+ * </pre>
+ */
+public final class TenantContext {
+
+    /** The tenant becomes part of table names, so it must be a plain identifier. */
+    private static final Pattern TENANT_PATTERN = Pattern.compile("[A-Za-z0-9_]+");
+
+    private static final ThreadLocal<String> TENANT = new ThreadLocal<>();
+
+    private TenantContext() {
+        // utility class
+    }
+
+    /**
+     * Sets the tenant of the current thread.
+     * 
+     * @param tenant
+     *            the name of the tenant, letters, digits and underscores only
+     * @throws IllegalArgumentException
+     *             if the name contains other characters
+     */
+    public static void set(String tenant) {
+        if (!TENANT_PATTERN.matcher(tenant).matches()) {
+            throw new IllegalArgumentException("Invalid tenant '" + tenant + "'");
+        }
+        TENANT.set(tenant);
+    }
+
+    /**
+     * @return the tenant of the current thread, <code>null</code> for the default tenant
+     */
+    public static String get() {
+        return TENANT.get();
+    }
+
+    /**
+     * Resets the current thread to the default tenant.
+     */
+    public static void clear() {
+        TENANT.remove();
+    }
+
+    /**
+     * Runs an operation as a tenant, the tenant of the current thread is restored afterwards.
+     * 
+     * @param tenant
+     *            the name of the tenant, <code>null</code> for the default tenant
+     * @param operation
+     *            the operation
+     * @return the result of the operation
+     * @throws SQLException
+     *             if the operation fails with an SQL error
+     * @throws ActiveRecordException
+     *             if the operation fails with an internal error
+     */
+    public static <R> R call(String tenant, SqlOperation<R> operation) throws SQLException, ActiveRecordException {
+        String previous = TENANT.get();
+        if (tenant == null) {
+            clear();
+        } else {
+            set(tenant);
+        }
+        try {
+            return operation.execute();
+        } finally {
+            if (previous == null) {
+                TENANT.remove();
+            } else {
+                TENANT.set(previous);
+            }
+        }
+    }
+}
@@ -0,0 +1,338 @@
+package com.github.kaiwinter.activerecord.db;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.kaiwinter.activerecord.ActiveRecordException;
+import com.github.kaiwinter.activerecord.BaseAR;
+import com.github.kaiwinter.activerecord.annotation.WriteBehind;
+import com.github.kaiwinter.activerecord.metadata.MetadataCache;
+
+/**
+ * The buffer of a {@link WriteBehind} Active Record. Saved records are kept by id until they are written, a record
+ * which is saved again replaces the buffered one, so a hot row is written once per flush. The buffer keeps a copy of
+ * the record, the state at the time of its last save is written.
+ * 
+ * <p>
+ * The buffer is flushed by {@link BaseAR#upsertAll(Class, java.util.Collection)}, in one transaction if the table is
+ * not sharded (on a connection which is leased exclusively by the flushing thread). It is flushed periodically by a
+ * background thread, by the saving thread if the buffer is full (backpressure), by {@link #flushAll()} and on shutdown
+ * of the JVM. The background flushes are stopped by {@link Db#close(long, TimeUnit)} until the {@link Db} is
+ * initialized again. Records of a failed flush stay in the buffer and are written by the next one unless they are
+ * replaced. A record which failed {@link WriteBehind#maxFlushAttempts()} flushes is logged and dropped.
+ * </p>
+ * 
+ * <p>
+ * {@link BaseAR#findById(Class, long)} returns a buffered record, other queries read the database and don't see the
+ * buffered changes.
+ * </p>
+ */
+public final class WriteBehindBuffer {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(WriteBehindBuffer.class.getSimpleName());
+
+    /** All buffers, flushed on shutdown. */
+    private static final List<WriteBehindBuffer> BUFFERS = new CopyOnWriteArrayList<>();
+
+    /** Runs the periodic flushes, <code>null</code> while stopped, guarded by the class. */
+    private static ScheduledExecutorService flusher;
+    private static boolean shutdownHookAdded;
+
+    private final Class<? extends BaseAR> clazz;
+    /** The {@link TenantContext tenant} the buffer is written as. */
+    private final String tenant;
+    private final int maxRecords;
+    private final long flushIntervalMillis;
+    private final int maxFlushAttempts;
+    /** Held while a flush writes, so flushes of one buffer don't overlap. */
+    private final Object flushLock = new Object();
+    private Map<Long, BaseAR> pending = new LinkedHashMap<>();
+    /** The number of failed flushes by the id of the buffered record, guarded by <code>this</code>. */
+    private final Map<Long, Integer> failedFlushes = new HashMap<>();
+
+    private WriteBehindBuffer(Class<? extends BaseAR> clazz, WriteBehind writeBehind, String tenant) {
+        if (writeBehind.maxRecords() < 1 || writeBehind.flushIntervalMillis() < 1
+                || writeBehind.maxFlushAttempts() < 1) {
+            throw new IllegalArgumentException("@WriteBehind of '" + clazz.getName() + "' must be positive");
+        }
+        this.clazz = clazz;
+        this.tenant = tenant;
+        this.maxRecords = writeBehind.maxRecords();
+        this.flushIntervalMillis = writeBehind.flushIntervalMillis();
+        this.maxFlushAttempts = writeBehind.maxFlushAttempts();
+    }
+
+    /**
+     * Creates the buffer of an Active Record and schedules its flush.
+     * 
+     * @param clazz
+     *            the Active Record class
+     * @param writeBehind
+     *            the annotation of the Active Record
+     * @param tenant
+     *            the {@link TenantContext tenant} of the metadata, <code>null</code> for the default tenant
+     * @return the new buffer
+     */
+    public static WriteBehindBuffer create(Class<? extends BaseAR> clazz, WriteBehind writeBehind, String tenant) {
+        WriteBehindBuffer buffer = new WriteBehindBuffer(clazz, writeBehind, tenant);
+        synchronized (WriteBehindBuffer.class) {
+            BUFFERS.add(buffer);
+            if (flusher == null) {
+                start();
+            } else {
+                buffer.schedule();
+            }
+        }
+        return buffer;
+    }
+
+    /**
+     * Starts the periodic flushes of all buffers if they are stopped, called when the {@link Db} is initialized.
+     */
+    static synchronized void start() {
+        if (flusher != null || BUFFERS.isEmpty()) {
+            return;
+        }
+        flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "activerecord-write-behind");
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (WriteBehindBuffer buffer : BUFFERS) {
+            buffer.schedule();
+        }
+        if (!shutdownHookAdded) {
+            shutdownHookAdded = true;
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    flushAll();
+                } catch (ActiveRecordException | RuntimeException e) {
+                    LOGGER.error("Could not flush write-behind buffers on shutdown", e);
+                }
+            }, "activerecord-write-behind-shutdown"));
+        }
+    }
+
+    /**
+     * Stops the periodic flushes of all buffers, called when the {@link Db} is closed. A running flush is finished.
+     */
+    static synchronized void stop() {
+        if (flusher != null) {
+            flusher.shutdown();
+            flusher = null;
+        }
+    }
+
+    private void schedule() {
+        flusher.scheduleWithFixedDelay(() -> {
+            try {
+                flush();
+            } catch (ActiveRecordException | RuntimeException e) {
+                LOGGER.error("Could not flush write-behind buffer of '{}'", clazz.getSimpleName(), e);
+            }
+        }, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Flushes the buffers of all {@link WriteBehind} Active Records.
+     * 
+     * @throws ActiveRecordException
+     *             when a buffer cannot be written, the other buffers are flushed anyway
+     */
+    public static void flushAll() throws ActiveRecordException {
+        ActiveRecordException failure = null;
+        for (WriteBehindBuffer buffer : BUFFERS) {
+            try {
+                buffer.flush();
+            } catch (ActiveRecordException e) {
+                failure = e;
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Buffers a copy of a saved record, it replaces a buffered record with the same id. Later changes of the record
+     * are not written unless it is saved again. If the buffer is full it is flushed first by the calling thread.
+     * 
+     * @param activeRecord
+     *            the Active Record, must have an id
+     * @throws ActiveRecordException
+     *             when the record cannot be copied or the full buffer cannot be written
+     */
+    public void put(BaseAR activeRecord) throws ActiveRecordException {
+        long id = activeRecord.getIdValue();
+        BaseAR snapshot = activeRecord.copy();
+        while (true) {
+            synchronized (this) {
+                if (pending.size() < maxRecords || pending.containsKey(id)) {
+                    pending.put(id, snapshot);
+                    failedFlushes.remove(id);
+                    return;
+                }
+            }
+            flush();
+        }
+    }
+
+    /**
+     * @param id
+     *            the id of the record
+     * @return a copy of the buffered record, <code>null</code> if it is not buffered
+     * @throws ActiveRecordException
+     *             when the record cannot be copied
+     */
+    public BaseAR get(long id) throws ActiveRecordException {
+        BaseAR buffered;
+        synchronized (this) {
+            buffered = pending.get(id);
+        }
+        return buffered == null ? null : buffered.copy();
+    }
+
+    /**
+     * @param id
+     *            the id of the record
+     * @return <code>true</code> if the record is buffered
+     */
+    public synchronized boolean contains(long id) {
+        return pending.containsKey(id);
+    }
+
+    /**
+     * Removes a record from the buffer, e.g. because it is deleted. Waits for a running flush which may write it.
+     * 
+     * @param id
+     *            the id of the record
+     */
+    public void remove(long id) {
+        synchronized (flushLock) {
+            synchronized (this) {
+                pending.remove(id);
+                failedFlushes.remove(id);
+            }
+        }
+    }
+
+    /**
+     * @return the number of buffered records
+     */
+    public synchronized int size() {
+        return pending.size();
+    }
+
+    /**
+     * Writes the buffered records.
+     * 
+     * @throws ActiveRecordException
+     *             when the records cannot be written, they stay in the buffer
+     */
+    public void flush() throws ActiveRecordException {
+        synchronized (flushLock) {
+            Map<Long, BaseAR> records;
+            synchronized (this) {
+                if (pending.isEmpty()) {
+                    return;
+                }
+                records = pending;
+                pending = new LinkedHashMap<>();
+            }
+            try {
+                write(new ArrayList<>(records.values()));
+                LOGGER.debug("Flushed {} records of '{}'", records.size(), clazz.getSimpleName());
+                synchronized (this) {
+                    if (!failedFlushes.isEmpty()) {
+                        failedFlushes.keySet().removeAll(records.keySet());
+                    }
+                }
+            } catch (ActiveRecordException | RuntimeException e) {
+                requeue(records);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Puts the records of a failed flush back unless they were replaced meanwhile. A record which failed too often is
+     * dropped.
+     */
+    private synchronized void requeue(Map<Long, BaseAR> records) {
+        List<Long> dropped = new ArrayList<>();
+        for (Map.Entry<Long, BaseAR> record : records.entrySet()) {
+            Long id = record.getKey();
+            if (pending.containsKey(id)) {
+                continue;
+            }
+            if (failedFlushes.merge(id, 1, Integer::sum) < maxFlushAttempts) {
+                pending.put(id, record.getValue());
+            } else {
+                failedFlushes.remove(id);
+                dropped.add(id);
+            }
+        }
+        if (!dropped.isEmpty()) {
+            LOGGER.error("Dropped {} records of '{}' after {} failed flushes, ids: {}", dropped.size(),
+                    clazz.getSimpleName(), maxFlushAttempts, dropped);
+        }
+    }
+
+    private void write(List<BaseAR> records) throws ActiveRecordException {
+        try {
+            // the flusher thread has no tenant, a saving thread may have another one
+            TenantContext.call(tenant, () -> {
+                writeAsTenant(records);
+                return null;
+            });
+        } catch (SQLException e) {
+            throw new ActiveRecordException("Could not flush write-behind buffer", e);
+        }
+    }
+
+    private void writeAsTenant(List<BaseAR> records) throws ActiveRecordException {
+        Db db = Db.INSTANCE;
+        // beginTransaction leases a connection exclusively, no other thread's operation runs in the transaction
+        boolean transaction = !db.isInTransaction() && !db.isSharded(MetadataCache.getTableMetadata(clazz));
+        try {
+            if (transaction) {
+                db.beginTransaction();
+            }
+            upsertAll(clazz, records);
+            if (transaction) {
+                transaction = false;
+                db.commit();
+            }
+        } catch (SQLException e) {
+            throw new ActiveRecordException("Could not flush write-behind buffer", e);
+        } finally {
+            if (transaction) {
+                try {
+                    db.rollback();
+                } catch (SQLException e) {
+                    LOGGER.warn("Could not roll back flush", e);
+                }
+            }
+        }
+    }
+
+    private static <T extends BaseAR> void upsertAll(Class<T> clazz, List<BaseAR> records)
+            throws ActiveRecordException {
+        List<T> typedRecords = new ArrayList<>(records.size());
+        for (BaseAR activeRecord : records) {
+            typedRecords.add(clazz.cast(activeRecord));
+        }
+        BaseAR.upsertAll(clazz, typedRecords);
+    }
+}
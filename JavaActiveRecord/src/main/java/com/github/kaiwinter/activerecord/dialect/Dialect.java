@@ -0,0 +1,235 @@
+package com.github.kaiwinter.activerecord.dialect;
+
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.SQLTransientException;
+import java.sql.Types;
+import java.util.List;
+
+import com.github.kaiwinter.activerecord.metadata.ColumnType;
+
+/**
+ * Builds the database specific SQL statements. The statements which are the same for all supported databases are
+ * implemented as default methods, a {@link Dialect} overrides them where the database offers a faster or a different
+ * syntax.
+ * 
+ * <p>
+ * The {@link Dialect} is chosen by the <code>dialect</code> property of the <code>db.properties</code>, either by one
+ * of the short names known by {@link Dialects} or by the name of a class implementing this interface. If the property
+ * is not set the {@link Dialect} is chosen by the product name of the database.
+ * </p>
+ */
+public interface Dialect {
+
+    /**
+     * Builds the statement which inserts a row or updates it if a row with the same id already exists. The parameters
+     * are the <code>columns</code> followed by the id.
+     * 
+     * @param tableName
+     *            the name of the table
+     * @param columns
+     *            the names of the columns, without the id column
+     * @param idColumn
+     *            the name of the id column
+     * @return the upsert statement
+     */
+    String getUpsertQuery(String tableName, List<String> columns, String idColumn);
+
+    /**
+     * @return <code>true</code> if an INSERT can return the generated id by <code>RETURNING</code>, otherwise the
+     *         generated keys of the JDBC driver are used
+     */
+    default boolean supportsReturning() {
+        return false;
+    }
+
+    /**
+     * Appends the clause which returns the generated id to an INSERT statement. Only called if
+     * {@link #supportsReturning()} is <code>true</code>.
+     * 
+     * @param insertQuery
+     *            the INSERT statement
+     * @param idColumn
+     *            the name of the id column
+     * @return the INSERT statement which returns the generated id as result set
+     */
+    default String getInsertReturningIdQuery(String insertQuery, String idColumn) {
+        return insertQuery + " RETURNING " + idColumn;
+    }
+
+    /**
+     * Restricts a SELECT statement to a page of its result. The returned statement takes the limit and the offset as
+     * its last two parameters, in this order.
+     * 
+     * @param selectQuery
+     *            the SELECT statement, should define an order
+     * @return the SELECT statement for one page
+     */
+    default String getPaginatedQuery(String selectQuery) {
+        return selectQuery + " LIMIT ? OFFSET ?";
+    }
+
+    /**
+     * Builds an INSERT statement which inserts <code>rowCount</code> rows at once by a multi-row VALUES list.
+     * 
+     * @param tableName
+     *            the name of the table
+     * @param columns
+     *            the names of the columns
+     * @param rowCount
+     *            the number of rows
+     * @return the INSERT statement
+     */
+    default String getMultiRowInsertQuery(String tableName, List<String> columns, int rowCount) {
+        StringBuilder row = new StringBuilder("(");
+        for (int i = 0; i < columns.size(); i++) {
+            row.append(i == 0 ? "?" : ", ?");
+        }
+        row.append(')');
+
+        StringBuilder query = new StringBuilder("INSERT INTO ").append(tableName) //
+                .append(" (").append(String.join(", ", columns)).append(") VALUES ");
+        for (int i = 0; i < rowCount; i++) {
+            if (i > 0) {
+                query.append(", ");
+            }
+            query.append(row);
+        }
+        return query.toString();
+    }
+
+    /**
+     * @return the maximum number of parameters of one statement
+     */
+    default int getMaxParameters() {
+        return 999;
+    }
+
+    /**
+     * @return the maximum number of rows of one multi-row INSERT statement
+     */
+    default int getMaxRowsPerInsert() {
+        return 1000;
+    }
+
+    /**
+     * Returns the fetch size of a query whose result is read row by row and can be larger than the memory, e.g. by an
+     * export. The rows are transferred in chunks of this size instead of all at once.
+     * 
+     * @return the fetch size for {@link java.sql.Statement#setFetchSize(int)}
+     */
+    default int getStreamingFetchSize() {
+        return 1000;
+    }
+
+    /**
+     * Returns the id of the first row of a multi-row INSERT if the JDBC driver returns only one generated key for the
+     * whole statement. The ids of one statement are expected to be consecutive.
+     * 
+     * @param generatedKey
+     *            the single generated key returned by the driver
+     * @param rowCount
+     *            the number of rows inserted by the statement
+     * @return the id of the first inserted row
+     */
+    default long getFirstIdOfMultiRowInsert(long generatedKey, int rowCount) {
+        // like MySQL's LAST_INSERT_ID() the key of the first row is returned
+        return generatedKey;
+    }
+
+    /**
+     * Builds the statement which creates an index.
+     * 
+     * @param indexName
+     *            the name of the index
+     * @param tableName
+     *            the name of the table
+     * @param columns
+     *            the names of the columns in the order of the index
+     * @param unique
+     *            <code>true</code> for a unique index
+     * @return the CREATE INDEX statement
+     */
+    default String getCreateIndexQuery(String indexName, String tableName, List<String> columns, boolean unique) {
+        return "CREATE " + (unique ? "UNIQUE " : "") + "INDEX " + indexName + " ON " + tableName //
+                + " (" + String.join(", ", columns) + ")";
+    }
+
+    /**
+     * Returns the SQL type of a column for the CREATE TABLE statement.
+     * 
+     * @param columnType
+     *            the type of the {@link com.github.kaiwinter.activerecord.annotation.Column}-annotated field
+     * @return the SQL type
+     */
+    default String getColumnType(ColumnType columnType) {
+        switch (columnType.sqlType) {
+            case Types.BIGINT :
+                return "BIGINT";
+            case Types.INTEGER :
+                return "INTEGER";
+            case Types.SMALLINT :
+                return "SMALLINT";
+            case Types.TINYINT :
+                return "TINYINT";
+            case Types.DOUBLE :
+                return "DOUBLE";
+            case Types.REAL :
+                return "REAL";
+            case Types.BOOLEAN :
+                return "BOOLEAN";
+            case Types.VARCHAR :
+                return "VARCHAR";
+            default :
+                return "BLOB";
+        }
+    }
+
+    /**
+     * Returns the SQL type of a {@link com.github.kaiwinter.activerecord.annotation.FetchType#LAZY} column for the
+     * CREATE TABLE statement. These columns are meant for large values, text is stored as CLOB instead of VARCHAR.
+     * 
+     * @param columnType
+     *            the type of the {@link com.github.kaiwinter.activerecord.annotation.Column}-annotated field
+     * @return the SQL type
+     */
+    default String getLargeColumnType(ColumnType columnType) {
+        if (columnType == ColumnType.STRING) {
+            return "CLOB";
+        }
+        return getColumnType(columnType);
+    }
+
+    /**
+     * Returns the definition of the id column for the CREATE TABLE statement.
+     * 
+     * @param idColumn
+     *            the name of the id column
+     * @param autoIncrement
+     *            <code>true</code> if the database generates the id
+     *            ({@link com.github.kaiwinter.activerecord.db.SequenceGenerator#DATABASE})
+     * @return the column definition including the primary key constraint
+     */
+    default String getIdColumnDefinition(String idColumn, boolean autoIncrement) {
+        return idColumn + " BIGINT" + (autoIncrement ? " GENERATED BY DEFAULT AS IDENTITY" : "") + " PRIMARY KEY";
+    }
+
+    /**
+     * Returns if an error is transient, so the operation may succeed if it is repeated: a deadlock, a serialization
+     * failure or a lock or statement timeout. By default the exception type and the SQLState class are checked
+     * (<code>40</code> transaction rollback, <code>HYT</code> timeout), a {@link Dialect} adds the vendor codes of its
+     * database. A lost connection (<code>08</code> connection exception, {@link SQLTransientConnectionException}) is
+     * not transient, the repeated operation would use the same broken connection.
+     * 
+     * @param e
+     *            the error
+     * @return <code>true</code> if the operation may be retried
+     */
+    default boolean isTransient(SQLException e) {
+        if (e instanceof SQLTransientException && !(e instanceof SQLTransientConnectionException)) {
+            return true;
+        }
+        String sqlState = e.getSQLState();
+        return sqlState != null && (sqlState.startsWith("40") || sqlState.startsWith("HYT"));
+    }
+}
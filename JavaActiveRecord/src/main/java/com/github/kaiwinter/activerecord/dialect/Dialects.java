@@ -0,0 +1,103 @@
+package com.github.kaiwinter.activerecord.dialect;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.SQLException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Chooses the {@link Dialect} for a database.
+ */
+public final class Dialects {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(Dialects.class.getSimpleName());
+
+    private Dialects() {
+        // intentionally
+    }
+
+    /**
+     * Returns the {@link Dialect} for the passed name or, if no name is passed, for the connected database.
+     * 
+     * @param dialectName
+     *            either one of <code>sqlite</code>, <code>h2</code>, <code>postgresql</code>, <code>mysql</code> or
+     *            the name of a class implementing {@link Dialect}, may be <code>null</code>
+     * @param connection
+     *            the connection to determine the database product from if no <code>dialectName</code> is passed,
+     *            may be <code>null</code>
+     * @return the {@link Dialect}, {@link H2Dialect} if there is neither a name nor a connection
+     * @throws IllegalArgumentException
+     *             if the dialect of the passed name or the connected database product is unknown
+     */
+    public static Dialect resolve(String dialectName, Connection connection) {
+        if (dialectName != null && !dialectName.trim().isEmpty()) {
+            return forName(dialectName.trim());
+        }
+        if (connection == null) {
+            LOGGER.warn("No connection to determine the dialect, using H2");
+            return new H2Dialect();
+        }
+        try {
+            DatabaseMetaData metaData = connection.getMetaData();
+            return forProduct(metaData.getDatabaseProductName(), metaData.getDatabaseMajorVersion(),
+                    metaData.getDatabaseMinorVersion());
+        } catch (SQLException e) {
+            LOGGER.warn("Could not determine database product, using H2", e);
+            return new H2Dialect();
+        }
+    }
+
+    private static Dialect forName(String dialectName) {
+        switch (dialectName.toLowerCase()) {
+            case "sqlite" :
+                return new SQLiteDialect();
+            case "h2" :
+                return new H2Dialect();
+            case "postgresql" :
+                return new PostgreSQLDialect();
+            case "mysql" :
+            case "mariadb" :
+                return new MySQLDialect();
+            default :
+                try {
+                    return (Dialect) Class.forName(dialectName).getDeclaredConstructor().newInstance();
+                } catch (ReflectiveOperationException | ClassCastException e) {
+                    throw new IllegalArgumentException("Unknown dialect: " + dialectName, e);
+                }
+        }
+    }
+
+    private static Dialect forProduct(String productName, int majorVersion, int minorVersion) {
+        LOGGER.debug("Choosing dialect for {} {}.{}", productName, majorVersion, minorVersion);
+        switch (productName.toLowerCase()) {
+            case "sqlite" :
+                return new SQLiteDialect(majorVersion > 3 || majorVersion == 3 && minorVersion >= 35);
+            case "h2" :
+                return new H2Dialect();
+            case "postgresql" :
+                return new PostgreSQLDialect();
+            case "mysql" :
+            case "mariadb" :
+                return new MySQLDialect();
+            default :
+                throw new IllegalArgumentException("Unknown database product '" + productName
+                        + "', configure the name of its Dialect implementation");
+        }
+    }
+
+    /**
+     * @return comma separated question marks
+     */
+    static String getQuestionMarkList(int count) {
+        StringBuilder val = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                val.append(", ");
+            }
+            val.append('?');
+        }
+        return val.toString();
+    }
+}
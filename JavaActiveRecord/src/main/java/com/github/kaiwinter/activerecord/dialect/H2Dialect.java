@@ -0,0 +1,34 @@
+package com.github.kaiwinter.activerecord.dialect;
+
+import java.util.List;
+
+/**
+ * {@link Dialect} for H2.
+ */
+public final class H2Dialect implements Dialect {
+
+    @Override
+    public String getUpsertQuery(String tableName, List<String> columns, String idColumn) {
+        return "MERGE INTO " + tableName //
+                + " (" + String.join(", ", columns) + ", " + idColumn //
+                + ") KEY (" + idColumn + ") VALUES (" + Dialects.getQuestionMarkList(columns.size() + 1) + ")";
+    }
+
+    @Override
+    public int getMaxParameters() {
+        return Short.MAX_VALUE;
+    }
+
+    /**
+     * The driver returns the identity of the last row.
+     */
+    @Override
+    public long getFirstIdOfMultiRowInsert(long generatedKey, int rowCount) {
+        return generatedKey - rowCount + 1;
+    }
+
+    @Override
+    public String getIdColumnDefinition(String idColumn, boolean autoIncrement) {
+        return idColumn + " BIGINT" + (autoIncrement ? " AUTO_INCREMENT" : "") + " PRIMARY KEY";
+    }
+}
@@ -0,0 +1,76 @@
+package com.github.kaiwinter.activerecord.dialect;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import com.github.kaiwinter.activerecord.metadata.ColumnType;
+
+/**
+ * {@link Dialect} for MySQL and MariaDB.
+ */
+public final class MySQLDialect implements Dialect {
+
+    @Override
+    public String getUpsertQuery(String tableName, List<String> columns, String idColumn) {
+        return "INSERT INTO " + tableName //
+                + " (" + String.join(", ", columns) + ", " + idColumn //
+                + ") VALUES (" + Dialects.getQuestionMarkList(columns.size() + 1) + ")" //
+                + " ON DUPLICATE KEY UPDATE " + columns.stream() //
+                        .map(column -> column + "=VALUES(" + column + ")") //
+                        .collect(Collectors.joining(", "));
+    }
+
+    /**
+     * A lock wait timeout (1205) has the generic SQLState <code>HY000</code>, a deadlock (1213) is rolled back.
+     */
+    @Override
+    public boolean isTransient(SQLException e) {
+        return e.getErrorCode() == 1205 || e.getErrorCode() == 1213 || Dialect.super.isTransient(e);
+    }
+
+    @Override
+    public int getMaxParameters() {
+        return 65535;
+    }
+
+    /**
+     * MySQL Connector/J only streams a result row by row with this fetch size, otherwise it loads the whole result.
+     */
+    @Override
+    public int getStreamingFetchSize() {
+        return Integer.MIN_VALUE;
+    }
+
+    /**
+     * MySQL needs the length of a VARCHAR.
+     */
+    @Override
+    public String getColumnType(ColumnType columnType) {
+        if (columnType == ColumnType.STRING) {
+            return "VARCHAR(255)";
+        }
+        return Dialect.super.getColumnType(columnType);
+    }
+
+    @Override
+    public String getIdColumnDefinition(String idColumn, boolean autoIncrement) {
+        return idColumn + " BIGINT" + (autoIncrement ? " AUTO_INCREMENT" : "") + " PRIMARY KEY";
+    }
+
+    /**
+     * BLOB and TEXT are limited to 64 KB in MySQL.
+     */
+    @Override
+    public String getLargeColumnType(ColumnType columnType) {
+        switch (columnType) {
+            case STRING :
+                return "LONGTEXT";
+            case BYTES :
+            case OBJECT :
+                return "LONGBLOB";
+            default :
+                return getColumnType(columnType);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.github.kaiwinter.activerecord.dialect;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import com.github.kaiwinter.activerecord.metadata.ColumnType;
+
+/**
+ * {@link Dialect} for PostgreSQL.
+ */
+public final class PostgreSQLDialect implements Dialect {
+
+    @Override
+    public String getUpsertQuery(String tableName, List<String> columns, String idColumn) {
+        return "INSERT INTO " + tableName //
+                + " (" + String.join(", ", columns) + ", " + idColumn //
+                + ") VALUES (" + Dialects.getQuestionMarkList(columns.size() + 1) + ")" //
+                + " ON CONFLICT (" + idColumn + ") DO UPDATE SET " + columns.stream() //
+                        .map(column -> column + "=EXCLUDED." + column) //
+                        .collect(Collectors.joining(", "));
+    }
+
+    /**
+     * Adds <code>55P03</code> (lock not available, e.g. by <code>lock_timeout</code>).
+     */
+    @Override
+    public boolean isTransient(SQLException e) {
+        return "55P03".equals(e.getSQLState()) || Dialect.super.isTransient(e);
+    }
+
+    @Override
+    public boolean supportsReturning() {
+        return true;
+    }
+
+    @Override
+    public int getMaxParameters() {
+        return Short.MAX_VALUE;
+    }
+
+    /**
+     * PostgreSQL has no TINYINT and names the types of floating point numbers and binary data differently.
+     */
+    @Override
+    public String getColumnType(ColumnType columnType) {
+        switch (columnType) {
+            case BYTE :
+                return "SMALLINT";
+            case DOUBLE :
+            case BOXED_DOUBLE :
+                return "DOUBLE PRECISION";
+            case BYTES :
+            case OBJECT :
+                return "BYTEA";
+            default :
+                return Dialect.super.getColumnType(columnType);
+        }
+    }
+
+    @Override
+    public String getIdColumnDefinition(String idColumn, boolean autoIncrement) {
+        return idColumn + (autoIncrement ? " BIGSERIAL" : " BIGINT") + " PRIMARY KEY";
+    }
+
+    @Override
+    public String getLargeColumnType(ColumnType columnType) {
+        if (columnType == ColumnType.STRING) {
+            return "TEXT";
+        }
+        return getColumnType(columnType);
+    }
+}
@@ -0,0 +1,95 @@
+package com.github.kaiwinter.activerecord.dialect;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import com.github.kaiwinter.activerecord.metadata.ColumnType;
+
+/**
+ * {@link Dialect} for SQLite 3.24 and above.
+ */
+public final class SQLiteDialect implements Dialect {
+
+    private final boolean supportsReturning;
+
+    /**
+     * Constructs a {@link SQLiteDialect} for an SQLite version which doesn't support <code>RETURNING</code>.
+     */
+    public SQLiteDialect() {
+        this(false);
+    }
+
+    /**
+     * Constructs a new {@link SQLiteDialect}.
+     * 
+     * @param supportsReturning
+     *            <code>true</code> for SQLite 3.35 and above
+     */
+    public SQLiteDialect(boolean supportsReturning) {
+        this.supportsReturning = supportsReturning;
+    }
+
+    /**
+     * SQLite reports a locked database by the result codes <code>SQLITE_BUSY</code> (5) and
+     * <code>SQLITE_LOCKED</code> (6) without an SQLState, older drivers only in the message.
+     */
+    @Override
+    public boolean isTransient(SQLException e) {
+        String message = e.getMessage();
+        return e.getErrorCode() == 5 || e.getErrorCode() == 6 //
+                || message != null && (message.contains("SQLITE_BUSY") || message.contains("SQLITE_LOCKED"))
+                || Dialect.super.isTransient(e);
+    }
+
+    /**
+     * Uses <code>ON CONFLICT DO UPDATE</code>, which needs SQLite 3.24.
+     */
+    @Override
+    public String getUpsertQuery(String tableName, List<String> columns, String idColumn) {
+        return "INSERT INTO " + tableName //
+                + " (" + String.join(", ", columns) + ", " + idColumn //
+                + ") VALUES (" + Dialects.getQuestionMarkList(columns.size() + 1) + ")" //
+                + " ON CONFLICT (" + idColumn + ") DO UPDATE SET " + columns.stream() //
+                        .map(column -> column + "=excluded." + column) //
+                        .collect(Collectors.joining(", "));
+    }
+
+    @Override
+    public boolean supportsReturning() {
+        return supportsReturning;
+    }
+
+    /**
+     * Multi-row VALUES are compound SELECTs internally which are limited to 500 terms by default.
+     */
+    @Override
+    public int getMaxRowsPerInsert() {
+        return 500;
+    }
+
+    /**
+     * The driver returns <code>last_insert_rowid()</code>, the id of the last row.
+     */
+    @Override
+    public long getFirstIdOfMultiRowInsert(long generatedKey, int rowCount) {
+        return generatedKey - rowCount + 1;
+    }
+
+    /**
+     * The id must be declared as <code>INTEGER PRIMARY KEY</code> to be an alias of the rowid.
+     * <code>AUTOINCREMENT</code> prevents the reuse of the ids of deleted rows.
+     */
+    @Override
+    public String getIdColumnDefinition(String idColumn, boolean autoIncrement) {
+        return idColumn + " INTEGER PRIMARY KEY" + (autoIncrement ? " AUTOINCREMENT" : "");
+    }
+
+    @Override
+    public String getLargeColumnType(ColumnType columnType) {
+        if (columnType == ColumnType.STRING) {
+            return "TEXT";
+        }
+        return getColumnType(columnType);
+    }
+}
@@ -0,0 +1,284 @@
+package com.github.kaiwinter.activerecord.metadata;
+
+import java.lang.reflect.Field;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLDataException;
+import java.sql.SQLException;
+import java.sql.Types;
+
+import com.github.kaiwinter.activerecord.TypeConverter;
+
+/**
+ * The Java type of a {@link com.github.kaiwinter.activerecord.annotation.Column}-annotated field. Each type uses the
+ * typed getters of {@link ResultSet} and the typed setters of {@link PreparedStatement} together with the primitive
+ * accessors of {@link Field}, so primitive columns are neither boxed on read nor on write. Types which are not known
+ * here fall back to {@link #OBJECT} which uses <code>getObject</code>/<code>setObject</code>. Reading <code>NULL</code>
+ * into a primitive type fails with an {@link SQLDataException}.
+ */
+public enum ColumnType {
+    LONG(long.class, Types.BIGINT) {
+        @Override
+        void read(ResultSet resultSet, int index, Object target, Field field)
+                throws SQLException, IllegalAccessException {
+            long value = resultSet.getLong(index);
+            checkNotNull(resultSet, field);
+            field.setLong(target, value);
+        }
+
+        @Override
+        void write(PreparedStatement statement, int index, Object source, Field field)
+                throws SQLException, IllegalAccessException {
+            statement.setLong(index, field.getLong(source));
+        }
+    },
+    INT(int.class, Types.INTEGER) {
+        @Override
+        void read(ResultSet resultSet, int index, Object target, Field field)
+                throws SQLException, IllegalAccessException {
+            int value = resultSet.getInt(index);
+            checkNotNull(resultSet, field);
+            field.setInt(target, value);
+        }
+
+        @Override
+        void write(PreparedStatement statement, int index, Object source, Field field)
+                throws SQLException, IllegalAccessException {
+            statement.setInt(index, field.getInt(source));
+        }
+    },
+    SHORT(short.class, Types.SMALLINT) {
+        @Override
+        void read(ResultSet resultSet, int index, Object target, Field field)
+                throws SQLException, IllegalAccessException {
+            short value = resultSet.getShort(index);
+            checkNotNull(resultSet, field);
+            field.setShort(target, value);
+        }
+
+        @Override
+        void write(PreparedStatement statement, int index, Object source, Field field)
+                throws SQLException, IllegalAccessException {
+            statement.setShort(index, field.getShort(source));
+        }
+    },
+    BYTE(byte.class, Types.TINYINT) {
+        @Override
+        void read(ResultSet resultSet, int index, Object target, Field field)
+                throws SQLException, IllegalAccessException {
+            byte value = resultSet.getByte(index);
+            checkNotNull(resultSet, field);
+            field.setByte(target, value);
+        }
+
+        @Override
+        void write(PreparedStatement statement, int index, Object source, Field field)
+                throws SQLException, IllegalAccessException {
+            statement.setByte(index, field.getByte(source));
+        }
+    },
+    DOUBLE(double.class, Types.DOUBLE) {
+        @Override
+        void read(ResultSet resultSet, int index, Object target, Field field)
+                throws SQLException, IllegalAccessException {
+            double value = resultSet.getDouble(index);
+            checkNotNull(resultSet, field);
+            field.setDouble(target, value);
+        }
+
+        @Override
+        void write(PreparedStatement statement, int index, Object source, Field field)
+                throws SQLException, IllegalAccessException {
+            statement.setDouble(index, field.getDouble(source));
+        }
+    },
+    FLOAT(float.class, Types.REAL) {
+        @Override
+        void read(ResultSet resultSet, int index, Object target, Field field)
+                throws SQLException, IllegalAccessException {
+            float value = resultSet.getFloat(index);
+            checkNotNull(resultSet, field);
+            field.setFloat(target, value);
+        }
+
+        @Override
+        void write(PreparedStatement statement, int index, Object source, Field field)
+                throws SQLException, IllegalAccessException {
+            statement.setFloat(index, field.getFloat(source));
+        }
+    },
+    BOOLEAN(boolean.class, Types.BOOLEAN) {
+        @Override
+        void read(ResultSet resultSet, int index, Object target, Field field)
+                throws SQLException, IllegalAccessException {
+            boolean value = resultSet.getBoolean(index);
+            checkNotNull(resultSet, field);
+            field.setBoolean(target, value);
+        }
+
+        @Override
+        void write(PreparedStatement statement, int index, Object source, Field field)
+                throws SQLException, IllegalAccessException {
+            statement.setBoolean(index, field.getBoolean(source));
+        }
+    },
+    BOXED_LONG(Long.class, Types.BIGINT) {
+        @Override
+        void read(ResultSet resultSet, int index, Object target, Field field)
+                throws SQLException, IllegalAccessException {
+            long value = resultSet.getLong(index);
+            field.set(target, resultSet.wasNull() ? null : Long.valueOf(value));
+        }
+
+        @Override
+        void write(PreparedStatement statement, int index, Object source, Field field)
+                throws SQLException, IllegalAccessException {
+            Long value = (Long) field.get(source);
+            if (value == null) {
+                statement.setNull(index, sqlType);
+            } else {
+                statement.setLong(index, value);
+            }
+        }
+    },
+    BOXED_INTEGER(Integer.class, Types.INTEGER) {
+        @Override
+        void read(ResultSet resultSet, int index, Object target, Field field)
+                throws SQLException, IllegalAccessException {
+            int value = resultSet.getInt(index);
+            field.set(target, resultSet.wasNull() ? null : Integer.valueOf(value));
+        }
+
+        @Override
+        void write(PreparedStatement statement, int index, Object source, Field field)
+                throws SQLException, IllegalAccessException {
+            Integer value = (Integer) field.get(source);
+            if (value == null) {
+                statement.setNull(index, sqlType);
+            } else {
+                statement.setInt(index, value);
+            }
+        }
+    },
+    BOXED_DOUBLE(Double.class, Types.DOUBLE) {
+        @Override
+        void read(ResultSet resultSet, int index, Object target, Field field)
+                throws SQLException, IllegalAccessException {
+            double value = resultSet.getDouble(index);
+            field.set(target, resultSet.wasNull() ? null : Double.valueOf(value));
+        }
+
+        @Override
+        void write(PreparedStatement statement, int index, Object source, Field field)
+                throws SQLException, IllegalAccessException {
+            Double value = (Double) field.get(source);
+            if (value == null) {
+                statement.setNull(index, sqlType);
+            } else {
+                statement.setDouble(index, value);
+            }
+        }
+    },
+    STRING(String.class, Types.VARCHAR) {
+        @Override
+        void read(ResultSet resultSet, int index, Object target, Field field)
+                throws SQLException, IllegalAccessException {
+            field.set(target, resultSet.getString(index));
+        }
+
+        @Override
+        void write(PreparedStatement statement, int index, Object source, Field field)
+                throws SQLException, IllegalAccessException {
+            statement.setString(index, (String) field.get(source));
+        }
+    },
+    BYTES(byte[].class, Types.BLOB) {
+        @Override
+        void read(ResultSet resultSet, int index, Object target, Field field)
+                throws SQLException, IllegalAccessException {
+            field.set(target, resultSet.getBytes(index));
+        }
+
+        @Override
+        void write(PreparedStatement statement, int index, Object source, Field field)
+                throws SQLException, IllegalAccessException {
+            statement.setBytes(index, (byte[]) field.get(source));
+        }
+    },
+    OBJECT(Object.class, Types.JAVA_OBJECT) {
+        @Override
+        void read(ResultSet resultSet, int index, Object target, Field field)
+                throws SQLException, IllegalAccessException {
+            // Not supported by sqlite-jdbc-3.8.11
+            // Object object = resultSet.getObject(index, field.getType());
+            Object object = resultSet.getObject(index);
+            if (object != null && !field.getType().isAssignableFrom(object.getClass())) {
+                object = TypeConverter.convertToType(object, field.getType());
+            }
+            field.set(target, object);
+        }
+
+        @Override
+        void write(PreparedStatement statement, int index, Object source, Field field)
+                throws SQLException, IllegalAccessException {
+            // Trust in built-in type conversion
+            statement.setObject(index, field.get(source));
+        }
+    };
+
+    /** The Java type of the field. */
+    public final Class<?> javaType;
+
+    /** The {@link Types} constant used when binding <code>null</code>. */
+    public final int sqlType;
+
+    private ColumnType(Class<?> javaType, int sqlType) {
+        this.javaType = javaType;
+        this.sqlType = sqlType;
+    }
+
+    /**
+     * Reads the column at <code>index</code> from the <code>resultSet</code> and sets it in the <code>field</code> of
+     * <code>target</code>.
+     */
+    abstract void read(ResultSet resultSet, int index, Object target, Field field)
+            throws SQLException, IllegalAccessException;
+
+    /**
+     * Called after a primitive column was read: a primitive field cannot hold <code>NULL</code>, it would silently
+     * become the default value of the type.
+     * 
+     * @throws SQLException
+     *             if the column was <code>NULL</code>
+     */
+    private static void checkNotNull(ResultSet resultSet, Field field) throws SQLException {
+        if (resultSet.wasNull()) {
+            throw new SQLDataException("NULL cannot be read into the primitive field '" + field.getName() + "' of "
+                    + field.getDeclaringClass().getSimpleName() + ", use the boxed type for a nullable column",
+                    "22002");
+        }
+    }
+
+    /**
+     * Reads the <code>field</code> of <code>source</code> and binds it to the parameter at <code>index</code> of the
+     * <code>statement</code>.
+     */
+    abstract void write(PreparedStatement statement, int index, Object source, Field field)
+            throws SQLException, IllegalAccessException;
+
+    /**
+     * Returns the {@link ColumnType} for a field type.
+     *
+     * @param type
+     *            the type of the field
+     * @return the matching {@link ColumnType}, {@link #OBJECT} if there is no specialized one
+     */
+    public static ColumnType of(Class<?> type) {
+        for (ColumnType columnType : values()) {
+            if (columnType.javaType == type) {
+                return columnType;
+            }
+        }
+        return OBJECT;
+    }
+}
@@ -0,0 +1,44 @@
+package com.github.kaiwinter.activerecord.metadata;
+
+import java.util.List;
+
+import com.github.kaiwinter.activerecord.annotation.Index;
+import com.github.kaiwinter.activerecord.annotation.Indexed;
+
+/**
+ * A database index of an Active Record, declared by {@link Indexed} or {@link Index}.
+ */
+public final class IndexDefinition {
+
+    /** The name of the index in the database. */
+    public final String name;
+
+    /** The column names in the order of the index. */
+    public final List<String> columns;
+
+    /** <code>true</code> if the index is unique. */
+    public final boolean unique;
+
+    public IndexDefinition(String name, List<String> columns, boolean unique) {
+        this.name = name;
+        this.columns = columns;
+        this.unique = unique;
+    }
+
+    /**
+     * Returns if a lookup by <code>columnName</code> can use this index, that is if it is the first column of the
+     * index.
+     * 
+     * @param columnName
+     *            the name of the column
+     * @return <code>true</code> if the index starts with the column
+     */
+    public boolean startsWith(String columnName) {
+        return columns.get(0).equalsIgnoreCase(columnName);
+    }
+
+    @Override
+    public String toString() {
+        return name + columns;
+    }
+}
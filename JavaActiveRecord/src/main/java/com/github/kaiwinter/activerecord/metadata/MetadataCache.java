@@ -1,11 +1,16 @@
 package com.github.kaiwinter.activerecord.metadata;
 
 import java.lang.reflect.Field;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 import org.reflections.Reflections;
@@ -13,19 +18,38 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.github.kaiwinter.activerecord.BaseAR;
+import com.github.kaiwinter.activerecord.annotation.Cacheable;
 import com.github.kaiwinter.activerecord.annotation.Column;
+import com.github.kaiwinter.activerecord.annotation.Embedded;
+import com.github.kaiwinter.activerecord.annotation.Index;
+import com.github.kaiwinter.activerecord.annotation.Indexed;
+import com.github.kaiwinter.activerecord.annotation.NamedQuery;
+import com.github.kaiwinter.activerecord.annotation.RetryWrites;
 import com.github.kaiwinter.activerecord.annotation.Table;
+import com.github.kaiwinter.activerecord.annotation.Version;
+import com.github.kaiwinter.activerecord.annotation.WriteBehind;
+import com.github.kaiwinter.activerecord.cache.RecordCache;
+import com.github.kaiwinter.activerecord.db.Db;
+import com.github.kaiwinter.activerecord.db.SequenceGenerator;
+import com.github.kaiwinter.activerecord.db.ShardStrategy;
+import com.github.kaiwinter.activerecord.db.TenantContext;
+import com.github.kaiwinter.activerecord.db.WriteBehindBuffer;
+import com.github.kaiwinter.activerecord.dialect.Dialect;
 import com.github.kaiwinter.activerecord.metadata.TableMetadata.ColumnWithAlias;
+import com.github.kaiwinter.activerecord.metadata.TableMetadata.WriteQueries;
 
 public final class MetadataCache {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(MetadataCache.class.getSimpleName());
 
     /** The name of the ID column in all database tables. */
-    private static final String ID_COLUMN_NAME = "id";
+    public static final String ID_COLUMN_NAME = "id";
 
     /** Cache reflection information. */
-    private static Map<Class<?>, TableMetadata> tables = new HashMap<>();
+    private static Map<Class<? extends BaseAR>, TableMetadata> tables = new HashMap<>();
+
+    /** The metadata of the {@link TenantContext tenants}, by the Active Record class and the tenant. */
+    private static final Map<List<Object>, TableMetadata> TENANT_TABLES = new ConcurrentHashMap<>();
 
     /**
      * If eager initialization is set to <code>true</code> the classpath is scanned for any sub-classes of
@@ -44,19 +68,58 @@ public final class MetadataCache {
                     // Might be ExtendedBaseAR which doesn't have Table annotation
                     continue;
                 }
-                TableMetadata tableMetadata = cacheMetadataForActiveRecord(clazz);
+                TableMetadata tableMetadata = cacheMetadataForActiveRecord(clazz, null);
                 tables.put(clazz, tableMetadata);
             }
         }
     }
 
-    private static TableMetadata cacheMetadataForActiveRecord(Class<? extends BaseAR> clazz) {
-        LOGGER.debug("Building Metadata for AR '{}'", clazz.getSimpleName());
+    private static TableMetadata cacheMetadataForActiveRecord(Class<? extends BaseAR> clazz, String tenant) {
+        LOGGER.debug("Building Metadata for AR '{}', tenant '{}'", clazz.getSimpleName(), tenant);
         TableMetadata metadata = new TableMetadata();
+        metadata.tenant = tenant;
         metadata.tableAnnotation = clazz.getDeclaredAnnotation(Table.class);
-        metadata.columnAnnotatedFields = getColumnFields(clazz);
+        try {
+            metadata.constructor = clazz.getDeclaredConstructor();
+        } catch (NoSuchMethodException e) {
+            throw new IllegalArgumentException(
+                    "Active Record '" + clazz.getName() + "' needs a constructor without parameters", e);
+        }
+        metadata.constructor.setAccessible(true);
+        ColumnWithAlias[] columns = getColumnFields(clazz);
+        metadata.columnAnnotatedFields = Arrays.stream(columns) //
+                .filter(column -> !column.lazy) //
+                .toArray(ColumnWithAlias[]::new);
+        metadata.lazyColumns = Arrays.stream(columns) //
+                .filter(column -> column.lazy) //
+                .toArray(ColumnWithAlias[]::new);
+        metadata.versionColumn = getVersionColumn(clazz, metadata.columnAnnotatedFields);
+        if (metadata.tableAnnotation.shardStrategy() != ShardStrategy.NONE
+                && metadata.tableAnnotation.sequenceGenerator() != SequenceGenerator.INTERNAL) {
+            throw new IllegalArgumentException(
+                    "Sharded Active Record '" + clazz.getName() + "' must use SequenceGenerator.INTERNAL");
+        }
 
+        Dialect dialect = Db.INSTANCE.getDialect();
         String tableName = getTableName(clazz, metadata.tableAnnotation);
+        if (tenant != null) {
+            tableName = Db.INSTANCE.getTenantTableName(tenant, tableName);
+        }
+        metadata.tableName = tableName;
+        metadata.indexes = getIndexes(clazz, tableName, columns);
+        Cacheable cacheable = clazz.getDeclaredAnnotation(Cacheable.class);
+        if (cacheable != null) {
+            metadata.cache = RecordCache.create(tableName, cacheable);
+        }
+        WriteBehind writeBehind = clazz.getDeclaredAnnotation(WriteBehind.class);
+        if (writeBehind != null) {
+            if (metadata.versionColumn != null) {
+                throw new IllegalArgumentException(
+                        "@WriteBehind Active Record '" + clazz.getName() + "' must not have a @Version column");
+            }
+            metadata.writeBehind = WriteBehindBuffer.create(clazz, writeBehind, tenant);
+        }
+        metadata.retryWrites = clazz.isAnnotationPresent(RetryWrites.class);
         String commaSeparatedFields = getCommaSeparatedColumns(metadata.columnAnnotatedFields);
 
         LOGGER.debug("... table name: '{}', columns: {}", tableName, metadata.columnAnnotatedFields);
@@ -67,39 +130,260 @@ public final class MetadataCache {
 
         metadata.selectAllQuery = "SELECT " + commaSeparatedFields + ", id FROM " + tableName;
 
-        String commaSeparatedKeyValuePairs = getCommaSeparatedKeyValuePairs(metadata.columnAnnotatedFields);
-        metadata.updateQuery = "UPDATE " + tableName //
-                + " SET " + commaSeparatedKeyValuePairs //
+        metadata.selectRangeQuery = metadata.selectAllQuery + " WHERE " + ID_COLUMN_NAME + " BETWEEN ? AND ?";
+
+        metadata.selectIdRangeQuery = "SELECT MIN(" + ID_COLUMN_NAME + "), MAX(" + ID_COLUMN_NAME + ") FROM "
+                + tableName;
+
+        metadata.selectPageQuery = dialect
+                .getPaginatedQuery(metadata.selectAllQuery + " ORDER BY " + ID_COLUMN_NAME);
+
+        metadata.writeQueries = createWriteQueries(tableName, metadata.columnAnnotatedFields, metadata.versionColumn);
+
+        metadata.deleteQuery = "DELETE FROM " + tableName + " WHERE " + ID_COLUMN_NAME + "=?";
+
+        metadata.countQuery = "SELECT COUNT(*) FROM " + tableName;
+
+        metadata.existsQuery = "SELECT 1 FROM " + tableName + " WHERE " + ID_COLUMN_NAME + "=?";
+
+        for (ColumnWithAlias lazyColumn : metadata.lazyColumns) {
+            lazyColumn.lazySelectQuery = "SELECT " + lazyColumn.columnName + " IS NULL, " + lazyColumn.columnName //
+                    + " FROM " + tableName //
+                    + " WHERE " + ID_COLUMN_NAME + "=?";
+        }
+
+        metadata.namedQueries = getNamedQueries(clazz, tableName, ID_COLUMN_NAME + ", " + commaSeparatedFields);
+
+        return metadata;
+    }
+
+    /**
+     * Creates the queries which write the passed columns of a row.
+     * 
+     * @param tableName
+     *            the name of the table
+     * @param columns
+     *            the written columns, the eager columns followed by the written lazy columns
+     * @param versionColumn
+     *            the version column which is checked by the update, <code>null</code> if there is none
+     * @return the {@link WriteQueries}
+     */
+    static WriteQueries createWriteQueries(String tableName, ColumnWithAlias[] columns, ColumnWithAlias versionColumn) {
+        Dialect dialect = Db.INSTANCE.getDialect();
+        WriteQueries queries = new WriteQueries();
+        queries.columns = columns;
+
+        String commaSeparatedFields = getCommaSeparatedColumns(columns);
+        queries.updateQuery = "UPDATE " + tableName //
+                + " SET " + getCommaSeparatedKeyValuePairs(columns) //
                 + " WHERE " + ID_COLUMN_NAME + "=?";
+        if (versionColumn != null) {
+            queries.updateQuery += " AND " + versionColumn.columnName + "=?";
+        }
 
-        String questionMarkList = getQuestionMarkList(metadata.columnAnnotatedFields);
-        metadata.insertQueryInternalSequence = "INSERT INTO " + tableName //
+        String questionMarkList = getQuestionMarkList(columns);
+        queries.insertQueryInternalSequence = "INSERT INTO " + tableName //
                 + " (" + commaSeparatedFields + ", " + ID_COLUMN_NAME //
                 + ") VALUES (" + questionMarkList + ", ?)";
 
-        metadata.insertQueryDatabaseSequence = "INSERT INTO " + tableName //
+        queries.insertQueryDatabaseSequence = "INSERT INTO " + tableName //
                 + " (" + commaSeparatedFields //
                 + ") VALUES (" + questionMarkList + ")";
 
-        metadata.deleteQuery = "DELETE FROM " + tableName + " WHERE " + ID_COLUMN_NAME + "=?";
+        if (dialect.supportsReturning()) {
+            queries.insertQueryReturningId = dialect.getInsertReturningIdQuery(queries.insertQueryDatabaseSequence,
+                    ID_COLUMN_NAME);
+        }
 
-        return metadata;
+        queries.upsertQuery = dialect.getUpsertQuery(tableName, getColumnNames(columns), ID_COLUMN_NAME);
+        return queries;
+    }
+
+    /**
+     * Parses the {@link NamedQuery}s of the <code>clazz</code>.
+     * 
+     * @return the named queries by their name
+     * @throws IllegalArgumentException
+     *             if a query is invalid or two queries have the same name
+     */
+    private static Map<String, NamedQueryDefinition> getNamedQueries(Class<? extends BaseAR> clazz, String tableName,
+            String columns) {
+        Map<String, String> placeholders = new HashMap<>();
+        placeholders.put("table", tableName);
+        placeholders.put("columns", columns);
+        Map<String, NamedQueryDefinition> namedQueries = new HashMap<>();
+        for (NamedQuery namedQuery : clazz.getDeclaredAnnotationsByType(NamedQuery.class)) {
+            NamedQueryDefinition definition;
+            try {
+                definition = NamedQueryDefinition.parse(namedQuery.name(), namedQuery.query(), placeholders);
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException(e.getMessage() + " on '" + clazz.getName() + "'", e);
+            }
+            if (namedQueries.put(namedQuery.name(), definition) != null) {
+                throw new IllegalArgumentException(
+                        "Named query '" + namedQuery.name() + "' is declared twice on '" + clazz.getName() + "'");
+            }
+            LOGGER.debug("... named query {}", definition);
+        }
+        return Collections.unmodifiableMap(namedQueries);
     }
 
     /**
-     * Returns the {@link Field}s of the passed <code>clazz</code> which are annotated by {@link Column}.
+     * Returns the {@link Column}-annotated {@link Field}s of the passed <code>clazz</code> and of its superclasses
+     * below {@link BaseAR}, those of the topmost class first. The {@link Column}s of {@link Embedded} value objects
+     * are flattened in place of their field.
      * 
      * @param clazz
      *            the class to check
-     * @return {@link Column}-annotated {@link Field}s as {@link List}
+     * @return the columns
+     * @throws IllegalArgumentException
+     *             if two columns have the same name or an embedded value object is invalid
      */
     private static ColumnWithAlias[] getColumnFields(Class<? extends BaseAR> clazz) {
-        ColumnWithAlias[] columnFields = Arrays.stream(clazz.getDeclaredFields()) //
-                .filter(field -> field.getDeclaredAnnotation(Column.class) != null) //
-                .map(ColumnWithAlias::create) //
-                .toArray(ColumnWithAlias[]::new);
+        List<ColumnWithAlias> columns = new ArrayList<>();
+        for (Class<?> mappedClass : getMappedClasses(clazz)) {
+            addColumnFields(mappedClass, "", new Field[0], columns);
+        }
+
+        Set<String> columnNames = new HashSet<>();
+        for (ColumnWithAlias column : columns) {
+            if (!columnNames.add(column.columnName.toLowerCase(Locale.ROOT))) {
+                throw new IllegalArgumentException(
+                        "Column '" + column.columnName + "' is mapped twice in '" + clazz.getName() + "'");
+            }
+        }
+        return columns.toArray(new ColumnWithAlias[columns.size()]);
+    }
+
+    /**
+     * @return the <code>clazz</code> and its superclasses below {@link BaseAR}, the topmost first
+     */
+    private static List<Class<?>> getMappedClasses(Class<? extends BaseAR> clazz) {
+        List<Class<?>> mappedClasses = new ArrayList<>();
+        for (Class<?> type = clazz; type != BaseAR.class; type = type.getSuperclass()) {
+            mappedClasses.add(0, type);
+        }
+        return mappedClasses;
+    }
+
+    private static void addColumnFields(Class<?> type, String columnPrefix, Field[] embeddingFields,
+            List<ColumnWithAlias> columns) {
+        for (Field field : type.getDeclaredFields()) {
+            if (field.getDeclaredAnnotation(Column.class) != null) {
+                ColumnWithAlias column = ColumnWithAlias.create(field, columnPrefix, embeddingFields);
+                if (embeddingFields.length > 0
+                        && (column.lazy || field.getDeclaredAnnotation(Version.class) != null)) {
+                    throw new IllegalArgumentException("Embedded column '" + field.getName() + "' of '"
+                            + type.getName() + "' must be neither lazy nor @Version");
+                }
+                columns.add(column);
+                continue;
+            }
+            Embedded embedded = field.getDeclaredAnnotation(Embedded.class);
+            if (embedded == null) {
+                continue;
+            }
+            for (Field embeddingField : embeddingFields) {
+                if (embeddingField.getType() == field.getType()) {
+                    throw new IllegalArgumentException("'" + field.getType().getName() + "' embeds itself");
+                }
+            }
+            Field[] path = Arrays.copyOf(embeddingFields, embeddingFields.length + 1);
+            path[embeddingFields.length] = field;
+            String prefix = columnPrefix + (embedded.prefix().isEmpty() ? field.getName() + "_" : embedded.prefix());
+            Class<?> embeddedType = field.getType();
+            while (embeddedType != null && embeddedType != Object.class) {
+                addColumnFields(embeddedType, prefix, path, columns);
+                embeddedType = embeddedType.getSuperclass();
+            }
+        }
+    }
+
+    /**
+     * Returns the {@link Version}-annotated column of the <code>clazz</code>.
+     * 
+     * @return the version column, <code>null</code> if there is none
+     * @throws IllegalArgumentException
+     *             if the {@link Version} column is not a {@link Column}, has the wrong type or is declared twice
+     */
+    private static ColumnWithAlias getVersionColumn(Class<? extends BaseAR> clazz,
+            ColumnWithAlias[] columnAnnotatedFields) {
+        ColumnWithAlias versionColumn = null;
+        for (Field field : getMappedClasses(clazz).stream() //
+                .flatMap(mappedClass -> Arrays.stream(mappedClass.getDeclaredFields())) //
+                .toArray(Field[]::new)) {
+            if (field.getDeclaredAnnotation(Version.class) == null) {
+                continue;
+            }
+            if (versionColumn != null) {
+                throw new IllegalArgumentException("More than one @Version field in '" + clazz.getName() + "'");
+            }
+            if (field.getType() != long.class && field.getType() != int.class) {
+                throw new IllegalArgumentException(
+                        "@Version field '" + field.getName() + "' of '" + clazz.getName() + "' must be long or int");
+            }
+            versionColumn = Arrays.stream(columnAnnotatedFields) //
+                    .filter(column -> column.columnAnnotatedField.equals(field)) //
+                    .findFirst() //
+                    .orElseThrow(() -> new IllegalArgumentException(
+                            "@Version field '" + field.getName() + "' of '" + clazz.getName()
+                                    + "' must be an eager @Column"));
+        }
+        return versionColumn;
+    }
+
+    /**
+     * Returns the indexes declared by {@link Indexed} on the fields and by {@link Index} on the <code>clazz</code>.
+     * 
+     * @throws IllegalArgumentException
+     *             if an {@link Index} refers to a column which is not a {@link Column} of the Active Record
+     */
+    private static IndexDefinition[] getIndexes(Class<? extends BaseAR> clazz, String tableName,
+            ColumnWithAlias[] columnAnnotatedFields) {
+        List<IndexDefinition> indexes = new ArrayList<>();
+        for (ColumnWithAlias column : columnAnnotatedFields) {
+            Indexed indexed = column.columnAnnotatedField.getDeclaredAnnotation(Indexed.class);
+            if (indexed != null) {
+                List<String> columns = Collections.singletonList(column.columnName);
+                indexes.add(new IndexDefinition(getIndexName(indexed.name(), tableName, columns), columns,
+                        indexed.unique()));
+            }
+        }
+        List<String> columnNames = new ArrayList<>(getColumnNames(columnAnnotatedFields));
+        columnNames.add(ID_COLUMN_NAME);
+        for (Index index : clazz.getDeclaredAnnotationsByType(Index.class)) {
+            List<String> columns = Arrays.asList(index.columns());
+            if (columns.isEmpty()) {
+                throw new IllegalArgumentException("Index without columns on '" + clazz.getName() + "'");
+            }
+            for (String column : columns) {
+                if (!columnNames.contains(column)) {
+                    throw new IllegalArgumentException(
+                            "Index on unknown column '" + column + "' of '" + clazz.getName() + "'");
+                }
+            }
+            indexes.add(new IndexDefinition(getIndexName(index.name(), tableName, columns), columns, index.unique()));
+        }
+        return indexes.toArray(new IndexDefinition[indexes.size()]);
+    }
 
-        return columnFields;
+    /**
+     * @return the name of the index, derived from the table and column names if <code>name</code> is empty
+     */
+    private static String getIndexName(String name, String tableName, List<String> columns) {
+        if (!name.isEmpty()) {
+            return name;
+        }
+        return "idx_" + tableName + "_" + String.join("_", columns);
+    }
+
+    /**
+     * @return the column names
+     */
+    public static List<String> getColumnNames(ColumnWithAlias[] columnAnnotatedFields) {
+        return Arrays.stream(columnAnnotatedFields) //
+                .map(columnWithAlias -> columnWithAlias.columnName) //
+                .collect(Collectors.toList());
     }
 
     /**
@@ -166,16 +450,23 @@ public final class MetadataCache {
     }
 
     /**
-     * Returns the metadata for the passed Active Record class.
+     * Returns the metadata for the passed Active Record class and the tenant of the current thread (see
+     * {@link TenantContext}). The metadata of a tenant is built on first access, its queries use the table name of
+     * the tenant.
      * 
      * @param clazz
      *            the Active Record class
      * @return the metadata
      */
     public static TableMetadata getTableMetadata(Class<? extends BaseAR> clazz) {
+        String tenant = TenantContext.get();
+        if (tenant != null) {
+            return TENANT_TABLES.computeIfAbsent(Arrays.asList(clazz, tenant),
+                    key -> cacheMetadataForActiveRecord(clazz, tenant));
+        }
         TableMetadata tableMetadata = tables.get(clazz);
         if (tableMetadata == null) {
-            tableMetadata = cacheMetadataForActiveRecord(clazz);
+            tableMetadata = cacheMetadataForActiveRecord(clazz, null);
             tables.put(clazz, tableMetadata);
         }
 
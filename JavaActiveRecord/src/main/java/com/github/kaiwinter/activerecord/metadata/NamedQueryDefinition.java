@@ -0,0 +1,119 @@
+package com.github.kaiwinter.activerecord.metadata;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import com.github.kaiwinter.activerecord.annotation.NamedQuery;
+
+/**
+ * A {@link NamedQuery} of an Active Record, parsed into SQL with positional parameters.
+ */
+public final class NamedQueryDefinition {
+
+    /** The name of the query. */
+    public final String name;
+
+    /** The SQL with <code>?</code> in place of the named parameters and with the placeholders replaced. */
+    public final String sql;
+
+    /** The names of the parameters in the order of the <code>?</code> in the {@link #sql}. */
+    public final List<String> parameterNames;
+
+    private NamedQueryDefinition(String name, String sql, List<String> parameterNames) {
+        this.name = name;
+        this.sql = sql;
+        this.parameterNames = parameterNames;
+    }
+
+    /**
+     * Parses a query. Named parameters and placeholders inside quoted strings and identifiers are left untouched, as
+     * is a PostgreSQL cast (<code>::</code>). Only the parameters and placeholders are checked, the SQL is checked by
+     * the database when it is prepared.
+     * 
+     * @param name
+     *            the name of the query
+     * @param query
+     *            the SQL with named parameters and placeholders
+     * @param placeholders
+     *            the values of the placeholders by their name without braces
+     * @return the parsed query
+     * @throws IllegalArgumentException
+     *             if the query is empty, has an unknown placeholder, an unterminated quote or uses <code>?</code>
+     */
+    static NamedQueryDefinition parse(String name, String query, Map<String, String> placeholders) {
+        if (query.trim().isEmpty()) {
+            throw new IllegalArgumentException("Named query '" + name + "' is empty");
+        }
+        StringBuilder sql = new StringBuilder(query.length());
+        List<String> parameterNames = new ArrayList<>();
+        int length = query.length();
+        int i = 0;
+        while (i < length) {
+            char c = query.charAt(i);
+            if (c == '\'' || c == '"') {
+                int end = query.indexOf(c, i + 1);
+                if (end < 0) {
+                    throw new IllegalArgumentException("Unterminated " + c + " in named query '" + name + "'");
+                }
+                sql.append(query, i, end + 1);
+                i = end + 1;
+            } else if (c == ':' && i + 1 < length && query.charAt(i + 1) == ':') {
+                sql.append("::");
+                i += 2;
+            } else if (c == ':' && i + 1 < length && Character.isJavaIdentifierStart(query.charAt(i + 1))) {
+                int end = i + 1;
+                while (end < length && Character.isJavaIdentifierPart(query.charAt(end))) {
+                    end++;
+                }
+                parameterNames.add(query.substring(i + 1, end));
+                sql.append('?');
+                i = end;
+            } else if (c == '{') {
+                int end = query.indexOf('}', i + 1);
+                String placeholder = end < 0 ? null : placeholders.get(query.substring(i + 1, end));
+                if (placeholder == null) {
+                    throw new IllegalArgumentException("Unknown placeholder at position " + i + " in named query '"
+                            + name + "', use one of " + placeholders.keySet());
+                }
+                sql.append(placeholder);
+                i = end + 1;
+            } else if (c == '?') {
+                throw new IllegalArgumentException(
+                        "Named query '" + name + "' must use named parameters (:name) instead of '?'");
+            } else {
+                sql.append(c);
+                i++;
+            }
+        }
+        return new NamedQueryDefinition(name, sql.toString(), Collections.unmodifiableList(parameterNames));
+    }
+
+    /**
+     * Returns the values of the parameters in the order of the <code>?</code> in the {@link #sql}.
+     * 
+     * @param parameters
+     *            the values of the parameters by their name
+     * @return the positional parameters
+     * @throws IllegalArgumentException
+     *             if a parameter of the query is missing
+     */
+    public Object[] bind(Map<String, ?> parameters) {
+        Object[] values = new Object[parameterNames.size()];
+        for (int i = 0; i < values.length; i++) {
+            String parameterName = parameterNames.get(i);
+            if (!parameters.containsKey(parameterName)) {
+                throw new IllegalArgumentException(
+                        "Missing parameter '" + parameterName + "' of named query '" + name + "'");
+            }
+            values[i] = parameters.get(parameterName);
+        }
+        return values;
+    }
+
+    @Override
+    public String toString() {
+        return name + ": " + sql;
+    }
+}
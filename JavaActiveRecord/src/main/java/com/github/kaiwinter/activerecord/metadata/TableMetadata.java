@@ -1,9 +1,28 @@
 package com.github.kaiwinter.activerecord.metadata;
 
+import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
+import com.github.kaiwinter.activerecord.BaseAR;
 import com.github.kaiwinter.activerecord.annotation.Column;
+import com.github.kaiwinter.activerecord.annotation.FetchType;
 import com.github.kaiwinter.activerecord.annotation.Table;
+import com.github.kaiwinter.activerecord.cache.RecordCache;
+import com.github.kaiwinter.activerecord.db.SequenceGenerator;
+import com.github.kaiwinter.activerecord.db.WriteBehindBuffer;
 
 /**
  * TableMetadata for an Active Record. Holds the {@link Table} annotation and all {@link Column} annotated fields of the
@@ -14,15 +33,169 @@ public final class TableMetadata {
     /** The annotation of the Active Record. */
     public Table tableAnnotation;
 
-    /** The {@link Column}s of the Active Record. */
+    /** The name of the database table. */
+    public String tableName;
+
+    /** The {@link com.github.kaiwinter.activerecord.db.TenantContext tenant}, <code>null</code> for the default. */
+    public String tenant;
+
+    /** The constructor without parameters of the Active Record, accessible. */
+    public Constructor<? extends BaseAR> constructor;
+
+    /** The {@link Column}s of the Active Record which are loaded with the record. */
     public ColumnWithAlias[] columnAnnotatedFields;
 
+    /** The {@link FetchType#LAZY} {@link Column}s of the Active Record, only written if they were loaded or set. */
+    public ColumnWithAlias[] lazyColumns;
+
+    /**
+     * The {@link com.github.kaiwinter.activerecord.annotation.Version} column, <code>null</code> if the Active Record
+     * doesn't use optimistic locking.
+     */
+    public ColumnWithAlias versionColumn;
+
+    /** The cache of a {@link com.github.kaiwinter.activerecord.annotation.Cacheable} Active Record, otherwise null. */
+    public RecordCache cache;
+
+    /**
+     * The buffer of a {@link com.github.kaiwinter.activerecord.annotation.WriteBehind} Active Record, otherwise null.
+     */
+    public WriteBehindBuffer writeBehind;
+
+    /**
+     * <code>true</code> if the writes are retried, see
+     * {@link com.github.kaiwinter.activerecord.annotation.RetryWrites}.
+     */
+    public boolean retryWrites;
+
+    /** The indexes declared by the Active Record. */
+    public IndexDefinition[] indexes;
+
+    /** The {@link com.github.kaiwinter.activerecord.annotation.NamedQuery}s of the Active Record by their name. */
+    public Map<String, NamedQueryDefinition> namedQueries;
+
+    /** Columns without index which were already reported when they were queried. */
+    public final Set<String> reportedUnindexedColumns = ConcurrentHashMap.newKeySet();
+
     public String selectQuery;
     public String selectAllQuery;
-    public String updateQuery;
-    public String insertQueryInternalSequence;
-    public String insertQueryDatabaseSequence;
+    public String selectPageQuery;
+    public String selectRangeQuery;
+    public String selectIdRangeQuery;
     public String deleteQuery;
+    public String countQuery;
+    public String existsQuery;
+
+    /** The queries which write the eager columns, no lazy column. */
+    public WriteQueries writeQueries;
+
+    /** The queries which also write lazy columns, by the indexes of the written {@link #lazyColumns}. */
+    private final Map<BitSet, WriteQueries> lazyWriteQueries = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the SQL of all statements which are used for this table: the generated queries for the sequence
+     * generator of the table, the queries of the lazy columns and the named queries.
+     * 
+     * @return the SQL of the statements
+     */
+    public List<String> getStatements() {
+        List<String> statements = new ArrayList<>(Arrays.asList(selectQuery, selectAllQuery, selectPageQuery,
+                selectRangeQuery, selectIdRangeQuery, writeQueries.updateQuery, deleteQuery, writeQueries.upsertQuery,
+                countQuery, existsQuery));
+        if (tableAnnotation.sequenceGenerator() == SequenceGenerator.INTERNAL) {
+            statements.add(writeQueries.insertQueryInternalSequence);
+        } else {
+            statements.add(writeQueries.insertQueryDatabaseSequence);
+            statements.add(writeQueries.insertQueryReturningId);
+        }
+        for (ColumnWithAlias lazyColumn : lazyColumns) {
+            statements.add(lazyColumn.lazySelectQuery);
+        }
+        for (NamedQueryDefinition namedQuery : namedQueries.values()) {
+            statements.add(namedQuery.sql);
+        }
+        statements.removeIf(Objects::isNull);
+        return statements;
+    }
+
+    /**
+     * Returns the queries which write the eager columns and the passed lazy columns in one statement. The queries of
+     * a combination of lazy columns are created on first use.
+     * 
+     * @param writtenLazyColumns
+     *            the indexes of the written {@link #lazyColumns}, must not be changed afterwards
+     * @return the {@link WriteQueries}
+     */
+    public WriteQueries getWriteQueries(BitSet writtenLazyColumns) {
+        if (writtenLazyColumns.isEmpty()) {
+            return writeQueries;
+        }
+        return lazyWriteQueries.computeIfAbsent(writtenLazyColumns, key -> {
+            ColumnWithAlias[] columns = Arrays.copyOf(columnAnnotatedFields,
+                    columnAnnotatedFields.length + key.cardinality());
+            int index = columnAnnotatedFields.length;
+            for (int lazy = key.nextSetBit(0); lazy >= 0; lazy = key.nextSetBit(lazy + 1)) {
+                columns[index++] = lazyColumns[lazy];
+            }
+            return MetadataCache.createWriteQueries(tableName, columns, versionColumn);
+        });
+    }
+
+    /**
+     * Returns if a lookup by the column can use one of the declared {@link #indexes} or the primary key.
+     * 
+     * @param columnName
+     *            the name of the column
+     * @return <code>true</code> if the column is the first column of an index
+     */
+    public boolean isIndexed(String columnName) {
+        if (MetadataCache.ID_COLUMN_NAME.equalsIgnoreCase(columnName)) {
+            return true;
+        }
+        for (IndexDefinition index : indexes) {
+            if (index.startsWith(columnName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the eager or lazy {@link Column} with the passed name.
+     * 
+     * @param columnName
+     *            the name of the column, case-insensitive
+     * @return the {@link ColumnWithAlias}
+     * @throws IllegalArgumentException
+     *             if the Active Record has no such column
+     */
+    public ColumnWithAlias getColumn(String columnName) {
+        for (ColumnWithAlias[] columns : new ColumnWithAlias[][] { columnAnnotatedFields, lazyColumns }) {
+            for (ColumnWithAlias column : columns) {
+                if (column.columnName.equalsIgnoreCase(columnName)) {
+                    return column;
+                }
+            }
+        }
+        throw new IllegalArgumentException("Table '" + tableName + "' has no column '" + columnName + "'");
+    }
+
+    /**
+     * Returns the name of a column as it is declared, to be used in a query. Unlike {@link #getColumn(String)} this
+     * includes the id column.
+     * 
+     * @param columnName
+     *            the name of the column, case-insensitive
+     * @return the declared name of the column
+     * @throws IllegalArgumentException
+     *             if the Active Record has no such column
+     */
+    public String getDeclaredColumnName(String columnName) {
+        if (MetadataCache.ID_COLUMN_NAME.equalsIgnoreCase(columnName)) {
+            return MetadataCache.ID_COLUMN_NAME;
+        }
+        return getColumn(columnName).columnName;
+    }
 
     /**
      * One {@link Column} with it's database column name (either field name or alias defined by {@link Column}).
@@ -32,9 +205,27 @@ public final class TableMetadata {
         /** The {@link Field} annotated by {@link Column}. */
         public Field columnAnnotatedField;
 
+        /**
+         * The {@link com.github.kaiwinter.activerecord.annotation.Embedded} fields which lead from the Active Record to
+         * the object of {@link #columnAnnotatedField}, empty for a column of the Active Record itself.
+         */
+        public Field[] embeddingFields;
+
+        /** The constructors of the types of the {@link #embeddingFields}. */
+        private Constructor<?>[] embeddedConstructors;
+
         /** Field name or column alias. */
         public String columnName;
 
+        /** The type of the field, determines the typed getter and setter which is used. */
+        public ColumnType columnType;
+
+        /** <code>true</code> if the column is loaded on first access. */
+        public boolean lazy;
+
+        /** Loads the value of a lazy column, the value is preceded by a flag which is true if the value is NULL. */
+        public String lazySelectQuery;
+
         /**
          * Constructs a new {@link ColumnWithAlias} from a {@link Field}.
          * 
@@ -43,12 +234,216 @@ public final class TableMetadata {
          * @return an initialized {@link ColumnWithAlias}
          */
         public static final ColumnWithAlias create(Field field) {
+            return create(field, "", new Field[0]);
+        }
+
+        /**
+         * Constructs a new {@link ColumnWithAlias} from a {@link Field} of an embedded value object.
+         * 
+         * @param field
+         *            the {@link Field}
+         * @param columnPrefix
+         *            the prefix of the column name
+         * @param embeddingFields
+         *            see {@link #embeddingFields}
+         * @return an initialized {@link ColumnWithAlias}
+         * @throws IllegalArgumentException
+         *             if the type of an embedding field has no constructor without parameters
+         */
+        public static final ColumnWithAlias create(Field field, String columnPrefix, Field[] embeddingFields) {
             ColumnWithAlias columnWithAlias = new ColumnWithAlias();
             columnWithAlias.columnAnnotatedField = field;
-            columnWithAlias.columnName = getColumnName(field);
+            columnWithAlias.columnName = columnPrefix + getColumnName(field);
+            columnWithAlias.columnType = ColumnType.of(field.getType());
+            columnWithAlias.lazy = field.getDeclaredAnnotation(Column.class).fetch() == FetchType.LAZY;
+            columnWithAlias.embeddingFields = embeddingFields;
+            columnWithAlias.embeddedConstructors = new Constructor<?>[embeddingFields.length];
+            for (int i = 0; i < embeddingFields.length; i++) {
+                Class<?> type = embeddingFields[i].getType();
+                try {
+                    columnWithAlias.embeddedConstructors[i] = type.getDeclaredConstructor();
+                } catch (NoSuchMethodException e) {
+                    throw new IllegalArgumentException(
+                            "Embedded '" + type.getName() + "' needs a constructor without parameters", e);
+                }
+                columnWithAlias.embeddedConstructors[i].setAccessible(true);
+                embeddingFields[i].setAccessible(true);
+            }
+            // mark as accessible once instead of on every read and write
+            field.setAccessible(true);
             return columnWithAlias;
         }
 
+        /**
+         * Reads the columns of a row into an Active Record. A value object whose columns are all NULL is set to
+         * <code>null</code>, so a <code>null</code> value object is read back as <code>null</code>.
+         * 
+         * @param resultSet
+         *            the {@link ResultSet} positioned on the row to read
+         * @param columns
+         *            the columns to read, <code>null</code> for a column of the {@link ResultSet} which is skipped
+         * @param indexOffset
+         *            the offset of the index in the {@link ResultSet} to the index in <code>columns</code>
+         * @param activeRecord
+         *            the Active Record to set the values in
+         * @throws SQLException
+         *             if a value cannot be read from the {@link ResultSet}
+         * @throws IllegalAccessException
+         *             if a value cannot be set in the Active Record
+         */
+        public static void readRow(ResultSet resultSet, ColumnWithAlias[] columns, int indexOffset,
+                Object activeRecord) throws SQLException, IllegalAccessException {
+            // whether a value object, by the fields which lead to it, has a column which is not NULL
+            Map<List<Field>, Boolean> embeddedHasValue = null;
+            for (int i = 0; i < columns.length; i++) {
+                ColumnWithAlias column = columns[i];
+                if (column == null) {
+                    continue;
+                }
+                boolean hasValue = column.read(resultSet, i + indexOffset, activeRecord);
+                if (column.embeddingFields.length > 0) {
+                    if (embeddedHasValue == null) {
+                        embeddedHasValue = new LinkedHashMap<>();
+                    }
+                    for (int depth = 1; depth <= column.embeddingFields.length; depth++) {
+                        embeddedHasValue.merge(Arrays.asList(Arrays.copyOf(column.embeddingFields, depth)),
+                                hasValue, Boolean::logicalOr);
+                    }
+                }
+            }
+            if (embeddedHasValue == null) {
+                return;
+            }
+            for (Map.Entry<List<Field>, Boolean> embedded : embeddedHasValue.entrySet()) {
+                if (!embedded.getValue()) {
+                    setNull(activeRecord, embedded.getKey());
+                }
+            }
+        }
+
+        /**
+         * Sets the value object at the end of the <code>path</code> to <code>null</code>, unless a value object on
+         * the way is <code>null</code> already.
+         */
+        private static void setNull(Object activeRecord, List<Field> path) throws IllegalAccessException {
+            Object owner = activeRecord;
+            for (int i = 0; i < path.size() - 1 && owner != null; i++) {
+                owner = path.get(i).get(owner);
+            }
+            if (owner != null) {
+                path.get(path.size() - 1).set(owner, null);
+            }
+        }
+
+        /**
+         * Reads the value of this column from the <code>resultSet</code> and sets it in the Active Record. The value of
+         * an embedded column is set in its value object, which is created if the field is <code>null</code>. Use
+         * {@link #readRow(ResultSet, ColumnWithAlias[], int, Object)} to read a whole row.
+         * 
+         * @param resultSet
+         *            the {@link ResultSet} positioned on the row to read
+         * @param index
+         *            the index of this column in the {@link ResultSet}
+         * @param activeRecord
+         *            the Active Record to set the value in
+         * @return <code>false</code> if the column is embedded and NULL
+         * @throws SQLException
+         *             if the value cannot be read from the {@link ResultSet}
+         * @throws IllegalAccessException
+         *             if the value cannot be set in the Active Record
+         */
+        public boolean read(ResultSet resultSet, int index, Object activeRecord)
+                throws SQLException, IllegalAccessException {
+            Object owner = getOwner(activeRecord, true);
+            if (embeddingFields.length > 0 && resultSet.getObject(index) == null) {
+                // the columns of a null value object are NULL, its primitive fields keep their value
+                if (!columnAnnotatedField.getType().isPrimitive()) {
+                    columnAnnotatedField.set(owner, null);
+                }
+                return false;
+            }
+            columnType.read(resultSet, index, owner, columnAnnotatedField);
+            return true;
+        }
+
+        /**
+         * Reads the value of this column from the Active Record and sets it as parameter in the
+         * <code>statement</code>. An embedded column whose value object is <code>null</code> is set to NULL.
+         * 
+         * @param statement
+         *            the {@link PreparedStatement} to set the value on
+         * @param index
+         *            the index of the parameter
+         * @param activeRecord
+         *            the Active Record to read the value from
+         * @throws SQLException
+         *             if the value cannot be set on the {@link PreparedStatement}
+         * @throws IllegalAccessException
+         *             if the value cannot be read from the Active Record
+         */
+        public void write(PreparedStatement statement, int index, Object activeRecord)
+                throws SQLException, IllegalAccessException {
+            Object owner = getOwner(activeRecord, false);
+            if (owner == null) {
+                statement.setNull(index, columnType.sqlType);
+            } else {
+                columnType.write(statement, index, owner, columnAnnotatedField);
+            }
+        }
+
+        /**
+         * Copies the value of this column from one Active Record to another. If the value object of an embedded
+         * column is <code>null</code> in the source the target is not changed. A <code>byte[]</code> is copied, other
+         * values are shared.
+         * 
+         * @param source
+         *            the Active Record to read the value from
+         * @param target
+         *            the Active Record to set the value in
+         * @throws IllegalAccessException
+         *             if the value cannot be read or set
+         */
+        public void copy(Object source, Object target) throws IllegalAccessException {
+            Object sourceOwner = getOwner(source, false);
+            if (sourceOwner == null) {
+                return;
+            }
+            Object value = columnAnnotatedField.get(sourceOwner);
+            if (value instanceof byte[]) {
+                value = ((byte[]) value).clone();
+            }
+            columnAnnotatedField.set(getOwner(target, true), value);
+        }
+
+        /**
+         * Returns the object which declares {@link #columnAnnotatedField}, which is the Active Record or an embedded
+         * value object.
+         * 
+         * @param create
+         *            <code>true</code> to create missing value objects
+         * @return the object, <code>null</code> if a value object is missing and not created
+         */
+        private Object getOwner(Object activeRecord, boolean create) throws IllegalAccessException {
+            Object owner = activeRecord;
+            for (int i = 0; i < embeddingFields.length; i++) {
+                Object embedded = embeddingFields[i].get(owner);
+                if (embedded == null) {
+                    if (!create) {
+                        return null;
+                    }
+                    try {
+                        embedded = embeddedConstructors[i].newInstance();
+                    } catch (InstantiationException | InvocationTargetException e) {
+                        throw new IllegalStateException(
+                                "Cannot instantiate '" + embeddingFields[i].getType().getName() + "'", e);
+                    }
+                    embeddingFields[i].set(owner, embedded);
+                }
+                owner = embedded;
+            }
+            return owner;
+        }
+
         /**
          * Returns the name of a DB column. Either the field name is returned or an alias if it is set in the
          * {@link Column} annotation.
@@ -71,4 +466,22 @@ public final class TableMetadata {
             return columnName;
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * The queries which write a row, for the eager columns and a combination of lazy columns, see
+     * {@link TableMetadata#getWriteQueries(BitSet)}. The parameters are the {@link #columns} in order, followed by the
+     * id and, for the update, the version.
+     */
+    public static final class WriteQueries {
+
+        /** The written columns, the eager columns followed by the written lazy columns. */
+        public ColumnWithAlias[] columns;
+
+        public String updateQuery;
+        public String insertQueryInternalSequence;
+        public String insertQueryDatabaseSequence;
+        /** Only set if the {@link com.github.kaiwinter.activerecord.dialect.Dialect} supports RETURNING. */
+        public String insertQueryReturningId;
+        public String upsertQuery;
+    }
+}
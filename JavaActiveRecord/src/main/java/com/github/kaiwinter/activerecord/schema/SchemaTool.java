@@ -0,0 +1,364 @@
+package com.github.kaiwinter.activerecord.schema;
+
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.kaiwinter.activerecord.ActiveRecordException;
+import com.github.kaiwinter.activerecord.BaseAR;
+import com.github.kaiwinter.activerecord.annotation.Column;
+import com.github.kaiwinter.activerecord.annotation.Index;
+import com.github.kaiwinter.activerecord.annotation.Indexed;
+import com.github.kaiwinter.activerecord.cache.ChangeBus;
+import com.github.kaiwinter.activerecord.db.Db;
+import com.github.kaiwinter.activerecord.db.Lease;
+import com.github.kaiwinter.activerecord.db.SequenceGenerator;
+import com.github.kaiwinter.activerecord.dialect.Dialect;
+import com.github.kaiwinter.activerecord.metadata.ColumnType;
+import com.github.kaiwinter.activerecord.metadata.IndexDefinition;
+import com.github.kaiwinter.activerecord.metadata.MetadataCache;
+import com.github.kaiwinter.activerecord.metadata.TableMetadata;
+import com.github.kaiwinter.activerecord.metadata.TableMetadata.ColumnWithAlias;
+
+/**
+ * Creates and validates the database schema of the Active Records from their {@link TableMetadata}.
+ * 
+ * <p>
+ * The tables are generated with a column per {@link Column}, typed by the {@link Dialect}, and the id as primary key
+ * which is generated by the database for {@link SequenceGenerator#DATABASE}. {@link #validateSchema(Class...)}
+ * compares the tables of the passed Active Records once with the {@link DatabaseMetaData}, call it on startup to find a
+ * schema which doesn't match the Active Records before the first record is read. The Active Record classes are passed
+ * explicitly, the metadata of an Active Record is only built on its first use.
+ * </p>
+ * 
+ * <p>
+ * The indexes declared by {@link Indexed} and {@link Index} are verified and created by
+ * {@link #findMissingIndexes(Class)} and {@link #createMissingIndexes(Class)}. An existing index satisfies a declared
+ * one if it starts with the same columns, regardless of its name.
+ * </p>
+ * 
+ * <p>
+ * All operations run on the database of the table, on each shard for a sharded table.
+ * </p>
+ */
+public final class SchemaTool {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SchemaTool.class.getSimpleName());
+
+    private SchemaTool() {
+        // utility class
+    }
+
+    /** Numeric and boolean column types, they cannot be read from a character column. */
+    private static final Set<ColumnType> NON_CHARACTER_TYPES = EnumSet.complementOf(EnumSet.of(ColumnType.STRING,
+            ColumnType.BYTES, ColumnType.OBJECT));
+
+    /** SQL types of character columns. */
+    private static final Set<Integer> CHARACTER_SQL_TYPES = new HashSet<>(Arrays.asList(Types.CHAR, Types.VARCHAR,
+            Types.LONGVARCHAR, Types.NCHAR, Types.NVARCHAR, Types.LONGNVARCHAR, Types.CLOB, Types.NCLOB));
+
+    /**
+     * Builds the CREATE TABLE statement of an Active Record.
+     * 
+     * @param clazz
+     *            the Active Record class
+     * @return the CREATE TABLE statement
+     */
+    public static String getCreateTableQuery(Class<? extends BaseAR> clazz) {
+        TableMetadata metadata = MetadataCache.getTableMetadata(clazz);
+        Dialect dialect = Db.INSTANCE.getDialect();
+        boolean autoIncrement = metadata.tableAnnotation.sequenceGenerator() == SequenceGenerator.DATABASE;
+        StringBuilder query = new StringBuilder("CREATE TABLE IF NOT EXISTS ").append(metadata.tableName) //
+                .append(" (").append(dialect.getIdColumnDefinition(MetadataCache.ID_COLUMN_NAME, autoIncrement));
+        for (ColumnWithAlias column : getAllColumns(metadata)) {
+            String sqlType = column.lazy ? dialect.getLargeColumnType(column.columnType)
+                    : dialect.getColumnType(column.columnType);
+            query.append(", ").append(column.columnName).append(' ').append(sqlType);
+        }
+        return query.append(')').toString();
+    }
+
+    /**
+     * Creates the table of an Active Record if it doesn't exist. The declared indexes are not created, see
+     * {@link #createMissingIndexes(Class)}.
+     * 
+     * @param clazz
+     *            the Active Record class
+     * @throws ActiveRecordException
+     *             if the table cannot be created
+     */
+    public static void createTable(Class<? extends BaseAR> clazz) throws ActiveRecordException {
+        TableMetadata metadata = MetadataCache.getTableMetadata(clazz);
+        execute(metadata, getCreateTableQuery(clazz), "Could not create table '" + metadata.tableName + "'");
+    }
+
+    /**
+     * Drops the table of an Active Record if it exists.
+     * 
+     * @param clazz
+     *            the Active Record class
+     * @throws ActiveRecordException
+     *             if the table cannot be dropped
+     */
+    public static void dropTable(Class<? extends BaseAR> clazz) throws ActiveRecordException {
+        TableMetadata metadata = MetadataCache.getTableMetadata(clazz);
+        execute(metadata, "DROP TABLE IF EXISTS " + metadata.tableName,
+                "Could not drop table '" + metadata.tableName + "'");
+        Db.INSTANCE.publishChange(metadata.tableName, ChangeBus.ALL_ROWS);
+    }
+
+    /**
+     * Creates the missing tables and indexes of the passed Active Records.
+     * 
+     * @param classes
+     *            the Active Record classes
+     * @throws ActiveRecordException
+     *             if a table or index cannot be created
+     */
+    @SafeVarargs
+    public static void createSchema(Class<? extends BaseAR>... classes) throws ActiveRecordException {
+        for (Class<? extends BaseAR> clazz : classes) {
+            createTable(clazz);
+            createMissingIndexes(clazz);
+        }
+    }
+
+    private static void execute(TableMetadata metadata, String query, String errorMessage)
+            throws ActiveRecordException {
+        LOGGER.info(query);
+        try {
+            Db.INSTANCE.executeOnAllShards(metadata, lease -> {
+                try (Statement statement = lease.getConnection().createStatement()) {
+                    return statement.execute(query);
+                }
+            });
+        } catch (SQLException e) {
+            throw new ActiveRecordException(errorMessage, e);
+        }
+    }
+
+    /**
+     * Compares the table of an Active Record with the {@link DatabaseMetaData}. A problem is reported if the table or
+     * one of its columns doesn't exist or if a numeric or boolean field is mapped to a character column.
+     * 
+     * @param clazz
+     *            the Active Record class
+     * @return a description of each problem, empty if the table matches the Active Record
+     * @throws ActiveRecordException
+     *             if the table cannot be read from the database
+     */
+    public static List<String> findSchemaProblems(Class<? extends BaseAR> clazz) throws ActiveRecordException {
+        TableMetadata metadata = MetadataCache.getTableMetadata(clazz);
+        try {
+            List<List<String>> problemsPerShard = Db.INSTANCE.executeOnAllShards(metadata,
+                    lease -> findSchemaProblems(lease, metadata));
+            Set<String> problems = new LinkedHashSet<>();
+            problemsPerShard.forEach(problems::addAll);
+            return new ArrayList<>(problems);
+        } catch (SQLException e) {
+            throw new ActiveRecordException("Could not read columns of table '" + metadata.tableName + "'", e);
+        }
+    }
+
+    /**
+     * Validates the tables of the passed Active Records by {@link #findSchemaProblems(Class)}.
+     * 
+     * @param classes
+     *            the Active Record classes
+     * @throws ActiveRecordException
+     *             if a table doesn't match its Active Record, the message lists all problems
+     */
+    @SafeVarargs
+    public static void validateSchema(Class<? extends BaseAR>... classes) throws ActiveRecordException {
+        List<String> problems = new ArrayList<>();
+        for (Class<? extends BaseAR> clazz : classes) {
+            problems.addAll(findSchemaProblems(clazz));
+        }
+        if (!problems.isEmpty()) {
+            throw new ActiveRecordException("Schema doesn't match the Active Records: " + problems);
+        }
+    }
+
+    private static List<String> findSchemaProblems(Lease lease, TableMetadata metadata) throws SQLException {
+        DatabaseMetaData databaseMetaData = lease.getConnection().getMetaData();
+        Map<String, Integer> sqlTypes = new HashMap<>();
+        try (ResultSet resultSet = databaseMetaData.getColumns(null, null,
+                toStoredCase(databaseMetaData, metadata.tableName), null)) {
+            while (resultSet.next()) {
+                sqlTypes.put(resultSet.getString("COLUMN_NAME").toLowerCase(Locale.ROOT),
+                        resultSet.getInt("DATA_TYPE"));
+            }
+        }
+        List<String> problems = new ArrayList<>();
+        if (sqlTypes.isEmpty()) {
+            problems.add("Table '" + metadata.tableName + "' doesn't exist");
+            return problems;
+        }
+        if (!sqlTypes.containsKey(MetadataCache.ID_COLUMN_NAME)) {
+            problems.add("Column '" + metadata.tableName + "." + MetadataCache.ID_COLUMN_NAME + "' doesn't exist");
+        }
+        for (ColumnWithAlias column : getAllColumns(metadata)) {
+            Integer sqlType = sqlTypes.get(column.columnName.toLowerCase(Locale.ROOT));
+            if (sqlType == null) {
+                problems.add("Column '" + metadata.tableName + "." + column.columnName + "' doesn't exist");
+            } else if (NON_CHARACTER_TYPES.contains(column.columnType) && CHARACTER_SQL_TYPES.contains(sqlType)) {
+                problems.add("Column '" + metadata.tableName + "." + column.columnName
+                        + "' is a character column but field is " + column.columnType.javaType.getSimpleName());
+            }
+        }
+        return problems;
+    }
+
+    /**
+     * Returns the declared indexes of an Active Record which are missing in the database. For a sharded table an
+     * index is returned if it is missing on at least one shard.
+     * 
+     * @param clazz
+     *            the Active Record class
+     * @return the missing indexes, empty if all exist
+     * @throws ActiveRecordException
+     *             if the indexes cannot be read from the database
+     */
+    public static List<IndexDefinition> findMissingIndexes(Class<? extends BaseAR> clazz)
+            throws ActiveRecordException {
+        TableMetadata metadata = MetadataCache.getTableMetadata(clazz);
+        if (metadata.indexes.length == 0) {
+            return new ArrayList<>();
+        }
+        try {
+            List<List<IndexDefinition>> missingPerShard = Db.INSTANCE.executeOnAllShards(metadata,
+                    lease -> findMissingIndexes(lease, metadata));
+            Set<IndexDefinition> missing = new LinkedHashSet<>();
+            missingPerShard.forEach(missing::addAll);
+            return new ArrayList<>(missing);
+        } catch (SQLException e) {
+            throw new ActiveRecordException("Could not read indexes of table '" + metadata.tableName + "'", e);
+        }
+    }
+
+    /**
+     * Creates the declared indexes of an Active Record which are missing in the database, on each shard for a sharded
+     * table.
+     * 
+     * @param clazz
+     *            the Active Record class
+     * @return the number of created indexes
+     * @throws ActiveRecordException
+     *             if the indexes cannot be read or created
+     */
+    public static int createMissingIndexes(Class<? extends BaseAR> clazz) throws ActiveRecordException {
+        TableMetadata metadata = MetadataCache.getTableMetadata(clazz);
+        if (metadata.indexes.length == 0) {
+            return 0;
+        }
+        try {
+            List<Integer> createdPerShard = Db.INSTANCE.executeOnAllShards(metadata, lease -> {
+                List<IndexDefinition> missing = findMissingIndexes(lease, metadata);
+                try (Statement statement = lease.getConnection().createStatement()) {
+                    for (IndexDefinition index : missing) {
+                        String query = Db.INSTANCE.getDialect().getCreateIndexQuery(index.name, metadata.tableName,
+                                index.columns, index.unique);
+                        LOGGER.info(query);
+                        statement.execute(query);
+                    }
+                }
+                return missing.size();
+            });
+            return createdPerShard.stream().mapToInt(Integer::intValue).sum();
+        } catch (SQLException e) {
+            throw new ActiveRecordException("Could not create indexes of table '" + metadata.tableName + "'", e);
+        }
+    }
+
+    private static List<IndexDefinition> findMissingIndexes(Lease lease, TableMetadata metadata)
+            throws SQLException {
+        List<ExistingIndex> existingIndexes = getExistingIndexes(lease.getConnection().getMetaData(),
+                metadata.tableName);
+        List<IndexDefinition> missing = new ArrayList<>();
+        for (IndexDefinition index : metadata.indexes) {
+            if (existingIndexes.stream().noneMatch(existing -> existing.satisfies(index))) {
+                missing.add(index);
+            }
+        }
+        return missing;
+    }
+
+    private static List<ExistingIndex> getExistingIndexes(DatabaseMetaData databaseMetaData, String tableName)
+            throws SQLException {
+        Map<String, ExistingIndex> indexes = new HashMap<>();
+        try (ResultSet resultSet = databaseMetaData.getIndexInfo(null, null, toStoredCase(databaseMetaData, tableName),
+                false, true)) {
+            while (resultSet.next()) {
+                String indexName = resultSet.getString("INDEX_NAME");
+                String columnName = resultSet.getString("COLUMN_NAME");
+                if (indexName == null || columnName == null) {
+                    // table statistics
+                    continue;
+                }
+                ExistingIndex index = indexes.computeIfAbsent(indexName, name -> new ExistingIndex());
+                index.unique = !resultSet.getBoolean("NON_UNIQUE");
+                index.columns.put(resultSet.getInt("ORDINAL_POSITION"), columnName);
+            }
+        }
+        return new ArrayList<>(indexes.values());
+    }
+
+    /**
+     * @return the eager and the lazy columns
+     */
+    private static List<ColumnWithAlias> getAllColumns(TableMetadata metadata) {
+        List<ColumnWithAlias> columns = new ArrayList<>(Arrays.asList(metadata.columnAnnotatedFields));
+        columns.addAll(Arrays.asList(metadata.lazyColumns));
+        return columns;
+    }
+
+    /**
+     * @return the <code>identifier</code> in the case in which the database stores unquoted identifiers
+     */
+    private static String toStoredCase(DatabaseMetaData databaseMetaData, String identifier) throws SQLException {
+        if (databaseMetaData.storesUpperCaseIdentifiers()) {
+            return identifier.toUpperCase(Locale.ROOT);
+        } else if (databaseMetaData.storesLowerCaseIdentifiers()) {
+            return identifier.toLowerCase(Locale.ROOT);
+        }
+        return identifier;
+    }
+
+    /**
+     * An index read from the {@link DatabaseMetaData}.
+     */
+    private static final class ExistingIndex {
+        private boolean unique;
+        private final Map<Integer, String> columns = new TreeMap<>();
+
+        private boolean satisfies(IndexDefinition index) {
+            List<String> existingColumns = new ArrayList<>(columns.values());
+            if (existingColumns.size() < index.columns.size()
+                    || index.unique && (!unique || existingColumns.size() != index.columns.size())) {
+                return false;
+            }
+            for (int i = 0; i < index.columns.size(); i++) {
+                if (!existingColumns.get(i).equalsIgnoreCase(index.columns.get(i))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -1,22 +1,49 @@
 package com.github.kaiwinter.activerecord;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStream;
+import java.sql.ResultSet;
+import java.sql.SQLDataException;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.junit.Before;
 import org.junit.Test;
 
+import com.github.kaiwinter.activerecord.ar.Address;
+import com.github.kaiwinter.activerecord.ar.AttachmentAR;
+import com.github.kaiwinter.activerecord.ar.CityAR;
+import com.github.kaiwinter.activerecord.ar.DocumentAR;
 import com.github.kaiwinter.activerecord.ar.MountainAR;
 import com.github.kaiwinter.activerecord.ar.PersonAR;
 import com.github.kaiwinter.activerecord.ar.PersonAliasAR;
 import com.github.kaiwinter.activerecord.ar.PersonDatabaseSequenceAR;
+import com.github.kaiwinter.activerecord.ar.SensorAR;
+import com.github.kaiwinter.activerecord.ar.ShopAR;
+import com.github.kaiwinter.activerecord.ar.StationAR;
+import com.github.kaiwinter.activerecord.db.Db;
 import com.github.kaiwinter.activerecord.db.DbTestUtil;
+import com.github.kaiwinter.activerecord.db.Lease;
+import com.github.kaiwinter.activerecord.db.ShardStrategy;
+import com.github.kaiwinter.activerecord.schema.SchemaTool;
 
 public class ArTest {
 
@@ -68,6 +95,22 @@ public class ArTest {
         assertNull(person);
     }
 
+    /**
+     * Saves a Person inside a transaction which is rolled back.
+     */
+    @Test
+    public void testRollback() throws ActiveRecordException, SQLException {
+        Db.INSTANCE.beginTransaction();
+        try {
+            new PersonAR("name", "surname").save();
+            assertEquals(1, PersonAR.findAll(PersonAR.class).size());
+        } finally {
+            Db.INSTANCE.rollback();
+        }
+        assertFalse(Db.INSTANCE.isInTransaction());
+        assertEquals(0, PersonAR.findAll(PersonAR.class).size());
+    }
+
     /**
      * Tests the alias definition for a column.
      */
@@ -94,6 +137,57 @@ public class ArTest {
         assertEquals(2, persons.size());
     }
 
+    /**
+     * Tests loading pages of entities.
+     */
+    @Test
+    public void testPagination() throws ActiveRecordException {
+        for (int i = 0; i < 5; i++) {
+            new PersonAR("name" + i, "surname" + i).save();
+        }
+        Collection<PersonAR> page = PersonAR.findAll(PersonAR.class, 2, 2);
+
+        assertEquals(2, page.size());
+        assertEquals("name2", page.iterator().next().getName());
+        assertEquals(1, PersonAR.findAll(PersonAR.class, 4, 2).size());
+    }
+
+    /**
+     * Streams all entities by a parallel scan over several partitions.
+     */
+    @Test
+    public void testStreamAll() throws ActiveRecordException {
+        for (int i = 0; i < 100; i++) {
+            new MountainAR("mountain" + i, i).save();
+        }
+        try (Stream<MountainAR> mountains = MountainAR.streamAll(MountainAR.class, 4)) {
+            assertEquals(4950L, mountains.mapToLong(MountainAR::getHeight).sum());
+        }
+        try (Stream<SensorAR> sensors = SensorAR.streamAll(SensorAR.class, 4)) {
+            assertEquals(0, sensors.count());
+        }
+    }
+
+    /**
+     * Streams all entities inside a transaction, the partitions have to be read on the connection of the transaction.
+     */
+    @Test
+    public void testStreamAllInTransaction() throws ActiveRecordException, SQLException {
+        Db.INSTANCE.beginTransaction();
+        try {
+            for (int i = 0; i < 100; i++) {
+                new MountainAR("mountain" + i, i).save();
+            }
+            try (Stream<MountainAR> mountains = MountainAR.streamAll(MountainAR.class, 4)) {
+                assertFalse(mountains.isParallel());
+                assertEquals(4950L, mountains.mapToLong(MountainAR::getHeight).sum());
+            }
+        } finally {
+            Db.INSTANCE.rollback();
+        }
+        assertEquals(0, MountainAR.count(MountainAR.class));
+    }
+
     /**
      * Test if the current sequence numbers are kept by entity.
      * <ul>
@@ -131,6 +225,191 @@ public class ArTest {
         assertNotNull(person2.getId());
     }
 
+    /**
+     * Upserts a Person with an external ID twice, the second call has to update the row.
+     */
+    @Test
+    public void testUpsert() throws ActiveRecordException {
+        PersonAR person = new PersonAR("name", "surname");
+        person.setId(1000L);
+        person.upsert();
+
+        person.setName("new name");
+        person.upsert();
+
+        assertEquals(1, PersonAR.findAll(PersonAR.class).size());
+        assertEquals("new name", reload(person).getName());
+
+        // the internal sequence must not hand out the upserted ID again
+        PersonAR newPerson = new PersonAR("name2", "surname2");
+        newPerson.save();
+        assertTrue(newPerson.getIdValue() > 1000L);
+    }
+
+    /**
+     * Upserts a batch of Persons where one already exists.
+     */
+    @Test
+    public void testUpsertAll() throws ActiveRecordException {
+        PersonAR existing = new PersonAR("name1", "surname1");
+        existing.save();
+        existing.setName("updated");
+
+        PersonAR external = new PersonAR("name2", "surname2");
+        external.setId(existing.getIdValue() + 10);
+
+        PersonAR.upsertAll(PersonAR.class, Arrays.asList(existing, external));
+
+        assertEquals(2, PersonAR.findAll(PersonAR.class).size());
+        assertEquals("updated", reload(existing).getName());
+        assertEquals("name2", reload(external).getName());
+    }
+
+    /**
+     * Tests that an upsert updates the existing row in place: columns which are not mapped are kept and batches larger
+     * than a multi-row insert are split.
+     */
+    @Test
+    public void testUpsertUpdatesInPlace() throws ActiveRecordException, SQLException {
+        PersonAR person = new PersonAR("name", "surname");
+        person.save();
+        try (Statement statement = Db.INSTANCE.getConnection().createStatement()) {
+            statement.execute("ALTER TABLE person ADD COLUMN note TEXT");
+            statement.execute("UPDATE person SET note='kept'");
+        }
+        person.setName("new name");
+        person.upsert();
+
+        List<PersonAR> persons = new ArrayList<>();
+        for (int i = 0; i < 1200; i++) {
+            PersonAR external = new PersonAR("name" + i, "surname" + i);
+            external.setId(10_000L + i);
+            persons.add(external);
+        }
+        PersonAR.upsertAll(PersonAR.class, persons);
+
+        assertEquals(1201, PersonAR.count(PersonAR.class));
+        assertEquals("new name", reload(person).getName());
+        try (Statement statement = Db.INSTANCE.getConnection().createStatement();
+                ResultSet resultSet = statement.executeQuery("SELECT note FROM person WHERE id=" + person.getId())) {
+            assertTrue(resultSet.next());
+            assertEquals("kept", resultSet.getString(1));
+        }
+    }
+
+    /**
+     * Inserts more Persons than fit in one statement and checks the generated IDs.
+     */
+    @Test
+    public void testInsertAllDatabaseSequence() throws ActiveRecordException {
+        List<PersonDatabaseSequenceAR> persons = new ArrayList<>();
+        for (int i = 0; i < 1200; i++) {
+            persons.add(new PersonDatabaseSequenceAR("name" + i, "surname" + i));
+        }
+        PersonDatabaseSequenceAR.insertAll(PersonDatabaseSequenceAR.class, persons);
+
+        assertEquals(1200, PersonDatabaseSequenceAR.findAll(PersonDatabaseSequenceAR.class).size());
+        for (PersonDatabaseSequenceAR person : persons) {
+            PersonDatabaseSequenceAR reloaded = PersonDatabaseSequenceAR.findById(PersonDatabaseSequenceAR.class,
+                    person.getIdValue());
+            assertEquals(person.getName(), reloaded.getName());
+        }
+    }
+
+    /**
+     * Inserts Persons with IDs of the internal sequence.
+     */
+    @Test
+    public void testInsertAllInternalSequence() throws ActiveRecordException {
+        List<PersonAR> persons = Arrays.asList(new PersonAR("name1", "surname1"), new PersonAR("name2", "surname2"));
+        PersonAR.insertAll(PersonAR.class, persons);
+
+        assertEquals("name1", reload(persons.get(0)).getName());
+        assertEquals("name2", reload(persons.get(1)).getName());
+    }
+
+    /**
+     * Tests that a failing multi-row insert only resets the IDs of the Active Records whose statement wasn't executed,
+     * the rows of the executed statements are stored.
+     */
+    @Test
+    public void testInsertAllInternalSequencePartialFailure() throws ActiveRecordException, SQLException {
+        PersonAR person = new PersonAR("name", "surname");
+        person.save();
+        long conflictingId = person.getId() + 1200;
+        try (Statement statement = Db.INSTANCE.getConnection().createStatement()) {
+            statement.execute("INSERT INTO person (id, name, surname) VALUES (" + conflictingId + ", 'n', 's')");
+        }
+
+        List<PersonAR> persons = new ArrayList<>();
+        for (int i = 0; i < 1200; i++) {
+            persons.add(new PersonAR("name" + i, "surname" + i));
+        }
+        try {
+            PersonAR.insertAll(PersonAR.class, persons);
+            fail("Expected ActiveRecordException");
+        } catch (ActiveRecordException e) {
+            // expected
+        }
+
+        assertFalse(persons.get(0).isNew());
+        assertEquals("name0", reload(persons.get(0)).getName());
+        assertTrue(persons.get(1199).isNew());
+        long inserted = persons.stream().filter(p -> !p.isNew()).count();
+        assertTrue(inserted > 0 && inserted < 1200);
+        assertEquals(inserted + 2, PersonAR.count(PersonAR.class));
+    }
+
+    /**
+     * Saves Sensors in a sharded table, they have to be distributed across the shards and be found again.
+     */
+    @Test
+    public void testSharding() throws ActiveRecordException, SQLException {
+        List<SensorAR> sensors = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            SensorAR sensor = new SensorAR("sensor" + i, i);
+            sensor.save();
+            sensors.add(sensor);
+        }
+        SensorAR.insertAll(SensorAR.class, Arrays.asList(new SensorAR("bulk1", 1), new SensorAR("bulk2", 2)));
+
+        assertTrue(countRows(0, "sensor") > 0);
+        assertTrue(countRows(1, "sensor") > 0);
+        assertEquals(22, countRows(0, "sensor") + countRows(1, "sensor"));
+        assertEquals(22, SensorAR.findAll(SensorAR.class).size());
+        assertEquals(1, SensorAR.findAllByColumn(SensorAR.class, "name", "bulk2").size());
+        assertEquals(5, SensorAR.findAll(SensorAR.class, 5, 5).iterator().next().getReading(), 0);
+
+        SensorAR sensor = sensors.get(7);
+        sensor.setReading(70);
+        sensor.save();
+        assertEquals(70, SensorAR.findById(SensorAR.class, sensor.getIdValue()).getReading(), 0);
+
+        sensor.delete();
+        assertNull(SensorAR.findById(SensorAR.class, sensor.getIdValue()));
+        assertEquals(21, SensorAR.findAll(SensorAR.class).size());
+    }
+
+    /**
+     * Tests the distribution of IDs by ranges.
+     */
+    @Test
+    public void testRangeShardStrategy() {
+        assertEquals(0, ShardStrategy.RANGE.getShard(1, 3, 100));
+        assertEquals(0, ShardStrategy.RANGE.getShard(100, 3, 100));
+        assertEquals(1, ShardStrategy.RANGE.getShard(101, 3, 100));
+        assertEquals(2, ShardStrategy.RANGE.getShard(1000, 3, 100));
+    }
+
+    private static int countRows(int shard, String table) throws SQLException {
+        try (Lease lease = Db.INSTANCE.leaseForShard(shard);
+                Statement statement = lease.getConnection().createStatement();
+                ResultSet resultSet = statement.executeQuery("SELECT COUNT(*) FROM " + table)) {
+            resultSet.next();
+            return resultSet.getInt(1);
+        }
+    }
+
     /**
      * Reloads the passed Person by its ID.
      * 
@@ -154,6 +433,448 @@ public class ArTest {
         Collection<MountainAR> records = MountainAR.findAllByColumn(MountainAR.class, "name", "mountain 1");
         assertEquals(1, records.size());
 
-        assertEquals(100L, records.iterator().next().getHeight().longValue());
+        assertEquals(100L, records.iterator().next().getHeight());
+    }
+
+    /**
+     * Tests the primitive id of a new and a saved Active Record and the read of a primitive column.
+     */
+    @Test
+    public void testPrimitiveColumns() throws ActiveRecordException {
+        MountainAR mountain = new MountainAR("mountain", 4810L);
+        assertTrue(mountain.isNew());
+        assertNull(mountain.getId());
+        assertEquals(BaseAR.UNSAVED_ID, mountain.getIdValue());
+
+        mountain.save();
+        assertFalse(mountain.isNew());
+
+        MountainAR reloaded = MountainAR.findById(MountainAR.class, mountain.getIdValue());
+        assertEquals(mountain.getIdValue(), reloaded.getIdValue());
+        assertEquals(4810L, reloaded.getHeight());
+    }
+
+    /**
+     * Tests if an update of a stale Active Record is rejected and the version is incremented by each update.
+     */
+    @Test
+    public void testOptimisticLock() throws ActiveRecordException {
+        DocumentAR document = new DocumentAR("title");
+        document.save();
+        assertEquals(0, document.getVersion());
+
+        DocumentAR first = DocumentAR.findById(DocumentAR.class, document.getIdValue());
+        DocumentAR second = DocumentAR.findById(DocumentAR.class, document.getIdValue());
+        first.setTitle("first");
+        first.save();
+        assertEquals(1, first.getVersion());
+
+        second.setTitle("second");
+        try {
+            second.save();
+            fail("Stale update was not detected");
+        } catch (OptimisticLockException e) {
+            assertSame(second, e.getActiveRecord());
+        }
+        assertEquals(0, second.getVersion());
+        assertEquals("first", DocumentAR.findById(DocumentAR.class, document.getIdValue()).getTitle());
+    }
+
+    /**
+     * Tests if a batched update reports the stale Active Records and updates the others.
+     */
+    @Test
+    public void testUpdateAllConflicts() throws ActiveRecordException {
+        DocumentAR document1 = new DocumentAR("document 1");
+        DocumentAR document2 = new DocumentAR("document 2");
+        document1.save();
+        document2.save();
+
+        DocumentAR concurrent = DocumentAR.findById(DocumentAR.class, document2.getIdValue());
+        concurrent.setTitle("concurrent");
+        concurrent.save();
+
+        document1.setTitle("new 1");
+        document2.setTitle("new 2");
+        List<DocumentAR> conflicts = BaseAR.updateAll(DocumentAR.class, Arrays.asList(document1, document2));
+        assertEquals(Arrays.asList(document2), conflicts);
+        assertEquals(1, document1.getVersion());
+        assertEquals(0, document2.getVersion());
+        assertEquals("new 1", DocumentAR.findById(DocumentAR.class, document1.getIdValue()).getTitle());
+        assertEquals("concurrent", DocumentAR.findById(DocumentAR.class, document2.getIdValue()).getTitle());
+    }
+
+    /**
+     * Tests if the query cache returns the cached records and is invalidated by a save.
+     */
+    @Test
+    public void testQueryCache() throws ActiveRecordException, SQLException {
+        CityAR city = new CityAR("city 1", "ACTIVE");
+        city.save();
+
+        Collection<CityAR> active = CityAR.findAllByColumn(CityAR.class, "status", "ACTIVE");
+        assertEquals(1, active.size());
+        CityAR cached = active.iterator().next();
+        assertSame(cached, CityAR.findById(CityAR.class, city.getIdValue()));
+
+        // a write which bypasses the Active Records is not seen
+        try (Statement statement = Db.INSTANCE.getConnection().createStatement()) {
+            statement.execute("UPDATE city SET name='changed'");
+        }
+        Collection<CityAR> cachedResult = CityAR.findAllByColumn(CityAR.class, "status", "ACTIVE");
+        assertSame(cached, cachedResult.iterator().next());
+        assertEquals("city 1", cached.getName());
+
+        new CityAR("city 2", "ACTIVE").save();
+        active = CityAR.findAllByColumn(CityAR.class, "status", "ACTIVE");
+        assertEquals(2, active.size());
+        // the query was executed again but the cached record is kept
+        assertTrue(active.contains(cached));
+        assertEquals(2, CityAR.findAll(CityAR.class).size());
+    }
+
+    /**
+     * Tests if lazy columns are loaded on access, can be streamed and are kept if they were not loaded on update.
+     */
+    @Test
+    public void testLazyColumns() throws ActiveRecordException, IOException {
+        byte[] content = new byte[100_000];
+        Arrays.fill(content, (byte) 7);
+        AttachmentAR attachment = new AttachmentAR("file", content, "text");
+        attachment.save();
+
+        AttachmentAR reloaded = AttachmentAR.findById(AttachmentAR.class, attachment.getIdValue());
+        reloaded.setName("new name");
+        reloaded.save();
+
+        reloaded = AttachmentAR.findAll(AttachmentAR.class).iterator().next();
+        assertEquals("new name", reloaded.getName());
+        try (InputStream stream = reloaded.openContent()) {
+            assertEquals(content.length, stream.skip(Long.MAX_VALUE));
+        }
+        try (BufferedReader reader = new BufferedReader(reloaded.openText())) {
+            assertEquals("text", reader.readLine());
+        }
+        assertTrue(Arrays.equals(content, reloaded.getContent()));
+
+        reloaded.setText(null);
+        reloaded.save();
+        assertNull(AttachmentAR.findById(AttachmentAR.class, attachment.getIdValue()).openText());
+    }
+
+    /**
+     * Tests count, exists and the aggregates, on a plain and on a sharded table.
+     */
+    @Test
+    public void testCountAndAggregates() throws ActiveRecordException {
+        assertEquals(0, MountainAR.count(MountainAR.class));
+        assertTrue(Double.isNaN(MountainAR.max(MountainAR.class, "height")));
+        assertEquals(0, MountainAR.sum(MountainAR.class, "height"), 0);
+
+        MountainAR everest = new MountainAR("Mount Everest", 8848);
+        everest.save();
+        new MountainAR("K2", 8611).save();
+        new MountainAR("Zugspitze", 2962).save();
+
+        assertEquals(3, MountainAR.count(MountainAR.class));
+        assertEquals(1, MountainAR.countByColumn(MountainAR.class, "NAME", "K2"));
+        assertEquals(0, MountainAR.countByColumn(MountainAR.class, "name", null));
+        assertTrue(MountainAR.exists(MountainAR.class, everest.getIdValue()));
+        assertFalse(MountainAR.exists(MountainAR.class, everest.getIdValue() + 100));
+        assertEquals(2962, MountainAR.min(MountainAR.class, "height"), 0);
+        assertEquals(8848, MountainAR.max(MountainAR.class, "height"), 0);
+        assertEquals(20421, MountainAR.sum(MountainAR.class, "height"), 0);
+        assertEquals(6807, MountainAR.avg(MountainAR.class, "height"), 0);
+
+        for (int i = 1; i <= 10; i++) {
+            new SensorAR("sensor", i).save();
+        }
+        assertEquals(10, SensorAR.count(SensorAR.class));
+        assertEquals(1, SensorAR.min(SensorAR.class, "reading"), 0);
+        assertEquals(10, SensorAR.max(SensorAR.class, "reading"), 0);
+        assertEquals(5.5, SensorAR.avg(SensorAR.class, "reading"), 0);
+
+        try {
+            MountainAR.sum(MountainAR.class, "height); DROP TABLE mountain; --");
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("has no column"));
+        }
+    }
+
+    /**
+     * Tests if a record is reloaded in place, completely and partially.
+     */
+    @Test
+    public void testReload() throws ActiveRecordException {
+        PersonAR person = new PersonAR("name", "surname");
+        person.save();
+        PersonAR other = PersonAR.findById(PersonAR.class, person.getIdValue());
+        other.setName("new name");
+        other.setSurname("new surname");
+        other.save();
+
+        person.setName("local name");
+        person.reload("SURNAME");
+        assertEquals("local name", person.getName());
+        assertEquals("new surname", person.getSurname());
+        person.reload();
+        assertEquals("new name", person.getName());
+
+        AttachmentAR attachment = new AttachmentAR("file", new byte[] { 1 }, "text");
+        attachment.save();
+        attachment.reload();
+        assertArrayEquals(new byte[] { 1 }, attachment.getContent());
+
+        other.delete();
+        try {
+            person.reload();
+            fail("Expected ActiveRecordException");
+        } catch (ActiveRecordException e) {
+            assertTrue(e.getMessage().contains("doesn't exist"));
+        }
+    }
+
+    /**
+     * Tests the columns of a mapped superclass and of embedded value objects.
+     */
+    @Test
+    public void testInheritanceAndEmbedded() throws ActiveRecordException {
+        ShopAR shop = new ShopAR("shop", new Address("Main Street 1", 12345), null);
+        shop.setCreatedBy("admin");
+        shop.save();
+
+        ShopAR reloaded = ShopAR.findById(ShopAR.class, shop.getIdValue());
+        assertEquals("admin", reloaded.getCreatedBy());
+        assertEquals("shop", reloaded.getName());
+        assertEquals("Main Street 1", reloaded.getAddress().getStreet());
+        assertEquals(12345, reloaded.getAddress().getZipCode());
+        assertNull(reloaded.getBillingAddress());
+        assertEquals(1, ShopAR.countByColumn(ShopAR.class, "address_zip", 12345));
+        assertEquals(1, ShopAR.countByColumn(ShopAR.class, "billing_street", null));
+    }
+
+    /**
+     * Tests loading and streaming records by custom SQL, including a column label and an unmapped column.
+     */
+    @Test
+    public void testFindBySql() throws ActiveRecordException {
+        new PersonAR("Anna", "Smith").save();
+        new PersonAR("Alex", "Brown").save();
+        new PersonAR("Bob", "Jones").save();
+
+        String sql = "SELECT id, name, surname || '!' AS surname, 42 AS answer FROM person WHERE name LIKE ?"
+                + " ORDER BY surname";
+        List<PersonAR> persons = PersonAR.findBySql(PersonAR.class, sql, "A%");
+        assertEquals(2, persons.size());
+        assertEquals("Alex", persons.get(0).getName());
+        assertEquals("Brown!", persons.get(0).getSurname());
+        assertFalse(persons.get(0).isNew());
+
+        // the cached mapping is used
+        assertEquals("Smith!", PersonAR.findBySql(PersonAR.class, sql, "Anna").get(0).getSurname());
+
+        try (Stream<PersonAR> stream = PersonAR.streamBySql(PersonAR.class, "SELECT name FROM person ORDER BY id")) {
+            assertEquals(Arrays.asList("Anna", "Alex", "Bob"),
+                    stream.map(PersonAR::getName).collect(Collectors.toList()));
+        }
+
+        for (int i = 0; i < 6; i++) {
+            new SensorAR("sensor" + i, i).save();
+        }
+        assertEquals(3, SensorAR.findBySql(SensorAR.class, "SELECT * FROM sensor WHERE reading >= ?", 3.0).size());
+        try (Stream<SensorAR> stream = SensorAR.streamBySql(SensorAR.class, "SELECT * FROM sensor")) {
+            assertEquals(6, stream.count());
+        }
+    }
+
+    /**
+     * Tests named queries with placeholders and a repeated parameter.
+     */
+    @Test
+    public void testFindByNamedQuery() throws ActiveRecordException {
+        new PersonAR("Bob", "Smith").save();
+        new PersonAR("Anna", "Smith").save();
+        new PersonAR("Smith", "Jones").save();
+
+        List<PersonAR> persons = PersonAR.findByNamedQuery(PersonAR.class, "bySurname",
+                Collections.singletonMap("surname", "Smith"));
+        assertEquals(2, persons.size());
+        assertEquals("Anna", persons.get(0).getName());
+        assertFalse(persons.get(0).isNew());
+
+        try (Stream<PersonAR> stream = PersonAR.streamByNamedQuery(PersonAR.class, "byNameOrSurname",
+                Collections.singletonMap("value", "Smith"))) {
+            assertEquals(3, stream.count());
+        }
+
+        try {
+            PersonAR.findByNamedQuery(PersonAR.class, "bySurname", Collections.emptyMap());
+            fail("Missing parameter");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("surname"));
+        }
+        try {
+            PersonAR.findByNamedQuery(PersonAR.class, "unknown", Collections.emptyMap());
+            fail("Unknown query");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("unknown"));
+        }
+    }
+
+    /**
+     * Tests that the warm-up prepares the statements of all tables and reports a missing table.
+     */
+    @Test
+    public void testWarmUp() throws ActiveRecordException {
+        Db.INSTANCE.warmUp(2, Arrays.asList(PersonAR.class, CityAR.class, ShopAR.class));
+
+        SchemaTool.dropTable(ShopAR.class);
+        try {
+            Db.INSTANCE.warmUp(Collections.singletonList(ShopAR.class));
+            fail("Table is missing");
+        } catch (ActiveRecordException e) {
+            assertTrue(e.getMessage().contains("'shop'"));
+        } finally {
+            SchemaTool.createTable(ShopAR.class);
+        }
+    }
+
+    /**
+     * Tests that the warm-up builds the metadata of an Active Record which wasn't used before.
+     */
+    @Test
+    public void testWarmUpColdStart() throws ActiveRecordException {
+        try {
+            Db.INSTANCE.warmUp(Collections.singletonList(StationAR.class));
+            fail("Table is missing");
+        } catch (ActiveRecordException e) {
+            assertTrue(e.getMessage().contains("'station'"));
+        }
+
+        SchemaTool.createTable(StationAR.class);
+        try {
+            Db.INSTANCE.warmUp(1, Collections.singletonList(StationAR.class));
+        } finally {
+            SchemaTool.dropTable(StationAR.class);
+        }
+    }
+
+    /**
+     * Tests that NULL is not read into a primitive field as 0.
+     */
+    @Test
+    public void testNullInPrimitiveColumn() throws ActiveRecordException, SQLException {
+        MountainAR mountain = new MountainAR("mountain", 100L);
+        mountain.save();
+        try (Statement statement = Db.INSTANCE.getConnection().createStatement()) {
+            statement.execute("UPDATE mountain SET height=NULL");
+        }
+        try {
+            MountainAR.findById(MountainAR.class, mountain.getIdValue());
+            fail("NULL read into primitive field");
+        } catch (ActiveRecordException e) {
+            assertTrue(e.getCause() instanceof SQLDataException);
+            assertTrue(e.getCause().getMessage().contains("height"));
+        }
+    }
+
+    /**
+     * Tests if records read inside a transaction are not cached, so other threads don't read uncommitted records.
+     */
+    @Test
+    public void testCacheSkipsTransaction() throws Exception {
+        Db.INSTANCE.beginTransaction();
+        CityAR city = new CityAR("uncommitted", "ACTIVE");
+        city.save();
+        assertEquals("uncommitted", CityAR.findById(CityAR.class, city.getIdValue()).getName());
+
+        AtomicReference<CityAR> read = new AtomicReference<>();
+        Thread reader = new Thread(() -> {
+            try {
+                read.set(CityAR.findById(CityAR.class, city.getIdValue()));
+            } catch (ActiveRecordException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        reader.start();
+        reader.join(200);
+        Db.INSTANCE.rollback();
+        reader.join(5_000);
+        assertFalse(reader.isAlive());
+        assertNull(read.get());
+    }
+
+    /**
+     * Tests if the bulk writes write the loaded or set lazy columns with the other columns and keep the unloaded ones.
+     */
+    @Test
+    public void testLazyColumnsInBulkWrites() throws ActiveRecordException, IOException {
+        byte[] content = { 1, 2, 3 };
+        AttachmentAR withText = new AttachmentAR("with text", content, "text");
+        AttachmentAR withoutText = new AttachmentAR("without text", content, null);
+        BaseAR.insertAll(AttachmentAR.class, Arrays.asList(withText, withoutText));
+
+        AttachmentAR unloaded = AttachmentAR.findById(AttachmentAR.class, withText.getIdValue());
+        unloaded.setName("unloaded");
+        AttachmentAR changed = AttachmentAR.findById(AttachmentAR.class, withoutText.getIdValue());
+        changed.setText("new text");
+        assertTrue(BaseAR.updateAll(AttachmentAR.class, Arrays.asList(unloaded, changed)).isEmpty());
+
+        unloaded = AttachmentAR.findById(AttachmentAR.class, withText.getIdValue());
+        assertEquals("unloaded", unloaded.getName());
+        assertTrue(Arrays.equals(content, unloaded.getContent()));
+        changed = AttachmentAR.findById(AttachmentAR.class, withoutText.getIdValue());
+        assertTrue(Arrays.equals(content, changed.getContent()));
+        unloaded.setText(null);
+        BaseAR.upsertAll(AttachmentAR.class, Arrays.asList(unloaded, changed));
+
+        assertNull(AttachmentAR.findById(AttachmentAR.class, withText.getIdValue()).openText());
+        try (BufferedReader reader = new BufferedReader(
+                AttachmentAR.findById(AttachmentAR.class, withoutText.getIdValue()).openText())) {
+            assertEquals("new text", reader.readLine());
+        }
+    }
+
+    /**
+     * Tests if the <code>long</code> aggregates are exact beyond the precision of a <code>double</code>.
+     */
+    @Test
+    public void testLongAggregates() throws ActiveRecordException {
+        assertNull(MountainAR.maxLong(MountainAR.class, "height"));
+        assertEquals(0, MountainAR.sumLong(MountainAR.class, "height"));
+
+        long large = (1L << 53) + 1;
+        new MountainAR("large", large).save();
+        new MountainAR("small", 1).save();
+        assertEquals(Long.valueOf(1), MountainAR.minLong(MountainAR.class, "height"));
+        assertEquals(Long.valueOf(large), MountainAR.maxLong(MountainAR.class, "height"));
+        assertEquals(large + 1, MountainAR.sumLong(MountainAR.class, "height"));
+
+        for (int i = 1; i <= 10; i++) {
+            new SensorAR("sensor", i).save();
+        }
+        assertEquals(Long.valueOf(10), SensorAR.maxLong(SensorAR.class, "id"));
+        assertEquals(55, SensorAR.sumLong(SensorAR.class, "id"));
+    }
+
+    /**
+     * Tests that a value object which is set to <code>null</code> is read back as <code>null</code>.
+     */
+    @Test
+    public void testEmbeddedNull() throws ActiveRecordException {
+        ShopAR shop = new ShopAR("shop", new Address("Main Street 1", 12345), new Address("Billing Street 2", 54321));
+        shop.save();
+        ShopAR stale = ShopAR.findById(ShopAR.class, shop.getIdValue());
+        assertEquals("Billing Street 2", stale.getBillingAddress().getStreet());
+
+        shop.setBillingAddress(null);
+        shop.save();
+        assertNull(ShopAR.findById(ShopAR.class, shop.getIdValue()).getBillingAddress());
+        assertEquals(1, ShopAR.findBySql(ShopAR.class, "SELECT * FROM shop WHERE billing_street IS NULL").size());
+        assertNull(ShopAR.findBySql(ShopAR.class, "SELECT * FROM shop").get(0).getBillingAddress());
+        stale.reload();
+        assertNull(stale.getBillingAddress());
+        assertEquals("Main Street 1", stale.getAddress().getStreet());
     }
 }
@@ -0,0 +1,37 @@
+package com.github.kaiwinter.activerecord.ar;
+
+import com.github.kaiwinter.activerecord.annotation.Column;
+
+/**
+ * Value object which is embedded into Active Records.
+ */
+public class Address {
+
+    @Column
+    private String street;
+    @Column(alias = "zip")
+    private int zipCode;
+
+    public Address() {
+        // empty constructor necessary
+    }
+
+    public Address(String street, int zipCode) {
+        this.street = street;
+        this.zipCode = zipCode;
+    }
+
+    /**
+     * @return the street
+     */
+    public String getStreet() {
+        return street;
+    }
+
+    /**
+     * @return the zipCode
+     */
+    public int getZipCode() {
+        return zipCode;
+    }
+}
@@ -0,0 +1,78 @@
+package com.github.kaiwinter.activerecord.ar;
+
+import java.io.InputStream;
+import java.io.Reader;
+
+import com.github.kaiwinter.activerecord.ActiveRecordException;
+import com.github.kaiwinter.activerecord.BaseAR;
+import com.github.kaiwinter.activerecord.annotation.Column;
+import com.github.kaiwinter.activerecord.annotation.FetchType;
+import com.github.kaiwinter.activerecord.annotation.Table;
+import com.github.kaiwinter.activerecord.db.SequenceGenerator;
+
+@Table(alias = "attachment", sequenceGenerator = SequenceGenerator.INTERNAL)
+public class AttachmentAR extends BaseAR {
+
+    @Column
+    private String name;
+    @Column(fetch = FetchType.LAZY)
+    private byte[] content;
+    @Column(fetch = FetchType.LAZY)
+    private String text;
+
+    public AttachmentAR() {
+        // empty constructor necessary
+    }
+
+    public AttachmentAR(String name, byte[] content, String text) {
+        this.name = name;
+        this.content = content;
+        this.text = text;
+    }
+
+    /**
+     * @return the name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @param name
+     *            the name to set
+     */
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    /**
+     * @return the content, loaded on first access
+     */
+    public byte[] getContent() throws ActiveRecordException {
+        loadLazy("content");
+        return content;
+    }
+
+    /**
+     * @return a stream on the content
+     */
+    public InputStream openContent() throws ActiveRecordException {
+        return openLazyStream("content");
+    }
+
+    /**
+     * @return a reader on the text
+     */
+    public Reader openText() throws ActiveRecordException {
+        return openLazyReader("text");
+    }
+
+    /**
+     * @param text
+     *            the text to set
+     */
+    public void setText(String text) {
+        this.text = text;
+        markLazyLoaded("text");
+    }
+}
@@ -0,0 +1,28 @@
+package com.github.kaiwinter.activerecord.ar;
+
+import com.github.kaiwinter.activerecord.BaseAR;
+import com.github.kaiwinter.activerecord.annotation.Column;
+
+/**
+ * Mapped superclass, its columns are part of the tables of the subclasses.
+ */
+public abstract class AuditedAR extends BaseAR {
+
+    @Column
+    private String createdBy;
+
+    /**
+     * @return the createdBy
+     */
+    public String getCreatedBy() {
+        return createdBy;
+    }
+
+    /**
+     * @param createdBy
+     *            the createdBy to set
+     */
+    public void setCreatedBy(String createdBy) {
+        this.createdBy = createdBy;
+    }
+}
@@ -0,0 +1,56 @@
+package com.github.kaiwinter.activerecord.ar;
+
+import com.github.kaiwinter.activerecord.BaseAR;
+import com.github.kaiwinter.activerecord.annotation.Cacheable;
+import com.github.kaiwinter.activerecord.annotation.Column;
+import com.github.kaiwinter.activerecord.annotation.Table;
+import com.github.kaiwinter.activerecord.db.SequenceGenerator;
+
+@Table(alias = "city", sequenceGenerator = SequenceGenerator.INTERNAL)
+@Cacheable(maxRecords = 100, maxQueries = 10)
+public class CityAR extends BaseAR {
+
+    @Column
+    private String name;
+    @Column
+    private String status;
+
+    public CityAR() {
+        // empty constructor necessary
+    }
+
+    public CityAR(String name, String status) {
+        this.name = name;
+        this.status = status;
+    }
+
+    /**
+     * @return the name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @param name
+     *            the name to set
+     */
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    /**
+     * @return the status
+     */
+    public String getStatus() {
+        return status;
+    }
+
+    /**
+     * @param status
+     *            the status to set
+     */
+    public void setStatus(String status) {
+        this.status = status;
+    }
+}
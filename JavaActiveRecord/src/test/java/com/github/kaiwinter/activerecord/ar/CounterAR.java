@@ -0,0 +1,46 @@
+package com.github.kaiwinter.activerecord.ar;
+
+import com.github.kaiwinter.activerecord.BaseAR;
+import com.github.kaiwinter.activerecord.annotation.Column;
+import com.github.kaiwinter.activerecord.annotation.Table;
+import com.github.kaiwinter.activerecord.annotation.WriteBehind;
+import com.github.kaiwinter.activerecord.db.SequenceGenerator;
+
+@Table(alias = "counter", sequenceGenerator = SequenceGenerator.INTERNAL)
+@WriteBehind(maxRecords = 3, flushIntervalMillis = 3_600_000, maxFlushAttempts = 2)
+public class CounterAR extends BaseAR {
+
+    @Column
+    private String name;
+    @Column
+    private long value;
+
+    public CounterAR() {
+        // empty constructor necessary
+    }
+
+    public CounterAR(String name) {
+        this.name = name;
+    }
+
+    /**
+     * @return the name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the value
+     */
+    public long getValue() {
+        return value;
+    }
+
+    /**
+     * Increments the value.
+     */
+    public void increment() {
+        value++;
+    }
+}
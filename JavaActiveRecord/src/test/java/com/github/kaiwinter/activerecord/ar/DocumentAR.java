@@ -0,0 +1,47 @@
+package com.github.kaiwinter.activerecord.ar;
+
+import com.github.kaiwinter.activerecord.BaseAR;
+import com.github.kaiwinter.activerecord.annotation.Column;
+import com.github.kaiwinter.activerecord.annotation.Table;
+import com.github.kaiwinter.activerecord.annotation.Version;
+import com.github.kaiwinter.activerecord.db.SequenceGenerator;
+
+@Table(alias = "document", sequenceGenerator = SequenceGenerator.INTERNAL)
+public class DocumentAR extends BaseAR {
+
+    @Column
+    private String title;
+    @Column
+    @Version
+    private long version;
+
+    public DocumentAR() {
+        // empty constructor necessary
+    }
+
+    public DocumentAR(String title) {
+        this.title = title;
+    }
+
+    /**
+     * @return the title
+     */
+    public String getTitle() {
+        return title;
+    }
+
+    /**
+     * @param title
+     *            the title to set
+     */
+    public void setTitle(String title) {
+        this.title = title;
+    }
+
+    /**
+     * @return the version
+     */
+    public long getVersion() {
+        return version;
+    }
+}
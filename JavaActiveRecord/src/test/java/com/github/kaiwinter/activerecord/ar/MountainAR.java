@@ -11,7 +11,7 @@ public class MountainAR extends BaseAR {
     @Column
     private String name;
     @Column
-    private Long height;
+    private long height;
 
     private String unattachedField;
 
@@ -19,7 +19,7 @@ public class MountainAR extends BaseAR {
         // empty constructor necessary
     }
 
-    public MountainAR(String name, Long height) {
+    public MountainAR(String name, long height) {
         this.name = name;
         this.height = height;
     }
@@ -42,7 +42,7 @@ public class MountainAR extends BaseAR {
     /**
      * @return the height
      */
-    public Long getHeight() {
+    public long getHeight() {
         return height;
     }
 
@@ -50,7 +50,7 @@ public class MountainAR extends BaseAR {
      * @param height
      *            the height to set
      */
-    public void setHeight(Long height) {
+    public void setHeight(long height) {
         this.height = height;
     }
 }
@@ -2,15 +2,21 @@ package com.github.kaiwinter.activerecord.ar;
 
 import com.github.kaiwinter.activerecord.BaseAR;
 import com.github.kaiwinter.activerecord.annotation.Column;
+import com.github.kaiwinter.activerecord.annotation.Indexed;
+import com.github.kaiwinter.activerecord.annotation.NamedQuery;
 import com.github.kaiwinter.activerecord.annotation.Table;
 import com.github.kaiwinter.activerecord.db.SequenceGenerator;
 
+@NamedQuery(name = "bySurname", query = "SELECT {columns} FROM {table} WHERE surname = :surname ORDER BY name")
+@NamedQuery(name = "byNameOrSurname", query = "SELECT * FROM {table} WHERE name = :value OR surname = :value"
+        + " OR name = ':value'")
 @Table(alias = "person", sequenceGenerator = SequenceGenerator.INTERNAL)
 public class PersonAR extends BaseAR {
 
     @Column
     private String name;
     @Column
+    @Indexed
     private String surname;
 
     private String unattachedField;
@@ -0,0 +1,57 @@
+package com.github.kaiwinter.activerecord.ar;
+
+import com.github.kaiwinter.activerecord.BaseAR;
+import com.github.kaiwinter.activerecord.annotation.Column;
+import com.github.kaiwinter.activerecord.annotation.Indexed;
+import com.github.kaiwinter.activerecord.annotation.Table;
+import com.github.kaiwinter.activerecord.db.SequenceGenerator;
+import com.github.kaiwinter.activerecord.db.ShardStrategy;
+
+@Table(alias = "sensor", sequenceGenerator = SequenceGenerator.INTERNAL, shardStrategy = ShardStrategy.HASH)
+public class SensorAR extends BaseAR {
+
+    @Column
+    @Indexed
+    private String name;
+    @Column
+    private double reading;
+
+    public SensorAR() {
+        // empty constructor necessary
+    }
+
+    public SensorAR(String name, double reading) {
+        this.name = name;
+        this.reading = reading;
+    }
+
+    /**
+     * @return the name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @param name
+     *            the name to set
+     */
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    /**
+     * @return the reading
+     */
+    public double getReading() {
+        return reading;
+    }
+
+    /**
+     * @param reading
+     *            the reading to set
+     */
+    public void setReading(double reading) {
+        this.reading = reading;
+    }
+}
@@ -0,0 +1,56 @@
+package com.github.kaiwinter.activerecord.ar;
+
+import com.github.kaiwinter.activerecord.annotation.Column;
+import com.github.kaiwinter.activerecord.annotation.Embedded;
+import com.github.kaiwinter.activerecord.annotation.Table;
+import com.github.kaiwinter.activerecord.db.SequenceGenerator;
+
+@Table(alias = "shop", sequenceGenerator = SequenceGenerator.INTERNAL)
+public class ShopAR extends AuditedAR {
+
+    @Column
+    private String name;
+    @Embedded
+    private Address address;
+    @Embedded(prefix = "billing_")
+    private Address billingAddress;
+
+    public ShopAR() {
+        // empty constructor necessary
+    }
+
+    public ShopAR(String name, Address address, Address billingAddress) {
+        this.name = name;
+        this.address = address;
+        this.billingAddress = billingAddress;
+    }
+
+    /**
+     * @return the name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the address
+     */
+    public Address getAddress() {
+        return address;
+    }
+
+    /**
+     * @return the billingAddress
+     */
+    public Address getBillingAddress() {
+        return billingAddress;
+    }
+
+    /**
+     * @param billingAddress
+     *            the billingAddress to set
+     */
+    public void setBillingAddress(Address billingAddress) {
+        this.billingAddress = billingAddress;
+    }
+}
@@ -0,0 +1,27 @@
+package com.github.kaiwinter.activerecord.ar;
+
+import com.github.kaiwinter.activerecord.BaseAR;
+import com.github.kaiwinter.activerecord.annotation.Column;
+import com.github.kaiwinter.activerecord.annotation.Table;
+import com.github.kaiwinter.activerecord.db.SequenceGenerator;
+
+/**
+ * Active Record which is used only by the warm-up test, so its metadata isn't built before.
+ */
+@Table(alias = "station", sequenceGenerator = SequenceGenerator.INTERNAL)
+public class StationAR extends BaseAR {
+
+    @Column
+    private String name;
+
+    public StationAR() {
+        // empty constructor necessary
+    }
+
+    /**
+     * @return the name
+     */
+    public String getName() {
+        return name;
+    }
+}
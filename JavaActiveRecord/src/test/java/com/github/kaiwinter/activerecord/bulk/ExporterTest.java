@@ -0,0 +1,143 @@
+package com.github.kaiwinter.activerecord.bulk;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLDataException;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.kaiwinter.activerecord.ActiveRecordException;
+import com.github.kaiwinter.activerecord.ar.AttachmentAR;
+import com.github.kaiwinter.activerecord.ar.MountainAR;
+import com.github.kaiwinter.activerecord.ar.PersonAR;
+import com.github.kaiwinter.activerecord.ar.SensorAR;
+import com.github.kaiwinter.activerecord.db.Db;
+import com.github.kaiwinter.activerecord.db.DbTestUtil;
+
+public class ExporterTest {
+
+    @Before
+    public void setup() throws ClassNotFoundException, SQLException, IOException {
+        DbTestUtil.setupDb();
+    }
+
+    /**
+     * Tests the CSV export including quoting, NULL and an empty string.
+     */
+    @Test
+    public void testExportCsv() throws ActiveRecordException, IOException {
+        PersonAR first = new PersonAR("Doe, John", "say \"hi\"");
+        first.save();
+        PersonAR second = new PersonAR(null, "");
+        second.save();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(2, Exporter.export(PersonAR.class, ExportFormat.CSV, out));
+        assertEquals("id,name,surname\r\n" //
+                + first.getId() + ",\"Doe, John\",\"say \"\"hi\"\"\"\r\n" //
+                + second.getId() + ",,\"\"\r\n", new String(out.toByteArray(), StandardCharsets.UTF_8));
+
+        out.reset();
+        assertEquals(1, Exporter.exportByColumn(PersonAR.class, "surname", "", ExportFormat.CSV, out));
+    }
+
+    /**
+     * Tests if all shards of a sharded table are exported.
+     */
+    @Test
+    public void testExportShards() throws ActiveRecordException, IOException {
+        for (int i = 0; i < 10; i++) {
+            new SensorAR("sensor" + i, i).save();
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(10, Exporter.export(SensorAR.class, ExportFormat.CSV, Channels.newChannel(out)));
+        assertEquals(11, new String(out.toByteArray(), StandardCharsets.UTF_8).split("\r\n").length);
+    }
+
+    /**
+     * Tests the binary export by decoding it, including a lazy column and a NULL value.
+     */
+    @Test
+    public void testExportBinary() throws ActiveRecordException, IOException {
+        byte[] content = new byte[] { 1, 2, 3 };
+        AttachmentAR attachment = new AttachmentAR("file", content, null);
+        attachment.save();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(1, Exporter.export(AttachmentAR.class, ExportFormat.BINARY, out));
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(out.toByteArray()));
+        byte[] magic = new byte[4];
+        in.readFully(magic);
+        assertArrayEquals("ARX1".getBytes(StandardCharsets.US_ASCII), magic);
+        assertEquals(4, in.readInt());
+        String[] header = new String[8];
+        for (int i = 0; i < header.length; i++) {
+            header[i] = in.readUTF();
+        }
+        assertEquals(Arrays.asList("id", "LONG", "name", "STRING", "content", "BYTES", "text", "STRING"),
+                Arrays.asList(header));
+
+        assertEquals(1, in.readInt());
+        assertEquals(attachment.getIdValue(), in.readLong());
+        assertEquals(0, in.readByte());
+        byte[] name = new byte[in.readInt()];
+        in.readFully(name);
+        assertEquals("file", new String(name, StandardCharsets.UTF_8));
+        assertEquals(0, in.readByte());
+        byte[] exportedContent = new byte[in.readInt()];
+        in.readFully(exportedContent);
+        assertArrayEquals(content, exportedContent);
+        assertEquals(1, in.readByte());
+        assertEquals(0, in.readInt());
+        assertEquals(-1, in.read());
+    }
+
+    /**
+     * Tests if an export inside a transaction reads on the connection of the transaction and leaves it open.
+     */
+    @Test
+    public void testExportInTransaction() throws ActiveRecordException, IOException, SQLException {
+        Db.INSTANCE.beginTransaction();
+        try {
+            new PersonAR("John", "Doe").save();
+            assertEquals(1, Exporter.export(PersonAR.class, ExportFormat.CSV, new ByteArrayOutputStream()));
+        } finally {
+            Db.INSTANCE.rollback();
+        }
+        assertEquals(0, PersonAR.count(PersonAR.class));
+    }
+
+    /**
+     * Tests that NULL in a column of a primitive type fails the export in both formats.
+     */
+    @Test
+    public void testExportNullInPrimitiveColumn() throws ActiveRecordException, IOException, SQLException {
+        new MountainAR("mountain", 100L).save();
+        try (Statement statement = Db.INSTANCE.getConnection().createStatement()) {
+            statement.execute("UPDATE mountain SET height=NULL");
+        }
+        for (ExportFormat format : ExportFormat.values()) {
+            try {
+                Exporter.export(MountainAR.class, format, new ByteArrayOutputStream());
+                fail("NULL exported in primitive column");
+            } catch (ActiveRecordException e) {
+                assertTrue(e.getCause() instanceof SQLDataException);
+                assertTrue(e.getCause().getMessage().contains("height"));
+            }
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.github.kaiwinter.activerecord.bulk;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.Collection;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.kaiwinter.activerecord.ActiveRecordException;
+import com.github.kaiwinter.activerecord.BaseAR;
+import com.github.kaiwinter.activerecord.ar.AttachmentAR;
+import com.github.kaiwinter.activerecord.ar.PersonAR;
+import com.github.kaiwinter.activerecord.ar.PersonDatabaseSequenceAR;
+import com.github.kaiwinter.activerecord.ar.SensorAR;
+import com.github.kaiwinter.activerecord.db.DbTestUtil;
+import com.github.kaiwinter.activerecord.schema.SchemaTool;
+
+public class ImporterTest {
+
+    @Before
+    public void setup() throws ClassNotFoundException, SQLException, IOException {
+        DbTestUtil.setupDb();
+    }
+
+    /**
+     * Tests if an export is imported unchanged, including ids, quoting, NULL and a lazy <code>byte[]</code> column.
+     */
+    @Test
+    public void testImportExport() throws ActiveRecordException, IOException {
+        new PersonAR("Doe, John", "line\r\nbreak").save();
+        new PersonAR(null, "").save();
+        new AttachmentAR("file", new byte[] { 1, 2, 3 }, null).save();
+        byte[] persons = export(PersonAR.class);
+        byte[] attachments = export(AttachmentAR.class);
+
+        SchemaTool.dropTable(PersonAR.class);
+        SchemaTool.createTable(PersonAR.class);
+        SchemaTool.dropTable(AttachmentAR.class);
+        SchemaTool.createTable(AttachmentAR.class);
+        assertEquals(2, Importer.importCsv(PersonAR.class, Channels.newChannel(new ByteArrayInputStream(persons))));
+        assertEquals(1, Importer.importCsv(AttachmentAR.class,
+                Channels.newChannel(new ByteArrayInputStream(attachments))));
+
+        assertArrayEquals(persons, export(PersonAR.class));
+        assertArrayEquals(attachments, export(AttachmentAR.class));
+
+        // imported ids are known to the internal sequence
+        PersonAR person = new PersonAR("name", "surname");
+        person.save();
+        assertEquals(3, person.getIdValue());
+    }
+
+    /**
+     * Tests an import without ids into a table with database sequence, in several batches and chunks.
+     */
+    @Test
+    public void testImportDatabaseSequence() throws ActiveRecordException, IOException {
+        StringBuilder csv = new StringBuilder("surname,NAME\n");
+        for (int i = 0; i < 10; i++) {
+            csv.append("surname").append(i).append(",name").append(i).append('\n');
+        }
+        assertEquals(10, Importer.importCsv(PersonDatabaseSequenceAR.class, toStream(csv), 3, 5));
+
+        Collection<PersonDatabaseSequenceAR> persons = PersonDatabaseSequenceAR
+                .findAllByColumn(PersonDatabaseSequenceAR.class, "name", "name7");
+        assertEquals(1, persons.size());
+        assertEquals("surname7", persons.iterator().next().getSurname());
+    }
+
+    /**
+     * Tests an import into a sharded table, the ids are acquired from the internal sequence.
+     */
+    @Test
+    public void testImportShards() throws ActiveRecordException, IOException {
+        StringBuilder csv = new StringBuilder("name,reading\r\n");
+        for (int i = 1; i <= 20; i++) {
+            csv.append("sensor").append(i).append(',').append(i * 0.5).append("\r\n");
+        }
+        assertEquals(20, Importer.importCsv(SensorAR.class, toStream(csv), 4, 4));
+
+        assertEquals(20, SensorAR.findAll(SensorAR.class).size());
+        assertEquals(10.0, SensorAR.findById(SensorAR.class, 20).getReading(), 0);
+    }
+
+    /**
+     * Tests if an invalid value rolls back the current chunk and keeps the committed ones.
+     */
+    @Test
+    public void testImportInvalidValue() throws ActiveRecordException, IOException {
+        StringBuilder csv = new StringBuilder("id,name,reading\n");
+        for (int i = 1; i <= 5; i++) {
+            csv.append(i).append(",sensor,").append(i == 5 ? "high" : "1").append('\n');
+        }
+        try {
+            Importer.importCsv(SensorAR.class, toStream(csv), 2, 2);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Invalid value 'high' for column 'reading' in row 5", e.getMessage());
+        }
+        assertEquals(4, SensorAR.findAll(SensorAR.class).size());
+        assertNull(SensorAR.findById(SensorAR.class, 5));
+    }
+
+    /**
+     * Tests if the ids of the committed chunks of a failed import are known to the internal sequence.
+     */
+    @Test
+    public void testSequenceAfterFailedImport() throws ActiveRecordException, IOException {
+        new SensorAR("before", 1).save();
+        StringBuilder csv = new StringBuilder("id,name,reading\n");
+        for (int i = 2; i <= 6; i++) {
+            csv.append(i).append(",sensor,").append(i == 6 ? "high" : "1").append('\n');
+        }
+        try {
+            Importer.importCsv(SensorAR.class, toStream(csv), 2, 2);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+
+        SensorAR sensor = new SensorAR("after", 1);
+        sensor.save();
+        assertEquals(6, sensor.getIdValue());
+    }
+
+    private static byte[] export(Class<? extends BaseAR> clazz)
+            throws ActiveRecordException, IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Exporter.export(clazz, ExportFormat.CSV, out);
+        return out.toByteArray();
+    }
+
+    private static InputStream toStream(CharSequence csv) {
+        return new ByteArrayInputStream(csv.toString().getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,64 @@
+package com.github.kaiwinter.activerecord.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.github.kaiwinter.activerecord.db.Db;
+
+public class ChangeBusTest {
+
+    /**
+     * Tests if a change is delivered to the listeners of the same JVM.
+     */
+    @Test
+    public void testInJvm() {
+        List<String> changes = new ArrayList<>();
+        InJvmChangeBus changeBus = new InJvmChangeBus();
+        changeBus.subscribe((tableName, id) -> changes.add(tableName + ":" + id));
+
+        changeBus.publish("city", 1);
+        assertEquals(Arrays.asList("city:1"), changes);
+    }
+
+    /**
+     * Tests if a change is delivered through the change log to another node exactly once, and not back to the
+     * publishing node.
+     */
+    @Test
+    public void testPolling() throws SQLException {
+        try (Statement statement = Db.INSTANCE.getConnection().createStatement()) {
+            statement.execute("DROP TABLE IF EXISTS ar_change_log");
+        }
+        PollingChangeBus node1 = new PollingChangeBus(Long.MAX_VALUE);
+        PollingChangeBus node2 = new PollingChangeBus(Long.MAX_VALUE);
+        try {
+            List<String> changes1 = new ArrayList<>();
+            List<String> changes2 = new ArrayList<>();
+            node1.subscribe((tableName, id) -> changes1.add(tableName + ":" + id));
+            node2.subscribe((tableName, id) -> changes2.add(tableName + ":" + id));
+
+            node1.publish("city", 1);
+            node1.publish("city", ChangeBus.ALL_ROWS);
+            assertEquals(Arrays.asList("city:1", "city:" + ChangeBus.ALL_ROWS), changes1);
+            assertTrue(changes2.isEmpty());
+
+            node2.poll();
+            node2.poll();
+            assertEquals(changes1, changes2);
+
+            node1.poll();
+            assertEquals(2, changes1.size());
+        } finally {
+            node1.close();
+            node2.close();
+        }
+    }
+}
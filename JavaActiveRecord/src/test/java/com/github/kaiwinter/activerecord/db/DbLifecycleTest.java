@@ -0,0 +1,249 @@
+package com.github.kaiwinter.activerecord.db;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.sqlite.SQLiteDataSource;
+
+import com.github.kaiwinter.activerecord.ActiveRecordException;
+import com.github.kaiwinter.activerecord.ar.CounterAR;
+import com.github.kaiwinter.activerecord.ar.PersonAR;
+import com.github.kaiwinter.activerecord.ar.SensorAR;
+import com.github.kaiwinter.activerecord.schema.SchemaTool;
+
+public class DbLifecycleTest {
+
+    private final Properties properties = new Properties();
+
+    @Before
+    public void setup() throws ClassNotFoundException, SQLException, IOException {
+        properties.load(DbTestUtil.class.getResourceAsStream("db.properties"));
+        DbTestUtil.setupDb();
+    }
+
+    @After
+    public void restore() throws ClassNotFoundException, SQLException {
+        Db.INSTANCE.init(properties);
+    }
+
+    /**
+     * Tests if operations are rejected after close and work again after a new init.
+     */
+    @Test
+    public void testCloseAndInit() throws Exception {
+        Connection connection = Db.INSTANCE.getConnection();
+        assertTrue(Db.INSTANCE.close(1, TimeUnit.SECONDS));
+        assertFalse(Db.INSTANCE.isInitialized());
+        assertTrue(connection.isClosed());
+        try {
+            PersonAR.findById(PersonAR.class, 1);
+            fail("Db is closed");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+
+        Db.INSTANCE.init(properties);
+        DbTestUtil.setupDb();
+        PersonAR person = new PersonAR("Anna", "Smith");
+        person.save();
+        assertEquals("Anna", PersonAR.findById(PersonAR.class, person.getIdValue()).getName());
+    }
+
+    /**
+     * Tests if a reconfiguration waits for an operation on the old database before it is closed.
+     */
+    @Test
+    public void testReconfigureDrainsOldDatabase() throws Exception {
+        Lease lease = Db.INSTANCE.leaseForWrite();
+        Thread reconfiguration = new Thread(() -> {
+            try {
+                SQLiteDataSource dataSource = new SQLiteDataSource();
+                dataSource.setUrl("jdbc:sqlite::memory:");
+                Db.INSTANCE.init(dataSource, 1);
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        reconfiguration.start();
+        reconfiguration.join(200);
+        assertTrue(reconfiguration.isAlive());
+        assertFalse(lease.getConnection().isClosed());
+        assertEquals(0, Db.INSTANCE.getShardCount());
+
+        lease.close();
+        reconfiguration.join(5_000);
+        assertFalse(reconfiguration.isAlive());
+        assertTrue(lease.getConnection().isClosed());
+        assertTrue(Db.INSTANCE.drain(1, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Tests if a failing init keeps the current configuration.
+     */
+    @Test
+    public void testFailedInitKeepsConfiguration() throws ActiveRecordException, ClassNotFoundException {
+        Properties broken = new Properties();
+        broken.setProperty("connectionString", "jdbc:unknown:database");
+        try {
+            Db.INSTANCE.init(broken);
+            fail("No driver for the connection string");
+        } catch (SQLException e) {
+            // expected
+        }
+        SchemaTool.dropTable(PersonAR.class);
+        SchemaTool.createTable(PersonAR.class);
+        new PersonAR("Bob", "Jones").save();
+        assertEquals(1, PersonAR.count(PersonAR.class));
+    }
+
+    /**
+     * Tests if a transaction leases its connection exclusively: the write of another thread waits for the end of the
+     * transaction and is not rolled back with it.
+     */
+    @Test
+    public void testTransactionIsExclusive() throws Exception {
+        Db.INSTANCE.beginTransaction();
+        new PersonAR("Anna", "Smith").save();
+
+        Thread writer = new Thread(() -> {
+            try {
+                new PersonAR("Bob", "Jones").save();
+            } catch (ActiveRecordException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        writer.start();
+        writer.join(200);
+        assertTrue(writer.isAlive());
+
+        Db.INSTANCE.rollback();
+        writer.join(5_000);
+        assertFalse(writer.isAlive());
+        assertEquals(1, PersonAR.count(PersonAR.class));
+        assertEquals("Bob", PersonAR.findAll(PersonAR.class).iterator().next().getName());
+    }
+
+    /**
+     * Tests if a lease fails after the timeout while all connections are leased exclusively.
+     */
+    @Test
+    public void testLeaseTimeout() throws Exception {
+        Properties shortTimeout = new Properties();
+        shortTimeout.putAll(properties);
+        shortTimeout.setProperty("poolTimeoutMillis", "100");
+        Db.INSTANCE.init(shortTimeout);
+        Db.INSTANCE.beginTransaction();
+        try {
+            Thread reader = new Thread(() -> {
+                try {
+                    Db.INSTANCE.leaseForWrite().close();
+                    fail("Connection is leased exclusively");
+                } catch (SQLTransientConnectionException e) {
+                    // expected
+                } catch (SQLException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            AtomicReference<Throwable> failure = new AtomicReference<>();
+            reader.setUncaughtExceptionHandler((thread, e) -> failure.set(e));
+            reader.start();
+            reader.join(5_000);
+            assertNull(failure.get());
+        } finally {
+            Db.INSTANCE.rollback();
+        }
+    }
+
+    /**
+     * Tests if the threads of the shards are stopped when the databases are replaced.
+     */
+    @Test
+    public void testShardThreadsStopped() throws Exception {
+        new SensorAR("sensor", 1.5).save();
+        assertEquals(1, SensorAR.count(SensorAR.class));
+        assertTrue(countShardThreads() > 0);
+
+        Db.INSTANCE.init(properties);
+        for (int i = 0; i < 50 && countShardThreads() > 0; i++) {
+            Thread.sleep(100);
+        }
+        assertEquals(0, countShardThreads());
+    }
+
+    /**
+     * Tests if the periodic write-behind flushes are stopped on close and started again by init.
+     */
+    @Test
+    public void testCloseStopsWriteBehindFlushes() throws Exception {
+        new CounterAR("visits").save();
+        assertTrue(countThreads("activerecord-write-behind") > 0);
+
+        Db.INSTANCE.close(1, TimeUnit.SECONDS);
+        for (int i = 0; i < 50 && countThreads("activerecord-write-behind") > 0; i++) {
+            Thread.sleep(100);
+        }
+        assertEquals(0, countThreads("activerecord-write-behind"));
+
+        Db.INSTANCE.init(properties);
+        assertTrue(countThreads("activerecord-write-behind") > 0);
+    }
+
+    /**
+     * Tests if an operation borrows a connection from the DataSource and returns it, while a transaction keeps its
+     * connection until it ends.
+     */
+    @Test
+    public void testDataSourceConnectionPerLease() throws Exception {
+        File file = File.createTempFile("activerecord", ".db");
+        file.deleteOnExit();
+        SQLiteDataSource dataSource = new SQLiteDataSource();
+        dataSource.setUrl("jdbc:sqlite:" + file.getAbsolutePath());
+        Db.INSTANCE.init(dataSource, 2);
+
+        Connection connection;
+        try (Lease lease = Db.INSTANCE.leaseForWrite()) {
+            connection = lease.getConnection();
+        }
+        assertTrue(connection.isClosed());
+        try (Lease lease = Db.INSTANCE.leaseForWrite()) {
+            assertNotSame(connection, lease.getConnection());
+        }
+
+        Db.INSTANCE.beginTransaction();
+        Connection transaction;
+        try (Lease lease = Db.INSTANCE.leaseForWrite()) {
+            transaction = lease.getConnection();
+        }
+        try (Lease lease = Db.INSTANCE.leaseForRead()) {
+            assertSame(transaction, lease.getConnection());
+        }
+        assertFalse(transaction.isClosed());
+        Db.INSTANCE.commit();
+        assertTrue(transaction.isClosed());
+    }
+
+    private static long countShardThreads() {
+        return countThreads("activerecord-shard");
+    }
+
+    private static long countThreads(String name) {
+        return Thread.getAllStackTraces().keySet().stream().filter(thread -> thread.getName().equals(name)).count();
+    }
+}
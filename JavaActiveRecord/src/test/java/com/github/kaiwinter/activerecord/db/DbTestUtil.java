@@ -2,16 +2,35 @@ package com.github.kaiwinter.activerecord.db;
 
 import java.io.IOException;
 import java.sql.SQLException;
-import java.sql.Statement;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Properties;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.github.kaiwinter.activerecord.ActiveRecordException;
+import com.github.kaiwinter.activerecord.BaseAR;
+import com.github.kaiwinter.activerecord.ar.AttachmentAR;
+import com.github.kaiwinter.activerecord.ar.CityAR;
+import com.github.kaiwinter.activerecord.ar.CounterAR;
+import com.github.kaiwinter.activerecord.ar.DocumentAR;
+import com.github.kaiwinter.activerecord.ar.MountainAR;
+import com.github.kaiwinter.activerecord.ar.PersonAR;
+import com.github.kaiwinter.activerecord.ar.PersonDatabaseSequenceAR;
+import com.github.kaiwinter.activerecord.ar.SensorAR;
+import com.github.kaiwinter.activerecord.ar.ShopAR;
+import com.github.kaiwinter.activerecord.schema.SchemaTool;
+
 public class DbTestUtil {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(DbTestUtil.class.getSimpleName());
 
+    /** The Active Records whose tables are re-created for each test. */
+    private static final List<Class<? extends BaseAR>> ACTIVE_RECORDS = Arrays.asList(PersonAR.class,
+            PersonDatabaseSequenceAR.class, MountainAR.class, SensorAR.class, DocumentAR.class, CityAR.class,
+            AttachmentAR.class, CounterAR.class, ShopAR.class);
+
     /**
      * Sets up the in-memory test database.
      */
@@ -22,16 +41,16 @@ public class DbTestUtil {
         Properties properties = new Properties();
         properties.load(DbTestUtil.class.getResourceAsStream("db.properties"));
         Class.forName(properties.getProperty("driverClass"));
-        try (Statement statement = Db.INSTANCE.getConnection().createStatement()) {
-            statement.execute("DROP TABLE IF EXISTS person");
-            statement.execute("DROP TABLE IF EXISTS mountain");
-            statement.execute("DROP TABLE IF EXISTS person_with_db_sequence");
-            statement.execute("CREATE TABLE person (id INTEGER, name VARCHAR, surname VARCHAR)");
-            statement.execute("CREATE TABLE mountain (id INTEGER, name VARCHAR, height INTEGER)");
-            statement.execute(
-                    "CREATE TABLE person_with_db_sequence (id INTEGER PRIMARY KEY, name VARCHAR, surname VARCHAR)");
-            LOGGER.debug("done");
+        try {
+            for (Class<? extends BaseAR> clazz : ACTIVE_RECORDS) {
+                SchemaTool.dropTable(clazz);
+                SchemaTool.createTable(clazz);
+            }
+        } catch (ActiveRecordException e) {
+            throw new SQLException(e.getMessage(), e);
         }
+        Db.INSTANCE.resetSequenceNumbers();
+        LOGGER.debug("done");
     }
 
 }
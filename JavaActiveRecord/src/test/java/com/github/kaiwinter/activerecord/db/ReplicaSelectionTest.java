@@ -0,0 +1,94 @@
+package com.github.kaiwinter.activerecord.db;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.github.kaiwinter.activerecord.ActiveRecordException;
+import com.github.kaiwinter.activerecord.ar.PersonAR;
+import com.github.kaiwinter.activerecord.schema.SchemaTool;
+
+public class ReplicaSelectionTest {
+
+    private final ConnectionPool replica1 = new ConnectionPool("replica 1", (Connection) null);
+    private final ConnectionPool replica2 = new ConnectionPool("replica 2", (Connection) null);
+    private final List<ConnectionPool> replicas = Arrays.asList(replica1, replica2);
+
+    /**
+     * The replicas have to be used one after the other.
+     */
+    @Test
+    public void testRoundRobin() {
+        AtomicInteger counter = new AtomicInteger();
+        assertSame(replica1, ReplicaSelection.ROUND_ROBIN.select(replicas, counter));
+        assertSame(replica2, ReplicaSelection.ROUND_ROBIN.select(replicas, counter));
+        assertSame(replica1, ReplicaSelection.ROUND_ROBIN.select(replicas, counter));
+    }
+
+    /**
+     * The replica with fewer running operations has to be used.
+     */
+    @Test
+    public void testLeastLoaded() throws SQLException {
+        AtomicInteger counter = new AtomicInteger();
+        Lease lease = replica1.lease();
+        assertSame(replica2, ReplicaSelection.LEAST_LOADED.select(replicas, counter));
+        assertSame(replica2, ReplicaSelection.LEAST_LOADED.select(replicas, counter));
+        lease.close();
+
+        lease = replica2.lease();
+        assertSame(replica1, ReplicaSelection.LEAST_LOADED.select(replicas, counter));
+        lease.close();
+    }
+
+    /**
+     * Reads outside of a transaction have to be served by the replica, reads inside of a transaction by the primary.
+     */
+    @Test
+    public void testReadsUseReplica()
+            throws IOException, ClassNotFoundException, SQLException, ActiveRecordException {
+        Properties properties = new Properties();
+        properties.load(DbTestUtil.class.getResourceAsStream("db.properties"));
+        Properties replicated = new Properties();
+        replicated.putAll(properties);
+        // each in-memory database is separate, so the replica doesn't see the rows of the primary
+        replicated.setProperty("replica.1.connectionString", "jdbc:sqlite::memory:");
+        Db.INSTANCE.init(replicated);
+        try {
+            DbTestUtil.setupDb();
+            new PersonAR("primary", "primary").save();
+            try (Lease lease = Db.INSTANCE.leaseForRead();
+                    Statement statement = lease.getConnection().createStatement()) {
+                statement.execute(SchemaTool.getCreateTableQuery(PersonAR.class));
+                statement.execute("INSERT INTO person (name, surname, id) VALUES ('replica', 'replica', 1)");
+                statement.execute("INSERT INTO person (name, surname, id) VALUES ('replica', 'replica', 2)");
+            }
+
+            Collection<PersonAR> persons = PersonAR.findAll(PersonAR.class);
+            assertEquals(2, persons.size());
+            assertEquals("replica", persons.iterator().next().getName());
+
+            Db.INSTANCE.beginTransaction();
+            try {
+                persons = PersonAR.findAll(PersonAR.class);
+                assertEquals(1, persons.size());
+                assertEquals("primary", persons.iterator().next().getName());
+            } finally {
+                Db.INSTANCE.rollback();
+            }
+        } finally {
+            Db.INSTANCE.init(properties);
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package com.github.kaiwinter.activerecord.db;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.sql.SQLException;
+import java.sql.SQLTransientException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.kaiwinter.activerecord.ActiveRecordException;
+import com.github.kaiwinter.activerecord.CircuitBreakerOpenException;
+
+public class RetryTest {
+
+    private final AtomicInteger attempts = new AtomicInteger();
+
+    private RetryPolicy retryPolicy;
+
+    private CircuitBreaker circuitBreaker;
+
+    @Before
+    public void setup() {
+        retryPolicy = Db.INSTANCE.getRetryPolicy();
+        circuitBreaker = Db.INSTANCE.getCircuitBreaker();
+        Db.INSTANCE.setRetryPolicy(new RetryPolicy(3, 0, 0));
+    }
+
+    @After
+    public void restore() {
+        Db.INSTANCE.setRetryPolicy(retryPolicy);
+        Db.INSTANCE.setCircuitBreaker(circuitBreaker);
+    }
+
+    /**
+     * Fails the first <code>failures</code> attempts with a transient error.
+     */
+    private SqlOperation<String> failing(int failures) {
+        return () -> {
+            if (attempts.incrementAndGet() <= failures) {
+                throw new SQLTransientException("busy");
+            }
+            return "ok";
+        };
+    }
+
+    /**
+     * Tests if a transient error is retried until the attempts are exhausted.
+     */
+    @Test
+    public void testRetryTransient() throws SQLException, ActiveRecordException {
+        assertEquals("ok", Db.INSTANCE.call(true, failing(2)));
+        assertEquals(3, attempts.get());
+
+        attempts.set(0);
+        try {
+            Db.INSTANCE.call(true, failing(3));
+            fail("Attempts exhausted");
+        } catch (SQLTransientException e) {
+            assertEquals(3, attempts.get());
+        }
+    }
+
+    /**
+     * Tests that errors which are not transient, writes which are not retryable and operations inside a transaction
+     * are not retried.
+     */
+    @Test
+    public void testNoRetry() throws SQLException, ActiveRecordException {
+        try {
+            Db.INSTANCE.call(true, () -> {
+                attempts.incrementAndGet();
+                throw new SQLException("duplicate key", "23505");
+            });
+            fail("Not transient");
+        } catch (SQLException e) {
+            assertEquals(1, attempts.get());
+        }
+
+        attempts.set(0);
+        try {
+            Db.INSTANCE.call(false, failing(1));
+            fail("Not retryable");
+        } catch (SQLTransientException e) {
+            assertEquals(1, attempts.get());
+        }
+
+        attempts.set(0);
+        Db.INSTANCE.beginTransaction();
+        try {
+            Db.INSTANCE.call(true, failing(1));
+            fail("Inside a transaction");
+        } catch (SQLTransientException e) {
+            assertEquals(1, attempts.get());
+        } finally {
+            Db.INSTANCE.rollback();
+        }
+    }
+
+    /**
+     * Tests if the circuit breaker opens after consecutive transient errors and closes after a successful trial.
+     */
+    @Test
+    public void testCircuitBreaker() throws Exception {
+        Db.INSTANCE.setRetryPolicy(RetryPolicy.NONE);
+        Db.INSTANCE.setCircuitBreaker(new CircuitBreaker(2, 100));
+        for (int i = 0; i < 2; i++) {
+            try {
+                Db.INSTANCE.call(true, failing(2));
+                fail("Transient error");
+            } catch (SQLTransientException e) {
+                // expected
+            }
+        }
+        assertTrue(Db.INSTANCE.getCircuitBreaker().isOpen());
+        try {
+            Db.INSTANCE.call(true, failing(0));
+            fail("Circuit breaker is open");
+        } catch (CircuitBreakerOpenException e) {
+            assertEquals(2, attempts.get());
+        }
+
+        Thread.sleep(150);
+        assertEquals("ok", Db.INSTANCE.call(true, failing(0)));
+        assertFalse(Db.INSTANCE.getCircuitBreaker().isOpen());
+    }
+
+    /**
+     * Tests if the backoff grows up to its maximum.
+     */
+    @Test
+    public void testBackoff() {
+        RetryPolicy policy = new RetryPolicy(10, 10, 50);
+        for (int i = 0; i < 100; i++) {
+            assertTrue(policy.getBackoffMillis(1) <= 10);
+            assertTrue(policy.getBackoffMillis(2) <= 20);
+            assertTrue(policy.getBackoffMillis(9) <= 50);
+        }
+    }
+
+    /**
+     * Tests that only the trial decides if the half-open circuit breaker closes, not an operation which was let through
+     * before the breaker opened.
+     */
+    @Test
+    public void testCircuitBreakerTrialOwner() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker(1, 50);
+        assertTrue(breaker.tryAcquire());
+        Thread failing = new Thread(() -> {
+            assertTrue(breaker.tryAcquire());
+            breaker.record(true);
+        });
+        failing.start();
+        failing.join();
+        assertTrue(breaker.isOpen());
+
+        Thread.sleep(100);
+        CountDownLatch trialAcquired = new CountDownLatch(1);
+        CountDownLatch lateRecorded = new CountDownLatch(1);
+        AtomicBoolean openAfterTrial = new AtomicBoolean(true);
+        Thread trial = new Thread(() -> {
+            assertTrue(breaker.tryAcquire());
+            trialAcquired.countDown();
+            try {
+                lateRecorded.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            breaker.record(false);
+            openAfterTrial.set(breaker.isOpen());
+        });
+        trial.start();
+        trialAcquired.await();
+        assertFalse(breaker.tryAcquire());
+        // the operation which was let through first succeeds late
+        breaker.record(false);
+        assertTrue(breaker.isOpen());
+        lateRecorded.countDown();
+        trial.join();
+        assertFalse(openAfterTrial.get());
+    }
+
+    /**
+     * Tests that a trial which fails with an {@link Error} gives up the trial, so the next operation is let through.
+     */
+    @Test
+    public void testCircuitBreakerTrialError() throws Exception {
+        Db.INSTANCE.setRetryPolicy(RetryPolicy.NONE);
+        Db.INSTANCE.setCircuitBreaker(new CircuitBreaker(1, 50));
+        try {
+            Db.INSTANCE.call(true, failing(1));
+            fail("Transient error");
+        } catch (SQLTransientException e) {
+            // expected
+        }
+        assertTrue(Db.INSTANCE.getCircuitBreaker().isOpen());
+
+        Thread.sleep(100);
+        AtomicBoolean errorThrown = new AtomicBoolean();
+        Thread trial = new Thread(() -> {
+            try {
+                Db.INSTANCE.call(true, () -> {
+                    throw new OutOfMemoryError("trial");
+                });
+            } catch (OutOfMemoryError e) {
+                errorThrown.set(true);
+            } catch (SQLException | ActiveRecordException e) {
+                // not expected
+            }
+        });
+        trial.start();
+        trial.join();
+        assertTrue(errorThrown.get());
+        assertEquals("ok", Db.INSTANCE.call(true, failing(0)));
+        assertFalse(Db.INSTANCE.getCircuitBreaker().isOpen());
+    }
+}
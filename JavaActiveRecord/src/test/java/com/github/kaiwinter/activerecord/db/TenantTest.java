@@ -0,0 +1,164 @@
+package com.github.kaiwinter.activerecord.db;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Properties;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.sqlite.SQLiteDataSource;
+
+import com.github.kaiwinter.activerecord.ActiveRecordException;
+import com.github.kaiwinter.activerecord.ar.CounterAR;
+import com.github.kaiwinter.activerecord.ar.PersonAR;
+import com.github.kaiwinter.activerecord.metadata.MetadataCache;
+import com.github.kaiwinter.activerecord.schema.SchemaTool;
+
+public class TenantTest {
+
+    private final Properties properties = new Properties();
+
+    @Before
+    public void setup() throws ClassNotFoundException, SQLException, IOException {
+        properties.load(DbTestUtil.class.getResourceAsStream("db.properties"));
+        Properties tenantProperties = new Properties();
+        tenantProperties.putAll(properties);
+        tenantProperties.setProperty("tenant.tableName", "{tenant}_{table}");
+        tenantProperties.setProperty("tenant.acme.connectionString", "jdbc:sqlite::memory:");
+        Db.INSTANCE.init(tenantProperties);
+        DbTestUtil.setupDb();
+    }
+
+    @After
+    public void restore() throws ClassNotFoundException, SQLException {
+        TenantContext.clear();
+        Db.INSTANCE.init(properties);
+    }
+
+    private static long savePersons(String tenant, int count) throws SQLException, ActiveRecordException {
+        return TenantContext.call(tenant, () -> {
+            SchemaTool.createTable(PersonAR.class);
+            long lastId = 0;
+            for (int i = 0; i < count; i++) {
+                PersonAR person = new PersonAR("name" + i, tenant);
+                person.save();
+                lastId = person.getIdValue();
+            }
+            return lastId;
+        });
+    }
+
+    /**
+     * Tests if each tenant uses its own tables with their own ids and metadata.
+     */
+    @Test
+    public void testTablePerTenant() throws SQLException, ActiveRecordException {
+        assertEquals(1, savePersons("t1", 1));
+        assertEquals(2, savePersons("t2", 2));
+
+        assertEquals(0, PersonAR.count(PersonAR.class));
+        assertEquals(1, (long) TenantContext.call("t1", () -> PersonAR.count(PersonAR.class)));
+        assertEquals("t2", TenantContext.call("t2", () -> PersonAR.findById(PersonAR.class, 1)).getSurname());
+        assertTrue(tableExists(Db.INSTANCE.getConnection(), "t2_person"));
+
+        TenantContext.set("t1");
+        assertEquals("t1_person", MetadataCache.getTableMetadata(PersonAR.class).tableName);
+        assertSame(MetadataCache.getTableMetadata(PersonAR.class), MetadataCache.getTableMetadata(PersonAR.class));
+        TenantContext.clear();
+        assertEquals("person", MetadataCache.getTableMetadata(PersonAR.class).tableName);
+    }
+
+    /**
+     * Tests if a tenant with its own database is routed to it.
+     */
+    @Test
+    public void testConnectionPoolPerTenant() throws SQLException, ActiveRecordException, IOException {
+        savePersons("acme", 3);
+        Connection acmeConnection = TenantContext.call("acme", () -> Db.INSTANCE.getConnection());
+        assertNotSame(Db.INSTANCE.getConnection(), acmeConnection);
+        assertTrue(tableExists(acmeConnection, "acme_person"));
+        assertFalse(tableExists(Db.INSTANCE.getConnection(), "acme_person"));
+
+        // each operation borrows a connection, an in-memory database would be empty for the next one
+        File file = File.createTempFile("acme", ".db");
+        file.deleteOnExit();
+        SQLiteDataSource dataSource = new SQLiteDataSource();
+        dataSource.setUrl("jdbc:sqlite:" + file.getAbsolutePath());
+        Db.INSTANCE.addTenant("acme", dataSource, 1);
+        assertTrue(acmeConnection.isClosed());
+        assertEquals(1, savePersons("acme", 1));
+    }
+
+    /**
+     * Tests if the write-behind buffer of a tenant is flushed into the tables of the tenant.
+     */
+    @Test
+    public void testWriteBehindPerTenant() throws SQLException, ActiveRecordException {
+        TenantContext.set("t1");
+        SchemaTool.createTable(CounterAR.class);
+        new CounterAR("hits").save();
+        TenantContext.clear();
+
+        WriteBehindBuffer.flushAll();
+        assertEquals(0, CounterAR.count(CounterAR.class));
+        assertEquals(1, (long) TenantContext.call("t1", () -> CounterAR.count(CounterAR.class)));
+        assertNull(TenantContext.get());
+    }
+
+    private static boolean tableExists(Connection connection, String tableName) throws SQLException {
+        try (ResultSet resultSet = connection.getMetaData().getTables(null, null, tableName, null)) {
+            return resultSet.next();
+        }
+    }
+
+    /**
+     * Tests that a tenant without its own database is rejected if it would share the tables of the default tenant.
+     */
+    @Test
+    public void testTenantSharingTablesRejected() throws Exception {
+        Properties sharedTables = new Properties();
+        sharedTables.putAll(properties);
+        sharedTables.setProperty("tenant.tableName", "{table}");
+        sharedTables.setProperty("tenant.hooli.connectionString", "jdbc:sqlite::memory:");
+        Db.INSTANCE.init(sharedTables);
+        try {
+            TenantContext.call("globex", () -> PersonAR.count(PersonAR.class));
+            fail("Tenant shares the tables");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage().contains("globex"));
+        }
+        // the metadata of a tenant keeps its table name, so this test uses tenants of its own
+        assertEquals(1, savePersons("hooli", 1));
+    }
+
+    /**
+     * Tests that a tenant added by addTenant() is kept by a new init.
+     */
+    @Test
+    public void testAddedTenantKeptByInit() throws Exception {
+        File file = File.createTempFile("initech", ".db");
+        file.deleteOnExit();
+        SQLiteDataSource dataSource = new SQLiteDataSource();
+        dataSource.setUrl("jdbc:sqlite:" + file.getAbsolutePath());
+        Db.INSTANCE.addTenant("initech", dataSource, 1);
+        assertEquals(1, savePersons("initech", 1));
+
+        Db.INSTANCE.init(properties);
+        assertEquals(2, savePersons("initech", 1));
+        try (Lease lease = Db.INSTANCE.leaseForRead()) {
+            assertFalse(tableExists(lease.getConnection(), "initech_person"));
+        }
+    }
+}
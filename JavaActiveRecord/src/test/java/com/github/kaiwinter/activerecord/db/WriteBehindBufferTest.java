@@ -0,0 +1,118 @@
+package com.github.kaiwinter.activerecord.db;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.sql.SQLException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.kaiwinter.activerecord.ActiveRecordException;
+import com.github.kaiwinter.activerecord.ar.CounterAR;
+import com.github.kaiwinter.activerecord.metadata.MetadataCache;
+import com.github.kaiwinter.activerecord.schema.SchemaTool;
+
+public class WriteBehindBufferTest {
+
+    private final WriteBehindBuffer buffer = MetadataCache.getTableMetadata(CounterAR.class).writeBehind;
+
+    @Before
+    public void setup() throws ClassNotFoundException, SQLException, IOException {
+        DbTestUtil.setupDb();
+    }
+
+    @After
+    public void flush() throws ActiveRecordException {
+        WriteBehindBuffer.flushAll();
+    }
+
+    /**
+     * Tests if repeated saves of a record are coalesced and written by the flush, the buffered record exists before.
+     */
+    @Test
+    public void testCoalesce() throws ActiveRecordException {
+        CounterAR counter = new CounterAR("hits");
+        for (int i = 0; i < 100; i++) {
+            counter.increment();
+            counter.save();
+        }
+        assertEquals(1, buffer.size());
+        assertEquals(0, CounterAR.count(CounterAR.class));
+        assertTrue(CounterAR.exists(CounterAR.class, counter.getIdValue()));
+        assertEquals(100, CounterAR.findById(CounterAR.class, counter.getIdValue()).getValue());
+
+        WriteBehindBuffer.flushAll();
+        assertEquals(0, buffer.size());
+        assertEquals(100, CounterAR.findById(CounterAR.class, counter.getIdValue()).getValue());
+    }
+
+    /**
+     * Tests if a save into the full buffer flushes it first.
+     */
+    @Test
+    public void testBackpressure() throws ActiveRecordException {
+        for (int i = 0; i < 4; i++) {
+            new CounterAR("counter" + i).save();
+        }
+        assertEquals(3, CounterAR.count(CounterAR.class));
+        assertEquals(1, buffer.size());
+    }
+
+    /**
+     * Tests if a deleted record is removed from the buffer and a save in a transaction is written immediately.
+     */
+    @Test
+    public void testDeleteAndTransaction() throws ActiveRecordException, SQLException {
+        CounterAR deleted = new CounterAR("deleted");
+        deleted.save();
+        deleted.delete();
+        assertEquals(0, buffer.size());
+
+        Db.INSTANCE.beginTransaction();
+        new CounterAR("transactional").save();
+        Db.INSTANCE.commit();
+        assertEquals(0, buffer.size());
+        assertEquals(1, CounterAR.count(CounterAR.class));
+    }
+
+    /**
+     * Tests if the state of a record at the time of its save is written, not later changes.
+     */
+    @Test
+    public void testSnapshot() throws ActiveRecordException {
+        CounterAR counter = new CounterAR("hits");
+        counter.increment();
+        counter.save();
+        counter.increment();
+
+        CounterAR buffered = CounterAR.findById(CounterAR.class, counter.getIdValue());
+        assertNotSame(counter, buffered);
+        assertEquals(1, buffered.getValue());
+        WriteBehindBuffer.flushAll();
+        assertEquals(1, CounterAR.findById(CounterAR.class, counter.getIdValue()).getValue());
+    }
+
+    /**
+     * Tests if a record is dropped after the maximum number of failed flushes.
+     */
+    @Test
+    public void testDropAfterFailedFlushes() throws ActiveRecordException {
+        new CounterAR("lost").save();
+        SchemaTool.dropTable(CounterAR.class);
+        for (int attempt = 1; attempt <= 2; attempt++) {
+            assertEquals(1, buffer.size());
+            try {
+                buffer.flush();
+                fail("Table is dropped");
+            } catch (ActiveRecordException e) {
+                // expected
+            }
+        }
+        assertEquals(0, buffer.size());
+    }
+}
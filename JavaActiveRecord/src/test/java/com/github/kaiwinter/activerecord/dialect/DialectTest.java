@@ -0,0 +1,220 @@
+package com.github.kaiwinter.activerecord.dialect;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Runs the statements of the {@link Dialect}s against embedded SQLite and H2 databases.
+ */
+public class DialectTest {
+
+    private static final List<String> COLUMNS = Arrays.asList("name", "surname");
+
+    /**
+     * Tests if the dialect is chosen by the database product.
+     */
+    @Test
+    public void testResolveByProduct() throws SQLException {
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite::memory:")) {
+            Dialect dialect = Dialects.resolve(null, connection);
+            assertTrue(dialect instanceof SQLiteDialect);
+            assertFalse(dialect.supportsReturning());
+        }
+        try (Connection connection = DriverManager.getConnection("jdbc:h2:mem:")) {
+            assertTrue(Dialects.resolve(null, connection) instanceof H2Dialect);
+        }
+    }
+
+    /**
+     * Tests if the dialect is chosen by its name or class.
+     */
+    @Test
+    public void testResolveByName() {
+        assertTrue(Dialects.resolve("postgresql", null) instanceof PostgreSQLDialect);
+        assertTrue(Dialects.resolve("MySQL", null) instanceof MySQLDialect);
+        assertTrue(Dialects.resolve(H2Dialect.class.getName(), null) instanceof H2Dialect);
+    }
+
+    /**
+     * Tests that an unknown database product is not silently treated as H2.
+     */
+    @Test
+    public void testResolveUnknownProduct() {
+        DatabaseMetaData metaData = (DatabaseMetaData) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] { DatabaseMetaData.class },
+                (proxy, method, args) -> method.getName().equals("getDatabaseProductName") ? "Unknown DB" : 1);
+        Connection connection = (Connection) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] { Connection.class }, (proxy, method, args) -> metaData);
+        try {
+            Dialects.resolve(null, connection);
+            fail("Unknown database product");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("Unknown DB"));
+        }
+        assertTrue(Dialects.resolve("h2", connection) instanceof H2Dialect);
+    }
+
+    /**
+     * Tests the upsert of the SQLite dialect.
+     */
+    @Test
+    public void testUpsertSQLite() throws SQLException {
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite::memory:")) {
+            testUpsert(connection, new SQLiteDialect());
+        }
+    }
+
+    /**
+     * Tests the upsert of the H2 dialect.
+     */
+    @Test
+    public void testUpsertH2() throws SQLException {
+        try (Connection connection = DriverManager.getConnection("jdbc:h2:mem:")) {
+            testUpsert(connection, new H2Dialect());
+        }
+    }
+
+    /**
+     * Tests the multi-row insert and the pagination of the H2 dialect.
+     */
+    @Test
+    public void testMultiRowInsertAndPaginationH2() throws SQLException {
+        try (Connection connection = DriverManager.getConnection("jdbc:h2:mem:")) {
+            createTable(connection);
+            H2Dialect dialect = new H2Dialect();
+            try (PreparedStatement statement = connection.prepareStatement(
+                    dialect.getMultiRowInsertQuery("person", Arrays.asList("id", "name", "surname"), 3))) {
+                for (int i = 0; i < 3; i++) {
+                    statement.setLong(i * 3 + 1, i + 1);
+                    statement.setString(i * 3 + 2, "name" + i);
+                    statement.setString(i * 3 + 3, "surname" + i);
+                }
+                assertEquals(3, statement.executeUpdate());
+            }
+            try (PreparedStatement statement = connection
+                    .prepareStatement(dialect.getPaginatedQuery("SELECT id FROM person ORDER BY id"))) {
+                statement.setInt(1, 2);
+                statement.setLong(2, 1);
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    assertTrue(resultSet.next());
+                    assertEquals(2, resultSet.getLong(1));
+                    assertTrue(resultSet.next());
+                    assertEquals(3, resultSet.getLong(1));
+                    assertFalse(resultSet.next());
+                }
+            }
+        }
+    }
+
+    /**
+     * Tests if the ids of a multi-row insert can be derived from the generated keys of the H2 driver.
+     */
+    @Test
+    public void testMultiRowGeneratedKeysH2() throws SQLException {
+        try (Connection connection = DriverManager.getConnection("jdbc:h2:mem:")) {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("CREATE TABLE person (id IDENTITY PRIMARY KEY, name VARCHAR)");
+                statement.execute("INSERT INTO person (name) VALUES ('first')");
+            }
+            H2Dialect dialect = new H2Dialect();
+            List<Long> generatedIds = new ArrayList<>();
+            try (PreparedStatement statement = connection.prepareStatement(
+                    dialect.getMultiRowInsertQuery("person", Arrays.asList("name"), 3),
+                    Statement.RETURN_GENERATED_KEYS)) {
+                statement.setString(1, "a");
+                statement.setString(2, "b");
+                statement.setString(3, "c");
+                statement.executeUpdate();
+                try (ResultSet generatedKeys = statement.getGeneratedKeys()) {
+                    while (generatedKeys.next()) {
+                        generatedIds.add(generatedKeys.getLong(1));
+                    }
+                }
+            }
+            long firstId = generatedIds.size() == 3 ? generatedIds.get(0)
+                    : dialect.getFirstIdOfMultiRowInsert(generatedIds.get(0), 3);
+            assertEquals(2, firstId);
+        }
+    }
+
+    /**
+     * Tests the classification of transient errors, including a real SQLITE_BUSY of a locked database file.
+     */
+    @Test
+    public void testIsTransient() throws SQLException, IOException {
+        Dialect generic = new H2Dialect();
+        assertTrue(generic.isTransient(new SQLException("deadlock", "40001")));
+        assertFalse(generic.isTransient(new SQLTransientConnectionException("connection lost")));
+        assertFalse(generic.isTransient(new SQLRecoverableException("connection reset")));
+        assertFalse(generic.isTransient(new SQLException("communication link failure", "08S01")));
+        assertFalse(new PostgreSQLDialect().isTransient(new SQLException("terminating connection", "57P01")));
+        assertFalse(generic.isTransient(new SQLException("duplicate key", "23505")));
+        assertTrue(new MySQLDialect().isTransient(new SQLException("Lock wait timeout exceeded", "HY000", 1205)));
+        assertTrue(new PostgreSQLDialect().isTransient(new SQLException("could not obtain lock", "55P03")));
+
+        Path file = Files.createTempFile("dialect", ".db");
+        try (Connection locking = DriverManager.getConnection("jdbc:sqlite:" + file);
+                Connection locked = DriverManager.getConnection("jdbc:sqlite:" + file)) {
+            createTable(locking);
+            try (Statement statement = locking.createStatement()) {
+                statement.execute("BEGIN EXCLUSIVE");
+            }
+            try (Statement statement = locked.createStatement()) {
+                statement.execute("INSERT INTO person (id, name, surname) VALUES (1, 'a', 'b')");
+                fail("Database is locked");
+            } catch (SQLException e) {
+                assertTrue(e.getMessage(), new SQLiteDialect().isTransient(e));
+                assertFalse(generic.isTransient(e));
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    private static void testUpsert(Connection connection, Dialect dialect) throws SQLException {
+        createTable(connection);
+        String upsertQuery = dialect.getUpsertQuery("person", COLUMNS, "id");
+        try (PreparedStatement statement = connection.prepareStatement(upsertQuery)) {
+            statement.setString(1, "name");
+            statement.setString(2, "surname");
+            statement.setLong(3, 1);
+            statement.executeUpdate();
+
+            statement.setString(1, "new name");
+            statement.executeUpdate();
+        }
+        try (Statement statement = connection.createStatement();
+                ResultSet resultSet = statement.executeQuery("SELECT name FROM person")) {
+            assertTrue(resultSet.next());
+            assertEquals("new name", resultSet.getString(1));
+            assertFalse(resultSet.next());
+        }
+    }
+
+    private static void createTable(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE person (id INTEGER PRIMARY KEY, name VARCHAR, surname VARCHAR)");
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.github.kaiwinter.activerecord.schema;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.kaiwinter.activerecord.ActiveRecordException;
+import com.github.kaiwinter.activerecord.BaseAR;
+import com.github.kaiwinter.activerecord.annotation.Column;
+import com.github.kaiwinter.activerecord.annotation.Indexed;
+import com.github.kaiwinter.activerecord.annotation.Table;
+import com.github.kaiwinter.activerecord.ar.MountainAR;
+import com.github.kaiwinter.activerecord.ar.PersonAR;
+import com.github.kaiwinter.activerecord.ar.PersonDatabaseSequenceAR;
+import com.github.kaiwinter.activerecord.ar.SensorAR;
+import com.github.kaiwinter.activerecord.db.Db;
+import com.github.kaiwinter.activerecord.db.DbTestUtil;
+import com.github.kaiwinter.activerecord.db.SequenceGenerator;
+import com.github.kaiwinter.activerecord.metadata.IndexDefinition;
+
+public class SchemaToolTest {
+
+    /** Not used by any other test, so its metadata is built by the {@link SchemaTool}. */
+    @Table(alias = "fresh", sequenceGenerator = SequenceGenerator.INTERNAL)
+    public static class FreshAR extends BaseAR {
+        @Column
+        @Indexed
+        private String name;
+    }
+
+    @Before
+    public void setup() throws ClassNotFoundException, SQLException, IOException {
+        DbTestUtil.setupDb();
+    }
+
+    /**
+     * Tests if a declared index is reported as missing and is created.
+     */
+    @Test
+    public void testCreateMissingIndexes() throws ActiveRecordException {
+        List<IndexDefinition> missing = SchemaTool.findMissingIndexes(PersonAR.class);
+        assertEquals(1, missing.size());
+        assertEquals("idx_person_surname", missing.get(0).name);
+
+        assertEquals(1, SchemaTool.createMissingIndexes(PersonAR.class));
+        assertTrue(SchemaTool.findMissingIndexes(PersonAR.class).isEmpty());
+        assertEquals(0, SchemaTool.createMissingIndexes(PersonAR.class));
+    }
+
+    /**
+     * Tests if the index of a sharded table is created on every shard.
+     */
+    @Test
+    public void testCreateMissingIndexesOnShards() throws ActiveRecordException {
+        assertEquals(1, SchemaTool.findMissingIndexes(SensorAR.class).size());
+        assertEquals(Db.INSTANCE.getShardCount(), SchemaTool.createMissingIndexes(SensorAR.class));
+        assertTrue(SchemaTool.findMissingIndexes(SensorAR.class).isEmpty());
+    }
+
+    /**
+     * Tests the generated CREATE TABLE statements.
+     */
+    @Test
+    public void testCreateTableQuery() {
+        assertEquals("CREATE TABLE IF NOT EXISTS person_with_db_sequence"
+                + " (id INTEGER PRIMARY KEY AUTOINCREMENT, name VARCHAR, surname VARCHAR)",
+                SchemaTool.getCreateTableQuery(PersonDatabaseSequenceAR.class));
+        assertEquals("CREATE TABLE IF NOT EXISTS mountain (id INTEGER PRIMARY KEY, name VARCHAR, height BIGINT)",
+                SchemaTool.getCreateTableQuery(MountainAR.class));
+    }
+
+    /**
+     * Tests if the generated schema is valid.
+     */
+    @Test
+    public void testValidateSchema() throws ActiveRecordException {
+        SchemaTool.validateSchema(PersonAR.class, MountainAR.class, SensorAR.class);
+    }
+
+    /**
+     * Tests if the schema of an Active Record whose metadata was not built before is created and validated.
+     */
+    @Test
+    public void testCreateSchemaOfUnusedActiveRecord() throws ActiveRecordException {
+        try {
+            SchemaTool.validateSchema(FreshAR.class);
+            fail("Table is missing");
+        } catch (ActiveRecordException e) {
+            assertTrue(e.getMessage().contains("fresh"));
+        }
+        SchemaTool.createSchema(FreshAR.class);
+        SchemaTool.validateSchema(FreshAR.class);
+        assertTrue(SchemaTool.findMissingIndexes(FreshAR.class).isEmpty());
+        SchemaTool.dropTable(FreshAR.class);
+    }
+
+    /**
+     * Tests if a missing column and a numeric field on a character column are reported.
+     */
+    @Test
+    public void testFindSchemaProblems() throws SQLException, ActiveRecordException {
+        try (Statement statement = Db.INSTANCE.getConnection().createStatement()) {
+            statement.execute("DROP TABLE mountain");
+            statement.execute("CREATE TABLE mountain (id INTEGER PRIMARY KEY, height VARCHAR)");
+        }
+        List<String> problems = SchemaTool.findSchemaProblems(MountainAR.class);
+        assertEquals(2, problems.size());
+        assertTrue(problems.get(0).contains("mountain.name"));
+        assertTrue(problems.get(1).contains("mountain.height"));
+
+        SchemaTool.dropTable(MountainAR.class);
+        assertEquals(1, SchemaTool.findSchemaProblems(MountainAR.class).size());
+    }
+}